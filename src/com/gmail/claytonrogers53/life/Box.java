@@ -3,6 +3,7 @@ package com.gmail.claytonrogers53.life;
 import com.gmail.claytonrogers53.life.Graphics.Drawable;
 import com.gmail.claytonrogers53.life.Graphics.Drawing;
 import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.PhysicsFrame;
 import com.gmail.claytonrogers53.life.Physics.PhysicsObject;
 import com.gmail.claytonrogers53.life.Util.Vector2D;
 
@@ -35,6 +36,13 @@ public class Box extends PhysicsObject implements Drawable {
         g.setColor(Color.BLACK);
         g.draw(new Rectangle2D.Double(0.0, 0.0, 19.0, 19.0));
         drawing.sprite = sprite;
+        // Where it is drawn until it is first in a physics frame.
+        drawing.xPosition  = position.getMagX();
+        drawing.yPosition  = position.getMagY();
+        drawing.rotation   = angle;
+        drawing.previousXPosition = position.getMagX();
+        drawing.previousYPosition = position.getMagY();
+        drawing.previousRotation  = angle;
     }
 
     @Override
@@ -43,10 +51,27 @@ public class Box extends PhysicsObject implements Drawable {
     }
 
     @Override
-    public Drawing getDrawing() {
-        drawing.xPosition  = state.position.getMagX();
-        drawing.yPosition  = state.position.getMagY();
-        drawing.rotation   = state.angle;
+    public Drawing getDrawing(PhysicsFrame frame) {
+        int slot = frame != null ? frame.getSlot(getBodyId()) : -1;
+        if (slot >= 0) {
+            drawing.xPosition  = frame.getX(slot);
+            drawing.yPosition  = frame.getY(slot);
+            drawing.rotation   = frame.getAngle(slot);
+            drawing.previousXPosition = frame.getPreviousX(slot);
+            drawing.previousYPosition = frame.getPreviousY(slot);
+            drawing.previousRotation  = frame.getPreviousAngle(slot);
+        } else if (frame == null) {
+            // There isn't a physics system, so nothing is changing the state.
+            drawing.xPosition  = state.position.getMagX();
+            drawing.yPosition  = state.position.getMagY();
+            drawing.rotation   = state.angle;
+            drawing.previousXPosition = previousState.position.getMagX();
+            drawing.previousYPosition = previousState.position.getMagY();
+            drawing.previousRotation  = previousState.angle;
+        }
+        // Otherwise the box isn't in the frame yet (or any more), and the physics thread may be
+        // changing its state, so it stays where it was last drawn.
+        drawing.isInterpolated    = true;
         drawing.spriteZoom = 1.0/15.0;
         drawing.sprite = sprite;
 
@@ -1,5 +1,7 @@
 package com.gmail.claytonrogers53.life.Graphics;
 
+import com.gmail.claytonrogers53.life.Physics.PhysicsFrame;
+
 /**
  * Any object which needs to be drawn on the screen needs to implement this interface.
  *
@@ -10,7 +12,14 @@ public interface Drawable {
      * Gets the drawing object from the given drawable object. The drawing object contains
      * information about the position, the scale and rotation and the actual sprite to be drawn.
      *
+     * Objects in the physics system should take their position from the frame rather than from
+     * their state, since the state is being changed by the physics thread while it is drawn.
+     *
+     * @param frame
+     *        The latest frame published by the physics system, or null when there isn't a physics
+     *        system. The same frame is given to every object drawn in one screen frame.
+     *
      * @return The drawing object to be drawn.
      */
-    Drawing getDrawing ();
+    Drawing getDrawing (PhysicsFrame frame);
 }
@@ -21,6 +21,15 @@ public class Drawing {
     /** The rotation in radians that the sprite needs to be rotated. */
     public double rotation;
 
+    /** When true, the drawing is blended between the previous and the current position and
+     * rotation using the interpolation alpha of the physics system. */
+    public boolean isInterpolated = false;
+
+    /** The position and rotation at the previous physics step. Only used when interpolated. */
+    public double previousXPosition;
+    public double previousYPosition;
+    public double previousRotation;
+
     /** The sprite image to be drawn. */
     public Image sprite;
 
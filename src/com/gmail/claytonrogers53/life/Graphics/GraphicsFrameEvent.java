@@ -0,0 +1,66 @@
+package com.gmail.claytonrogers53.life.Graphics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event covering the work of one graphics frame: processing the inputs and
+ * drawing the screen. The duration of the event is the frame time, without the wait for the next
+ * frame. Must only be used when
+ * {@link com.gmail.claytonrogers53.life.Util.FlightEvents#IS_AVAILABLE} is true.
+ */
+@Name("life.GraphicsFrame")
+@Label("Graphics Frame")
+@Category({"Life", "Graphics"})
+@Description("One frame of the graphics system, without the wait for the next frame.")
+@StackTrace(false)
+final class GraphicsFrameEvent extends Event {
+
+    @Label("Draw Count")
+    @Description("The number of drawable objects drawn.")
+    int drawCount;
+    @Label("GUI Elements")
+    int guiElementCount;
+    @Label("Draw Period") @Timespan(Timespan.MILLISECONDS)
+    long drawDT;
+
+    /**
+     * @return The started event, or null when the event isn't being recorded.
+     */
+    static GraphicsFrameEvent start() {
+        GraphicsFrameEvent event = new GraphicsFrameEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param drawCount
+     *        The number of drawable objects drawn.
+     *
+     * @param guiElementCount
+     *        The number of GUI elements drawn.
+     *
+     * @param drawDT
+     *        The time between frames that the graphics system aims for (ms).
+     */
+    void finish(int drawCount, int guiElementCount, long drawDT) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.drawCount       = drawCount;
+        this.guiElementCount = guiElementCount;
+        this.drawDT          = drawDT;
+        commit();
+    }
+}
@@ -1,8 +1,10 @@
 package com.gmail.claytonrogers53.life.Graphics;
 
 import com.gmail.claytonrogers53.life.Graphics.GUI.GUIElement;
+import com.gmail.claytonrogers53.life.Physics.PhysicsFrame;
 import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
 import com.gmail.claytonrogers53.life.Util.Configuration;
+import com.gmail.claytonrogers53.life.Util.FlightEvents;
 import com.gmail.claytonrogers53.life.Util.Log;
 import com.gmail.claytonrogers53.life.Util.RollingAverage;
 
@@ -76,6 +78,10 @@ public final class GraphicsSystem extends JFrame implements Runnable{
     private final Collection<GUIElement> GUIElementList = new ArrayList<>(40);
     /** The list of inputs to be processed. */
     private final Queue<InputMessage> inputMessages = new ConcurrentLinkedQueue<>();
+    /** The number of drawables and GUI elements drawn in the last frame, for the flight recorder.
+     * Only used by the graphics thread. */
+    private int lastDrawCount       = 0;
+    private int lastGUIElementCount = 0;
 
     /**
      * Constructs a new runnable GraphicsSystem object. If the window settings are set in the
@@ -174,6 +180,7 @@ public final class GraphicsSystem extends JFrame implements Runnable{
 
         while (isDrawing) {
 
+            GraphicsFrameEvent frameEvent = FlightEvents.IS_AVAILABLE ? GraphicsFrameEvent.start() : null;
             processInputs();
             drawScreen();
 
@@ -182,6 +189,9 @@ public final class GraphicsSystem extends JFrame implements Runnable{
             synchronized (this) {
                 localDrawDT = draw_dt;
             }
+            if (frameEvent != null) {
+                frameEvent.finish(lastDrawCount, lastGUIElementCount, localDrawDT);
+            }
             long timeToWait = (endOfLastLoopTime + localDrawDT) - System.currentTimeMillis();
             try {
                 if (timeToWait > 0L) {
@@ -273,10 +283,21 @@ public final class GraphicsSystem extends JFrame implements Runnable{
             // changed by another thread while we are drawing it. In the case where we spend a
             // majority of the time drawing, this could cause delays when we try to add or remove
             // an object from the draw loop.
+            // Everything is drawn from one complete physics step, picked up without waiting on
+            // the physics thread.
+            PhysicsFrame frame = physicsSystem != null ? physicsSystem.getLatestFrame() : null;
+            // How far the physics is between the step of the frame and the next one.
+            double alpha = frame != null ? frame.getInterpolationAlpha(System.nanoTime()) : 1.0;
+
             synchronized (drawableList) {
+                lastDrawCount = drawableList.size();
                 Drawing drawing;
                 for (Drawable object : drawableList) {
-                    drawing = object.getDrawing();
+                    drawing = object.getDrawing(frame);
+
+                    if (drawing.isInterpolated) {
+                        interpolate(drawing, alpha);
+                    }
 
                     // Because all the screen objects work in a normal coordinate system. i.e. with
                     // metres, but java2D uses pixels starting in the top left, we must convert
@@ -300,6 +321,7 @@ public final class GraphicsSystem extends JFrame implements Runnable{
             }
 
             synchronized (GUIElementList) {
+                lastGUIElementCount = GUIElementList.size();
                 for (GUIElement e : GUIElementList) {
                     e.draw(g2);
                 }
@@ -329,6 +351,23 @@ public final class GraphicsSystem extends JFrame implements Runnable{
         Toolkit.getDefaultToolkit().sync();
     }
 
+    /**
+     * Blends the position and rotation of a drawing between the previous and current physics
+     * step, so that objects move smoothly even when the physics runs at a lower rate than the
+     * graphics.
+     *
+     * @param drawing
+     *        The drawing to be blended.
+     *
+     * @param alpha
+     *        How far between the previous (0.0) and current (1.0) step to draw the object.
+     */
+    private static void interpolate(Drawing drawing, double alpha) {
+        drawing.xPosition = drawing.previousXPosition + (drawing.xPosition - drawing.previousXPosition) * alpha;
+        drawing.yPosition = drawing.previousYPosition + (drawing.yPosition - drawing.previousYPosition) * alpha;
+        drawing.rotation  = drawing.previousRotation  + (drawing.rotation  - drawing.previousRotation)  * alpha;
+    }
+
     /**
      * Considers the current view position and zoom and uses it to convert the drawing into
      * something that can be drawn. It needs to be synchronized because is reads the pan and zoom.
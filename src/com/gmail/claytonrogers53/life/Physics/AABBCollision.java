@@ -7,15 +7,35 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Implements the axis aligned bounding box method of collision detection. Uses the X-axis as the
  * primary checking direction, thus objects spread out over the X-axis will cause it to run faster.
  *
+ * Sleeping objects don't move, so their bounds are kept sorted from one frame to the next in a list
+ * of their own, and are only swept against the awake objects. Two sleeping objects can't collide,
+ * and a sleeping object is woken by the collision or contact with an awake one.
+ *
  * Created by Clayton on 25/2/2015.
  */
 class AABBCollision implements CollisionSystem {
 
+    private CollisionFilter filter = null;
+    /** The time the last call to findCollisions spent making the collisions (ns). */
+    private long narrowphaseNanos = 0L;
+    /** The potentially colliding pairs, stored as consecutive elements. */
+    private final List<Collidable> pairs = new ArrayList<>(6);
+    /** The bounds of the sleeping objects, sorted. Kept until an object falls asleep, wakes up or
+     * is moved. */
+    private final List<Bound> sleepingBounds = new ArrayList<>();
+    /** The same bounds in the order of the object list, to check that they are still right. */
+    private final List<Bound> sleepingLowerBounds = new ArrayList<>();
+    private final List<Bound> sleepingUpperBounds = new ArrayList<>();
+    private final List<Bound> awakeBounds = new ArrayList<>();
+    private final List<Collidable> activeAwake = new ArrayList<>(10);
+    private final List<Collidable> activeSleeping = new ArrayList<>(10);
+
     /**
      * Represents either the upper or lower bound of a collidable object.
      */
@@ -57,7 +77,9 @@ class AABBCollision implements CollisionSystem {
         @Override
         public int compareTo(@NotNull Bound o) {
             if (value == o.value) {
-                return 0;
+                // Boxes which only touch don't overlap, so the right side of one comes before the
+                // left side of the next.
+                return isUpper == o.isUpper ? 0 : (isUpper ? 1 : -1);
             }
             if (value > o.value) {
                 return 1;
@@ -80,58 +102,245 @@ class AABBCollision implements CollisionSystem {
      */
     @Override
     public List<Collision> findCollisions(List<Collidable> objectList, double physicsDT_seconds) {
-        List<Collision> collisions = new ArrayList<>(3);
-        List<Bound> bounds = new ArrayList<>(objectList.size()*2);
-
+        awakeBounds.clear();
+        boolean isSleepingChanged = false;
+        int numSleeping = 0;
         for (Collidable object : objectList) {
             if (!object.isCollisionsEnabled()) {continue;}
+            // Fast objects have their boxes swept along their path, so they can't skip over
+            // anything thin.
+            double lowerX = Collision.getLowerX(object);
+            double upperX = Collision.getUpperX(object);
+            if (object.isSleeping()) {
+                // Still the same sleeping object in the same place as when the bounds were sorted?
+                if (!isSleepingChanged && (numSleeping >= sleepingLowerBounds.size() ||
+                        sleepingLowerBounds.get(numSleeping).object != object ||
+                        sleepingLowerBounds.get(numSleeping).value != lowerX ||
+                        sleepingUpperBounds.get(numSleeping).value != upperX)) {
+                    isSleepingChanged = true;
+                }
+                ++numSleeping;
+                continue;
+            }
             // Upper (i.e. left) bound
-            bounds.add(new Bound(object, object.getCollisionRadius()
-                    + object.getNextState().position.getMagX(), true));
+            awakeBounds.add(new Bound(object, lowerX, true));
             // Lower (i.e. right) bound
-            bounds.add(new Bound(object, object.getCollisionRadius()
-                    - object.getNextState().position.getMagX(), false));
+            awakeBounds.add(new Bound(object, upperX, false));
         }
+        if (isSleepingChanged || numSleeping != sleepingLowerBounds.size()) {
+            sortSleepingBounds(objectList);
+        }
+        Collections.sort(awakeBounds);
 
-        Collections.sort(bounds);
-
-        Collection<Collidable> activeObjects = new ArrayList<>(10);
-
-        for (Bound bound : bounds) {
+        // Sweep both lists together. The sleeping objects are only paired with the awake ones.
+        int a = 0;
+        int s = 0;
+        while (a < awakeBounds.size() || s < sleepingBounds.size()) {
+            boolean isAwake = s == sleepingBounds.size() ||
+                    (a < awakeBounds.size() && awakeBounds.get(a).compareTo(sleepingBounds.get(s)) <= 0);
+            Bound bound = isAwake ? awakeBounds.get(a++) : sleepingBounds.get(s++);
+            List<Collidable> active = isAwake ? activeAwake : activeSleeping;
             if (bound.isUpper) {
                 // For every other object that is currently active, this is a possible collision.
-                for (Collidable object : activeObjects) {
-                    if (isPotentialCollisionInY(object, bound.object)) {
-                        collisions.add(new Collision(object, bound.object, physicsDT_seconds));
-                    }
+                addPairs(activeAwake, bound.object);
+                if (isAwake) {
+                    addPairs(activeSleeping, bound.object);
                 }
-
-                activeObjects.add(bound.object);
+                active.add(bound.object);
             } else {
                 // Is a lower bound, just remove the object from the actives.
-                activeObjects.remove(bound.object);
+                active.remove(bound.object);
             }
         }
+        activeAwake.clear();
+        activeSleeping.clear();
 
+        // The collisions are made once all of the pairs are found, so that the narrow phase is
+        // timed as a whole rather than pair by pair.
+        long start = System.nanoTime();
+        List<Collision> collisions = new ArrayList<>(pairs.size() / 2 + 1);
+        for (int i = 0; i < pairs.size(); i += 2) {
+            collisions.add(new Collision(pairs.get(i), pairs.get(i + 1), physicsDT_seconds));
+        }
+        narrowphaseNanos = System.nanoTime() - start;
+        pairs.clear();
         return collisions;
     }
 
+    private void addPairs(List<Collidable> active, Collidable other) {
+        for (Collidable object : active) {
+            if (Collision.isPotentialCollision(object, other) && Collision.shouldCollide(object, other, filter)) {
+                pairs.add(object);
+                pairs.add(other);
+            }
+        }
+    }
+
+    /**
+     * Makes the sorted bounds of the sleeping objects again.
+     */
+    private void sortSleepingBounds(List<Collidable> objectList) {
+        clear();
+        for (Collidable object : objectList) {
+            if (!object.isCollisionsEnabled() || !object.isSleeping()) {continue;}
+            Bound lower = new Bound(object, Collision.getLowerX(object), true);
+            Bound upper = new Bound(object, Collision.getUpperX(object), false);
+            sleepingLowerBounds.add(lower);
+            sleepingUpperBounds.add(upper);
+            sleepingBounds.add(lower);
+            sleepingBounds.add(upper);
+        }
+        Collections.sort(sleepingBounds);
+    }
+
+    @Override
+    public long getNarrowphaseNanos() {
+        return narrowphaseNanos;
+    }
+
+    /**
+     * Implements the interface. The sweep is not kept between frames, so the object is simply
+     * checked against every other object.
+     *
+     * @param object
+     *        The object to find the possible collisions of.
+     *
+     * @param objectList
+     *        The list of all the collidable objects.
+     *
+     * @param candidates
+     *        The possibly colliding objects are added to this collection.
+     */
+    @Override
+    public void findCandidates(Collidable object, List<Collidable> objectList, Collection<Collidable> candidates) {
+        for (Collidable other : objectList) {
+            if (other == object || !other.isCollisionsEnabled()) {continue;}
+            if (Collision.isPotentialCollision(object, other) && Collision.shouldCollide(object, other, filter)) {
+                candidates.add(other);
+            }
+        }
+    }
+
+    /**
+     * Implements the interface.
+     *
+     * @param filter
+     *        The filter, or null to only use the category and mask bits.
+     */
+    @Override
+    public void setCollisionFilter(CollisionFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Implements the interface by checking the box around every object.
+     *
+     * @param lowerX
+     *        The left side of the box (m).
+     *
+     * @param lowerY
+     *        The bottom of the box (m).
+     *
+     * @param upperX
+     *        The right side of the box (m).
+     *
+     * @param upperY
+     *        The top of the box (m).
+     *
+     * @param objectList
+     *        The list of all the objects.
+     *
+     * @param candidates
+     *        The possibly overlapping objects are added to this collection.
+     */
+    @Override
+    public void query(double lowerX, double lowerY, double upperX, double upperY, List<Collidable> objectList,
+                      Collection<Collidable> candidates) {
+        for (Collidable object : objectList) {
+            Vector2D position = object.getState().position;
+            double radius = object.getCollisionRadius();
+            if (position.getMagX() + radius >= lowerX && position.getMagX() - radius <= upperX &&
+                    position.getMagY() + radius >= lowerY && position.getMagY() - radius <= upperY) {
+                candidates.add(object);
+            }
+        }
+    }
+
     /**
-     * Checks for collisions using only the Y direction, since the main loop uses the X direction.
+     * Implements the interface by giving every object to the callback.
+     *
+     * @param objectList
+     *        The list of all the objects.
      *
-     * @param obj1
-     *        The first object.
+     * @param callback
+     *        Called for each object the ray might hit.
+     */
+    @Override
+    public void rayCast(double x1, double y1, double x2, double y2, List<Collidable> objectList,
+                        RayCastCallback callback) {
+        double maxFraction = 1.0;
+        for (Collidable object : objectList) {
+            double fraction = callback.reportObject(object, maxFraction);
+            if (fraction >= 0.0) {
+                maxFraction = Math.min(maxFraction, fraction);
+            }
+        }
+    }
+
+    /**
+     * Does nothing, the kept bounds of the sleeping objects are checked against the objects every
+     * frame.
+     *
+     * @param object
+     *        The object that was added.
+     */
+    @Override
+    public void addObject(Collidable object) {
+    }
+
+    /**
+     * Does nothing, the kept bounds of the sleeping objects are checked against the objects every
+     * frame.
      *
-     * @param obj2
-     *        The second object.
+     * @param object
+     *        The object that was moved.
+     */
+    @Override
+    public void updateObject(Collidable object) {
+    }
+
+    /**
+     * Does nothing, the kept bounds of the sleeping objects are checked against the objects every
+     * frame.
      *
-     * @return True when there is the potential for a collision.
+     * @param object
+     *        The object that was removed.
      */
-    private static boolean isPotentialCollisionInY(Collidable obj1, Collidable obj2) {
-        double maxDistance = obj1.getCollisionRadius() + obj2.getCollisionRadius();
-        Vector2D pos1 = obj1.getNextState().position;
-        Vector2D pos2 = obj2.getNextState().position;
+    @Override
+    public void removeObject(Collidable object) {
+    }
 
-        return Math.abs(pos1.getMagY() - pos2.getMagY()) < maxDistance;
+    /**
+     * Forgets the bounds of the sleeping objects. The other objects aren't kept between frames.
+     */
+    @Override
+    public void clear() {
+        sleepingBounds.clear();
+        sleepingLowerBounds.clear();
+        sleepingUpperBounds.clear();
+    }
+
+    /**
+     * Does nothing, this collision system doesn't start any threads.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Does nothing, this collision system doesn't split its work between threads.
+     */
+    @Override
+    public void setPool(ForkJoinPool pool) {
     }
 }
@@ -0,0 +1,273 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Implements broad phase collision detection using a {@link DynamicAABBTree}. Unlike the sweep and
+ * prune of {@link AABBCollision}, it does not depend on objects being spread out along one axis
+ * and copes well with objects of very different sizes. Objects are kept in the tree between
+ * frames and only need to be moved in the tree when they leave their fattened box.
+ */
+class AABBTreeCollision implements CollisionSystem {
+
+    /** The tree that holds every object in the physics system. */
+    private final DynamicAABBTree tree;
+    /** The leaf of each object in the tree. */
+    private final Map<Collidable, Integer> proxies = new IdentityHashMap<>(100);
+    private CollisionFilter filter = null;
+    /** The time the last call to findCollisions spent making the collisions (ns). */
+    private long narrowphaseNanos = 0L;
+
+    // Used by the pair callback, so that a new callback doesn't have to be made for every query.
+    /** The potentially colliding pairs, stored as consecutive elements. */
+    private final List<Collidable> pairs = new ArrayList<>(6);
+    private int queryProxyId;
+    /** Where the candidate callback puts the objects it finds. */
+    private Collection<Collidable> queryCandidates;
+    // Used by the region query and ray cast callbacks, kept apart from the ones used by the step.
+    private Collection<Collidable> regionCandidates;
+    private RayCastCallback rayCastCallback;
+
+    private final DynamicAABBTree.QueryCallback pairCallback = new DynamicAABBTree.QueryCallback() {
+        @Override
+        public boolean reportProxy(int proxyId) {
+            Collidable object = tree.getUserData(queryProxyId);
+            Collidable other  = tree.getUserData(proxyId);
+            // Pairs of awake objects are found from both ends, only keep them once. Sleeping
+            // objects don't query, so their pairs are only found from the awake end.
+            if (proxyId == queryProxyId || (proxyId < queryProxyId && !other.isSleeping())) {
+                return true;
+            }
+            if (other.isCollisionsEnabled() && Collision.isPotentialCollision(object, other) &&
+                    Collision.shouldCollide(object, other, filter)) {
+                pairs.add(object);
+                pairs.add(other);
+            }
+            return true;
+        }
+    };
+
+    private final DynamicAABBTree.QueryCallback candidateCallback = new DynamicAABBTree.QueryCallback() {
+        @Override
+        public boolean reportProxy(int proxyId) {
+            if (proxyId == queryProxyId) {
+                return true;
+            }
+            Collidable object = tree.getUserData(queryProxyId);
+            Collidable other  = tree.getUserData(proxyId);
+            if (other.isCollisionsEnabled() && Collision.isPotentialCollision(object, other) &&
+                    Collision.shouldCollide(object, other, filter)) {
+                queryCandidates.add(other);
+            }
+            return true;
+        }
+    };
+
+    private final DynamicAABBTree.QueryCallback regionCallback = new DynamicAABBTree.QueryCallback() {
+        @Override
+        public boolean reportProxy(int proxyId) {
+            regionCandidates.add(tree.getUserData(proxyId));
+            return true;
+        }
+    };
+
+    private final DynamicAABBTree.RayCastCallback treeRayCastCallback = new DynamicAABBTree.RayCastCallback() {
+        @Override
+        public double reportRayHit(int proxyId, double maxFraction) {
+            return rayCastCallback.reportObject(tree.getUserData(proxyId), maxFraction);
+        }
+    };
+
+    /**
+     * Creates a new tree based collision system.
+     *
+     * @param margin
+     *        The distance (m) that the boxes in the tree are fattened by. Objects can move this far
+     *        before the tree has to be updated.
+     */
+    AABBTreeCollision(double margin) {
+        tree = new DynamicAABBTree(margin);
+    }
+
+    @Override
+    public List<Collision> findCollisions(List<Collidable> objectList, double physicsDT_seconds) {
+        updateObjects(objectList);
+
+        pairs.clear();
+        for (Collidable object : objectList) {
+            // An object with an empty mask can't collide with anything, so it doesn't need to look.
+            if (!object.isCollisionsEnabled() || object.isSleeping() || object.getMaskBits() == 0) {continue;}
+            queryProxyId = proxies.get(object);
+            tree.query(Collision.getLowerX(object), Collision.getLowerY(object),
+                       Collision.getUpperX(object), Collision.getUpperY(object), pairCallback);
+        }
+
+        // The collisions are only created once all of the pairs are found since creating them moves
+        // the objects around while the collision time is found.
+        long start = System.nanoTime();
+        List<Collision> collisions = new ArrayList<>(pairs.size() / 2 + 1);
+        for (int i = 0; i < pairs.size(); i += 2) {
+            collisions.add(new Collision(pairs.get(i), pairs.get(i + 1), physicsDT_seconds));
+        }
+        narrowphaseNanos = System.nanoTime() - start;
+        return collisions;
+    }
+
+    @Override
+    public long getNarrowphaseNanos() {
+        return narrowphaseNanos;
+    }
+
+    /**
+     * Brings the tree up to date with the proposed positions of every object.
+     *
+     * @param objectList
+     *        All of the objects in the physics system.
+     */
+    void updateObjects(List<Collidable> objectList) {
+        for (Collidable object : objectList) {
+            Integer proxyId = proxies.get(object);
+            if (proxyId == null) {
+                // Objects could have been given to us without being added first.
+                addObject(object);
+            } else if (!object.isSleeping()) {
+                tree.moveProxy(proxyId,
+                        Collision.getLowerX(object), Collision.getLowerY(object),
+                        Collision.getUpperX(object), Collision.getUpperY(object));
+            }
+        }
+    }
+
+    @Override
+    public void findCandidates(Collidable object, List<Collidable> objectList, Collection<Collidable> candidates) {
+        Integer proxyId = proxies.get(object);
+        if (proxyId == null) {
+            addObject(object);
+            proxyId = proxies.get(object);
+        }
+        double lowerX = Collision.getLowerX(object);
+        double lowerY = Collision.getLowerY(object);
+        double upperX = Collision.getUpperX(object);
+        double upperY = Collision.getUpperY(object);
+        // The object has most likely just changed direction.
+        tree.moveProxy(proxyId, lowerX, lowerY, upperX, upperY);
+
+        queryProxyId = proxyId;
+        queryCandidates = candidates;
+        tree.query(lowerX, lowerY, upperX, upperY, candidateCallback);
+        queryCandidates = null;
+    }
+
+    /**
+     * Implements the interface using the fattened boxes in the tree. Between steps these always
+     * hold the current positions of the objects.
+     */
+    @Override
+    public void query(double lowerX, double lowerY, double upperX, double upperY, List<Collidable> objectList,
+                      Collection<Collidable> candidates) {
+        addMissingObjects(objectList);
+        regionCandidates = candidates;
+        tree.query(lowerX, lowerY, upperX, upperY, regionCallback);
+        regionCandidates = null;
+    }
+
+    @Override
+    public void rayCast(double x1, double y1, double x2, double y2, List<Collidable> objectList,
+                        RayCastCallback callback) {
+        addMissingObjects(objectList);
+        rayCastCallback = callback;
+        tree.rayCast(x1, y1, x2, y2, treeRayCastCallback);
+        rayCastCallback = null;
+    }
+
+    /**
+     * Objects could have been given to us without being added first, they are normally picked up
+     * by the next step.
+     */
+    private void addMissingObjects(List<Collidable> objectList) {
+        if (proxies.size() == objectList.size()) {
+            return;
+        }
+        for (Collidable object : objectList) {
+            if (!proxies.containsKey(object)) {
+                addObject(object);
+            }
+        }
+    }
+
+    @Override
+    public void setCollisionFilter(CollisionFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public void addObject(Collidable object) {
+        if (proxies.containsKey(object)) {
+            Log.warning("Tried to add an object to the AABB tree that was already there.");
+            return;
+        }
+        int proxyId = tree.createProxy(object,
+                Collision.getLowerX(object), Collision.getLowerY(object),
+                Collision.getUpperX(object), Collision.getUpperY(object));
+        proxies.put(object, proxyId);
+    }
+
+    @Override
+    public void updateObject(Collidable object) {
+        Integer proxyId = proxies.get(object);
+        if (proxyId == null) {
+            addObject(object);
+            return;
+        }
+        tree.moveProxy(proxyId,
+                Collision.getLowerX(object), Collision.getLowerY(object),
+                Collision.getUpperX(object), Collision.getUpperY(object));
+    }
+
+    @Override
+    public void removeObject(Collidable object) {
+        Integer proxyId = proxies.remove(object);
+        if (proxyId == null) {
+            Log.warning("Tried to remove an object from the AABB tree that wasn't there.");
+            return;
+        }
+        tree.destroyProxy(proxyId);
+    }
+
+    @Override
+    public void clear() {
+        proxies.clear();
+        tree.clear();
+    }
+
+    /**
+     * Does nothing, this collision system doesn't start any threads.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Does nothing, this collision system doesn't split its work between threads.
+     */
+    @Override
+    public void setPool(ForkJoinPool pool) {
+    }
+
+    /**
+     * Gives access to the underlying tree so that it can be used for region queries and ray
+     * casts.
+     *
+     * @return The tree used by this collision system.
+     */
+    DynamicAABBTree getTree() {
+        return tree;
+    }
+}
@@ -0,0 +1,446 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pulls a set of objects towards each other with Newtonian gravity. Rather than adding up the pull
+ * of every object on every other object, which takes O(n^2) time, the objects are put into a
+ * quadtree every step. Each node of the tree knows the total mass and the centre of mass of the
+ * objects inside it, and a node which is far enough away is treated as a single object (the
+ * Barnes-Hut approximation). This takes O(n log n) time.
+ *
+ * A node is far enough away when its width divided by its distance is less than the opening angle
+ * theta. A theta of 0 opens every node, which gives the exact (but slow) answer, while 0.5 to 1.0
+ * is normal.
+ *
+ * The tree is stored in flat arrays which are reused every step, so once the arrays have grown to
+ * size nothing is allocated while building it. The tree is walked for many objects at once on a
+ * fork/join pool. Each object's pull is always added up in the same order, so the result doesn't
+ * depend on how the work was split between the threads.
+ */
+public final class BarnesHutGravity implements PhysicsThing {
+
+    /** The default opening angle. */
+    public static final double DEFAULT_THETA = 0.5;
+
+    /** Used as a null reference for node indexes. */
+    private static final int NULL_NODE = -1;
+    /** Marks a node which has children rather than a single object. */
+    private static final int INTERNAL_NODE = -2;
+    /** Objects closer together than this are put in the same node rather than splitting forever. */
+    private static final int MAX_DEPTH = 48;
+    /** The number of objects that one task walks the tree for. */
+    private static final int OBJECTS_PER_TASK = 512;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final double gravitationalConstant;
+    private final double softeningSquared;
+    private volatile double theta;
+
+    private final List<PhysicsObject> objects = new ArrayList<>(100);
+    private final int parallelism;
+    /** Only made once the tree is walked on more than one thread, null until then and after
+     * {@link #shutdown}. */
+    private ForkJoinPool pool = null;
+
+    // The position and mass of every object this step.
+    private double[] positionX = new double[INITIAL_CAPACITY];
+    private double[] positionY = new double[INITIAL_CAPACITY];
+    private double[] objectMass = new double[INITIAL_CAPACITY];
+    // The acceleration of every object this step (m/s^2).
+    private double[] accelerationX = new double[INITIAL_CAPACITY];
+    private double[] accelerationY = new double[INITIAL_CAPACITY];
+
+    // Node storage. The four children of a node are stored next to each other, starting at
+    // firstChild. A node holds either nothing (NULL_NODE), one object (its index), or children
+    // (INTERNAL_NODE).
+    private double[] centreX     = new double[INITIAL_CAPACITY];
+    private double[] centreY     = new double[INITIAL_CAPACITY];
+    private double[] halfWidth   = new double[INITIAL_CAPACITY];
+    private double[] nodeMass    = new double[INITIAL_CAPACITY];
+    private double[] massCentreX = new double[INITIAL_CAPACITY];
+    private double[] massCentreY = new double[INITIAL_CAPACITY];
+    private int[]    firstChild  = new int[INITIAL_CAPACITY];
+    private int[]    content     = new int[INITIAL_CAPACITY];
+    private int[]    depth       = new int[INITIAL_CAPACITY];
+    private int nodeCount = 0;
+
+    /**
+     * Creates a new gravity thing, which uses all the processors of the machine.
+     *
+     * @param gravitationalConstant
+     *        The strength of gravity (m^3/(kg*s^2)). 6.674e-11 in real life.
+     *
+     * @param theta
+     *        The opening angle, see {@link #setTheta}.
+     *
+     * @param softening
+     *        The distance below which the pull stops getting stronger (m), which stops objects
+     *        that pass very close to each other from being flung out. Zero for none.
+     */
+    public BarnesHutGravity(double gravitationalConstant, double theta, double softening) {
+        this(gravitationalConstant, theta, softening, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new gravity thing.
+     *
+     * @param gravitationalConstant
+     *        The strength of gravity (m^3/(kg*s^2)).
+     *
+     * @param theta
+     *        The opening angle, see {@link #setTheta}.
+     *
+     * @param softening
+     *        The distance below which the pull stops getting stronger (m).
+     *
+     * @param parallelism
+     *        The number of threads to walk the tree with.
+     */
+    public BarnesHutGravity(double gravitationalConstant, double theta, double softening, int parallelism) {
+        if (parallelism < 1) {
+            String errorString = "Tried to make a gravity thing with less than one thread.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        this.gravitationalConstant = gravitationalConstant;
+        this.softeningSquared = softening * softening;
+        this.parallelism = parallelism;
+        setTheta(theta);
+    }
+
+    /**
+     * Sets the opening angle. A node of the tree is treated as a single object when its width
+     * divided by its distance is less than theta. Bigger values are faster but less accurate.
+     *
+     * @param theta
+     *        The opening angle, zero or more.
+     */
+    public void setTheta(double theta) {
+        if (theta < 0.0) {
+            Log.warning("Attempted to set an opening angle of less than zero.");
+            return;
+        }
+        this.theta = theta;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    /**
+     * Adds an object to be pulled by (and to pull on) the others. The object should also be added
+     * to the physics system, which moves it.
+     *
+     * @param object
+     *        The object to add.
+     */
+    public void addObject(PhysicsObject object) {
+        if (null == object) {
+            Log.error("Attempted to add a null object to the gravity.");
+            return;
+        }
+        synchronized (objects) {
+            objects.add(object);
+        }
+    }
+
+    /**
+     * Removes an object from the gravity.
+     *
+     * @param object
+     *        The object to remove.
+     */
+    public void removeObject(PhysicsObject object) {
+        synchronized (objects) {
+            if (!objects.remove(object)) {
+                Log.warning("Attempted to remove an object from the gravity that wasn't there.");
+            }
+        }
+    }
+
+    /**
+     * Removes every object from the gravity.
+     */
+    public void clearObjects() {
+        synchronized (objects) {
+            objects.clear();
+        }
+    }
+
+    /**
+     * Builds the tree and applies the pull of all the others to every object as a force, which
+     * then acts on the object through the next step.
+     *
+     * @param deltaT
+     *        The time step size in s.
+     */
+    @Override
+    public void calculatePhysics(double deltaT) {
+        synchronized (objects) {
+            int count = objects.size();
+            if (count < 2) {
+                return;
+            }
+
+            loadObjects(count);
+            buildTree(count);
+            calculateAccelerations(count);
+
+            for (int i = 0; i < count; i++) {
+                double mass = objectMass[i];
+                objects.get(i).applyForce(accelerationX[i] * mass, accelerationY[i] * mass, 0.0);
+            }
+        }
+    }
+
+    /**
+     * Finds the acceleration of every object and stores it in the acceleration arrays.
+     */
+    private void calculateAccelerations(int count) {
+        if (count <= OBJECTS_PER_TASK || parallelism == 1) {
+            walkTree(0, count, new int[4 * MAX_DEPTH + 4]);
+        } else {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = new ForkJoinPool(parallelism);
+                }
+                pool.invoke(new WalkTask(0, count));
+            }
+        }
+    }
+
+    /**
+     * Stops the threads used to walk the tree. The physics system does this for its physics things
+     * when its loop stops. A new pool is made if the gravity is calculated again afterwards.
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Copies the position and mass of every object into the flat arrays.
+     */
+    private void loadObjects(int count) {
+        if (positionX.length < count) {
+            int capacity = Math.max(count, positionX.length * 2);
+            positionX     = new double[capacity];
+            positionY     = new double[capacity];
+            objectMass    = new double[capacity];
+            accelerationX = new double[capacity];
+            accelerationY = new double[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            PhysicsObject object = objects.get(i);
+            State state = object.getState();
+            positionX[i]  = state.position.getMagX();
+            positionY[i]  = state.position.getMagY();
+            objectMass[i] = object.getMass();
+        }
+    }
+
+    /**
+     * Puts every object into a new tree, then works out the mass and centre of mass of every node.
+     */
+    private void buildTree(int count) {
+        // The root is a square around every object.
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, positionX[i]);
+            minY = Math.min(minY, positionY[i]);
+            maxX = Math.max(maxX, positionX[i]);
+            maxY = Math.max(maxY, positionY[i]);
+        }
+        double half = Math.max(maxX - minX, maxY - minY) / 2.0;
+        // Make sure objects on the far edge still end up inside.
+        half = half * (1.0 + 1e-9) + Double.MIN_NORMAL;
+
+        nodeCount = 0;
+        int root = allocateNode((minX + maxX) / 2.0, (minY + maxY) / 2.0, half, 0);
+        for (int i = 0; i < count; i++) {
+            insert(root, i);
+        }
+
+        // Children always come after their parents, so going backwards through the nodes means
+        // every child is finished before its parent.
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            int held = content[node];
+            if (held == INTERNAL_NODE) {
+                double mass = 0.0;
+                double momentX = 0.0;
+                double momentY = 0.0;
+                int child = firstChild[node];
+                for (int c = child; c < child + 4; c++) {
+                    mass    += nodeMass[c];
+                    momentX += nodeMass[c] * massCentreX[c];
+                    momentY += nodeMass[c] * massCentreY[c];
+                }
+                nodeMass[node] = mass;
+                massCentreX[node] = mass > 0.0 ? momentX / mass : centreX[node];
+                massCentreY[node] = mass > 0.0 ? momentY / mass : centreY[node];
+            } else if (held == NULL_NODE) {
+                nodeMass[node] = 0.0;
+            }
+            // Nodes holding objects were filled in when the objects were inserted.
+        }
+    }
+
+    private void insert(int node, int object) {
+        while (true) {
+            int held = content[node];
+            if (held == NULL_NODE) {
+                content[node]     = object;
+                nodeMass[node]    = objectMass[object];
+                massCentreX[node] = positionX[object];
+                massCentreY[node] = positionY[object];
+                return;
+            }
+            if (held >= 0 || held < INTERNAL_NODE) {
+                if (depth[node] >= MAX_DEPTH) {
+                    // The objects are practically on top of each other, just lump them together.
+                    double mass = nodeMass[node] + objectMass[object];
+                    massCentreX[node] = (nodeMass[node] * massCentreX[node] + objectMass[object] * positionX[object]) / mass;
+                    massCentreY[node] = (nodeMass[node] * massCentreY[node] + objectMass[object] * positionY[object]) / mass;
+                    nodeMass[node] = mass;
+                    // Remember that it holds more than one object, so that no object skips it.
+                    content[node] = INTERNAL_NODE - 1;
+                    return;
+                }
+                // Split the node and move the object it held down into a child.
+                subdivide(node);
+                content[node] = INTERNAL_NODE;
+                insert(childFor(node, positionX[held], positionY[held]), held);
+            }
+            node = childFor(node, positionX[object], positionY[object]);
+        }
+    }
+
+    private void subdivide(int node) {
+        double quarter = halfWidth[node] / 2.0;
+        double x = centreX[node];
+        double y = centreY[node];
+        int nextDepth = depth[node] + 1;
+        int child = allocateNode(x - quarter, y - quarter, quarter, nextDepth);
+        allocateNode(x + quarter, y - quarter, quarter, nextDepth);
+        allocateNode(x - quarter, y + quarter, quarter, nextDepth);
+        allocateNode(x + quarter, y + quarter, quarter, nextDepth);
+        firstChild[node] = child;
+    }
+
+    private int childFor(int node, double x, double y) {
+        int index = 0;
+        if (x >= centreX[node]) {index += 1;}
+        if (y >= centreY[node]) {index += 2;}
+        return firstChild[node] + index;
+    }
+
+    private int allocateNode(double x, double y, double half, int nodeDepth) {
+        if (nodeCount == centreX.length) {
+            int capacity = centreX.length * 2;
+            centreX     = Arrays.copyOf(centreX, capacity);
+            centreY     = Arrays.copyOf(centreY, capacity);
+            halfWidth   = Arrays.copyOf(halfWidth, capacity);
+            nodeMass    = Arrays.copyOf(nodeMass, capacity);
+            massCentreX = Arrays.copyOf(massCentreX, capacity);
+            massCentreY = Arrays.copyOf(massCentreY, capacity);
+            firstChild  = Arrays.copyOf(firstChild, capacity);
+            content     = Arrays.copyOf(content, capacity);
+            depth       = Arrays.copyOf(depth, capacity);
+        }
+        int node = nodeCount++;
+        centreX[node]    = x;
+        centreY[node]    = y;
+        halfWidth[node]  = half;
+        nodeMass[node]   = 0.0;
+        firstChild[node] = NULL_NODE;
+        content[node]    = NULL_NODE;
+        depth[node]      = nodeDepth;
+        return node;
+    }
+
+    /**
+     * Finds the acceleration of a range of objects by walking the tree from the root.
+     *
+     * @param stack
+     *        Space for the nodes still to be visited, only used by this walk.
+     */
+    private void walkTree(int start, int end, int[] stack) {
+        final double thetaSquared = theta * theta;
+        for (int i = start; i < end; i++) {
+            double x = positionX[i];
+            double y = positionY[i];
+            double ax = 0.0;
+            double ay = 0.0;
+
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                int held = content[node];
+                if (held == NULL_NODE || held == i) {
+                    continue;
+                }
+                double dx = massCentreX[node] - x;
+                double dy = massCentreY[node] - y;
+                double distanceSquared = dx * dx + dy * dy;
+                double width = 2.0 * halfWidth[node];
+                if (held == INTERNAL_NODE && width * width >= thetaSquared * distanceSquared) {
+                    // Too close to be treated as one object, look at the children instead.
+                    int child = firstChild[node];
+                    stack[top++] = child;
+                    stack[top++] = child + 1;
+                    stack[top++] = child + 2;
+                    stack[top++] = child + 3;
+                    continue;
+                }
+                double softened = distanceSquared + softeningSquared;
+                if (softened == 0.0) {
+                    continue;
+                }
+                double inverseDistance = 1.0 / Math.sqrt(softened);
+                double strength = gravitationalConstant * nodeMass[node] * inverseDistance * inverseDistance * inverseDistance;
+                ax += strength * dx;
+                ay += strength * dy;
+            }
+            accelerationX[i] = ax;
+            accelerationY[i] = ay;
+        }
+    }
+
+    /**
+     * Walks the tree for a range of objects, splitting the range in half until it is small enough.
+     */
+    private final class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+
+        WalkTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= OBJECTS_PER_TASK) {
+                walkTree(start, end, new int[4 * MAX_DEPTH + 4]);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new WalkTask(start, middle), new WalkTask(middle, end));
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+/**
+ * A circle centred on the local origin of an object.
+ */
+public final class CircleShape extends Shape {
+
+    private final double radius;
+
+    /**
+     * Creates a new circle.
+     *
+     * @param radius
+     *        The radius of the circle (m). Must be greater than zero.
+     */
+    public CircleShape(double radius) {
+        if (radius <= 0.0) {
+            String errorString = "Tried to create a circle with a radius of less than or equal to zero.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        this.radius = radius;
+    }
+
+    /**
+     * @return The radius of the circle (m).
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    @Override
+    public double getBoundingRadius() {
+        return radius;
+    }
+
+    @Override
+    public boolean contains(double localX, double localY) {
+        return localX * localX + localY * localY < radius * radius;
+    }
+
+    @Override
+    double rayCast(double x, double y, double dx, double dy, double maxFraction, Vector2D normal) {
+        return rayCastCircle(radius, x, y, dx, dy, maxFraction, normal);
+    }
+
+    /**
+     * Casts a ray against a circle centred on the origin, see {@link Shape#rayCast}. Also used for
+     * objects which only have a collision radius.
+     */
+    static double rayCastCircle(double radius, double x, double y, double dx, double dy,
+                                double maxFraction, Vector2D normal) {
+        // Solve |start + t*d| = radius for the smaller t.
+        double outside = x * x + y * y - radius * radius;
+        if (outside < 0.0) {
+            return -1.0;
+        }
+        double lengthSquared = dx * dx + dy * dy;
+        double along = x * dx + y * dy;
+        double discriminant = along * along - lengthSquared * outside;
+        if (lengthSquared == 0.0 || discriminant < 0.0) {
+            return -1.0;
+        }
+        double fraction = -(along + Math.sqrt(discriminant)) / lengthSquared;
+        if (fraction < 0.0 || fraction > maxFraction) {
+            return -1.0;
+        }
+        double hitX = x + fraction * dx;
+        double hitY = y + fraction * dy;
+        double length = Math.sqrt(hitX * hitX + hitY * hitY);
+        if (length > 0.0) {
+            normal.set(hitX / length, hitY / length);
+        } else {
+            normal.set(-dx, -dy);
+        }
+        return fraction;
+    }
+}
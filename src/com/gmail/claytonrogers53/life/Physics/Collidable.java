@@ -11,6 +11,29 @@ import java.util.Collection;
  */
 public interface Collidable {
 
+    /** The body id of an object which has not been added to a physics system. */
+    public static final int NO_BODY_ID = -1;
+
+    /** Mask bits which match every collision category. */
+    public static final int ALL_CATEGORIES = 0xFFFFFFFF;
+
+    /**
+     * Returns the id given to the object by the physics system it was added to. Ids are handed out
+     * in the order objects are added, and are used to put pairs of objects in a stable order so
+     * that the physics does not depend on the order the collision system finds them in.
+     *
+     * @return The id of the object, or {@link #NO_BODY_ID} if it has not been added.
+     */
+    public int getBodyId();
+
+    /**
+     * Called by the physics system when the object is added to it.
+     *
+     * @param bodyId
+     *        The id of the object within the physics system.
+     */
+    public void setBodyId(int bodyId);
+
     /**
      * Gets the smallest circle, centred on the centre of mass, that the object can fit inside.
      * Used for broad phase collision detection.
@@ -19,6 +42,16 @@ public interface Collidable {
      */
     public double getCollisionRadius();
 
+    /**
+     * Returns the current state of the object.
+     *
+     * Implementation note: It is a reference to the actual state, not a copy, so it should not be
+     * modified.
+     *
+     * @return A reference to the current state of the object.
+     */
+    public State getState();
+
     /**
      * Returns the next state of the object.
      *
@@ -39,6 +72,21 @@ public interface Collidable {
      */
     public boolean isCollisionsEnabled();
 
+    /**
+     * Gives the collision categories the object belongs to, one bit per category. Two objects only
+     * collide when each one's categories overlap the other's mask.
+     *
+     * @return The category bits of the object.
+     */
+    public int getCategoryBits();
+
+    /**
+     * Gives the collision categories the object collides with, see {@link #getCategoryBits()}.
+     *
+     * @return The mask bits of the object.
+     */
+    public int getMaskBits();
+
     /**
      * Checks whether a particular point is intersecting with the object. Coordinates are in local
      * reference frame.
@@ -58,6 +106,28 @@ public interface Collidable {
      */
     public Collection<Vector2D> getCollisionPoints();
 
+    /**
+     * Gives the convex shape of the object in local coordinates. Objects with a shape use the
+     * analytic narrow phase, which is much faster and more accurate than checking collision
+     * points.
+     *
+     * @return The shape of the object, or null if the collision points should be used instead.
+     */
+    public Shape getShape();
+
+    /**
+     * Called at the start of every physics step, before anything is propagated. Remembers the
+     * current state so that drawings can be blended between the last two steps.
+     */
+    public void storePreviousState();
+
+    /**
+     * Returns the state at the start of the last step. Only the position and angle are kept.
+     *
+     * @return A reference to the previous state of the object.
+     */
+    public State getPreviousState();
+
     /**
      * Moves the next state into the current state. Called when the final next state is know after
      * all collisions are resolved.
@@ -66,12 +136,104 @@ public interface Collidable {
 
     /**
      * Updates the next state to be the calculated state 'time' seconds after the current state.
+     * The transform of the next state must also be brought up to date with
+     * {@link State#updateTransform()}, since the collision detection relies on it.
      *
      * @param time
      *        The time (in seconds) past the current state to calculate to.
      */
     public void calculateNextState(double time);
 
+    /**
+     * Returns whether the object is asleep. Sleeping objects have come to rest, so they are not
+     * propagated and are skipped by the broad phase until something wakes them up. The next state
+     * of a sleeping object is always valid and the same as its current state.
+     *
+     * @return True when the object is asleep.
+     */
+    public boolean isSleeping();
+
+    /**
+     * Wakes the object up if it is asleep. Called when something collides with the object, or
+     * when something outside of the physics system changes its motion.
+     */
+    public void wakeUp();
+
+    /**
+     * Called once every step for objects that are awake. Keeps track of how long the object has
+     * been resting and puts it to sleep when it has been resting for long enough.
+     *
+     * @param time
+     *        The length of the time step (s).
+     *
+     * @param linearThreshold
+     *        The object is resting while its speed is below this (m/s).
+     *
+     * @param angularThreshold
+     *        The object is resting while its angular speed is below this (rad/s).
+     *
+     * @param timeToSleep
+     *        How long the object must be resting before it falls asleep (s).
+     *
+     * @return True when the object has just fallen asleep.
+     */
+    public boolean updateSleep(double time, double linearThreshold, double angularThreshold, double timeToSleep);
+
+    /**
+     * Applies an impulse to the centre of mass of the object and wakes it up.
+     *
+     * @param impulse
+     *        The linear impulse (N*s).
+     *
+     * @param angularImpulse
+     *        The angular impulse (N*m*s).
+     */
+    public void applyImpulse(Vector2D impulse, double angularImpulse);
+
+    /**
+     * Adds a force through the centre of mass of the object and wakes it up. The force acts
+     * through the whole of the next step, after which it is cleared.
+     *
+     * @param forceX
+     *        The x component of the force (N).
+     *
+     * @param forceY
+     *        The y component of the force (N).
+     *
+     * @param torque
+     *        The torque (N*m).
+     */
+    public void applyForce(double forceX, double forceY, double torque);
+
+    /**
+     * @return The mass of the object (kg). May be infinite for an object which can't be moved.
+     */
+    public double getMass();
+
+    /**
+     * @return The moment of inertia of the object (kg*m^2). May be infinite for an object which
+     *         can't be turned.
+     */
+    public double getMomentOfInertia();
+
+    /**
+     * @return The coefficient of restitution, from 0 for no bounce to 1 for a perfect bounce. The
+     *         larger of the two objects' is used for a contact.
+     */
+    public double getRestitution();
+
+    /**
+     * @return The coefficient of friction. The geometric mean of the two objects' is used for a
+     *         contact.
+     */
+    public double getFriction();
+
+    /**
+     * Clears the forces and torques that have been applied to the object. Called by the physics
+     * system once they have acted on the object for a step.
+     */
+    public void clearForces();
+
     /**
      * Tells the physics/collision system whether to resolve collisions with this object, or to
      * simply notify it when a collision occurs.
@@ -1,9 +1,10 @@
 package com.gmail.claytonrogers53.life.Physics;
 
 import com.gmail.claytonrogers53.life.Util.Log;
-import com.gmail.claytonrogers53.life.Util.Util;
 import com.gmail.claytonrogers53.life.Util.Vector2D;
 
+import java.util.Collection;
+
 /**
  * Represents a collision between two objects at a particular time.
  *
@@ -13,7 +14,22 @@ public class Collision {
 
     /** The precision to which the collision ime is found. Default = 0.00001 s*/
     private static final double COLLISION_TIME_PRECISION = 0.000001;
+    /** The precision to which the edge is found when the collision points are used (rad). */
     private static final double PERCENTAGE_THRESHOLD = 0.000001;
+    /** The number of directions around the collision point which are checked for the edge. */
+    private static final int EDGE_SEARCH_DIRECTIONS = 72;
+    /** The size of the circle around the collision point which is checked for the edge, as a
+     * fraction of the collision radius of the object. */
+    private static final double EDGE_SEARCH_RADIUS = 0.1;
+    /** Objects which move further than this fraction of their collision radius in a step are
+     * swept: their boxes cover the whole of their path and their collision points are checked
+     * at a few times along the way. */
+    static final double SWEEP_FRACTION = 0.5;
+    /** The most times the collision points of a fast object are checked in one step. */
+    private static final int MAX_SUB_STEPS = 64;
+    /** The most times a pair which is touching while moving apart is looked at again further on
+     * in the step. */
+    private static final int MAX_SEPARATION_TRIES = 4;
 
     /** References to the two objects that are (potentially) colliding. */
     private final Collidable[] objects = new Collidable[2];
@@ -23,17 +39,29 @@ public class Collision {
     private Collidable collider;
     /** The collidee is the one who has a space which is penetrated by the other object. */
     private Collidable collidee;
-    /** The location of the collision in world coordinates. */
+    /** The location of the collision in the local coordinates of the collider. */
     private final Vector2D collisionPoint = new Vector2D();
     /** A collision object is created when the is a potential collision. If the fine collision
      * detection ends up being a near miss, then this will be set to false. */
     private boolean isCollision;
     /** The time until the next frame. The collision must happen before this time. */
     private final double timeStep;
+    /** The contact found by the analytic narrow phase. Null when the collision points are used
+     * because one of the objects doesn't have a shape. */
+    private Contact contact = null;
+    /** The collision points of each object in local coordinates, only used when there is no
+     * contact. */
+    private final double[][] pointX = new double[2][];
+    private final double[][] pointY = new double[2][];
+    /** Space for converting the collision points without creating new objects on every probe. */
+    private double[] scratchX;
+    private double[] scratchY;
+    private final Vector2D scratchPoint = new Vector2D();
 
     /**
      * Create a new potential collision between two objects. Also calculates the exact time of the
-     * collision or whether it is in fact a near miss.
+     * collision or whether it is in fact a near miss. The two objects may be swapped so that the
+     * first object is the one with the lower body id.
      *
      * @param ref1
      *        Reference to the first object.
@@ -45,12 +73,141 @@ public class Collision {
      *        The length of the time step. The collision must happen no later than this.
      */
     public Collision (Collidable ref1, Collidable ref2, double timeStep) {
+        // Always put the object with the lower id first, so that the result is exactly the same
+        // whichever order the collision system found the pair in.
+        if (ref2.getBodyId() < ref1.getBodyId()) {
+            Collidable temp = ref1;
+            ref1 = ref2;
+            ref2 = temp;
+        }
         objects[0] = ref1;
         objects[1] = ref2;
 
         this.timeStep = timeStep;
 
-        findCollisionTime();
+        if (ref1.getShape() != null && ref2.getShape() != null) {
+            contact = new Contact();
+            findCollisionTimeAnalytic();
+        } else {
+            loadCollisionPoints();
+            findCollisionTime();
+        }
+    }
+
+    /**
+     * Checks whether a pair of objects are allowed to collide, first by their category and mask
+     * bits and then by the filter. Used by the broad phases to drop pairs before any collision is
+     * made.
+     *
+     * @param obj1
+     *        One of the objects.
+     *
+     * @param obj2
+     *        The other object.
+     *
+     * @param filter
+     *        The extra check of the pair, or null if there isn't one.
+     *
+     * @return True when the objects should collide.
+     */
+    static boolean shouldCollide(Collidable obj1, Collidable obj2, CollisionFilter filter) {
+        if ((obj1.getCategoryBits() & obj2.getMaskBits()) == 0 ||
+                (obj2.getCategoryBits() & obj1.getMaskBits()) == 0) {
+            return false;
+        }
+        if (filter == null) {
+            return true;
+        }
+        // Same order as the collision, so that the filter sees a stable order.
+        if (obj2.getBodyId() < obj1.getBodyId()) {
+            return filter.shouldCollide(obj2, obj1);
+        }
+        return filter.shouldCollide(obj1, obj2);
+    }
+
+    /**
+     * Checks whether an object moves far enough in the step to need a swept box. Slow objects
+     * just use their box at the end of the step.
+     *
+     * @param object
+     *        The object, with its next state at the end of the step.
+     *
+     * @return True when the object moves further than {@link #SWEEP_FRACTION} of its radius.
+     */
+    static boolean isFastMoving(Collidable object) {
+        Vector2D start = object.getState().position;
+        Vector2D end   = object.getNextState().position;
+        double dx = end.getMagX() - start.getMagX();
+        double dy = end.getMagY() - start.getMagY();
+        double limit = SWEEP_FRACTION * object.getCollisionRadius();
+        return dx * dx + dy * dy > limit * limit;
+    }
+
+    /**
+     * The sides of the box which the broad phases use for an object. For slow objects it is the
+     * box around the object at the end of the step, and for fast ones it also covers the object
+     * at its current state, so that nothing it passes through on the way is missed.
+     *
+     * @return The left side of the box (m).
+     */
+    static double getLowerX(Collidable object) {
+        double x = object.getNextState().position.getMagX();
+        if (isFastMoving(object)) {
+            x = Math.min(x, object.getState().position.getMagX());
+        }
+        return x - object.getCollisionRadius();
+    }
+
+    /**
+     * @return The bottom of the box of an object (m), see {@link #getLowerX}.
+     */
+    static double getLowerY(Collidable object) {
+        double y = object.getNextState().position.getMagY();
+        if (isFastMoving(object)) {
+            y = Math.min(y, object.getState().position.getMagY());
+        }
+        return y - object.getCollisionRadius();
+    }
+
+    /**
+     * @return The right side of the box of an object (m), see {@link #getLowerX}.
+     */
+    static double getUpperX(Collidable object) {
+        double x = object.getNextState().position.getMagX();
+        if (isFastMoving(object)) {
+            x = Math.max(x, object.getState().position.getMagX());
+        }
+        return x + object.getCollisionRadius();
+    }
+
+    /**
+     * @return The top of the box of an object (m), see {@link #getLowerX}.
+     */
+    static double getUpperY(Collidable object) {
+        double y = object.getNextState().position.getMagY();
+        if (isFastMoving(object)) {
+            y = Math.max(y, object.getState().position.getMagY());
+        }
+        return y + object.getCollisionRadius();
+    }
+
+    /**
+     * Checks whether the boxes of two objects overlap, see {@link #getLowerX}. All of the broad
+     * phases use this same check, so that they all find exactly the same pairs.
+     *
+     * @return True when the objects might collide during the step.
+     */
+    static boolean isPotentialCollision(Collidable obj1, Collidable obj2) {
+        return isOverlapping(getLowerX(obj1), getLowerY(obj1), getUpperX(obj1), getUpperY(obj1),
+                             getLowerX(obj2), getLowerY(obj2), getUpperX(obj2), getUpperY(obj2));
+    }
+
+    /**
+     * Checks whether two boxes overlap. Boxes which only touch don't overlap.
+     */
+    static boolean isOverlapping(double lowerX1, double lowerY1, double upperX1, double upperY1,
+                                 double lowerX2, double lowerY2, double upperX2, double upperY2) {
+        return lowerX1 < upperX2 && lowerX2 < upperX1 && lowerY1 < upperY2 && lowerY2 < upperY1;
     }
 
     public double getCollisionTime() {
@@ -67,6 +224,41 @@ public class Collision {
         return isCollision;
     }
 
+    /**
+     * @return The first of the two (potentially) colliding objects.
+     */
+    public Collidable getFirstObject() {
+        return objects[0];
+    }
+
+    /**
+     * @return The second of the two (potentially) colliding objects.
+     */
+    public Collidable getSecondObject() {
+        return objects[1];
+    }
+
+    /**
+     * @return A key which is unique to the pair of objects and doesn't depend on the order they
+     *         were found in. Made from the body ids of the two objects.
+     */
+    public long getPairKey() {
+        return getPairKey(objects[0], objects[1]);
+    }
+
+    /**
+     * @param first
+     *        The object with the lower body id.
+     *
+     * @param second
+     *        The object with the higher body id.
+     *
+     * @return The pair key of the two objects, see {@link #getPairKey()}.
+     */
+    static long getPairKey(Collidable first, Collidable second) {
+        return ((long) first.getBodyId() << 32) | (second.getBodyId() & 0xFFFFFFFFL);
+    }
+
     /**
      * Advances the two objects to the collision point. Calculates the new velocities and angular
      * velocities and then recalculates the object positions at the end of the frame time.
@@ -79,110 +271,151 @@ public class Collision {
         }
 
         boolean isCollisionResolved = false;
-        if (objects[0].isCollisionResolutionEnabled() &&
+        if (contact != null) {
+            if (objects[0].isCollisionResolutionEnabled() &&
+                objects[1].isCollisionResolutionEnabled()) {
+                isCollisionResolved = true;
+                // The objects are at the time of impact, so the contact normal can be found
+                // directly from their shapes.
+                Narrowphase.collide(objects[0].getShape(), objects[0].getNextState(),
+                                    objects[1].getShape(), objects[1].getNextState(), contact);
+                ContactSolver.resolveImpact(objects[0], objects[1], contact);
+            }
+        } else if (objects[0].isCollisionResolutionEnabled() &&
             objects[1].isCollisionResolutionEnabled()) {
             isCollisionResolved = true;
-            // We actually resolve the collision.
-
-            // R vectors go from the CG of the shapes to the collision point.
-            Vector2D colliderR = collisionPoint.sub(collider.getNextState().position);
-            Vector2D collideeR = collisionPoint.sub(collidee.getNextState().position);
-
-            // Find the normal of the collision.
-            // Find the distance from the collision point to the edge of the object.
-
-            /** This will be the point along the colliderR vector that intersects with the edge of
-             * collidee. */
-            Vector2D edgePosition = collisionPoint;
-            double percentageRight = 1.0;
-            double percentageLeft = 0.0;
-
-            while ((percentageRight - percentageLeft) < PERCENTAGE_THRESHOLD) {
-                double percentageCenter = (percentageLeft + percentageRight)/2;
-                edgePosition = collider.getNextState().position.add(collideeR.scalarMultiply(colliderR.getMag()*percentageCenter));
-
-                if (collidee.isIntersecting(edgePosition)) {
-                    percentageLeft = percentageCenter;
-                } else {
-                    percentageRight = percentageCenter;
-                }
-            }
-
-            double penetrationDistance = collisionPoint.sub(edgePosition).getMag();
-            Log.info("Penetration distance is " + penetrationDistance + " m.");
-
-            Vector2D point1 = null;
-            Vector2D point2 = null;
-            boolean lastWasIntersecting = false;
-            boolean first = true;
-            for (int i = 0; i < 361; i++) {
-                double direction = i/180.0 * Math.PI;
-                Vector2D aPoint = edgePosition.add(Vector2D.getVector2DMagnitudeAndDirection(penetrationDistance, direction));
-                boolean isIntersecting = collidee.isIntersecting(aPoint);
-                if (first) {
-                    first = false;
-                } else {
-                    if (isIntersecting != lastWasIntersecting) {
-                        lastWasIntersecting = isIntersecting;
-                        if (point1 == null) {
-                            point1 = aPoint;
-                        } else {
-                            point2 = aPoint;
-                            break;
-                        }
-                    }
-                }
-            }
+            // The collision point is in the local coordinates of the collider. Find where it is in
+            // the world and in the local coordinates of the collidee.
+            scratchX[0] = collisionPoint.getMagX();
+            scratchY[0] = collisionPoint.getMagY();
+            collider.getNextState().toWorld(scratchX, scratchY, scratchX, scratchY, 1);
+            Vector2D worldPoint = new Vector2D(scratchX[0], scratchY[0]);
+            collidee.getNextState().toLocal(scratchX, scratchY, scratchX, scratchY, 1);
+            Vector2D localPoint = new Vector2D(scratchX[0], scratchY[0]);
+
+            // The point has only just gone into the collidee, so the collision is along the normal
+            // of the edge next to it. The normal points out of the collidee, so it is turned
+            // round when needed to point from the first object to the second.
+            Vector2D localNormal = findEdgeNormal(collidee, localPoint);
+            State collideeState = collidee.getNextState();
             Vector2D normalVector;
-            if (point1 != null && point2 != null) {
-                Vector2D edgeVector = point1.sub(point2);
-                double normalDirection = edgeVector.getDirection() + Math.PI/2.0;
-                normalDirection = Util.normaliseAngle(normalDirection);
-                normalVector = Vector2D.getVector2DMagnitudeAndDirection(1.0, normalDirection);
-
-
-                // We know the normal axis now, but we must find whether it is in the proper
-                // direction, or the opposite direction.
-                double dotProduct = normalVector.dotProduct(colliderR.opposite());
-                // If the dot product is negative then it means the normal vector is going in the
-                // opposite direction to the vector that goes from the collision point to the edge
-                // point, and therefore we need to flip its direction.
-                if (dotProduct < 0) {
+            if (localNormal != null) {
+                normalVector = new Vector2D(
+                        collideeState.m00 * localNormal.getMagX() + collideeState.m01 * localNormal.getMagY(),
+                        collideeState.m10 * localNormal.getMagX() + collideeState.m11 * localNormal.getMagY());
+                if (collidee != objects[0]) {
                     normalVector = normalVector.opposite();
                 }
             } else {
-                String errorString = "Could not find the edge direction.";
-                Log.error(errorString);
-                throw new IllegalStateException(errorString);
+                // The edge couldn't be found, so just push the objects straight apart.
+                Log.warning("Could not find the edge direction, using the direction between the objects.");
+                normalVector = objects[1].getNextState().position.sub(objects[0].getNextState().position);
+                double distance = normalVector.getMag();
+                normalVector = distance > 0.0 ? normalVector.scalarMultiply(1.0 / distance) : new Vector2D(1.0, 0.0);
             }
 
-            // We now know:
-            //  - the normal vector
-            //  - the R vector of both objects
-            //  - the state of both objects
-            // Thus we can solve the collision.
-            State[] states = new State[2];
-            states[0] = objects[0].getNextState();
-            states[1] = objects[1].getNextState();
-
-            // For right now we are just going to flip the velocity of both objects along the
-            // normal of the collision.
-            states[0].velocity = states[0].velocity.reflectAlong(normalVector);
-            states[1].velocity = states[1].velocity.reflectAlong(normalVector);
-            // TODO: actually calculate the collision using:
-            // - conservation of linear momentum
-            // - conservation of angular momentum
-            // - coefficient of restitution
-
-            
-//            Vector2D collisionObj0 = State.convertToLocalCoordinates(collisionPoint, objects[0].getNextState());
-//            Vector2D collisionObj1 = State.convertToLocalCoordinates(collisionPoint, objects[1].getNextState());
+            Contact pointContact = new Contact();
+            pointContact.normalX = normalVector.getMagX();
+            pointContact.normalY = normalVector.getMagY();
+            pointContact.pointCount = 1;
+            pointContact.pointX[0] = worldPoint.getMagX();
+            pointContact.pointY[0] = worldPoint.getMagY();
+            ContactSolver.resolveImpact(objects[0], objects[1], pointContact);
         }
         // Either way, we have to notify the two objects that they've collided.
         objects[0].notifyCollision(objects[1], isCollisionResolved);
         objects[1].notifyCollision(objects[0], isCollisionResolved);
     }
 
+    /**
+     * Finds the normal of the edge of an object near a point which has only just gone inside it.
+     * The edge is found where a small circle around the point crosses out of and back into the
+     * object, and the normal is at right angles to the line between the two crossings.
+     *
+     * @param object
+     *        The object the point is inside.
+     *
+     * @param point
+     *        The point, in the local coordinates of the object.
+     *
+     * @return The unit normal of the edge, pointing out of the object, in the local coordinates of
+     *         the object. Null when the circle doesn't cross the edge, for example when the point
+     *         is too deep inside the object.
+     */
+    private static Vector2D findEdgeNormal(Collidable object, Vector2D point) {
+        double radius = EDGE_SEARCH_RADIUS * object.getCollisionRadius();
+        double step = 2.0 * Math.PI / EDGE_SEARCH_DIRECTIONS;
+        Vector2D probe = new Vector2D();
+        boolean[] isInside = new boolean[EDGE_SEARCH_DIRECTIONS];
+        for (int i = 0; i < EDGE_SEARCH_DIRECTIONS; i++) {
+            isInside[i] = isInsideAt(object, point, radius, i * step, probe);
+        }
+
+        // The circle goes out of the object after the exit direction, and comes back in after the
+        // entry direction.
+        int exit = -1;
+        for (int i = 0; i < EDGE_SEARCH_DIRECTIONS && exit < 0; i++) {
+            if (isInside[i] && !isInside[(i + 1) % EDGE_SEARCH_DIRECTIONS]) {
+                exit = i;
+            }
+        }
+        if (exit < 0) {
+            return null;
+        }
+        int entry = exit + 1;
+        while (!isInside[(entry + 1) % EDGE_SEARCH_DIRECTIONS]) {
+            ++entry;
+        }
+        double exitDirection  = findCrossing(object, point, radius, exit * step, (exit + 1) * step, probe);
+        double entryDirection = findCrossing(object, point, radius, (entry + 1) * step, entry * step, probe);
+
+        double edgeX = StrictMath.sin(entryDirection) - StrictMath.sin(exitDirection);
+        double edgeY = StrictMath.cos(entryDirection) - StrictMath.cos(exitDirection);
+        double edgeLength = Math.sqrt(edgeX * edgeX + edgeY * edgeY);
+        if (!(edgeLength > 0.0)) {
+            return null;
+        }
+        Vector2D normal = new Vector2D(edgeY / edgeLength, -edgeX / edgeLength);
+        // The part of the circle outside the object is on the outside of the edge.
+        double outsideDirection = (exit + 1) * step;
+        double outsideX = StrictMath.sin(outsideDirection) - StrictMath.sin(exitDirection);
+        double outsideY = StrictMath.cos(outsideDirection) - StrictMath.cos(exitDirection);
+        if (normal.getMagX() * outsideX + normal.getMagY() * outsideY < 0.0) {
+            normal = normal.opposite();
+        }
+        return normal;
+    }
+
+    /**
+     * Finds the direction between two others at which a circle around a point crosses the edge of
+     * an object, by binary search.
+     *
+     * @return The direction of the crossing (rad).
+     */
+    private static double findCrossing(Collidable object, Vector2D point, double radius,
+                                       double insideDirection, double outsideDirection, Vector2D probe) {
+        while (Math.abs(outsideDirection - insideDirection) > PERCENTAGE_THRESHOLD) {
+            double centerDirection = (insideDirection + outsideDirection) / 2.0;
+            if (isInsideAt(object, point, radius, centerDirection, probe)) {
+                insideDirection = centerDirection;
+            } else {
+                outsideDirection = centerDirection;
+            }
+        }
+        return (insideDirection + outsideDirection) / 2.0;
+    }
+
+    /**
+     * @return True when the point at a distance and direction from another point is inside the
+     *         object. Directions are clockwise from north, like {@link Vector2D}.
+     */
+    private static boolean isInsideAt(Collidable object, Vector2D point, double distance, double direction,
+                                      Vector2D probe) {
+        probe.set(point.getMagX() + distance * StrictMath.sin(direction),
+                  point.getMagY() + distance * StrictMath.cos(direction));
+        return object.isIntersecting(probe);
+    }
+
     /**
      * Using the fine collision detection and binary search, this finds the time of the first
      * intersection.
@@ -198,15 +431,30 @@ public class Collision {
             return;
         }
 
-        if (!isColliding(timeStep)) {
-            Log.warning("A collision was generated for objects which do not intersect at the end of the time step.");
+        // Objects which move a long way in the step are checked at a few times along the way, so
+        // that they can't pass right through each other between the start and the end.
+        int numSubSteps = Math.max(getSubStepCount(objects[0]), getSubStepCount(objects[1]));
+        double leftEnd = 0.0;
+        boolean isFound = false;
+        for (int i = 1; i <= numSubSteps; i++) {
+            double time = i == numSubSteps ? timeStep : timeStep * i / numSubSteps;
+            if (isColliding(time)) {
+                rightEnd = time;
+                isFound = true;
+                break;
+            }
+            leftEnd = time;
+        }
+        if (!isFound) {
+            if (numSubSteps == 1) {
+                Log.warning("A collision was generated for objects which do not intersect at the end of the time step.");
+            }
             isCollision = false;
             return;
         }
 
         // From here, we know that the actually is a collision and we just have to find the actual
         // time of it.
-        double leftEnd = 0.0;
         while (rightEnd - leftEnd > COLLISION_TIME_PRECISION) {
             double centerEnd = (leftEnd + rightEnd) / 2.0;
             if (isColliding(centerEnd)) {
@@ -218,38 +466,135 @@ public class Collision {
 
         // We take the time that is just after to collision, so that the two objects are just
         // barely intersecting.
+        isCollision = true;
         collisionTime = rightEnd;
     }
 
+    /**
+     * Finds the time of the first contact using the shapes of the two objects.
+     *
+     * @see Narrowphase#timeOfImpact
+     */
+    private void findCollisionTimeAnalytic() {
+        for (Collidable obj : objects) {
+            obj.calculateNextState(0.0);
+        }
+        Narrowphase.collide(objects[0].getShape(), objects[0].getNextState(),
+                            objects[1].getShape(), objects[1].getNextState(), contact);
+        if (contact.depth > Narrowphase.TOI_TOLERANCE) {
+            // The objects are resting against each other, which is left to the contact solver.
+            Log.verbose("Object started time step intersecting with other object.");
+            isCollision = false;
+            return;
+        }
+
+        double time = Narrowphase.timeOfImpact(objects[0], objects[1], 0.0, timeStep, contact);
+        for (int i = 0; time != Narrowphase.NO_IMPACT; i++) {
+            double separatingSpeed = -ContactSolver.getApproachSpeed(objects[0], objects[1], contact);
+            if (separatingSpeed < 0.0) {
+                isCollision = true;
+                collisionTime = time;
+                return;
+            }
+            // Objects which touch while already moving apart, for example ones which the contact
+            // solver or a collision has just separated, don't collide there. A spinning object can
+            // still swing round and hit the other one again later in the step, so look again from
+            // once they have moved apart.
+            if (!(separatingSpeed > 0.0) || i >= MAX_SEPARATION_TRIES) {
+                break;
+            }
+            double apartTime = time + Narrowphase.TOI_TOLERANCE / separatingSpeed;
+            if (apartTime > timeStep) {
+                break;
+            }
+            time = Narrowphase.timeOfImpact(objects[0], objects[1], apartTime, timeStep, contact);
+        }
+        isCollision = false;
+    }
+
+    /**
+     * @return The contact found by the analytic narrow phase, or null when the collision points
+     *         are being used.
+     */
+    public Contact getContact() {
+        return contact;
+    }
+
+    /**
+     * Copies the collision points of both objects into arrays so that they can be converted in
+     * batches on every probe.
+     */
+    private void loadCollisionPoints() {
+        int maxCount = 0;
+        for (int i = 0; i < 2; i++) {
+            Collection<Vector2D> points = objects[i].getCollisionPoints();
+            pointX[i] = new double[points.size()];
+            pointY[i] = new double[points.size()];
+            int j = 0;
+            for (Vector2D point : points) {
+                pointX[i][j] = point.getMagX();
+                pointY[i][j] = point.getMagY();
+                ++j;
+            }
+            maxCount = Math.max(maxCount, j);
+        }
+        scratchX = new double[maxCount];
+        scratchY = new double[maxCount];
+    }
+
+    /**
+     * Finds how many times the collision points of an object have to be checked so that it never
+     * moves more than {@link #SWEEP_FRACTION} of its radius between checks. Slow objects are only
+     * checked at the end of the step.
+     */
+    private int getSubStepCount(Collidable object) {
+        State state = object.getState();
+        double radius = object.getCollisionRadius();
+        double distance = (state.velocity.getMag() + Math.abs(state.angularVelocity) * radius) * timeStep;
+        double limit = SWEEP_FRACTION * radius;
+        if (distance <= limit) {
+            return 1;
+        }
+        if (distance >= limit * MAX_SUB_STEPS) {
+            return MAX_SUB_STEPS;
+        }
+        return (int) Math.ceil(distance / limit);
+    }
+
     private boolean isColliding(double time) {
         // Move the objects to the desired state.
         for (Collidable obj : objects) {
             obj.calculateNextState(time);
         }
 
-        // Checking the object 0 points against object 1
-        for (Vector2D point : objects[0].getCollisionPoints()) {
-            Vector2D worldPosition = State.convertToWorldCoordinates(point, objects[0].getNextState());
-            Vector2D localPosition = State.convertToLocalCoordinates(worldPosition, objects[1].getNextState());
-            if (objects[1].isIntersecting(localPosition)) {
-                collisionPoint.set(point);
-                collidee = objects[1];
-                collider = objects[0];
-                return true;
-            }
-        }
-        // Checking the object 1 points against object 0
-        for (Vector2D point : objects[1].getCollisionPoints()) {
-            Vector2D worldPosition = State.convertToWorldCoordinates(point, objects[1].getNextState());
-            Vector2D localPosition = State.convertToLocalCoordinates(worldPosition, objects[0].getNextState());
-            if (objects[0].isIntersecting(localPosition)) {
-                collisionPoint.set(point);
-                collidee = objects[0];
-                collider = objects[1];
+        // Checking the object 0 points against object 1, then the object 1 points against object 0
+        return isAnyPointInside(0, 1) || isAnyPointInside(1, 0);
+    }
+
+    /**
+     * Checks whether any of the collision points of one object are inside the other object.
+     *
+     * @param from
+     *        The index of the object whose collision points are checked.
+     *
+     * @param into
+     *        The index of the object which the points might be inside.
+     *
+     * @return True when a point is inside. The collider, collidee and collision point are set.
+     */
+    private boolean isAnyPointInside(int from, int into) {
+        int count = pointX[from].length;
+        objects[from].getNextState().toWorld(pointX[from], pointY[from], scratchX, scratchY, count);
+        objects[into].getNextState().toLocal(scratchX, scratchY, scratchX, scratchY, count);
+        for (int i = 0; i < count; i++) {
+            scratchPoint.set(scratchX[i], scratchY[i]);
+            if (objects[into].isIntersecting(scratchPoint)) {
+                collisionPoint.set(pointX[from][i], pointY[from][i]);
+                collidee = objects[into];
+                collider = objects[from];
                 return true;
             }
         }
-
         return false;
     }
 }
@@ -0,0 +1,23 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * An optional check of whether a pair of objects should collide, for rules which can't be written
+ * with the category and mask bits of the objects (for example not colliding with the object that
+ * fired you). It is called by the broad phase for pairs whose bits allow them to collide, before
+ * any {@link Collision} is made, so it should be quick.
+ */
+public interface CollisionFilter {
+    /**
+     * Checks whether two objects should collide. The objects are always given in order of their
+     * body ids, and the answer should not change while they are touching.
+     *
+     * @param first
+     *        The object with the lower body id.
+     *
+     * @param second
+     *        The object with the higher body id.
+     *
+     * @return True when the objects should collide.
+     */
+    boolean shouldCollide(Collidable first, Collidable second);
+}
@@ -0,0 +1,64 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event covering the resolution of one collision by the
+ * {@link CollisionScheduler}. Must only be used when
+ * {@link com.gmail.claytonrogers53.life.Util.FlightEvents#IS_AVAILABLE} is true.
+ */
+@Name("life.CollisionResolution")
+@Label("Collision Resolution")
+@Category({"Life", "Physics"})
+@Description("A collision between two objects being resolved during a physics step.")
+@StackTrace(false)
+final class CollisionResolutionEvent extends Event {
+
+    @Label("First Body Id")
+    int firstBodyId;
+    @Label("Second Body Id")
+    int secondBodyId;
+    @Label("Time In Step")
+    @Description("The time of the collision since the start of the step (s).")
+    double time;
+
+    /**
+     * @return The started event, or null when the event isn't being recorded.
+     */
+    static CollisionResolutionEvent start() {
+        CollisionResolutionEvent event = new CollisionResolutionEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event.
+     *
+     * @param first
+     *        The first object of the collision.
+     *
+     * @param second
+     *        The second object of the collision.
+     *
+     * @param time
+     *        The time of the collision since the start of the step (s).
+     */
+    void finish(Collidable first, Collidable second, double time) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        firstBodyId  = first.getBodyId();
+        secondBodyId = second.getBodyId();
+        this.time    = time;
+        commit();
+    }
+}
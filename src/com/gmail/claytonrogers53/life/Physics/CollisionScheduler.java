@@ -0,0 +1,316 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.FlightEvents;
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Resolves the collisions of a time step as a series of time of impact events. Every collision is
+ * put in a priority queue ordered by its time. When a collision is resolved, only the two objects
+ * involved are moved to the time of the collision and only the collisions involving those two
+ * objects are recalculated. Every other object continues untouched to the end of the time step.
+ *
+ * Each object keeps its own local time within the step. Objects which have not been involved in a
+ * collision stay at the start of the step until they are needed. A version number is kept per
+ * object so that queued collisions of an object whose trajectory has since changed can be
+ * recognised and thrown away.
+ *
+ * Sleeping objects are not propagated. They are woken up when they are involved in a collision.
+ *
+ * Collisions at exactly the same time are resolved in order of the body ids of the objects, so the
+ * result does not depend on the order that the collision system finds the collisions in.
+ *
+ * Pairs of objects which were already touching at the start of the step have been handled by the
+ * {@link ContactSolver}, so they are left alone. Resolving them again one point at a time would
+ * undo the balance of the impulses found by the solver.
+ *
+ * Every pair whose collision is resolved is marked as touching in the {@link PairCache}, for the
+ * contact events of the step.
+ *
+ * The time spent moving, finding and resolving the collisions is added to the phases of the
+ * {@link PhysicsProfiler}, and each collision resolved is given to the flight recorder.
+ */
+final class CollisionScheduler {
+
+    /** Stops a step from running forever when objects keep colliding with each other. */
+    private static final int MAX_RESOLUTIONS_PER_STEP = 1000;
+
+    /**
+     * A collision that is due to happen at a particular time within the step.
+     */
+    private static final class Event implements Comparable<Event> {
+        /** The time since the start of the step (s). */
+        final double time;
+        /** The body ids of the two objects, used to break ties in time. */
+        final long pairKey;
+        /** The order the event was made in, only used to break ties between objects which have
+         * not been added to a physics system. */
+        final long sequence;
+        final Collision collision;
+        final Collidable first;
+        final Collidable second;
+        /** The versions of the two objects when the event was made. */
+        final int firstVersion;
+        final int secondVersion;
+
+        Event(double time, long sequence, Collision collision, int firstVersion, int secondVersion) {
+            this.time = time;
+            this.pairKey = collision.getPairKey();
+            this.sequence = sequence;
+            this.collision = collision;
+            this.first = collision.getFirstObject();
+            this.second = collision.getSecondObject();
+            this.firstVersion = firstVersion;
+            this.secondVersion = secondVersion;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            if (time != o.time) {
+                return time < o.time ? -1 : 1;
+            }
+            if (pairKey != o.pairKey) {
+                return pairKey < o.pairKey ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * The local time and trajectory version of an object that has been involved in a collision
+     * this step.
+     */
+    private static final class Clock {
+        /** The time since the start of the step that the current state of the object is at (s). */
+        double time    = 0.0;
+        /** Incremented every time the trajectory of the object changes. */
+        int    version = 0;
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>(16);
+    /** Only objects which have been involved in a collision this step have a clock. */
+    private final Map<Collidable, Clock> clocks = new IdentityHashMap<>(16);
+    private final List<Collidable> candidates = new ArrayList<>(8);
+    /** Where the state of a candidate is kept while it is moved forward to be checked. */
+    private final State savedState = new State();
+    private long nextSequence = 0;
+    /** The solver which handled the touching pairs of this step, null if there is none. */
+    private ContactSolver contactSolver = null;
+    private final PhysicsProfiler profiler;
+
+    /**
+     * @param profiler
+     *        Where the time of each phase of the step is added.
+     */
+    CollisionScheduler(PhysicsProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Propagates every object to the end of the time step, resolving all of the collisions along
+     * the way in the order that they happen.
+     *
+     * @param objects
+     *        The objects to be propagated.
+     *
+     * @param collisionSystem
+     *        The broad phase used to find the possible collisions.
+     *
+     * @param physicsDT_seconds
+     *        The length of the time step (s).
+     *
+     * @param contactSolver
+     *        The solver which has just handled the pairs which are touching, or null.
+     *
+     * @param pairCache
+     *        Where the pairs which collide are marked, or null.
+     *
+     * @return The number of collisions that were resolved.
+     */
+    int step(List<Collidable> objects, CollisionSystem collisionSystem, double physicsDT_seconds,
+             ContactSolver contactSolver, PairCache pairCache) {
+        this.contactSolver = contactSolver;
+        events.clear();
+        clocks.clear();
+        nextSequence = 0;
+
+        // Sleeping objects aren't moving and already have a valid next state.
+        for (Collidable object : objects) {
+            if (!object.isSleeping()) {
+                object.calculateNextState(physicsDT_seconds);
+            }
+        }
+        profiler.lap(PhysicsStats.Phase.INTEGRATION);
+
+        List<Collision> collisions = collisionSystem.findCollisions(objects, physicsDT_seconds);
+        profiler.lap(PhysicsStats.Phase.BROADPHASE, PhysicsStats.Phase.NARROWPHASE,
+                collisionSystem.getNarrowphaseNanos());
+        profiler.count(PhysicsStats.Counter.CANDIDATE_PAIRS, collisions.size());
+        for (Collision collision : collisions) {
+            if (collision.isCollision() && !isTouching(collision)) {
+                events.add(new Event(collision.getCollisionTime(), nextSequence++, collision, 0, 0));
+            }
+            // Finding the collision time moves the objects around, put them back.
+            collision.getFirstObject().calculateNextState(physicsDT_seconds);
+            collision.getSecondObject().calculateNextState(physicsDT_seconds);
+        }
+        profiler.count(PhysicsStats.Counter.COLLISIONS, events.size());
+        profiler.lap(PhysicsStats.Phase.INTEGRATION);
+
+        int numResolved = 0;
+        while (!events.isEmpty()) {
+            Event event = events.poll();
+            profiler.count(PhysicsStats.Counter.RESOLUTION_ITERATIONS, 1);
+            Clock firstClock  = getClock(event.first);
+            Clock secondClock = getClock(event.second);
+            if (event.firstVersion != firstClock.version || event.secondVersion != secondClock.version) {
+                // One of the objects has changed direction since this event was found.
+                continue;
+            }
+
+            if (numResolved >= MAX_RESOLUTIONS_PER_STEP) {
+                Log.warning("Too many collisions in one physics step, ignoring the rest.");
+                break;
+            }
+
+            // Move both the objects to the collision and resolve it.
+            double time = event.time;
+            event.first.wakeUp();
+            event.second.wakeUp();
+            advance(event.first, firstClock, time);
+            advance(event.second, secondClock, time);
+            event.first.calculateNextState(0.0);
+            event.second.calculateNextState(0.0);
+            CollisionResolutionEvent resolutionEvent = FlightEvents.IS_AVAILABLE ? CollisionResolutionEvent.start() : null;
+            event.collision.resolveCollision();
+            if (resolutionEvent != null) {
+                resolutionEvent.finish(event.first, event.second, time);
+            }
+            if (pairCache != null) {
+                pairCache.mark(event.first, event.second, event.pairKey);
+            }
+            event.first.applyNextState();
+            event.second.applyNextState();
+            ++firstClock.version;
+            ++secondClock.version;
+            ++numResolved;
+
+            double timeLeft = physicsDT_seconds - time;
+            event.first.calculateNextState(timeLeft);
+            event.second.calculateNextState(timeLeft);
+
+            findNewEvents(event.first, firstClock, event.second, objects, collisionSystem, time, timeLeft);
+            findNewEvents(event.second, secondClock, event.first, objects, collisionSystem, time, timeLeft);
+        }
+        profiler.lap(PhysicsStats.Phase.RESOLUTION);
+        profiler.count(PhysicsStats.Counter.RESOLUTIONS, numResolved);
+
+        // Move all the objects forward to the end of the physics time
+        for (Collidable object : objects) {
+            Clock clock = clocks.get(object);
+            if (clock != null) {
+                object.calculateNextState(physicsDT_seconds - clock.time);
+                object.applyNextState();
+                if (object.isSleeping()) {
+                    // Sleeping objects must always have a valid next state.
+                    object.calculateNextState(0.0);
+                }
+            } else if (!object.isSleeping()) {
+                object.applyNextState();
+            }
+        }
+        profiler.lap(PhysicsStats.Phase.INTEGRATION);
+
+        return numResolved;
+    }
+
+    /**
+     * Finds the collisions of an object which has just had its trajectory changed and queues them.
+     *
+     * @param object
+     *        The object which was just involved in a collision.
+     *
+     * @param clock
+     *        The clock of the object.
+     *
+     * @param partner
+     *        The other object in the collision that was just resolved. It is checked with its new
+     *        velocities like any other object, since a spinning object can hit it again later in
+     *        the step. Only objects without shapes skip it, as their collision points can't tell
+     *        a pair that has just been separated from one that started the step stuck together.
+     *
+     * @param time
+     *        The current local time of the object (s).
+     *
+     * @param timeLeft
+     *        The time left until the end of the step (s).
+     */
+    private void findNewEvents(Collidable object, Clock clock, Collidable partner,
+                               List<Collidable> objects, CollisionSystem collisionSystem,
+                               double time, double timeLeft) {
+        profiler.lap(PhysicsStats.Phase.RESOLUTION);
+        candidates.clear();
+        collisionSystem.findCandidates(object, objects, candidates);
+        profiler.lap(PhysicsStats.Phase.BROADPHASE);
+        for (Collidable other : candidates) {
+            if (other == partner && (object.getShape() == null || other.getShape() == null)) {
+                continue;
+            }
+            profiler.count(PhysicsStats.Counter.CANDIDATE_PAIRS, 1);
+
+            // Bring the other object up to the same time so that the collision time can be found.
+            // This is only temporary: if the other object was moved forward in two parts, the
+            // rounding would be different from moving it in one, and the result of the step would
+            // depend on which false positives the collision system happened to report.
+            Clock otherClock = getClock(other);
+            double otherTime = otherClock.time;
+            savedState.set(other.getState());
+            advance(other, otherClock, time);
+
+            Collision collision = new Collision(object, other, timeLeft);
+            if (collision.isCollision() && !isTouching(collision)) {
+                events.add(new Event(time + collision.getCollisionTime(), nextSequence++, collision,
+                        clock.version, otherClock.version));
+                profiler.count(PhysicsStats.Counter.COLLISIONS, 1);
+            }
+
+            other.getState().set(savedState);
+            otherClock.time = otherTime;
+            object.calculateNextState(timeLeft);
+            other.calculateNextState(time + timeLeft - otherTime);
+        }
+        profiler.lap(PhysicsStats.Phase.NARROWPHASE);
+    }
+
+    /**
+     * Moves the current state of the object forwards to the given time. The trajectory of the
+     * object does not change, so the version stays the same and the queued collisions of the object
+     * stay valid. Objects are always moved from the last change in their trajectory straight to the
+     * time they are needed at, so that the rounding is the same whatever happened in between.
+     */
+    private static void advance(Collidable object, Clock clock, double time) {
+        if (clock.time < time) {
+            object.calculateNextState(time - clock.time);
+            object.applyNextState();
+            clock.time = time;
+        }
+    }
+
+    private boolean isTouching(Collision collision) {
+        return contactSolver != null && contactSolver.isTouching(collision.getPairKey());
+    }
+
+    private Clock getClock(Collidable object) {
+        Clock clock = clocks.get(object);
+        if (clock == null) {
+            clock = new Clock();
+            clocks.put(object, clock);
+        }
+        return clock;
+    }
+}
@@ -1,6 +1,8 @@
 package com.gmail.claytonrogers53.life.Physics;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A collision system interface which can be implemented to and used in the physics system. This is
@@ -10,6 +12,24 @@ import java.util.List;
  * Created by Clayton on 25/2/2015.
  */
 public interface CollisionSystem {
+
+    /**
+     * Called for every object which a ray being cast might hit.
+     */
+    interface RayCastCallback {
+        /**
+         * @param object
+         *        The object which the ray might hit.
+         *
+         * @param maxFraction
+         *        The current length of the ray as a fraction of the original segment.
+         *
+         * @return The new max fraction to clip the ray to, or a negative number when the ray
+         *         misses the object.
+         */
+        double reportObject(Collidable object, double maxFraction);
+    }
+
     /**
      * Finds all of the possible collisions in the list of objects. It is allowed to return extra
      * false positives, but it is not allowed to miss collisions.
@@ -24,4 +44,133 @@ public interface CollisionSystem {
      *         Allowed to return false positives.
      */
     List<Collision> findCollisions(List<Collidable> objectList, double physicsDT_seconds);
+
+    /**
+     * Finding the collision time of a pair is the narrow phase, even though the collisions are made
+     * by the broad phase. This gives the time it took, so that the two can be told apart in the
+     * {@link PhysicsStats}.
+     *
+     * @return The part of the last call to {@link #findCollisions} spent making the collisions (ns).
+     *         When they are made on more than one thread, this is the share of the wall clock time.
+     */
+    long getNarrowphaseNanos();
+
+    /**
+     * Finds all of the objects which could possibly be colliding with the given object, using the
+     * next states of the objects. Used to find the new collisions of a single object after its
+     * trajectory was changed by a collision, without redoing the whole broad phase. Like
+     * {@link #findCollisions}, it may return false positives but must not miss any collisions.
+     *
+     * @param object
+     *        The object to find the possible collisions of.
+     *
+     * @param objectList
+     *        The list of all the collidable objects.
+     *
+     * @param candidates
+     *        The possibly colliding objects are added to this collection. The object itself is
+     *        never added, nor are objects which don't have collisions enabled or which are
+     *        filtered out.
+     */
+    void findCandidates(Collidable object, List<Collidable> objectList, Collection<Collidable> candidates);
+
+    /**
+     * Sets the extra check of whether a pair of objects should collide. Pairs which it rejects, or
+     * whose category and mask bits don't match, are never returned by {@link #findCollisions} or
+     * {@link #findCandidates}.
+     *
+     * @param filter
+     *        The filter, or null to only use the category and mask bits.
+     */
+    void setCollisionFilter(CollisionFilter filter);
+
+    /**
+     * Finds all of the objects which could be overlapping a box at their current positions. Like
+     * the other queries it may return false positives, but must not miss any objects. Objects
+     * without collisions enabled are included.
+     *
+     * @param lowerX
+     *        The left side of the box (m).
+     *
+     * @param lowerY
+     *        The bottom of the box (m).
+     *
+     * @param upperX
+     *        The right side of the box (m).
+     *
+     * @param upperY
+     *        The top of the box (m).
+     *
+     * @param objectList
+     *        The list of all the objects.
+     *
+     * @param candidates
+     *        The possibly overlapping objects are added to this collection.
+     */
+    void query(double lowerX, double lowerY, double upperX, double upperY, List<Collidable> objectList,
+               Collection<Collidable> candidates);
+
+    /**
+     * Reports every object that the segment from (x1, y1) to (x2, y2) might cross at their current
+     * positions. The callback decides whether the ray really hits the object and may shorten the
+     * ray, so that objects further away can be skipped.
+     *
+     * @param objectList
+     *        The list of all the objects.
+     *
+     * @param callback
+     *        Called for each object the ray might hit.
+     */
+    void rayCast(double x1, double y1, double x2, double y2, List<Collidable> objectList,
+                 RayCastCallback callback);
+
+    /**
+     * Called when an object is added to the physics system, so that collision systems which keep
+     * track of objects between frames can start tracking it. The next state of the object is
+     * valid when this is called.
+     *
+     * @param object
+     *        The object that was added.
+     */
+    void addObject(Collidable object);
+
+    /**
+     * Called when an object has been moved from outside of the normal propagation, for example when
+     * a snapshot is restored. The next state of the object is valid when this is called, and the
+     * object may be asleep.
+     *
+     * @param object
+     *        The object that was moved.
+     */
+    void updateObject(Collidable object);
+
+    /**
+     * Called when an object is removed from the physics system.
+     *
+     * @param object
+     *        The object that was removed.
+     */
+    void removeObject(Collidable object);
+
+    /**
+     * Called when every object is removed from the physics system.
+     */
+    void clear();
+
+    /**
+     * Called when the collision system is replaced, or when the physics loop stops. Stops any
+     * threads the collision system has started. It may still be used afterwards, in which case
+     * they are started again.
+     */
+    void shutdown();
+
+    /**
+     * Makes the collision system split its work on a pool which belongs to someone else, for
+     * example the {@link SimulationHost} running the world, rather than on threads of its own.
+     *
+     * @param pool
+     *        The pool, or null to go back to the collision system's own threads. It is never shut
+     *        down by the collision system.
+     */
+    void setPool(ForkJoinPool pool);
 }
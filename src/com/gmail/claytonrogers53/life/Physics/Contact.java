@@ -0,0 +1,27 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * A struct holding the result of the analytic narrow phase between two shapes: the contact normal,
+ * how deep the shapes overlap and up to two contact points in world coordinates.
+ */
+public final class Contact {
+    /** The most contact points two convex shapes can have. */
+    public static final int MAX_POINTS = 2;
+
+    /** The unit normal of the contact, pointing from the first object to the second. */
+    public double normalX = 0.0;
+    public double normalY = 1.0;
+    /** How far the shapes overlap along the normal (m). Negative when the shapes are apart. */
+    public double depth = 0.0;
+
+    /** The number of valid contact points. */
+    public int pointCount = 0;
+    /** The contact points in world coordinates (m). */
+    public final double[] pointX     = new double[MAX_POINTS];
+    public final double[] pointY     = new double[MAX_POINTS];
+    /** How far the shapes overlap at each contact point (m). Negative when apart. */
+    public final double[] pointDepth = new double[MAX_POINTS];
+
+    /** The time of impact from the start of the time step (s), if one was searched for. */
+    public double timeOfImpact = 0.0;
+}
@@ -0,0 +1,113 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import java.util.Arrays;
+
+/**
+ * The changes in which pairs of objects are touching over one physics step, handed to every
+ * {@link ContactListener} once the step is done. A pair is touching in a step when it was solved
+ * as a resting contact, or when one of its collisions was found during the step (whether or not
+ * the collision was resolved).
+ *
+ * Each pair is in exactly one of three lists:
+ * <ul>
+ *     <li>{@link #BEGIN}: touching this step, but not in the one before,</li>
+ *     <li>{@link #STAY}: touching both this step and the one before,</li>
+ *     <li>{@link #END}: touching in the step before, but not this one (including when one of the
+ *         objects has been removed).</li>
+ * </ul>
+ * The pairs in each list are in order of their pair keys, with the object with the lower body id
+ * first. The events are only valid until the listener returns, since they are reused for the next
+ * step.
+ */
+public final class ContactEvents {
+
+    /** Pairs which have started touching. */
+    public static final int BEGIN = 0;
+    /** Pairs which are still touching. */
+    public static final int STAY  = 1;
+    /** Pairs which have stopped touching. */
+    public static final int END   = 2;
+
+    private long step = 0L;
+    private final int[]          counts = new int[3];
+    private final Collidable[][] firsts  = new Collidable[3][16];
+    private final Collidable[][] seconds = new Collidable[3][16];
+
+    ContactEvents() {}
+
+    /**
+     * Empties the lists for a new step.
+     */
+    void clear(long step) {
+        this.step = step;
+        for (int kind = 0; kind < counts.length; kind++) {
+            // Don't keep the objects of the last step alive.
+            Arrays.fill(firsts[kind], 0, counts[kind], null);
+            Arrays.fill(seconds[kind], 0, counts[kind], null);
+            counts[kind] = 0;
+        }
+    }
+
+    void add(int kind, Collidable first, Collidable second) {
+        int i = counts[kind];
+        if (i == firsts[kind].length) {
+            firsts[kind]  = Arrays.copyOf(firsts[kind], 2 * i);
+            seconds[kind] = Arrays.copyOf(seconds[kind], 2 * i);
+        }
+        firsts[kind][i]  = first;
+        seconds[kind][i] = second;
+        counts[kind] = i + 1;
+    }
+
+    /**
+     * @return The number of the physics step the events happened in, the same as
+     *         {@link PhysicsSystem#getStepCount()} just after it.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * @param kind
+     *        One of {@link #BEGIN}, {@link #STAY} or {@link #END}.
+     *
+     * @return The number of pairs in the list.
+     */
+    public int getCount(int kind) {
+        return counts[kind];
+    }
+
+    /**
+     * @param kind
+     *        One of {@link #BEGIN}, {@link #STAY} or {@link #END}.
+     *
+     * @param index
+     *        The index of the pair in the list, from 0 to {@link #getCount} - 1.
+     *
+     * @return The object of the pair with the lower body id.
+     */
+    public Collidable getFirst(int kind, int index) {
+        checkIndex(kind, index);
+        return firsts[kind][index];
+    }
+
+    /**
+     * @param kind
+     *        One of {@link #BEGIN}, {@link #STAY} or {@link #END}.
+     *
+     * @param index
+     *        The index of the pair in the list, from 0 to {@link #getCount} - 1.
+     *
+     * @return The object of the pair with the higher body id.
+     */
+    public Collidable getSecond(int kind, int index) {
+        checkIndex(kind, index);
+        return seconds[kind][index];
+    }
+
+    private void checkIndex(int kind, int index) {
+        if (index < 0 || index >= counts[kind]) {
+            throw new IndexOutOfBoundsException("Tried to get contact " + index + " of " + counts[kind] + ".");
+        }
+    }
+}
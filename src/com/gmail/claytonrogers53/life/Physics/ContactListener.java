@@ -0,0 +1,18 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * Told which pairs of objects have started touching, are still touching and have stopped
+ * touching, once per physics step. This is usually more useful to game code than
+ * {@link Collidable#notifyCollision}, which is called for every collision that is resolved and
+ * says nothing about objects which stay in contact.
+ */
+public interface ContactListener {
+    /**
+     * Called on the physics thread at the end of every step, after the objects have been unlocked
+     * and before the physics things are calculated. Objects may be added and removed from here.
+     *
+     * @param events
+     *        The contact events of the step. Only valid until this returns.
+     */
+    void processContacts(ContactEvents events);
+}
@@ -0,0 +1,869 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solves the contacts between objects which are already touching at the start of a step, such as
+ * boxes resting in a stack, using sequential impulses. The time of impact scheduler only handles
+ * objects which run into each other during the step; objects which are pressed together would
+ * otherwise have to be separated by a new collision every step.
+ *
+ * Every contact point gets a normal impulse which stops the objects from moving into each other
+ * (and pushes them apart when they overlap by more than the slop), and a friction impulse which
+ * is limited by the normal impulse. The impulses are applied to each contact point in turn, and the
+ * whole set is gone over a few times. The total impulse of each point is kept between steps, and
+ * is applied again at the start of the next step (warm starting), so that a stack which hasn't
+ * changed much starts out almost solved and only needs a few iterations.
+ *
+ * The joints of the {@link JointSolver} are solved in the same iterations as the contacts, so
+ * that objects hanging off each other and resting on each other settle together.
+ *
+ * The contacts are always solved in order of the body ids of the objects, so the result doesn't
+ * depend on the order the collision system finds them in. The kept impulses are part of the state
+ * of the physics, so they are included in the snapshots.
+ *
+ * The joints and contacts are first split into colours, so that no two in a colour share an
+ * object which can move. The colours are solved one after the other, and with more than one
+ * thread the joints and contacts within a large colour are solved in parallel. The order within a
+ * colour doesn't change the result, so the result is exactly the same for any number of threads,
+ * including one, where every colour is solved in order on the calling thread.
+ */
+final class ContactSolver {
+
+    /** Objects closer than this are solved as touching (m). */
+    private static final double CONTACT_DISTANCE = Narrowphase.TOI_TOLERANCE;
+    /** How far objects may overlap before they are pushed apart (m). */
+    private static final double LINEAR_SLOP = 0.005;
+    /** The fraction of the overlap beyond the slop which is removed in each step. */
+    static final double BAUMGARTE = 0.2;
+    /** Objects hitting more slowly than this don't bounce (m/s), which lets stacks come to rest. */
+    private static final double RESTITUTION_THRESHOLD = 1.0;
+    /** Contact points this close to one from the last step are taken to be the same point (m). */
+    private static final double MATCH_DISTANCE = 0.02;
+    /** The speed at which an awake object pushing on a sleeping one wakes it up (m/s). */
+    static final double WAKE_SPEED = 0.01;
+    /** Each colour uses a bit of a long for every object. Joints and contacts which don't fit in
+     * any of the colours are solved on their own afterwards. */
+    private static final int MAX_COLOURS = 64;
+    /** The fewest joints and contacts that are solved as a task of their own. */
+    private static final int MIN_CONSTRAINTS_PER_TASK = 32;
+
+    /** The contact between a pair of touching objects, kept between steps for warm starting. */
+    private static final class Manifold {
+        final Collidable first;
+        final Collidable second;
+        final long pairKey;
+        /** The last step the objects were touching in. */
+        long lastStep;
+        final Contact contact = new Contact();
+        double friction;
+        double restitution;
+        /** The index of each object in the body arrays. */
+        int indexA;
+        int indexB;
+
+        int pointCount = 0;
+        /** The contact points in the local coordinates of the first object, to match the points
+         * from one step to the next. */
+        final double[] localX         = new double[Contact.MAX_POINTS];
+        final double[] localY         = new double[Contact.MAX_POINTS];
+        /** The total impulses applied at each point (N*s). */
+        final double[] normalImpulse  = new double[Contact.MAX_POINTS];
+        final double[] tangentImpulse = new double[Contact.MAX_POINTS];
+
+        // Only used within a step.
+        final double[] rAx          = new double[Contact.MAX_POINTS];
+        final double[] rAy          = new double[Contact.MAX_POINTS];
+        final double[] rBx          = new double[Contact.MAX_POINTS];
+        final double[] rBy          = new double[Contact.MAX_POINTS];
+        final double[] normalMass   = new double[Contact.MAX_POINTS];
+        final double[] tangentMass  = new double[Contact.MAX_POINTS];
+        final double[] velocityBias = new double[Contact.MAX_POINTS];
+
+        Manifold(Collidable first, Collidable second, long pairKey) {
+            this.first = first;
+            this.second = second;
+            this.pairKey = pairKey;
+        }
+    }
+
+    private static final Comparator<Manifold> BY_PAIR_KEY = new Comparator<Manifold>() {
+        @Override
+        public int compare(Manifold o1, Manifold o2) {
+            return o1.pairKey < o2.pairKey ? -1 : (o1.pairKey == o2.pairKey ? 0 : 1);
+        }
+    };
+
+    private int iterations;
+    private boolean isWarmStarting;
+
+    /** Every pair that was touching in the last step, by its pair key. */
+    private final PairMap<Manifold> cache = new PairMap<>(100);
+    /** The pairs which are touching this step, in order of their pair keys. */
+    private final List<Manifold> active = new ArrayList<>(100);
+    private final List<Collidable> candidates = new ArrayList<>(8);
+    /** The pairs from the broad phase, stored as consecutive elements. */
+    private final List<Collidable> candidatePairs = new ArrayList<>(16);
+    private long stepMark = 0;
+
+    /** The objects in contact this step, and their velocities while they are being solved. */
+    private final SolverBodies bodies = new SolverBodies();
+    private final JointSolver joints;
+    /** The number of threads the large colours are solved with, one to solve every colour on the
+     * calling thread. */
+    private int parallelism = 1;
+    /** Only made once a colour is solved in parallel, null until then and after
+     * {@link #shutdown}. */
+    private ForkJoinPool pool = null;
+    /** The pool of someone else which is used instead of our own, null for none. */
+    private ForkJoinPool sharedPool = null;
+
+    // The joints and contacts of this step by colour, when solving in parallel. Joints are
+    // numbered first, then the contacts in the order of the active list.
+    private int[]  colouredOrder     = new int[16];
+    private int[]  constraintColours = new int[16];
+    private long[] usedColours       = new long[16];
+    /** Where each colour starts in the order, the one after the last colour holds the rest. */
+    private final int[] colourStarts = new int[MAX_COLOURS + 2];
+    private int numJointsSolved = 0;
+    private final PhysicsProfiler profiler;
+
+    /**
+     * @param iterations
+     *        The number of times the contacts are gone over each step.
+     *
+     * @param isWarmStarting
+     *        True to start each step with the impulses of the last one.
+     *
+     * @param joints
+     *        The joints which are solved along with the contacts.
+     *
+     * @param parallelism
+     *        The number of threads, one to solve every colour on the calling thread.
+     *
+     * @param profiler
+     *        Where the time of each phase of the step is added.
+     */
+    ContactSolver(int iterations, boolean isWarmStarting, JointSolver joints, int parallelism,
+                  PhysicsProfiler profiler) {
+        setIterations(iterations);
+        this.isWarmStarting = isWarmStarting;
+        this.joints = joints;
+        this.profiler = profiler;
+        setParallelism(parallelism);
+    }
+
+    /**
+     * @param parallelism
+     *        The number of threads, one to solve every colour on the calling thread.
+     */
+    void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            String errorString = "Tried to give the contact solver less than one thread.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        shutdown();
+        this.parallelism = parallelism;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Stops the threads of the pool. A new pool is made if a colour is solved in parallel again.
+     * A shared pool is left alone.
+     */
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Solves the colours in parallel on a pool which belongs to someone else, rather than on
+     * threads of our own.
+     *
+     * @param pool
+     *        The pool, or null to go back to our own threads. It is never shut down here.
+     */
+    void setPool(ForkJoinPool pool) {
+        sharedPool = pool;
+        if (pool != null) {
+            shutdown();
+        }
+    }
+
+    private ForkJoinPool getPool() {
+        if (sharedPool != null) {
+            return sharedPool;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    void setIterations(int iterations) {
+        if (iterations < 0) {
+            Log.warning("Attempted to set a negative number of contact iterations.");
+            return;
+        }
+        this.iterations = iterations;
+    }
+
+    int getIterations() {
+        return iterations;
+    }
+
+    void setWarmStarting(boolean isWarmStarting) {
+        this.isWarmStarting = isWarmStarting;
+    }
+
+    boolean isWarmStarting() {
+        return isWarmStarting;
+    }
+
+    /**
+     * @param pairKey
+     *        The pair key of two objects, see {@link Collision#getPairKey}.
+     *
+     * @return True when the two objects were solved as touching in the last step.
+     */
+    boolean isTouching(long pairKey) {
+        Manifold manifold = cache.get(pairKey);
+        return manifold != null && manifold.lastStep == stepMark;
+    }
+
+    /**
+     * @return The number of touching pairs in the last step.
+     */
+    int getContactCount() {
+        return active.size();
+    }
+
+    /**
+     * Finds the pairs of objects which are touching at the start of the step and changes their
+     * velocities so that they don't move into each other during it. The next states of the
+     * objects are left somewhere within the step, so they have to be calculated again.
+     *
+     * @param objects
+     *        All of the objects in the physics system.
+     *
+     * @param collisionSystem
+     *        The broad phase used to find the pairs.
+     *
+     * @param physicsDT_seconds
+     *        The length of the time step (s).
+     */
+    void solve(List<Collidable> objects, CollisionSystem collisionSystem, double physicsDT_seconds) {
+        ++stepMark;
+        findContacts(objects, collisionSystem);
+        removeStaleContacts();
+        profiler.count(PhysicsStats.Counter.CONTACTS, active.size());
+        if (active.isEmpty() && joints.getCount() == 0) {
+            profiler.lap(PhysicsStats.Phase.SOLVER);
+            return;
+        }
+
+        prepare(physicsDT_seconds);
+        numJointsSolved = joints.prepare(bodies, physicsDT_seconds, isWarmStarting);
+        profiler.count(PhysicsStats.Counter.JOINTS, numJointsSolved);
+        if (isWarmStarting) {
+            warmStart();
+        } else {
+            for (Manifold manifold : active) {
+                for (int i = 0; i < manifold.pointCount; i++) {
+                    manifold.normalImpulse[i]  = 0.0;
+                    manifold.tangentImpulse[i] = 0.0;
+                }
+            }
+        }
+        // The coloured order is used even on one thread, so that the result doesn't depend on the
+        // number of threads.
+        colour();
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            solveColours();
+        }
+
+        bodies.store();
+        profiler.lap(PhysicsStats.Phase.SOLVER);
+    }
+
+    /**
+     * Gives each joint and contact the lowest colour which none of the others on its objects has
+     * yet, going through them in order. Fixed objects don't count, since nothing is written to
+     * them.
+     */
+    private void colour() {
+        int numConstraints = numJointsSolved + active.size();
+        if (colouredOrder.length < numConstraints) {
+            colouredOrder     = new int[2 * numConstraints];
+            constraintColours = new int[2 * numConstraints];
+        }
+        if (usedColours.length < bodies.size()) {
+            usedColours = new long[2 * bodies.size()];
+        }
+        Arrays.fill(usedColours, 0, bodies.size(), 0L);
+        Arrays.fill(colourStarts, 0);
+
+        for (int c = 0; c < numConstraints; c++) {
+            int a = c < numJointsSolved ? joints.getIndexA(c) : active.get(c - numJointsSolved).indexA;
+            int b = c < numJointsSolved ? joints.getIndexB(c) : active.get(c - numJointsSolved).indexB;
+            boolean isFixedA = bodies.isFixed(a);
+            boolean isFixedB = bodies.isFixed(b);
+            long used = (isFixedA ? 0L : usedColours[a]) | (isFixedB ? 0L : usedColours[b]);
+            // MAX_COLOURS when every colour is taken.
+            int colour = Long.numberOfTrailingZeros(~used);
+            if (colour < MAX_COLOURS) {
+                if (!isFixedA) {usedColours[a] |= 1L << colour;}
+                if (!isFixedB) {usedColours[b] |= 1L << colour;}
+            }
+            constraintColours[c] = colour;
+            ++colourStarts[colour + 1];
+        }
+        for (int colour = 0; colour <= MAX_COLOURS; colour++) {
+            colourStarts[colour + 1] += colourStarts[colour];
+        }
+        // Keeps the order within each colour, using the starts as the next free place.
+        int[] next = Arrays.copyOf(colourStarts, colourStarts.length);
+        for (int c = 0; c < numConstraints; c++) {
+            colouredOrder[next[constraintColours[c]]++] = c;
+        }
+    }
+
+    private void solveColours() {
+        for (int colour = 0; colour <= MAX_COLOURS; colour++) {
+            int start = colourStarts[colour];
+            int end   = colourStarts[colour + 1];
+            if (parallelism > 1 && colour < MAX_COLOURS && end - start >= 2 * MIN_CONSTRAINTS_PER_TASK) {
+                getPool().invoke(new SolveTask(start, end));
+            } else {
+                for (int i = start; i < end; i++) {
+                    solveConstraint(colouredOrder[i]);
+                }
+            }
+        }
+    }
+
+    private void solveConstraint(int constraint) {
+        if (constraint < numJointsSolved) {
+            joints.solve(constraint);
+        } else {
+            solveManifold(active.get(constraint - numJointsSolved));
+        }
+    }
+
+    /**
+     * Solves a range of the coloured order, all of which must be in the same colour.
+     */
+    private final class SolveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+
+        SolveTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start >= 2 * MIN_CONSTRAINTS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new SolveTask(start, middle), new SolveTask(middle, end));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                solveConstraint(colouredOrder[i]);
+            }
+        }
+    }
+
+    /**
+     * Puts every pair of objects which is touching into the active list, in order of their pair
+     * keys.
+     */
+    private void findContacts(List<Collidable> objects, CollisionSystem collisionSystem) {
+        active.clear();
+        for (Collidable object : objects) {
+            if (isSolvable(object) && !object.isSleeping()) {
+                object.calculateNextState(0.0);
+            }
+        }
+        profiler.lap(PhysicsStats.Phase.INTEGRATION);
+
+        // All of the pairs are found before any contact is made, so that each phase is timed as a
+        // whole rather than object by object.
+        for (Collidable object : objects) {
+            // Sleeping objects don't move, so their pairs are found from the awake end.
+            if (!isSolvable(object) || object.isSleeping()) {continue;}
+            candidates.clear();
+            collisionSystem.findCandidates(object, objects, candidates);
+            for (Collidable other : candidates) {
+                if (!isSolvable(other) || (!other.isSleeping() && other.getBodyId() < object.getBodyId())) {
+                    continue;
+                }
+                candidatePairs.add(object);
+                candidatePairs.add(other);
+            }
+        }
+        profiler.count(PhysicsStats.Counter.CANDIDATE_PAIRS, candidatePairs.size() / 2);
+        profiler.lap(PhysicsStats.Phase.BROADPHASE);
+
+        for (int i = 0; i < candidatePairs.size(); i += 2) {
+            addContact(candidatePairs.get(i), candidatePairs.get(i + 1));
+        }
+        candidatePairs.clear();
+        Collections.sort(active, BY_PAIR_KEY);
+        profiler.lap(PhysicsStats.Phase.NARROWPHASE);
+    }
+
+    private void addContact(Collidable object, Collidable other) {
+        // Always keep the object with the lower id first, like the collisions.
+        Collidable first  = object.getBodyId() < other.getBodyId() ? object : other;
+        Collidable second = first == object ? other : object;
+        long pairKey = Collision.getPairKey(first, second);
+
+        Manifold manifold = cache.get(pairKey);
+        if (manifold != null && manifold.lastStep == stepMark) {
+            return;
+        }
+        if (manifold == null || manifold.first != first || manifold.second != second) {
+            manifold = new Manifold(first, second, pairKey);
+        }
+
+        State stateA = first.getNextState();
+        State stateB = second.getNextState();
+        Contact contact = manifold.contact;
+        Narrowphase.collide(first.getShape(), stateA, second.getShape(), stateB, contact);
+        if (contact.depth < -CONTACT_DISTANCE || contact.pointCount == 0) {
+            return;
+        }
+
+        // Match the new points to the old ones so that they can start from the old impulses.
+        int oldCount = manifold.lastStep == stepMark - 1 ? manifold.pointCount : 0;
+        double oldX0 = manifold.localX[0], oldY0 = manifold.localY[0];
+        double oldX1 = manifold.localX[1], oldY1 = manifold.localY[1];
+        double oldNormal0 = manifold.normalImpulse[0], oldTangent0 = manifold.tangentImpulse[0];
+        double oldNormal1 = manifold.normalImpulse[1], oldTangent1 = manifold.tangentImpulse[1];
+        for (int i = 0; i < contact.pointCount; i++) {
+            double dx = contact.pointX[i] - stateA.m02;
+            double dy = contact.pointY[i] - stateA.m12;
+            double localX = stateA.m00 * dx + stateA.m10 * dy;
+            double localY = stateA.m01 * dx + stateA.m11 * dy;
+            manifold.localX[i] = localX;
+            manifold.localY[i] = localY;
+            manifold.normalImpulse[i]  = 0.0;
+            manifold.tangentImpulse[i] = 0.0;
+            if (oldCount > 0 && isClose(localX, localY, oldX0, oldY0)) {
+                manifold.normalImpulse[i]  = oldNormal0;
+                manifold.tangentImpulse[i] = oldTangent0;
+            } else if (oldCount > 1 && isClose(localX, localY, oldX1, oldY1)) {
+                manifold.normalImpulse[i]  = oldNormal1;
+                manifold.tangentImpulse[i] = oldTangent1;
+            }
+        }
+        manifold.pointCount = contact.pointCount;
+        manifold.lastStep = stepMark;
+        cache.put(pairKey, manifold);
+        active.add(manifold);
+    }
+
+    private static boolean isClose(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy < MATCH_DISTANCE * MATCH_DISTANCE;
+    }
+
+    private void removeStaleContacts() {
+        // The pairs touching this step are exactly the active ones.
+        cache.clear();
+        for (Manifold manifold : active) {
+            cache.put(manifold.pairKey, manifold);
+        }
+    }
+
+    /**
+     * Marks every pair which is touching this step in the pair cache.
+     */
+    void markContacts(PairCache pairCache) {
+        for (Manifold manifold : active) {
+            pairCache.mark(manifold.first, manifold.second, manifold.pairKey);
+        }
+    }
+
+    /**
+     * Loads the objects into the body arrays and works out everything about each contact point
+     * which doesn't change while solving.
+     */
+    private void prepare(double physicsDT_seconds) {
+        joints.wakeJoinedObjects();
+        for (Manifold manifold : active) {
+            // An object pushing on a sleeping one wakes it up, otherwise the sleeping one acts like
+            // it is fixed in place.
+            if (manifold.first.isSleeping() != manifold.second.isSleeping()) {
+                Collidable sleeper = manifold.first.isSleeping() ? manifold.first : manifold.second;
+                if (getApproachSpeed(manifold.first, manifold.second, manifold.contact) > WAKE_SPEED) {
+                    sleeper.wakeUp();
+                }
+            }
+        }
+
+        bodies.clear();
+        for (Manifold manifold : active) {
+            manifold.indexA = bodies.getIndex(manifold.first, physicsDT_seconds);
+            manifold.indexB = bodies.getIndex(manifold.second, physicsDT_seconds);
+        }
+
+        for (Manifold manifold : active) {
+            Collidable first  = manifold.first;
+            Collidable second = manifold.second;
+            Contact contact = manifold.contact;
+            int a = manifold.indexA;
+            int b = manifold.indexB;
+            manifold.friction    = Math.sqrt(first.getFriction() * second.getFriction());
+            manifold.restitution = Math.max(first.getRestitution(), second.getRestitution());
+
+            double normalX  = contact.normalX;
+            double normalY  = contact.normalY;
+            double tangentX = normalY;
+            double tangentY = -normalX;
+            double positionAX = first.getState().position.getMagX();
+            double positionAY = first.getState().position.getMagY();
+            double positionBX = second.getState().position.getMagX();
+            double positionBY = second.getState().position.getMagY();
+            for (int i = 0; i < manifold.pointCount; i++) {
+                double rAx = contact.pointX[i] - positionAX;
+                double rAy = contact.pointY[i] - positionAY;
+                double rBx = contact.pointX[i] - positionBX;
+                double rBy = contact.pointY[i] - positionBY;
+                manifold.rAx[i] = rAx;
+                manifold.rAy[i] = rAy;
+                manifold.rBx[i] = rBx;
+                manifold.rBy[i] = rBy;
+
+                double normalArmA  = cross(rAx, rAy, normalX, normalY);
+                double normalArmB  = cross(rBx, rBy, normalX, normalY);
+                double tangentArmA = cross(rAx, rAy, tangentX, tangentY);
+                double tangentArmB = cross(rBx, rBy, tangentX, tangentY);
+                double normalK  = bodies.inverseMass[a] + bodies.inverseMass[b] +
+                        bodies.inverseInertia[a] * normalArmA * normalArmA + bodies.inverseInertia[b] * normalArmB * normalArmB;
+                double tangentK = bodies.inverseMass[a] + bodies.inverseMass[b] +
+                        bodies.inverseInertia[a] * tangentArmA * tangentArmA + bodies.inverseInertia[b] * tangentArmB * tangentArmB;
+                manifold.normalMass[i]  = normalK  > 0.0 ? 1.0 / normalK  : 0.0;
+                manifold.tangentMass[i] = tangentK > 0.0 ? 1.0 / tangentK : 0.0;
+
+                // Push apart overlaps beyond the slop, and bounce off hard enough impacts.
+                double bias = BAUMGARTE / physicsDT_seconds * Math.max(0.0, contact.pointDepth[i] - LINEAR_SLOP);
+                double normalVelocity = relativeVelocity(manifold, i, normalX, normalY);
+                if (normalVelocity < -RESTITUTION_THRESHOLD) {
+                    bias = Math.max(bias, -manifold.restitution * normalVelocity);
+                }
+                manifold.velocityBias[i] = bias;
+            }
+        }
+    }
+
+    private void warmStart() {
+        for (Manifold manifold : active) {
+            double normalX = manifold.contact.normalX;
+            double normalY = manifold.contact.normalY;
+            for (int i = 0; i < manifold.pointCount; i++) {
+                double impulseX = manifold.normalImpulse[i] * normalX + manifold.tangentImpulse[i] * normalY;
+                double impulseY = manifold.normalImpulse[i] * normalY - manifold.tangentImpulse[i] * normalX;
+                applyImpulse(manifold, i, impulseX, impulseY);
+            }
+        }
+    }
+
+    private void solveManifold(Manifold manifold) {
+        double normalX  = manifold.contact.normalX;
+        double normalY  = manifold.contact.normalY;
+        double tangentX = normalY;
+        double tangentY = -normalX;
+
+        // Friction first, since it is limited by the normal impulse which matters more.
+        for (int i = 0; i < manifold.pointCount; i++) {
+            double tangentVelocity = relativeVelocity(manifold, i, tangentX, tangentY);
+            double maxFriction = manifold.friction * manifold.normalImpulse[i];
+            double oldImpulse = manifold.tangentImpulse[i];
+            double newImpulse = oldImpulse - manifold.tangentMass[i] * tangentVelocity;
+            newImpulse = Math.max(-maxFriction, Math.min(maxFriction, newImpulse));
+            manifold.tangentImpulse[i] = newImpulse;
+            double change = newImpulse - oldImpulse;
+            applyImpulse(manifold, i, change * tangentX, change * tangentY);
+        }
+
+        for (int i = 0; i < manifold.pointCount; i++) {
+            double normalVelocity = relativeVelocity(manifold, i, normalX, normalY);
+            double oldImpulse = manifold.normalImpulse[i];
+            double newImpulse = oldImpulse - manifold.normalMass[i] * (normalVelocity - manifold.velocityBias[i]);
+            // The objects can only be pushed apart, never pulled together.
+            newImpulse = Math.max(0.0, newImpulse);
+            manifold.normalImpulse[i] = newImpulse;
+            double change = newImpulse - oldImpulse;
+            applyImpulse(manifold, i, change * normalX, change * normalY);
+        }
+    }
+
+    /**
+     * Finds how fast the contact point of the second object is moving away from the one of the
+     * first object along a direction.
+     */
+    private double relativeVelocity(Manifold manifold, int point, double directionX, double directionY) {
+        int a = manifold.indexA;
+        int b = manifold.indexB;
+        double[] velocityX = bodies.velocityX;
+        double[] velocityY = bodies.velocityY;
+        double[] angularVelocity = bodies.angularVelocity;
+        double velocityAX = velocityX[a] + angularVelocity[a] * manifold.rAy[point];
+        double velocityAY = velocityY[a] - angularVelocity[a] * manifold.rAx[point];
+        double velocityBX = velocityX[b] + angularVelocity[b] * manifold.rBy[point];
+        double velocityBY = velocityY[b] - angularVelocity[b] * manifold.rBx[point];
+        return (velocityBX - velocityAX) * directionX + (velocityBY - velocityAY) * directionY;
+    }
+
+    /**
+     * Applies an impulse to the second object at a contact point, and the opposite impulse to the
+     * first object.
+     */
+    private void applyImpulse(Manifold manifold, int point, double impulseX, double impulseY) {
+        bodies.applyImpulse(manifold.indexA, manifold.rAx[point], manifold.rAy[point], -impulseX, -impulseY);
+        bodies.applyImpulse(manifold.indexB, manifold.rBx[point], manifold.rBy[point], impulseX, impulseY);
+    }
+
+    /**
+     * The angular impulse of a linear impulse applied at an arm from the centre of mass. Angles are
+     * clockwise, so this is the opposite of the usual cross product.
+     */
+    private static double cross(double armX, double armY, double impulseX, double impulseY) {
+        return armY * impulseX - armX * impulseY;
+    }
+
+    /**
+     * Applies the impulse of a single impact between two objects that have just come into contact,
+     * with restitution and friction. The objects are at the time of impact and their next states
+     * are changed.
+     *
+     * @param a
+     *        The first object.
+     *
+     * @param b
+     *        The second object.
+     *
+     * @param contact
+     *        The contact at the time of impact, with the normal pointing from a to b.
+     */
+    static void resolveImpact(Collidable a, Collidable b, Contact contact) {
+        if (contact.pointCount == 0) {
+            return;
+        }
+        State stateA = a.getNextState();
+        State stateB = b.getNextState();
+
+        // The impact is taken to be in the middle of the contact points.
+        double pointX = 0.0;
+        double pointY = 0.0;
+        for (int i = 0; i < contact.pointCount; i++) {
+            pointX += contact.pointX[i];
+            pointY += contact.pointY[i];
+        }
+        pointX /= contact.pointCount;
+        pointY /= contact.pointCount;
+
+        double rAx = pointX - stateA.position.getMagX();
+        double rAy = pointY - stateA.position.getMagY();
+        double rBx = pointX - stateB.position.getMagX();
+        double rBy = pointY - stateB.position.getMagY();
+        double inverseMassA = 1.0 / a.getMass();
+        double inverseMassB = 1.0 / b.getMass();
+        double inverseInertiaA = 1.0 / a.getMomentOfInertia();
+        double inverseInertiaB = 1.0 / b.getMomentOfInertia();
+
+        double normalX  = contact.normalX;
+        double normalY  = contact.normalY;
+        double tangentX = normalY;
+        double tangentY = -normalX;
+        double relativeX = stateB.velocity.getMagX() + stateB.angularVelocity * rBy -
+                           stateA.velocity.getMagX() - stateA.angularVelocity * rAy;
+        double relativeY = stateB.velocity.getMagY() - stateB.angularVelocity * rBx -
+                           stateA.velocity.getMagY() + stateA.angularVelocity * rAx;
+        double normalVelocity = relativeX * normalX + relativeY * normalY;
+        if (normalVelocity >= 0.0) {
+            // Already moving apart.
+            return;
+        }
+
+        double normalArmA = cross(rAx, rAy, normalX, normalY);
+        double normalArmB = cross(rBx, rBy, normalX, normalY);
+        double normalK = inverseMassA + inverseMassB +
+                inverseInertiaA * normalArmA * normalArmA + inverseInertiaB * normalArmB * normalArmB;
+        // Slow impacts don't bounce, like in the contact solver.
+        double restitution = normalVelocity < -RESTITUTION_THRESHOLD ? Math.max(a.getRestitution(), b.getRestitution()) : 0.0;
+        double normalImpulse = -(1.0 + restitution) * normalVelocity / normalK;
+
+        double tangentArmA = cross(rAx, rAy, tangentX, tangentY);
+        double tangentArmB = cross(rBx, rBy, tangentX, tangentY);
+        double tangentK = inverseMassA + inverseMassB +
+                inverseInertiaA * tangentArmA * tangentArmA + inverseInertiaB * tangentArmB * tangentArmB;
+        double maxFriction = Math.sqrt(a.getFriction() * b.getFriction()) * normalImpulse;
+        double tangentImpulse = -(relativeX * tangentX + relativeY * tangentY) / tangentK;
+        tangentImpulse = Math.max(-maxFriction, Math.min(maxFriction, tangentImpulse));
+
+        double impulseX = normalImpulse * normalX + tangentImpulse * tangentX;
+        double impulseY = normalImpulse * normalY + tangentImpulse * tangentY;
+        stateA.velocity.set(stateA.velocity.getMagX() - inverseMassA * impulseX,
+                            stateA.velocity.getMagY() - inverseMassA * impulseY);
+        stateA.angularVelocity -= inverseInertiaA * cross(rAx, rAy, impulseX, impulseY);
+        stateB.velocity.set(stateB.velocity.getMagX() + inverseMassB * impulseX,
+                            stateB.velocity.getMagY() + inverseMassB * impulseY);
+        stateB.angularVelocity += inverseInertiaB * cross(rBx, rBy, impulseX, impulseY);
+    }
+
+    /**
+     * Finds how fast two objects are moving towards each other at the fastest of their contact
+     * points, using their next states.
+     *
+     * @return The approach speed (m/s). Zero or negative when they are moving apart.
+     */
+    static double getApproachSpeed(Collidable a, Collidable b, Contact contact) {
+        State stateA = a.getNextState();
+        State stateB = b.getNextState();
+        double approachSpeed = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < contact.pointCount; i++) {
+            double rAx = contact.pointX[i] - stateA.position.getMagX();
+            double rAy = contact.pointY[i] - stateA.position.getMagY();
+            double rBx = contact.pointX[i] - stateB.position.getMagX();
+            double rBy = contact.pointY[i] - stateB.position.getMagY();
+            double relativeX = stateB.velocity.getMagX() + stateB.angularVelocity * rBy -
+                               stateA.velocity.getMagX() - stateA.angularVelocity * rAy;
+            double relativeY = stateB.velocity.getMagY() - stateB.angularVelocity * rBx -
+                               stateA.velocity.getMagY() + stateA.angularVelocity * rAx;
+            approachSpeed = Math.max(approachSpeed, -(relativeX * contact.normalX + relativeY * contact.normalY));
+        }
+        return approachSpeed;
+    }
+
+    private static boolean isSolvable(Collidable object) {
+        return object.isCollisionsEnabled() && object.isCollisionResolutionEnabled() && object.getShape() != null;
+    }
+
+    /**
+     * Forgets the contacts of an object which has been removed from the physics system.
+     *
+     * @param object
+     *        The object that was removed.
+     */
+    void removeObject(Collidable object) {
+        Iterator<Manifold> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            Manifold manifold = iterator.next();
+            if (manifold.first == object || manifold.second == object) {
+                iterator.remove();
+                cache.remove(manifold.pairKey);
+            }
+        }
+    }
+
+    /**
+     * Forgets every contact.
+     */
+    void clear() {
+        active.clear();
+        cache.clear();
+    }
+
+    /**
+     * @return The size of the kept contacts in a snapshot (bytes).
+     */
+    int getSnapshotSize() {
+        int size = 4;
+        for (Manifold manifold : active) {
+            size += 8 + 4 + manifold.pointCount * 4 * 8;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the kept contacts: their number, then each as its pair key, its number of points and
+     * each point as its local position and its normal and friction impulses.
+     */
+    void writeSnapshot(ByteBuffer buffer) {
+        buffer.putInt(active.size());
+        for (Manifold manifold : active) {
+            buffer.putLong(manifold.pairKey);
+            buffer.putInt(manifold.pointCount);
+            for (int i = 0; i < manifold.pointCount; i++) {
+                buffer.putDouble(manifold.localX[i]);
+                buffer.putDouble(manifold.localY[i]);
+                buffer.putDouble(manifold.normalImpulse[i]);
+                buffer.putDouble(manifold.tangentImpulse[i]);
+            }
+        }
+    }
+
+    /**
+     * Checks the kept contacts of a snapshot without changing anything.
+     *
+     * @param buffer
+     *        Positioned at the start of the contacts. Its position is moved past them.
+     *
+     * @param bodiesById
+     *        The objects in the physics system by their body ids.
+     *
+     * @return A description of what is wrong, or null when the contacts can be restored.
+     */
+    static String checkSnapshot(ByteBuffer buffer, Map<Integer, Collidable> bodiesById) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long pairKey = buffer.getLong();
+            int pointCount = buffer.getInt();
+            if (!bodiesById.containsKey((int) (pairKey >>> 32)) || !bodiesById.containsKey((int) pairKey)) {
+                return "Tried to restore a snapshot with a contact between objects that aren't in the system.";
+            }
+            if (pointCount < 0 || pointCount > Contact.MAX_POINTS) {
+                return "Tried to restore a snapshot with a contact of " + pointCount + " points.";
+            }
+            buffer.position(buffer.position() + pointCount * 4 * 8);
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the kept contacts with those of a snapshot, which must have been checked first.
+     */
+    void readSnapshot(ByteBuffer buffer, Map<Integer, Collidable> bodiesById) {
+        clear();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long pairKey = buffer.getLong();
+            Manifold manifold = new Manifold(bodiesById.get((int) (pairKey >>> 32)), bodiesById.get((int) pairKey), pairKey);
+            manifold.pointCount = buffer.getInt();
+            for (int j = 0; j < manifold.pointCount; j++) {
+                manifold.localX[j]         = buffer.getDouble();
+                manifold.localY[j]         = buffer.getDouble();
+                manifold.normalImpulse[j]  = buffer.getDouble();
+                manifold.tangentImpulse[j] = buffer.getDouble();
+            }
+            // Counts as touching in the last step, so the impulses are used in the next one.
+            manifold.lastStep = stepMark;
+            cache.put(pairKey, manifold);
+            active.add(manifold);
+        }
+    }
+}
@@ -0,0 +1,600 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy made of axis aligned bounding boxes. Every leaf holds a
+ * "fattened" box which is slightly bigger than the object it represents, so an object can move a
+ * little every frame without the tree having to be updated. Internal nodes hold the union of their
+ * two children and the tree is kept balanced using rotations whenever a leaf is inserted or
+ * removed.
+ *
+ * The nodes are stored in flat arrays and recycled through a free list so that moving objects
+ * around the tree does not allocate. Nodes are referenced by index, a leaf's index is called its
+ * proxy id.
+ *
+ * The tree isn't thread safe, but a callback may start another query or ray cast of the same tree.
+ */
+final class DynamicAABBTree {
+
+    /** Used as a null reference for node indexes. */
+    static final int NULL_NODE = -1;
+
+    /** The initial number of nodes that space is allocated for. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Called for every leaf whose box overlaps the region being queried.
+     */
+    interface QueryCallback {
+        /**
+         * @param proxyId
+         *        The proxy id of the overlapping leaf.
+         *
+         * @return True to continue the query, false to stop it.
+         */
+        boolean reportProxy(int proxyId);
+    }
+
+    /**
+     * Called for every leaf whose box is crossed by the ray being cast.
+     */
+    interface RayCastCallback {
+        /**
+         * @param proxyId
+         *        The proxy id of the leaf which the ray crosses.
+         *
+         * @param maxFraction
+         *        The current length of the ray as a fraction of the original segment.
+         *
+         * @return The new max fraction to clip the ray to. Return 0.0 to stop the cast
+         *         immediately, or a negative number to ignore this proxy and continue.
+         */
+        double reportRayHit(int proxyId, double maxFraction);
+    }
+
+    // Node storage. A node is a leaf when child1 is NULL_NODE.
+    private double[] minX;
+    private double[] minY;
+    private double[] maxX;
+    private double[] maxY;
+    private int[]    parent;
+    private int[]    child1;
+    private int[]    child2;
+    /** Leaf = 0, free node = -1. */
+    private int[]    height;
+    private Collidable[] userData;
+
+    private int root     = NULL_NODE;
+    private int freeList = NULL_NODE;
+    private int nodeCount = 0;
+    private int capacity  = 0;
+
+    /** The amount each leaf box is grown by on every side (m). */
+    private final double margin;
+
+    /** A reused traversal stack for each level of queries and ray casts started from inside the
+     * callback of another one. */
+    private int[][] stacks = new int[2][];
+    /** The number of queries and ray casts running. */
+    private int traversalDepth = 0;
+
+    /**
+     * Creates a new empty tree.
+     *
+     * @param margin
+     *        The distance (m) leaf boxes are fattened by on every side. Larger margins mean fewer
+     *        tree updates but more false positive pairs.
+     */
+    DynamicAABBTree(double margin) {
+        if (margin < 0.0) {
+            String errorString = "Tried to create an AABB tree with a negative margin.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        this.margin = margin;
+        grow(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a leaf for the given object with a fattened box around the given tight box.
+     *
+     * @return The proxy id of the new leaf.
+     */
+    int createProxy(Collidable object, double lowerX, double lowerY, double upperX, double upperY) {
+        int proxyId = allocateNode();
+        minX[proxyId] = lowerX - margin;
+        minY[proxyId] = lowerY - margin;
+        maxX[proxyId] = upperX + margin;
+        maxY[proxyId] = upperY + margin;
+        userData[proxyId] = object;
+        height[proxyId] = 0;
+
+        insertLeaf(proxyId);
+        return proxyId;
+    }
+
+    /**
+     * Removes the leaf from the tree and recycles its node.
+     */
+    void destroyProxy(int proxyId) {
+        checkLeaf(proxyId);
+        removeLeaf(proxyId);
+        freeNode(proxyId);
+    }
+
+    /**
+     * Updates the box of a leaf. Nothing is done if the tight box still fits inside the fattened
+     * box of the leaf, which is the case for most objects on most frames.
+     *
+     * @return True when the leaf had to be moved in the tree.
+     */
+    boolean moveProxy(int proxyId, double lowerX, double lowerY, double upperX, double upperY) {
+        checkLeaf(proxyId);
+
+        if (minX[proxyId] <= lowerX && minY[proxyId] <= lowerY &&
+            upperX <= maxX[proxyId] && upperY <= maxY[proxyId]) {
+            return false;
+        }
+
+        removeLeaf(proxyId);
+        minX[proxyId] = lowerX - margin;
+        minY[proxyId] = lowerY - margin;
+        maxX[proxyId] = upperX + margin;
+        maxY[proxyId] = upperY + margin;
+        insertLeaf(proxyId);
+        return true;
+    }
+
+    /**
+     * @return The object that the leaf represents.
+     */
+    Collidable getUserData(int proxyId) {
+        return userData[proxyId];
+    }
+
+    double getFatMinX(int proxyId) { return minX[proxyId]; }
+    double getFatMinY(int proxyId) { return minY[proxyId]; }
+    double getFatMaxX(int proxyId) { return maxX[proxyId]; }
+    double getFatMaxY(int proxyId) { return maxY[proxyId]; }
+
+    /**
+     * @return The height of the tree, zero when there is only a root leaf (or no root at all).
+     */
+    int getHeight() {
+        return root == NULL_NODE ? 0 : height[root];
+    }
+
+    /**
+     * @return The number of leaves in the tree.
+     */
+    int getProxyCount() {
+        // Every internal node has exactly two children, so there is one less internal node than
+        // there are leaves.
+        return nodeCount == 0 ? 0 : (nodeCount + 1) / 2;
+    }
+
+    /**
+     * Removes every leaf from the tree. The node storage is kept for reuse.
+     */
+    void clear() {
+        Arrays.fill(userData, null);
+        root = NULL_NODE;
+        nodeCount = 0;
+        freeList = NULL_NODE;
+        for (int i = capacity - 1; i >= 0; i--) {
+            parent[i] = freeList;
+            height[i] = -1;
+            freeList = i;
+        }
+    }
+
+    /**
+     * Reports every leaf whose fattened box overlaps the given region.
+     */
+    void query(double lowerX, double lowerY, double upperX, double upperY, QueryCallback callback) {
+        if (root == NULL_NODE) {
+            return;
+        }
+
+        int level = traversalDepth++;
+        try {
+            int[] stack = getStack(level);
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                if (maxX[node] < lowerX || maxY[node] < lowerY ||
+                    minX[node] > upperX || minY[node] > upperY) {
+                    continue;
+                }
+
+                if (child1[node] == NULL_NODE) {
+                    if (!callback.reportProxy(node)) {
+                        return;
+                    }
+                } else {
+                    if (top + 2 > stack.length) {
+                        stack = growStack(level);
+                    }
+                    stack[top++] = child1[node];
+                    stack[top++] = child2[node];
+                }
+            }
+        } finally {
+            --traversalDepth;
+        }
+    }
+
+    /**
+     * Casts a ray along the segment from (x1, y1) to (x2, y2) and reports every leaf whose
+     * fattened box the (possibly clipped) segment crosses. The callback decides what an actual hit
+     * is and may shorten the ray.
+     */
+    void rayCast(double x1, double y1, double x2, double y2, RayCastCallback callback) {
+        if (root == NULL_NODE) {
+            return;
+        }
+
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double maxFraction = 1.0;
+
+        int level = traversalDepth++;
+        try {
+            int[] stack = getStack(level);
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                if (!isSegmentOverlapping(node, x1, y1, dx, dy, maxFraction)) {
+                    continue;
+                }
+
+                if (child1[node] == NULL_NODE) {
+                    double value = callback.reportRayHit(node, maxFraction);
+                    if (value == 0.0) {
+                        return;
+                    }
+                    if (value > 0.0) {
+                        maxFraction = Math.min(maxFraction, value);
+                    }
+                } else {
+                    if (top + 2 > stack.length) {
+                        stack = growStack(level);
+                    }
+                    stack[top++] = child1[node];
+                    stack[top++] = child2[node];
+                }
+            }
+        } finally {
+            --traversalDepth;
+        }
+    }
+
+    /**
+     * @return The traversal stack of a level, made the first time it is needed.
+     */
+    private int[] getStack(int level) {
+        if (level >= stacks.length) {
+            stacks = Arrays.copyOf(stacks, level * 2);
+        }
+        if (stacks[level] == null) {
+            stacks[level] = new int[64];
+        }
+        return stacks[level];
+    }
+
+    private int[] growStack(int level) {
+        stacks[level] = Arrays.copyOf(stacks[level], stacks[level].length * 2);
+        return stacks[level];
+    }
+
+    /**
+     * Slab test of the segment x1 + t*dx, y1 + t*dy for t in [0, maxFraction] against a node box.
+     */
+    private boolean isSegmentOverlapping(int node, double x1, double y1, double dx, double dy,
+                                         double maxFraction) {
+        double tMin = 0.0;
+        double tMax = maxFraction;
+
+        if (dx == 0.0) {
+            if (x1 < minX[node] || x1 > maxX[node]) {
+                return false;
+            }
+        } else {
+            double inv = 1.0 / dx;
+            double t1 = (minX[node] - x1) * inv;
+            double t2 = (maxX[node] - x1) * inv;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+
+        if (dy == 0.0) {
+            if (y1 < minY[node] || y1 > maxY[node]) {
+                return false;
+            }
+        } else {
+            double inv = 1.0 / dy;
+            double t1 = (minY[node] - y1) * inv;
+            double t2 = (maxY[node] - y1) * inv;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+
+        return tMin <= tMax;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Node pool
+
+    private int allocateNode() {
+        if (freeList == NULL_NODE) {
+            grow(capacity * 2);
+        }
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        height[node] = 0;
+        userData[node] = null;
+        ++nodeCount;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        userData[node] = null;
+        freeList = node;
+        --nodeCount;
+    }
+
+    private void grow(int newCapacity) {
+        int oldCapacity = capacity;
+        minX     = minX     == null ? new double[newCapacity] : Arrays.copyOf(minX, newCapacity);
+        minY     = minY     == null ? new double[newCapacity] : Arrays.copyOf(minY, newCapacity);
+        maxX     = maxX     == null ? new double[newCapacity] : Arrays.copyOf(maxX, newCapacity);
+        maxY     = maxY     == null ? new double[newCapacity] : Arrays.copyOf(maxY, newCapacity);
+        parent   = parent   == null ? new int[newCapacity]    : Arrays.copyOf(parent, newCapacity);
+        child1   = child1   == null ? new int[newCapacity]    : Arrays.copyOf(child1, newCapacity);
+        child2   = child2   == null ? new int[newCapacity]    : Arrays.copyOf(child2, newCapacity);
+        height   = height   == null ? new int[newCapacity]    : Arrays.copyOf(height, newCapacity);
+        userData = userData == null ? new Collidable[newCapacity] : Arrays.copyOf(userData, newCapacity);
+        capacity = newCapacity;
+
+        // Chain the new nodes onto the free list.
+        for (int i = capacity - 1; i >= oldCapacity; i--) {
+            parent[i] = freeList;
+            height[i] = -1;
+            freeList = i;
+        }
+    }
+
+    private void checkLeaf(int proxyId) {
+        if (proxyId < 0 || proxyId >= capacity || height[proxyId] != 0 || child1[proxyId] != NULL_NODE) {
+            String errorString = "Tried to use an invalid AABB tree proxy id: " + proxyId;
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Tree maintenance
+
+    private static double perimeter(double lowerX, double lowerY, double upperX, double upperY) {
+        return 2.0 * ((upperX - lowerX) + (upperY - lowerY));
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parent[root] = NULL_NODE;
+            return;
+        }
+
+        // Find the best sibling for the new leaf using the surface area heuristic.
+        double leafMinX = minX[leaf];
+        double leafMinY = minY[leaf];
+        double leafMaxX = maxX[leaf];
+        double leafMaxY = maxY[leaf];
+        int index = root;
+        while (child1[index] != NULL_NODE) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            double area = perimeter(minX[index], minY[index], maxX[index], maxY[index]);
+            double combinedArea = perimeter(
+                    Math.min(minX[index], leafMinX), Math.min(minY[index], leafMinY),
+                    Math.max(maxX[index], leafMaxX), Math.max(maxY[index], leafMaxY));
+
+            // Cost of creating a new parent for this node and the new leaf.
+            double cost = 2.0 * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree.
+            double inheritanceCost = 2.0 * (combinedArea - area);
+
+            double cost1 = descendCost(c1, leafMinX, leafMinY, leafMaxX, leafMaxY) + inheritanceCost;
+            double cost2 = descendCost(c2, leafMinX, leafMinY, leafMaxX, leafMaxY) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+
+        // Create a new parent for the sibling and the leaf.
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        userData[newParent] = null;
+        minX[newParent] = Math.min(leafMinX, minX[sibling]);
+        minY[newParent] = Math.min(leafMinY, minY[sibling]);
+        maxX[newParent] = Math.max(leafMaxX, maxX[sibling]);
+        maxY[newParent] = Math.max(leafMaxY, maxY[sibling]);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL_NODE) {
+            if (child1[oldParent] == sibling) {
+                child1[oldParent] = newParent;
+            } else {
+                child2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refitAncestors(parent[leaf]);
+    }
+
+    /**
+     * The cost of putting the leaf somewhere under the given child.
+     */
+    private double descendCost(int child, double leafMinX, double leafMinY, double leafMaxX, double leafMaxY) {
+        double combinedArea = perimeter(
+                Math.min(minX[child], leafMinX), Math.min(minY[child], leafMinY),
+                Math.max(maxX[child], leafMaxX), Math.max(maxY[child], leafMaxY));
+        if (child1[child] == NULL_NODE) {
+            return combinedArea;
+        }
+        return combinedArea - perimeter(minX[child], minY[child], maxX[child], maxY[child]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+
+        int leafParent = parent[leaf];
+        int grandParent = parent[leafParent];
+        int sibling = child1[leafParent] == leaf ? child2[leafParent] : child1[leafParent];
+
+        if (grandParent != NULL_NODE) {
+            // Destroy the parent and connect the sibling to the grand parent.
+            if (child1[grandParent] == leafParent) {
+                child1[grandParent] = sibling;
+            } else {
+                child2[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            freeNode(leafParent);
+
+            refitAncestors(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(leafParent);
+        }
+    }
+
+    /**
+     * Walks from the given node to the root, rebalancing and recomputing boxes and heights.
+     */
+    private void refitAncestors(int start) {
+        int index = start;
+        while (index != NULL_NODE) {
+            index = balance(index);
+
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+
+            index = parent[index];
+        }
+    }
+
+    private void setUnion(int node, int a, int b) {
+        minX[node] = Math.min(minX[a], minX[b]);
+        minY[node] = Math.min(minY[a], minY[b]);
+        maxX[node] = Math.max(maxX[a], maxX[b]);
+        maxY[node] = Math.max(maxY[a], maxY[b]);
+    }
+
+    /**
+     * Performs a left or right rotation if node A is imbalanced.
+     *
+     * @return The index of the node which is now in A's position in the tree.
+     */
+    private int balance(int iA) {
+        if (child1[iA] == NULL_NODE || height[iA] < 2) {
+            return iA;
+        }
+
+        int iB = child1[iA];
+        int iC = child2[iA];
+        int balance = height[iC] - height[iB];
+
+        if (balance > 1) {
+            return rotate(iA, iC, iB, true);
+        }
+        if (balance < -1) {
+            return rotate(iA, iB, iC, false);
+        }
+        return iA;
+    }
+
+    /**
+     * Rotates the taller child up into A's position.
+     *
+     * @param iA
+     *        The imbalanced node.
+     *
+     * @param iUp
+     *        The taller child of A, which is moved up.
+     *
+     * @param iOther
+     *        The shorter child of A, which stays under A.
+     *
+     * @param upWasChild2
+     *        Whether the taller child was A's second child.
+     *
+     * @return The index of the node now in A's old position (i.e. iUp).
+     */
+    private int rotate(int iA, int iUp, int iOther, boolean upWasChild2) {
+        int iF = child1[iUp];
+        int iG = child2[iUp];
+
+        // Swap A and Up.
+        child1[iUp] = iA;
+        parent[iUp] = parent[iA];
+        parent[iA] = iUp;
+
+        if (parent[iUp] != NULL_NODE) {
+            if (child1[parent[iUp]] == iA) {
+                child1[parent[iUp]] = iUp;
+            } else {
+                child2[parent[iUp]] = iUp;
+            }
+        } else {
+            root = iUp;
+        }
+
+        // Keep the taller grand child under Up, move the shorter one under A.
+        int iKeep  = height[iF] > height[iG] ? iF : iG;
+        int iMove  = iKeep == iF ? iG : iF;
+        child2[iUp] = iKeep;
+        if (upWasChild2) {
+            child2[iA] = iMove;
+        } else {
+            child1[iA] = iMove;
+        }
+        parent[iMove] = iA;
+
+        setUnion(iA, iOther, iMove);
+        setUnion(iUp, iA, iKeep);
+        height[iA]  = 1 + Math.max(height[iOther], height[iMove]);
+        height[iUp] = 1 + Math.max(height[iA], height[iKeep]);
+
+        return iUp;
+    }
+}
@@ -0,0 +1,89 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * The outcome of running the physics without a display and without pacing it to real time.
+ *
+ * @see PhysicsSystem#runHeadless
+ */
+public final class HeadlessResult {
+
+    static final private String NL = System.getProperty("line.separator");
+    static final private double NANOSECOND_TO_SECOND = 0.000000001;
+
+    private final long   numSteps;
+    private final long   numBodySteps;
+    private final double simulatedTime;
+    private final long   elapsedNanos;
+    private final long   checksum;
+
+    HeadlessResult(long numSteps, long numBodySteps, double simulatedTime, long elapsedNanos, long checksum) {
+        this.numSteps      = numSteps;
+        this.numBodySteps  = numBodySteps;
+        this.simulatedTime = simulatedTime;
+        this.elapsedNanos  = elapsedNanos;
+        this.checksum      = checksum;
+    }
+
+    /**
+     * @return The number of physics steps that were taken.
+     */
+    public long getStepCount() {
+        return numSteps;
+    }
+
+    /**
+     * @return The sum over every step of the number of objects in the physics system.
+     */
+    public long getBodyStepCount() {
+        return numBodySteps;
+    }
+
+    /**
+     * @return The amount of time that was simulated (s).
+     */
+    public double getSimulatedTime() {
+        return simulatedTime;
+    }
+
+    /**
+     * @return The wall clock time the run took (s).
+     */
+    public double getElapsedTime() {
+        return elapsedNanos * NANOSECOND_TO_SECOND;
+    }
+
+    /**
+     * @return The number of physics steps taken per second of wall clock time.
+     */
+    public double getStepsPerSecond() {
+        return elapsedNanos > 0 ? numSteps / getElapsedTime() : 0.0;
+    }
+
+    /**
+     * @return The number of object updates per second of wall clock time.
+     */
+    public double getBodyStepsPerSecond() {
+        return elapsedNanos > 0 ? numBodySteps / getElapsedTime() : 0.0;
+    }
+
+    /**
+     * @return The checksum of the state of every object at the end of the run.
+     *
+     * @see PhysicsSystem#getStateChecksum
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public String toString() {
+        String retString = "";
+        retString += "steps:           " + numSteps                 + NL;
+        retString += "simulated time:  " + simulatedTime + " s"     + NL;
+        retString += "elapsed time:    " + getElapsedTime() + " s"  + NL;
+        retString += "steps/s:         " + getStepsPerSecond()      + NL;
+        retString += "body steps/s:    " + getBodyStepsPerSecond()  + NL;
+        retString += "checksum:        " + String.format("%016x", checksum) + NL;
+        return retString;
+    }
+}
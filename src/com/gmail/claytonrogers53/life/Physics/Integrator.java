@@ -0,0 +1,142 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * The ways a {@link PhysicsObject} can be moved forward in time. They all give the same result
+ * when no force acts on the object, and differ in how well they follow the object when the force
+ * changes as it moves (for example a spring). Everything is done with local doubles, so none of
+ * them create any new objects.
+ */
+public enum Integrator {
+
+    /**
+     * Updates the velocity first and then moves with the new velocity. First order, but keeps the
+     * energy of an orbit or a spring steady over a long time. The cheapest, one force evaluation
+     * per step.
+     */
+    SEMI_IMPLICIT_EULER {
+        @Override
+        void integrate(PhysicsObject object, State from, State to, double time) {
+            double posX = from.position.getMagX();
+            double posY = from.position.getMagY();
+            double velX = from.velocity.getMagX();
+            double velY = from.velocity.getMagY();
+
+            object.calculateAcceleration(posX, posY, velX, velY, from.angle, from.angularVelocity);
+            velX += object.accelerationX * time;
+            velY += object.accelerationY * time;
+            double angularVelocity = from.angularVelocity + object.angularAcceleration * time;
+
+            to.position.set(posX + velX * time, posY + velY * time);
+            to.velocity.set(velX, velY);
+            to.angle = from.angle + angularVelocity * time;
+            to.angularVelocity = angularVelocity;
+        }
+    },
+
+    /**
+     * Moves with the starting acceleration, then averages the starting and ending accelerations
+     * for the new velocity. Second order, two force evaluations per step.
+     */
+    VELOCITY_VERLET {
+        @Override
+        void integrate(PhysicsObject object, State from, State to, double time) {
+            double posX = from.position.getMagX();
+            double posY = from.position.getMagY();
+            double velX = from.velocity.getMagX();
+            double velY = from.velocity.getMagY();
+            double angle = from.angle;
+            double angularVelocity = from.angularVelocity;
+            double halfTimeSquared = 0.5 * time * time;
+
+            object.calculateAcceleration(posX, posY, velX, velY, angle, angularVelocity);
+            double startX = object.accelerationX;
+            double startY = object.accelerationY;
+            double startAngular = object.angularAcceleration;
+
+            double endPosX = posX + velX * time + startX * halfTimeSquared;
+            double endPosY = posY + velY * time + startY * halfTimeSquared;
+            double endAngle = angle + angularVelocity * time + startAngular * halfTimeSquared;
+            // Forces which depend on the velocity get an estimate of the end velocity.
+            object.calculateAcceleration(endPosX, endPosY, velX + startX * time, velY + startY * time,
+                    endAngle, angularVelocity + startAngular * time);
+
+            to.position.set(endPosX, endPosY);
+            to.velocity.set(velX + 0.5 * (startX + object.accelerationX) * time,
+                            velY + 0.5 * (startY + object.accelerationY) * time);
+            to.angle = endAngle;
+            to.angularVelocity = angularVelocity + 0.5 * (startAngular + object.angularAcceleration) * time;
+        }
+    },
+
+    /**
+     * The classic fourth order Runge-Kutta method. The most accurate for smooth forces, but takes
+     * four force evaluations per step and slowly loses (or gains) energy over a long time.
+     */
+    RK4 {
+        @Override
+        void integrate(PhysicsObject object, State from, State to, double time) {
+            double halfTime = 0.5 * time;
+            double posX = from.position.getMagX();
+            double posY = from.position.getMagY();
+            double angle = from.angle;
+
+            // Each stage is the velocity and acceleration at a trial point.
+            double velX1 = from.velocity.getMagX();
+            double velY1 = from.velocity.getMagY();
+            double angVel1 = from.angularVelocity;
+            object.calculateAcceleration(posX, posY, velX1, velY1, angle, angVel1);
+            double accX1 = object.accelerationX;
+            double accY1 = object.accelerationY;
+            double angAcc1 = object.angularAcceleration;
+
+            double velX2 = velX1 + accX1 * halfTime;
+            double velY2 = velY1 + accY1 * halfTime;
+            double angVel2 = angVel1 + angAcc1 * halfTime;
+            object.calculateAcceleration(posX + velX1 * halfTime, posY + velY1 * halfTime,
+                    velX2, velY2, angle + angVel1 * halfTime, angVel2);
+            double accX2 = object.accelerationX;
+            double accY2 = object.accelerationY;
+            double angAcc2 = object.angularAcceleration;
+
+            double velX3 = velX1 + accX2 * halfTime;
+            double velY3 = velY1 + accY2 * halfTime;
+            double angVel3 = angVel1 + angAcc2 * halfTime;
+            object.calculateAcceleration(posX + velX2 * halfTime, posY + velY2 * halfTime,
+                    velX3, velY3, angle + angVel2 * halfTime, angVel3);
+            double accX3 = object.accelerationX;
+            double accY3 = object.accelerationY;
+            double angAcc3 = object.angularAcceleration;
+
+            double velX4 = velX1 + accX3 * time;
+            double velY4 = velY1 + accY3 * time;
+            double angVel4 = angVel1 + angAcc3 * time;
+            object.calculateAcceleration(posX + velX3 * time, posY + velY3 * time,
+                    velX4, velY4, angle + angVel3 * time, angVel4);
+
+            double sixthTime = time / 6.0;
+            to.position.set(posX + sixthTime * (velX1 + 2.0 * velX2 + 2.0 * velX3 + velX4),
+                            posY + sixthTime * (velY1 + 2.0 * velY2 + 2.0 * velY3 + velY4));
+            to.velocity.set(velX1 + sixthTime * (accX1 + 2.0 * accX2 + 2.0 * accX3 + object.accelerationX),
+                            velY1 + sixthTime * (accY1 + 2.0 * accY2 + 2.0 * accY3 + object.accelerationY));
+            to.angle = angle + sixthTime * (angVel1 + 2.0 * angVel2 + 2.0 * angVel3 + angVel4);
+            to.angularVelocity = angVel1 + sixthTime * (angAcc1 + 2.0 * angAcc2 + 2.0 * angAcc3 + object.angularAcceleration);
+        }
+    };
+
+    /**
+     * Moves an object forward in time. The transform of the new state is not updated.
+     *
+     * @param object
+     *        The object, which gives the acceleration at each trial point.
+     *
+     * @param from
+     *        The state to start from. Not changed.
+     *
+     * @param to
+     *        The state to write the result into. Must not be the same as from.
+     *
+     * @param time
+     *        How far to move forward (s).
+     */
+    abstract void integrate(PhysicsObject object, State from, State to, double time);
+}
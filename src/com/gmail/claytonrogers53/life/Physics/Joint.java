@@ -0,0 +1,63 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * A joint between two objects in a physics system, made with one of the add joint methods of
+ * {@link PhysicsSystem}. The joint is solved together with the resting contacts every step, so it
+ * holds the objects together exactly (apart from a small drift which is corrected over a few
+ * steps) without the tiny time steps that a stiff spring would need.
+ *
+ * The two objects of a joint never collide with each other.
+ */
+public final class Joint {
+
+    /**
+     * The kinds of joints.
+     */
+    public enum Type {
+        /** Pins a point of each object together, the objects are free to turn about it. */
+        HINGE,
+        /** Keeps a point of each object at a fixed distance from each other, like a rod. */
+        DISTANCE,
+        /** Stops a point of each object from getting further apart than a length, like a rope. */
+        ROPE,
+        /** Pins a point of each object together and stops the objects from turning. */
+        WELD
+    }
+
+    private final Type type;
+    private final Collidable first;
+    private final Collidable second;
+    /** Where the joint is kept in the flat arrays of the joint solver, -1 once it is removed. */
+    int slot = -1;
+
+    Joint(Type type, Collidable first, Collidable second) {
+        this.type = type;
+        this.first = first;
+        this.second = second;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The first object the joint was made with.
+     */
+    public Collidable getFirstObject() {
+        return first;
+    }
+
+    /**
+     * @return The second object the joint was made with.
+     */
+    public Collidable getSecondObject() {
+        return second;
+    }
+
+    /**
+     * @return True until the joint is removed, either directly or along with one of its objects.
+     */
+    public boolean isActive() {
+        return slot >= 0;
+    }
+}
@@ -0,0 +1,533 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps the joints between objects and solves them with sequential impulses, inside the iteration
+ * loop of the {@link ContactSolver}: each time the contacts are gone over, the joints are gone
+ * over first. Solving everything together lets a chain of objects hanging off each other settle,
+ * which solving the joints and the contacts separately would never quite do.
+ *
+ * Everything about the joints is kept in flat arrays by slot, so going over them touches as little
+ * memory as possible. Removing a joint moves the last one into its slot. The total impulse of each
+ * joint is kept between steps and is applied again at the start of the next one (warm starting),
+ * and is included in the snapshots.
+ *
+ * Drift from the rounding and from collisions within the step is pushed back out a fraction at a
+ * time, the same way as the overlap of the contacts.
+ */
+final class JointSolver {
+
+    private static final int HINGE    = 0;
+    private static final int DISTANCE = 1;
+    private static final int ROPE     = 2;
+    private static final int WELD     = 3;
+
+    private int count = 0;
+    private Joint[] joints = new Joint[8];
+    private int[]   kinds  = new int[8];
+    /** The anchor points in the local coordinates of each object (m). */
+    private double[] localAX = new double[8];
+    private double[] localAY = new double[8];
+    private double[] localBX = new double[8];
+    private double[] localBY = new double[8];
+    /** The length of a distance or rope joint (m), or the angle between the objects of a weld (rad). */
+    private double[] reference = new double[8];
+    /** The total impulses applied by each joint: linear (N*s), or along the joint for a distance or
+     * rope joint, and angular for a weld. */
+    private double[] impulseX     = new double[8];
+    private double[] impulseY     = new double[8];
+    private double[] impulseAngle = new double[8];
+
+    // Only used within a step.
+    private int[]    indexA      = new int[8];
+    private int[]    indexB      = new int[8];
+    private double[] rAx         = new double[8];
+    private double[] rAy         = new double[8];
+    private double[] rBx         = new double[8];
+    private double[] rBy         = new double[8];
+    /** The direction from the first anchor to the second, for distance and rope joints. */
+    private double[] axisX       = new double[8];
+    private double[] axisY       = new double[8];
+    /** The inverse of the 2x2 mass matrix of the anchor points, which is symmetric. */
+    private double[] mass11      = new double[8];
+    private double[] mass12      = new double[8];
+    private double[] mass22      = new double[8];
+    /** The mass along the axis, or the angular mass of a weld. */
+    private double[] axialMass   = new double[8];
+    private double[] angularMass = new double[8];
+    private double[] biasX       = new double[8];
+    private double[] biasY       = new double[8];
+    private double[] biasAxial   = new double[8];
+    private double[] biasAngle   = new double[8];
+    /** The slots of the joints being solved this step. */
+    private int[]    activeSlots = new int[8];
+    private int      activeCount = 0;
+
+    /** The number of joints between each pair of objects, by pair key. */
+    private final PairMap<int[]> joinedPairs = new PairMap<>(16);
+    private SolverBodies bodies = null;
+
+    /**
+     * @return The number of joints.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The joint in a slot.
+     */
+    Joint getJoint(int slot) {
+        return joints[slot];
+    }
+
+    // The anchors and reference value of the joint in a slot, as they were given to add.
+    double getAnchorAX(int slot) {
+        return localAX[slot];
+    }
+
+    double getAnchorAY(int slot) {
+        return localAY[slot];
+    }
+
+    double getAnchorBX(int slot) {
+        return localBX[slot];
+    }
+
+    double getAnchorBY(int slot) {
+        return localBY[slot];
+    }
+
+    double getReference(int slot) {
+        return reference[slot];
+    }
+
+    /**
+     * Adds a joint. The anchors must already be in the local coordinates of the objects.
+     *
+     * @param joint
+     *        The new joint, which isn't in any solver yet.
+     *
+     * @param anchorAX
+     *        The x position of the anchor on the first object (m).
+     *
+     * @param anchorAY
+     *        The y position of the anchor on the first object (m).
+     *
+     * @param anchorBX
+     *        The x position of the anchor on the second object (m).
+     *
+     * @param anchorBY
+     *        The y position of the anchor on the second object (m).
+     *
+     * @param referenceValue
+     *        The length of a distance or rope joint (m), or the angle between the objects of a
+     *        weld (rad). Not used by a hinge.
+     */
+    void add(Joint joint, double anchorAX, double anchorAY, double anchorBX, double anchorBY, double referenceValue) {
+        if (count == joints.length) {
+            grow(2 * count);
+        }
+        int slot = count++;
+        joints[slot] = joint;
+        switch (joint.getType()) {
+            case HINGE:    kinds[slot] = HINGE;    break;
+            case DISTANCE: kinds[slot] = DISTANCE; break;
+            case ROPE:     kinds[slot] = ROPE;     break;
+            case WELD:     kinds[slot] = WELD;     break;
+        }
+        localAX[slot] = anchorAX;
+        localAY[slot] = anchorAY;
+        localBX[slot] = anchorBX;
+        localBY[slot] = anchorBY;
+        reference[slot] = referenceValue;
+        impulseX[slot] = impulseY[slot] = impulseAngle[slot] = 0.0;
+        joint.slot = slot;
+
+        long pairKey = getPairKey(joint.getFirstObject(), joint.getSecondObject());
+        int[] numJoints = joinedPairs.get(pairKey);
+        if (numJoints == null) {
+            joinedPairs.put(pairKey, new int[] {1});
+        } else {
+            ++numJoints[0];
+        }
+    }
+
+    /**
+     * Removes a joint. Does nothing if the joint isn't in the solver.
+     *
+     * @return True when the joint was removed.
+     */
+    boolean remove(Joint joint) {
+        int slot = joint.slot;
+        if (slot < 0 || slot >= count || joints[slot] != joint) {
+            return false;
+        }
+        int last = --count;
+        if (slot != last) {
+            joints[slot]       = joints[last];
+            kinds[slot]        = kinds[last];
+            localAX[slot]      = localAX[last];
+            localAY[slot]      = localAY[last];
+            localBX[slot]      = localBX[last];
+            localBY[slot]      = localBY[last];
+            reference[slot]    = reference[last];
+            impulseX[slot]     = impulseX[last];
+            impulseY[slot]     = impulseY[last];
+            impulseAngle[slot] = impulseAngle[last];
+            joints[slot].slot  = slot;
+        }
+        joints[last] = null;
+        joint.slot = -1;
+
+        long pairKey = getPairKey(joint.getFirstObject(), joint.getSecondObject());
+        int[] numJoints = joinedPairs.get(pairKey);
+        if (--numJoints[0] == 0) {
+            joinedPairs.remove(pairKey);
+        }
+        return true;
+    }
+
+    /**
+     * Removes every joint of an object which has been removed from the physics system.
+     *
+     * @return True when any joint was removed.
+     */
+    boolean removeObject(Collidable object) {
+        boolean isRemoved = false;
+        // Backwards, since the last joint is moved into the slot of a removed one.
+        for (int slot = count - 1; slot >= 0; slot--) {
+            Joint joint = joints[slot];
+            if (joint.getFirstObject() == object || joint.getSecondObject() == object) {
+                remove(joint);
+                isRemoved = true;
+            }
+        }
+        return isRemoved;
+    }
+
+    /**
+     * Removes every joint.
+     */
+    void clear() {
+        for (int slot = 0; slot < count; slot++) {
+            joints[slot].slot = -1;
+            joints[slot] = null;
+        }
+        count = 0;
+        joinedPairs.clear();
+    }
+
+    /**
+     * @return True when there is a joint between the two objects. May be called from the threads
+     *         of a collision system while the joints aren't being changed.
+     */
+    boolean isJoined(Collidable first, Collidable second) {
+        return joinedPairs.size() > 0 && joinedPairs.get(getPairKey(first, second)) != null;
+    }
+
+    private static long getPairKey(Collidable object, Collidable other) {
+        return object.getBodyId() < other.getBodyId() ? Collision.getPairKey(object, other)
+                                                      : Collision.getPairKey(other, object);
+    }
+
+    /**
+     * Wakes up a sleeping object when the object it is joined to is moving, otherwise the sleeping
+     * one acts like it is fixed in place. Must be called before the objects are loaded into the
+     * solver bodies.
+     */
+    void wakeJoinedObjects() {
+        for (int slot = 0; slot < count; slot++) {
+            Collidable first  = joints[slot].getFirstObject();
+            Collidable second = joints[slot].getSecondObject();
+            if (first.isSleeping() == second.isSleeping()) {
+                continue;
+            }
+            Collidable sleeper = first.isSleeping() ? first : second;
+            Collidable mover   = sleeper == first ? second : first;
+            double armLength = mover == first ? Math.hypot(localAX[slot], localAY[slot])
+                                              : Math.hypot(localBX[slot], localBY[slot]);
+            State state = mover.getState();
+            if (state.velocity.getMag() + Math.abs(state.angularVelocity) * armLength > ContactSolver.WAKE_SPEED) {
+                sleeper.wakeUp();
+            }
+        }
+    }
+
+    /**
+     * Loads the objects of the joints into the solver bodies, works out everything about each joint
+     * which doesn't change while solving and applies the impulses of the last step.
+     *
+     * @param solverBodies
+     *        The bodies the contacts have already been loaded into.
+     *
+     * @param physicsDT_seconds
+     *        The length of the time step (s).
+     *
+     * @param isWarmStarting
+     *        True to start from the impulses of the last step, false to start from nothing.
+     *
+     * @return The number of joints to be solved this step. Joints between two sleeping or fixed
+     *         objects are left out.
+     */
+    int prepare(SolverBodies solverBodies, double physicsDT_seconds, boolean isWarmStarting) {
+        bodies = solverBodies;
+        activeCount = 0;
+        if (count > activeSlots.length) {
+            growStepArrays(joints.length);
+        }
+
+        double biasFactor = ContactSolver.BAUMGARTE / physicsDT_seconds;
+        for (int slot = 0; slot < count; slot++) {
+            Collidable first  = joints[slot].getFirstObject();
+            Collidable second = joints[slot].getSecondObject();
+            if (first.isSleeping() && second.isSleeping()) {
+                continue;
+            }
+            int a = bodies.getIndex(first, physicsDT_seconds);
+            int b = bodies.getIndex(second, physicsDT_seconds);
+            if (bodies.isFixed(a) && bodies.isFixed(b)) {
+                continue;
+            }
+            indexA[slot] = a;
+            indexB[slot] = b;
+            activeSlots[activeCount++] = slot;
+
+            // The arms from the centres of mass to the anchors, rotated clockwise like the state
+            // transform.
+            State stateA = first.getState();
+            State stateB = second.getState();
+            double cosA = StrictMath.cos(stateA.angle), sinA = StrictMath.sin(stateA.angle);
+            double cosB = StrictMath.cos(stateB.angle), sinB = StrictMath.sin(stateB.angle);
+            double armAX =  cosA * localAX[slot] + sinA * localAY[slot];
+            double armAY = -sinA * localAX[slot] + cosA * localAY[slot];
+            double armBX =  cosB * localBX[slot] + sinB * localBY[slot];
+            double armBY = -sinB * localBX[slot] + cosB * localBY[slot];
+            rAx[slot] = armAX;
+            rAy[slot] = armAY;
+            rBx[slot] = armBX;
+            rBy[slot] = armBY;
+            double separationX = stateB.position.getMagX() + armBX - stateA.position.getMagX() - armAX;
+            double separationY = stateB.position.getMagY() + armBY - stateA.position.getMagY() - armAY;
+
+            double massA = bodies.inverseMass[a], inertiaA = bodies.inverseInertia[a];
+            double massB = bodies.inverseMass[b], inertiaB = bodies.inverseInertia[b];
+            if (kinds[slot] == HINGE || kinds[slot] == WELD) {
+                double k11 = massA + massB + inertiaA * armAY * armAY + inertiaB * armBY * armBY;
+                double k12 = -inertiaA * armAX * armAY - inertiaB * armBX * armBY;
+                double k22 = massA + massB + inertiaA * armAX * armAX + inertiaB * armBX * armBX;
+                double determinant = k11 * k22 - k12 * k12;
+                double inverse = determinant != 0.0 ? 1.0 / determinant : 0.0;
+                mass11[slot] =  k22 * inverse;
+                mass12[slot] = -k12 * inverse;
+                mass22[slot] =  k11 * inverse;
+                biasX[slot] = biasFactor * separationX;
+                biasY[slot] = biasFactor * separationY;
+                if (kinds[slot] == WELD) {
+                    double k = inertiaA + inertiaB;
+                    angularMass[slot] = k > 0.0 ? 1.0 / k : 0.0;
+                    biasAngle[slot] = biasFactor * (stateB.angle - stateA.angle - reference[slot]);
+                } else {
+                    impulseAngle[slot] = 0.0;
+                }
+            } else {
+                double length = Math.sqrt(separationX * separationX + separationY * separationY);
+                double directionX = length > 0.0 ? separationX / length : 0.0;
+                double directionY = length > 0.0 ? separationY / length : 0.0;
+                axisX[slot] = directionX;
+                axisY[slot] = directionY;
+                double armA = armAY * directionX - armAX * directionY;
+                double armB = armBY * directionX - armBX * directionY;
+                double k = massA + massB + inertiaA * armA * armA + inertiaB * armB * armB;
+                axialMass[slot] = k > 0.0 && length > 0.0 ? 1.0 / k : 0.0;
+                double stretch = length - reference[slot];
+                if (kinds[slot] == ROPE && stretch < 0.0) {
+                    // A slack rope may close up to the slack within the step, and doesn't pull.
+                    biasAxial[slot] = stretch / physicsDT_seconds;
+                    impulseX[slot] = 0.0;
+                } else {
+                    biasAxial[slot] = biasFactor * stretch;
+                }
+                impulseY[slot] = impulseAngle[slot] = 0.0;
+            }
+
+            if (!isWarmStarting) {
+                impulseX[slot] = impulseY[slot] = impulseAngle[slot] = 0.0;
+            } else if (kinds[slot] == HINGE || kinds[slot] == WELD) {
+                applyLinear(slot, impulseX[slot], impulseY[slot]);
+                applyAngular(slot, impulseAngle[slot]);
+            } else {
+                applyLinear(slot, impulseX[slot] * axisX[slot], impulseX[slot] * axisY[slot]);
+            }
+        }
+        return activeCount;
+    }
+
+    /**
+     * @return The index in the solver bodies of the first object of a joint being solved.
+     */
+    int getIndexA(int activeIndex) {
+        return indexA[activeSlots[activeIndex]];
+    }
+
+    /**
+     * @return The index in the solver bodies of the second object of a joint being solved.
+     */
+    int getIndexB(int activeIndex) {
+        return indexB[activeSlots[activeIndex]];
+    }
+
+    /**
+     * Goes over a single joint once. Joints which don't share an object which can move may be
+     * solved at the same time.
+     *
+     * @param activeIndex
+     *        From 0 to the number of joints being solved this step.
+     */
+    void solve(int activeIndex) {
+        int slot = activeSlots[activeIndex];
+        int a = indexA[slot];
+        int b = indexB[slot];
+        double[] velocityX = bodies.velocityX;
+        double[] velocityY = bodies.velocityY;
+        double[] angularVelocity = bodies.angularVelocity;
+
+        if (kinds[slot] == WELD) {
+            double angularSpeed = angularVelocity[b] - angularVelocity[a];
+            double impulse = -angularMass[slot] * (angularSpeed + biasAngle[slot]);
+            impulseAngle[slot] += impulse;
+            applyAngular(slot, impulse);
+        }
+
+        // How fast the second anchor is moving away from the first.
+        double relativeX = velocityX[b] + angularVelocity[b] * rBy[slot] - velocityX[a] - angularVelocity[a] * rAy[slot];
+        double relativeY = velocityY[b] - angularVelocity[b] * rBx[slot] - velocityY[a] + angularVelocity[a] * rAx[slot];
+        if (kinds[slot] == HINGE || kinds[slot] == WELD) {
+            double rightX = relativeX + biasX[slot];
+            double rightY = relativeY + biasY[slot];
+            double changeX = -(mass11[slot] * rightX + mass12[slot] * rightY);
+            double changeY = -(mass12[slot] * rightX + mass22[slot] * rightY);
+            impulseX[slot] += changeX;
+            impulseY[slot] += changeY;
+            applyLinear(slot, changeX, changeY);
+        } else {
+            double axialSpeed = relativeX * axisX[slot] + relativeY * axisY[slot];
+            double change = -axialMass[slot] * (axialSpeed + biasAxial[slot]);
+            if (kinds[slot] == ROPE) {
+                // A rope can only pull the objects together.
+                double oldImpulse = impulseX[slot];
+                impulseX[slot] = Math.min(0.0, oldImpulse + change);
+                change = impulseX[slot] - oldImpulse;
+            } else {
+                impulseX[slot] += change;
+            }
+            applyLinear(slot, change * axisX[slot], change * axisY[slot]);
+        }
+    }
+
+    /**
+     * Applies a linear impulse to the second object at its anchor, and the opposite impulse to the
+     * first object.
+     */
+    private void applyLinear(int slot, double changeX, double changeY) {
+        bodies.applyImpulse(indexA[slot], rAx[slot], rAy[slot], -changeX, -changeY);
+        bodies.applyImpulse(indexB[slot], rBx[slot], rBy[slot], changeX, changeY);
+    }
+
+    private void applyAngular(int slot, double impulse) {
+        bodies.applyAngularImpulse(indexA[slot], -impulse);
+        bodies.applyAngularImpulse(indexB[slot], impulse);
+    }
+
+    private void grow(int capacity) {
+        joints       = Arrays.copyOf(joints, capacity);
+        kinds        = Arrays.copyOf(kinds, capacity);
+        localAX      = Arrays.copyOf(localAX, capacity);
+        localAY      = Arrays.copyOf(localAY, capacity);
+        localBX      = Arrays.copyOf(localBX, capacity);
+        localBY      = Arrays.copyOf(localBY, capacity);
+        reference    = Arrays.copyOf(reference, capacity);
+        impulseX     = Arrays.copyOf(impulseX, capacity);
+        impulseY     = Arrays.copyOf(impulseY, capacity);
+        impulseAngle = Arrays.copyOf(impulseAngle, capacity);
+    }
+
+    private void growStepArrays(int capacity) {
+        indexA      = new int[capacity];
+        indexB      = new int[capacity];
+        rAx         = new double[capacity];
+        rAy         = new double[capacity];
+        rBx         = new double[capacity];
+        rBy         = new double[capacity];
+        axisX       = new double[capacity];
+        axisY       = new double[capacity];
+        mass11      = new double[capacity];
+        mass12      = new double[capacity];
+        mass22      = new double[capacity];
+        axialMass   = new double[capacity];
+        angularMass = new double[capacity];
+        biasX       = new double[capacity];
+        biasY       = new double[capacity];
+        biasAxial   = new double[capacity];
+        biasAngle   = new double[capacity];
+        activeSlots = new int[capacity];
+    }
+
+    /**
+     * @return The size of the kept impulses in a snapshot (bytes).
+     */
+    int getSnapshotSize() {
+        return 4 + count * 3 * 8;
+    }
+
+    /**
+     * Writes the kept impulses: the number of joints, then the three impulses of each joint in
+     * order of their slots.
+     */
+    void writeSnapshot(ByteBuffer buffer) {
+        buffer.putInt(count);
+        for (int slot = 0; slot < count; slot++) {
+            buffer.putDouble(impulseX[slot]);
+            buffer.putDouble(impulseY[slot]);
+            buffer.putDouble(impulseAngle[slot]);
+        }
+    }
+
+    /**
+     * Checks the kept impulses of a snapshot without changing anything.
+     *
+     * @param buffer
+     *        Positioned at the start of the joints. Its position is moved past them.
+     *
+     * @return A description of what is wrong, or null when the impulses can be restored.
+     */
+    String checkSnapshot(ByteBuffer buffer) {
+        int numJoints = buffer.getInt();
+        if (numJoints != count) {
+            return "Tried to restore a snapshot of " + numJoints + " joints into a system with " + count + " joints.";
+        }
+        buffer.position(buffer.position() + numJoints * 3 * 8);
+        return null;
+    }
+
+    /**
+     * Replaces the kept impulses with those of a snapshot, which must have been checked first.
+     */
+    void readSnapshot(ByteBuffer buffer) {
+        int numJoints = buffer.getInt();
+        if (numJoints != count) {
+            String errorString = "Tried to read the joints of a snapshot which hasn't been checked.";
+            Log.error(errorString);
+            throw new IllegalStateException(errorString);
+        }
+        for (int slot = 0; slot < count; slot++) {
+            impulseX[slot]     = buffer.getDouble();
+            impulseY[slot]     = buffer.getDouble();
+            impulseAngle[slot] = buffer.getDouble();
+        }
+    }
+}
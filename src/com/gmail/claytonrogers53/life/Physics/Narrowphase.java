@@ -0,0 +1,408 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+/**
+ * Analytic narrow phase collision detection between convex shapes. The separating axis theorem is
+ * used to find the contact normal, depth and points of two shapes, and the time of impact is found
+ * with conservative advancement: the objects are repeatedly moved forward by the longest time in
+ * which they provably can't touch, which converges in a handful of iterations.
+ *
+ * Everything works on primitives so that no objects are created, and the cached transforms of the
+ * states are used so that no trigonometry is needed.
+ */
+final class Narrowphase {
+
+    /** Returned by {@link #timeOfImpact} when the objects don't touch during the time step. */
+    static final double NO_IMPACT = -1.0;
+
+    /** Two shapes closer than this (m) are considered to be touching. */
+    static final double TOI_TOLERANCE = 1e-4;
+    /** The most conservative advancement iterations that will be done for a pair. */
+    private static final int MAX_TOI_ITERATIONS = 20;
+    /** Clipped contact points further apart than this from the deepest point are dropped (m). */
+    private static final double CONTACT_TOLERANCE = 0.005;
+    /** Prefer the first polygon as the reference unless the second is better by this much (m). */
+    private static final double REFERENCE_BIAS = 0.0005;
+
+    private Narrowphase() {
+    }
+
+    /**
+     * Finds the time at which two objects with shapes first touch within the time step. Both
+     * objects are moved around using their next states, and are left at the time of impact (or
+     * somewhere within the time step if there is none).
+     *
+     * @param a
+     *        The first object, must have a shape.
+     *
+     * @param b
+     *        The second object, must have a shape.
+     *
+     * @param startTime
+     *        The time since the start of the time step to start looking from (s).
+     *
+     * @param timeStep
+     *        The length of the time step (s).
+     *
+     * @param contact
+     *        Filled with the contact at the time of impact.
+     *
+     * @return The time of impact since the start of the time step (s), or {@link #NO_IMPACT}.
+     */
+    static double timeOfImpact(Collidable a, Collidable b, double startTime, double timeStep, Contact contact) {
+        Shape shapeA = a.getShape();
+        Shape shapeB = b.getShape();
+        double radiusA = shapeA.getBoundingRadius();
+        double radiusB = shapeB.getBoundingRadius();
+
+        double time = startTime;
+        for (int i = 0; i < MAX_TOI_ITERATIONS; i++) {
+            a.calculateNextState(time);
+            b.calculateNextState(time);
+            State stateA = a.getNextState();
+            State stateB = b.getNextState();
+            collide(shapeA, stateA, shapeB, stateB, contact);
+
+            double distance = -contact.depth;
+            if (distance < TOI_TOLERANCE) {
+                contact.timeOfImpact = time;
+                return time;
+            }
+
+            // The fastest the two shapes could be approaching each other.
+            double normalVelocity =
+                    (stateB.velocity.getMagX() - stateA.velocity.getMagX()) * contact.normalX +
+                    (stateB.velocity.getMagY() - stateA.velocity.getMagY()) * contact.normalY;
+            double maxApproachSpeed = Math.max(0.0, -normalVelocity) +
+                    Math.abs(stateA.angularVelocity) * radiusA +
+                    Math.abs(stateB.angularVelocity) * radiusB;
+            if (maxApproachSpeed <= 0.0) {
+                return NO_IMPACT;
+            }
+
+            time += (distance - 0.5 * TOI_TOLERANCE) / maxApproachSpeed;
+            if (time > timeStep) {
+                return NO_IMPACT;
+            }
+        }
+
+        // Ran out of iterations, the time is still safe so we use it.
+        Log.verbose("Time of impact did not converge, using the last time found.");
+        contact.timeOfImpact = time;
+        return time;
+    }
+
+    /**
+     * Finds the contact between two shapes at the given states. The contact is filled in even if
+     * the shapes are apart, in which case the depth is negative.
+     *
+     * @param shapeA
+     *        The shape of the first object.
+     *
+     * @param stateA
+     *        The state (position and angle) of the first object. Its transform must be up to date.
+     *
+     * @param shapeB
+     *        The shape of the second object.
+     *
+     * @param stateB
+     *        The state (position and angle) of the second object. Its transform must be up to date.
+     *
+     * @param contact
+     *        Filled with the result. The normal points from A to B.
+     */
+    static void collide(Shape shapeA, State stateA, Shape shapeB, State stateB, Contact contact) {
+        if (shapeA instanceof CircleShape) {
+            if (shapeB instanceof CircleShape) {
+                collideCircles((CircleShape) shapeA, stateA, (CircleShape) shapeB, stateB, contact);
+            } else {
+                collidePolygonAndCircle((PolygonShape) shapeB, stateB, (CircleShape) shapeA, stateA, contact);
+                flipNormal(contact);
+            }
+        } else {
+            if (shapeB instanceof CircleShape) {
+                collidePolygonAndCircle((PolygonShape) shapeA, stateA, (CircleShape) shapeB, stateB, contact);
+            } else {
+                collidePolygons((PolygonShape) shapeA, stateA, (PolygonShape) shapeB, stateB, contact);
+            }
+        }
+    }
+
+    private static void flipNormal(Contact contact) {
+        contact.normalX = -contact.normalX;
+        contact.normalY = -contact.normalY;
+    }
+
+    private static void collideCircles(CircleShape a, State stateA, CircleShape b, State stateB, Contact contact) {
+        double ax = stateA.position.getMagX();
+        double ay = stateA.position.getMagY();
+        double dx = stateB.position.getMagX() - ax;
+        double dy = stateB.position.getMagY() - ay;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+
+        double nx = 0.0;
+        double ny = 1.0;
+        if (distance > 0.0) {
+            nx = dx / distance;
+            ny = dy / distance;
+        }
+        double separation = distance - a.getRadius() - b.getRadius();
+
+        contact.normalX = nx;
+        contact.normalY = ny;
+        contact.depth = -separation;
+        contact.pointCount = 1;
+        // Half way between the two surfaces.
+        double pointDistance = a.getRadius() + 0.5 * separation;
+        contact.pointX[0] = ax + nx * pointDistance;
+        contact.pointY[0] = ay + ny * pointDistance;
+        contact.pointDepth[0] = -separation;
+    }
+
+    /**
+     * The normal points from the polygon to the circle.
+     */
+    private static void collidePolygonAndCircle(PolygonShape polygon, State polygonState,
+                                                CircleShape circle, State circleState, Contact contact) {
+        double cos = polygonState.m00;
+        double sin = polygonState.m01;
+        double px = polygonState.position.getMagX();
+        double py = polygonState.position.getMagY();
+
+        // The circle centre in the local coordinates of the polygon.
+        double dx = circleState.position.getMagX() - px;
+        double dy = circleState.position.getMagY() - py;
+        double cx = cos * dx - sin * dy;
+        double cy = sin * dx + cos * dy;
+        double radius = circle.getRadius();
+
+        int count = polygon.getVertexCount();
+        int bestEdge = 0;
+        double bestSeparation = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            double s = polygon.getNormalX(i) * (cx - polygon.getVertexX(i)) +
+                       polygon.getNormalY(i) * (cy - polygon.getVertexY(i));
+            if (s > bestSeparation) {
+                bestSeparation = s;
+                bestEdge = i;
+            }
+        }
+
+        int next = (bestEdge + 1) % count;
+        double v1x = polygon.getVertexX(bestEdge);
+        double v1y = polygon.getVertexY(bestEdge);
+        double v2x = polygon.getVertexX(next);
+        double v2y = polygon.getVertexY(next);
+
+        double nx;
+        double ny;
+        double separation;
+        double surfaceX;
+        double surfaceY;
+        double u1 = (cx - v1x) * (v2x - v1x) + (cy - v1y) * (v2y - v1y);
+        double u2 = (cx - v2x) * (v1x - v2x) + (cy - v2y) * (v1y - v2y);
+        if (bestSeparation > 0.0 && (u1 <= 0.0 || u2 <= 0.0)) {
+            // Closest to a vertex.
+            double vx = u1 <= 0.0 ? v1x : v2x;
+            double vy = u1 <= 0.0 ? v1y : v2y;
+            double distance = Math.sqrt((cx - vx) * (cx - vx) + (cy - vy) * (cy - vy));
+            nx = (cx - vx) / distance;
+            ny = (cy - vy) / distance;
+            separation = distance - radius;
+            surfaceX = vx;
+            surfaceY = vy;
+        } else {
+            // Closest to the face (or the centre is inside the polygon).
+            nx = polygon.getNormalX(bestEdge);
+            ny = polygon.getNormalY(bestEdge);
+            separation = bestSeparation - radius;
+            surfaceX = cx - nx * bestSeparation;
+            surfaceY = cy - ny * bestSeparation;
+        }
+
+        // Half way between the polygon surface and the circle surface.
+        double localPointX = 0.5 * (surfaceX + cx - nx * radius);
+        double localPointY = 0.5 * (surfaceY + cy - ny * radius);
+
+        contact.normalX = cos * nx + sin * ny;
+        contact.normalY = -sin * nx + cos * ny;
+        contact.depth = -separation;
+        contact.pointCount = 1;
+        contact.pointX[0] = px + cos * localPointX + sin * localPointY;
+        contact.pointY[0] = py - sin * localPointX + cos * localPointY;
+        contact.pointDepth[0] = -separation;
+    }
+
+    private static void collidePolygons(PolygonShape a, State stateA, PolygonShape b, State stateB, Contact contact) {
+        int edgeA = findMaxSeparationEdge(a, stateA, b, stateB);
+        double separationA = edgeSeparation(a, stateA, edgeA, b, stateB);
+        int edgeB = findMaxSeparationEdge(b, stateB, a, stateA);
+        double separationB = edgeSeparation(b, stateB, edgeB, a, stateA);
+
+        if (separationB > separationA + REFERENCE_BIAS) {
+            clipContact(b, stateB, edgeB, separationB, a, stateA, contact);
+            flipNormal(contact);
+        } else {
+            clipContact(a, stateA, edgeA, separationA, b, stateB, contact);
+        }
+    }
+
+    /**
+     * Finds the edge of the reference polygon which has the largest separation from the incident
+     * polygon.
+     */
+    private static int findMaxSeparationEdge(PolygonShape reference, State referenceState,
+                                             PolygonShape incident, State incidentState) {
+        int bestEdge = 0;
+        double bestSeparation = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < reference.getVertexCount(); i++) {
+            double s = edgeSeparation(reference, referenceState, i, incident, incidentState);
+            if (s > bestSeparation) {
+                bestSeparation = s;
+                bestEdge = i;
+            }
+        }
+        return bestEdge;
+    }
+
+    /**
+     * The separation of the incident polygon along the normal of one edge of the reference polygon.
+     * Everything is done in the local coordinates of the reference polygon.
+     */
+    private static double edgeSeparation(PolygonShape reference, State referenceState, int edge,
+                                         PolygonShape incident, State incidentState) {
+        // The transform from incident local coordinates to reference local coordinates.
+        double cos = referenceState.m00;
+        double sin = referenceState.m01;
+        // The rotation by the difference in angle between the two.
+        double rc = incidentState.m00 * cos + incidentState.m01 * sin;
+        double rs = incidentState.m01 * cos - incidentState.m00 * sin;
+        double dx = incidentState.position.getMagX() - referenceState.position.getMagX();
+        double dy = incidentState.position.getMagY() - referenceState.position.getMagY();
+        double tx = cos * dx - sin * dy;
+        double ty = sin * dx + cos * dy;
+
+        double nx = reference.getNormalX(edge);
+        double ny = reference.getNormalY(edge);
+        double vx = reference.getVertexX(edge);
+        double vy = reference.getVertexY(edge);
+
+        double minSeparation = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < incident.getVertexCount(); j++) {
+            double ix = incident.getVertexX(j);
+            double iy = incident.getVertexY(j);
+            double wx = tx + rc * ix + rs * iy;
+            double wy = ty - rs * ix + rc * iy;
+            minSeparation = Math.min(minSeparation, nx * (wx - vx) + ny * (wy - vy));
+        }
+        return minSeparation;
+    }
+
+    /**
+     * Clips the incident edge against the side planes of the reference edge to find the contact
+     * points. The normal points from the reference polygon to the incident polygon.
+     */
+    private static void clipContact(PolygonShape reference, State referenceState, int edge, double separation,
+                                    PolygonShape incident, State incidentState, Contact contact) {
+        double cos = referenceState.m00;
+        double sin = referenceState.m01;
+        // The rotation by the difference in angle between the two.
+        double rc = incidentState.m00 * cos + incidentState.m01 * sin;
+        double rs = incidentState.m01 * cos - incidentState.m00 * sin;
+        double px = referenceState.position.getMagX();
+        double py = referenceState.position.getMagY();
+        double dx = incidentState.position.getMagX() - px;
+        double dy = incidentState.position.getMagY() - py;
+        double tx = cos * dx - sin * dy;
+        double ty = sin * dx + cos * dy;
+
+        int next = (edge + 1) % reference.getVertexCount();
+        double v1x = reference.getVertexX(edge);
+        double v1y = reference.getVertexY(edge);
+        double v2x = reference.getVertexX(next);
+        double v2y = reference.getVertexY(next);
+        double nx = reference.getNormalX(edge);
+        double ny = reference.getNormalY(edge);
+
+        // The incident edge is the one most anti-parallel to the reference normal.
+        int incidentEdge = 0;
+        double minDot = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < incident.getVertexCount(); j++) {
+            double inx = rc * incident.getNormalX(j) + rs * incident.getNormalY(j);
+            double iny = -rs * incident.getNormalX(j) + rc * incident.getNormalY(j);
+            double dot = nx * inx + ny * iny;
+            if (dot < minDot) {
+                minDot = dot;
+                incidentEdge = j;
+            }
+        }
+        int incidentNext = (incidentEdge + 1) % incident.getVertexCount();
+        double i1x = incident.getVertexX(incidentEdge);
+        double i1y = incident.getVertexY(incidentEdge);
+        double i2x = incident.getVertexX(incidentNext);
+        double i2y = incident.getVertexY(incidentNext);
+        double w1x = tx + rc * i1x + rs * i1y;
+        double w1y = ty - rs * i1x + rc * i1y;
+        double w2x = tx + rc * i2x + rs * i2y;
+        double w2y = ty - rs * i2x + rc * i2y;
+
+        // Clip the incident segment to the extent of the reference edge along its tangent.
+        double tangentX = v2x - v1x;
+        double tangentY = v2y - v1y;
+        double length = Math.sqrt(tangentX * tangentX + tangentY * tangentY);
+        tangentX /= length;
+        tangentY /= length;
+        double lower = tangentX * v1x + tangentY * v1y;
+        double upper = tangentX * v2x + tangentY * v2y;
+        double t1 = tangentX * w1x + tangentY * w1y;
+        double t2 = tangentX * w2x + tangentY * w2y;
+
+        double tMin = Math.max(Math.min(t1, t2), lower);
+        double tMax = Math.min(Math.max(t1, t2), upper);
+        if (tMin > tMax) {
+            // Numerical trouble, the segments don't overlap along the tangent. Use the closest
+            // incident vertex instead.
+            tMin = tMax = Math.abs(t1 - lower) < Math.abs(t2 - lower) ? t1 : t2;
+        }
+
+        contact.normalX = cos * nx + sin * ny;
+        contact.normalY = -sin * nx + cos * ny;
+        contact.depth = -separation;
+        contact.pointCount = 0;
+
+        int clipCount = tMin == tMax ? 1 : 2;
+        int deepest = 0;
+        double deepestSeparation = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < clipCount; k++) {
+            // Interpolate along the incident segment to the clipped position.
+            double clipped = k == 0 ? tMin : tMax;
+            double f = t2 == t1 ? 0.0 : (clipped - t1) / (t2 - t1);
+            double cx = w1x + f * (w2x - w1x);
+            double cy = w1y + f * (w2y - w1y);
+            double s = nx * (cx - v1x) + ny * (cy - v1y);
+            if (s < deepestSeparation) {
+                deepestSeparation = s;
+                deepest = k;
+            }
+            if (s > Math.max(separation, 0.0) + CONTACT_TOLERANCE) {
+                continue;
+            }
+            int n = contact.pointCount++;
+            contact.pointX[n] = px + cos * cx + sin * cy;
+            contact.pointY[n] = py - sin * cx + cos * cy;
+            contact.pointDepth[n] = -s;
+        }
+
+        if (contact.pointCount == 0) {
+            double clipped = deepest == 0 ? tMin : tMax;
+            double f = t2 == t1 ? 0.0 : (clipped - t1) / (t2 - t1);
+            double cx = w1x + f * (w2x - w1x);
+            double cy = w1y + f * (w2y - w1y);
+            contact.pointCount = 1;
+            contact.pointX[0] = px + cos * cx + sin * cy;
+            contact.pointY[0] = py - sin * cx + cos * cy;
+            contact.pointDepth[0] = -deepestSeparation;
+        }
+    }
+}
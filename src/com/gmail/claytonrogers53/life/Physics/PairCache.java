@@ -0,0 +1,185 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps every pair of objects which is touching from one step to the next, so that the contact
+ * events can say whether a pair has just started touching, is still touching or has stopped. The
+ * pairs touching in a step are marked as they are found (by the {@link ContactSolver} and the
+ * {@link CollisionScheduler}), and at the end of the step they are compared with the pairs from
+ * the step before.
+ *
+ * The pairs are part of the snapshots of the physics system, so that restoring a snapshot or
+ * rolling back gives the same contact events as the first time round.
+ */
+final class PairCache {
+
+    /** A pair of objects which is touching. */
+    private static final class Pair {
+        final Collidable first;
+        final Collidable second;
+        final long pairKey;
+        /** The step the objects started touching in. */
+        long beginStep;
+        /** The last step the objects were touching in. */
+        long lastStep;
+
+        Pair(Collidable first, Collidable second, long pairKey) {
+            this.first = first;
+            this.second = second;
+            this.pairKey = pairKey;
+        }
+    }
+
+    private static final Comparator<Pair> BY_PAIR_KEY = new Comparator<Pair>() {
+        @Override
+        public int compare(Pair o1, Pair o2) {
+            return o1.pairKey < o2.pairKey ? -1 : (o1.pairKey == o2.pairKey ? 0 : 1);
+        }
+    };
+
+    private final PairMap<Pair> pairs = new PairMap<>(100);
+    /** The same pairs, to go through them at the end of the step. */
+    private final List<Pair> live = new ArrayList<>(100);
+    /** The step which is being marked. */
+    private long stepMark = 0L;
+
+    /**
+     * Marks a pair as touching in this step. A pair may be marked any number of times.
+     *
+     * @param first
+     *        The object with the lower body id.
+     *
+     * @param second
+     *        The object with the higher body id.
+     *
+     * @param pairKey
+     *        The pair key of the two objects, see {@link Collision#getPairKey}.
+     */
+    void mark(Collidable first, Collidable second, long pairKey) {
+        Pair pair = pairs.get(pairKey);
+        if (pair == null || pair.first != first || pair.second != second) {
+            pair = new Pair(first, second, pairKey);
+            pair.beginStep = stepMark;
+            pairs.put(pairKey, pair);
+            live.add(pair);
+        }
+        pair.lastStep = stepMark;
+    }
+
+    /**
+     * @param pairKey
+     *        The pair key of two objects.
+     *
+     * @return True when the objects were touching at the end of the last step.
+     */
+    boolean isTouching(long pairKey) {
+        Pair pair = pairs.get(pairKey);
+        return pair != null && pair.beginStep != stepMark;
+    }
+
+    /**
+     * @return The number of pairs which were touching at the end of the last step.
+     */
+    int getTouchingCount() {
+        return pairs.size();
+    }
+
+    /**
+     * Ends the step: forgets the pairs which weren't marked and fills in the events.
+     *
+     * @param events
+     *        Filled with the events of the step.
+     *
+     * @param step
+     *        The number of the step that has just been taken.
+     */
+    void finishStep(ContactEvents events, long step) {
+        events.clear(step);
+        // Almost always already in order, apart from the new pairs.
+        Collections.sort(live, BY_PAIR_KEY);
+        int numKept = 0;
+        for (Pair pair : live) {
+            if (pair.lastStep != stepMark) {
+                events.add(ContactEvents.END, pair.first, pair.second);
+                // The key may have been taken over by a new pair of objects with the same ids.
+                if (pairs.get(pair.pairKey) == pair) {
+                    pairs.remove(pair.pairKey);
+                }
+                continue;
+            }
+            events.add(pair.beginStep == stepMark ? ContactEvents.BEGIN : ContactEvents.STAY, pair.first, pair.second);
+            live.set(numKept++, pair);
+        }
+        live.subList(numKept, live.size()).clear();
+        ++stepMark;
+    }
+
+    /**
+     * @return The size of the touching pairs in a snapshot (bytes).
+     */
+    int getSnapshotSize() {
+        return 4 + live.size() * 8;
+    }
+
+    /**
+     * Writes the pairs which were touching at the end of the last step: their number, then the
+     * pair key of each. Must be called in between two steps.
+     */
+    void writeSnapshot(ByteBuffer buffer) {
+        buffer.putInt(live.size());
+        for (Pair pair : live) {
+            buffer.putLong(pair.pairKey);
+        }
+    }
+
+    /**
+     * Checks the touching pairs of a snapshot without changing anything.
+     *
+     * @param buffer
+     *        Positioned at the start of the pairs. Its position is moved past them.
+     *
+     * @return A description of what is wrong, or null when the pairs can be restored.
+     */
+    static String checkSnapshot(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 8) {
+            return "Tried to restore a snapshot with " + count + " touching pairs.";
+        }
+        buffer.position(buffer.position() + count * 8);
+        return null;
+    }
+
+    /**
+     * Replaces the touching pairs with those of a snapshot, which must have been checked first.
+     * Pairs with an object which is no longer in the system are left out, they would have ended in
+     * the next step anyway.
+     *
+     * @param bodiesById
+     *        The objects in the physics system by their body ids.
+     */
+    void readSnapshot(ByteBuffer buffer, Map<Integer, Collidable> bodiesById) {
+        pairs.clear();
+        live.clear();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long pairKey = buffer.getLong();
+            Collidable first  = bodiesById.get((int) (pairKey >>> 32));
+            Collidable second = bodiesById.get((int) pairKey);
+            if (first == null || second == null) {
+                continue;
+            }
+            Pair pair = new Pair(first, second, pairKey);
+            // Counts as touching since before the last step, so the next one doesn't begin it.
+            pair.beginStep = stepMark - 1;
+            pair.lastStep  = stepMark - 1;
+            pairs.put(pairKey, pair);
+            live.add(pair);
+        }
+    }
+}
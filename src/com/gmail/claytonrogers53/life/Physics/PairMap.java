@@ -0,0 +1,147 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from the pair key of two objects (see {@link Collision#getPairKey}) to a value. The
+ * keys are kept in a plain array of longs with open addressing and linear probing, so looking up
+ * a pair doesn't box the key or follow a chain of entries. Removing an entry moves the entries
+ * after it back into the gap, so no tombstones are left behind.
+ *
+ * Values may not be null, since a null value marks an empty slot.
+ *
+ * @param <V>
+ *        The type of the values.
+ */
+final class PairMap<V> {
+
+    /** The map grows once it is more than this full. */
+    private static final double MAX_LOAD = 0.5;
+
+    private long[]   keys;
+    private Object[] values;
+    private int      mask;
+    private int      size = 0;
+
+    /**
+     * @param expectedSize
+     *        The number of entries the map should hold without growing.
+     */
+    PairMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys   = new long[capacity];
+        values = new Object[capacity];
+        mask   = capacity - 1;
+    }
+
+    /**
+     * Spreads the bits of the key, since the low bits of a pair key are the body id of the second
+     * object and the high bits are never looked at otherwise.
+     */
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * @return The value for the key, or null when there is none.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value for the key, replacing any old one.
+     */
+    void put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Tried to put a null value in a pair map.");
+        }
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i]   = key;
+        values[i] = value;
+        if (++size > keys.length * MAX_LOAD) {
+            grow();
+        }
+    }
+
+    /**
+     * Removes the value for the key, if there is one.
+     *
+     * @return The value that was removed, or null when there was none.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                break;
+            }
+        }
+        V removed = (V) values[i];
+        if (removed == null) {
+            return null;
+        }
+
+        // Move back every following entry which can't be found any more with the gap in the way.
+        int gap = i;
+        for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // The entry can fill the gap unless its home slot is after the gap, up to it.
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap]   = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        --size;
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    private void grow() {
+        long[]   oldKeys   = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j]   = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
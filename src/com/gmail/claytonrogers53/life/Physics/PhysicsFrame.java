@@ -0,0 +1,210 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The positions and rotations of every object at the end of a physics step, along with where they
+ * were at the start of it so that drawings can be blended between the two. Frames are published
+ * by the physics system once a step is complete (see {@link PhysicsSystem#getLatestFrame()}), so
+ * they can be read from the graphics thread while the physics carries on with the next step.
+ *
+ * Objects are stored in dense slots, in the order of the objects of the physics system, so the
+ * frame only ever holds as many objects as the physics system does however many have come and
+ * gone. Look up the slot of an object with {@link #getSlot} and then read it with the getters.
+ */
+public final class PhysicsFrame {
+
+    /** The number of bodies space is allocated for at first. */
+    private static final int INITIAL_CAPACITY = 16;
+    /** Marks an empty entry of the body id table. */
+    private static final int NO_BODY = -1;
+
+    private long stepCount = 0L;
+    /** The clock of the physics loop after the step, null when the step was taken some other way. */
+    private StepClock clock = null;
+    /** The number of objects written into the frame. */
+    private int size = 0;
+    private int[]    bodyIds       = new int[INITIAL_CAPACITY];
+    private double[] x             = new double[INITIAL_CAPACITY];
+    private double[] y             = new double[INITIAL_CAPACITY];
+    private double[] angle         = new double[INITIAL_CAPACITY];
+    private double[] previousX     = new double[INITIAL_CAPACITY];
+    private double[] previousY     = new double[INITIAL_CAPACITY];
+    private double[] previousAngle = new double[INITIAL_CAPACITY];
+
+    // Finds the slot of a body id, with open addressing and linear probing. Always at least twice
+    // as big as the number of slots, so there is always an empty entry to stop at.
+    private int[] tableIds   = newTable(2 * INITIAL_CAPACITY);
+    private int[] tableSlots = new int[2 * INITIAL_CAPACITY];
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, NO_BODY);
+        return table;
+    }
+
+    /**
+     * Copies the current and previous position of every object into the frame. Only called by
+     * the physics system, with the objects locked.
+     *
+     * @param objects
+     *        Every object in the physics system.
+     *
+     * @param stepCount
+     *        The number of steps taken so far.
+     *
+     * @param clock
+     *        The clock of the physics loop after the step, or null when the step wasn't taken by
+     *        the physics loop.
+     */
+    void write(List<Collidable> objects, long stepCount, StepClock clock) {
+        this.stepCount = stepCount;
+        this.clock = clock;
+        size = objects.size();
+        if (size > bodyIds.length) {
+            grow(Math.max(size, bodyIds.length * 2));
+        } else {
+            Arrays.fill(tableIds, NO_BODY);
+        }
+        int mask = tableIds.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            Collidable object = objects.get(slot);
+            int bodyId = object.getBodyId();
+            State state = object.getState();
+            State previous = object.getPreviousState();
+            bodyIds[slot]       = bodyId;
+            x[slot]             = state.position.getMagX();
+            y[slot]             = state.position.getMagY();
+            angle[slot]         = state.angle;
+            previousX[slot]     = previous.position.getMagX();
+            previousY[slot]     = previous.position.getMagY();
+            previousAngle[slot] = previous.angle;
+
+            int i = hash(bodyId) & mask;
+            while (tableIds[i] != NO_BODY) {
+                i = (i + 1) & mask;
+            }
+            tableIds[i]   = bodyId;
+            tableSlots[i] = slot;
+        }
+    }
+
+    private void grow(int capacity) {
+        bodyIds       = Arrays.copyOf(bodyIds, capacity);
+        x             = Arrays.copyOf(x, capacity);
+        y             = Arrays.copyOf(y, capacity);
+        angle         = Arrays.copyOf(angle, capacity);
+        previousX     = Arrays.copyOf(previousX, capacity);
+        previousY     = Arrays.copyOf(previousY, capacity);
+        previousAngle = Arrays.copyOf(previousAngle, capacity);
+        int tableCapacity = tableIds.length;
+        while (tableCapacity < 2 * capacity) {
+            tableCapacity *= 2;
+        }
+        tableIds   = newTable(tableCapacity);
+        tableSlots = new int[tableCapacity];
+    }
+
+    /**
+     * Spreads the bits of the body id, since body ids are handed out in order.
+     */
+    private static int hash(int bodyId) {
+        int hash = bodyId * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return The number of physics steps that had been taken when the frame was written.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @param now
+     *        The wall clock time (ns, from {@link System#nanoTime()}).
+     *
+     * @return How far the physics is from this frame to the next one at the given time, from 0.0
+     *         (just stepped) to 1.0 (the next step is due). Always 1.0 when the step wasn't taken by
+     *         the physics loop.
+     */
+    public double getInterpolationAlpha(long now) {
+        return clock != null ? clock.getAlpha(now) : 1.0;
+    }
+
+    /**
+     * @param bodyId
+     *        The body id of an object.
+     *
+     * @return The slot of the object in the frame, or -1 when the object wasn't in the physics
+     *         system when the frame was written.
+     */
+    public int getSlot(int bodyId) {
+        int mask = tableIds.length - 1;
+        for (int i = hash(bodyId) & mask; tableIds[i] != NO_BODY; i = (i + 1) & mask) {
+            if (tableIds[i] == bodyId) {
+                return tableSlots[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param bodyId
+     *        The body id of an object.
+     *
+     * @return True when the object was in the physics system when the frame was written.
+     */
+    public boolean contains(int bodyId) {
+        return getSlot(bodyId) >= 0;
+    }
+
+    /**
+     * @return The number of objects in the frame. Their slots go from zero up to one less than
+     *         this.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The body id of the object in the slot.
+     */
+    public int getBodyId(int slot) {
+        return bodyIds[slot];
+    }
+
+    public double getX(int slot) {
+        return x[slot];
+    }
+
+    public double getY(int slot) {
+        return y[slot];
+    }
+
+    public double getAngle(int slot) {
+        return angle[slot];
+    }
+
+    /**
+     * @return The x position of the object at the start of the step (m).
+     */
+    public double getPreviousX(int slot) {
+        return previousX[slot];
+    }
+
+    /**
+     * @return The y position of the object at the start of the step (m).
+     */
+    public double getPreviousY(int slot) {
+        return previousY[slot];
+    }
+
+    /**
+     * @return The angle of the object at the start of the step (rad).
+     */
+    public double getPreviousAngle(int slot) {
+        return previousAngle[slot];
+    }
+}
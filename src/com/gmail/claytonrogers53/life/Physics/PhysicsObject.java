@@ -3,6 +3,7 @@ package com.gmail.claytonrogers53.life.Physics;
 import com.gmail.claytonrogers53.life.Util.Log;
 import com.gmail.claytonrogers53.life.Util.Vector2D;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -12,18 +13,54 @@ import java.util.Collection;
  *
  * Created by Clayton on 8/12/2014.
  */
-public abstract class PhysicsObject implements Collidable {
+public abstract class PhysicsObject implements Collidable, Snapshottable {
+    /** The state, whether the object is asleep, how long it has been resting for and the forces. */
+    private static final int SNAPSHOT_SIZE = State.SNAPSHOT_SIZE + 1 + 8 + 3 * 8;
+    /** The coefficient of restitution of a new object. */
+    public static final double DEFAULT_RESTITUTION = 0.5;
+    /** The coefficient of friction of a new object. */
+    public static final double DEFAULT_FRICTION    = 0.4;
+    /** The collision category of a new object. */
+    public static final int DEFAULT_CATEGORY_BITS = 0x0001;
+    /** A new object collides with every category. */
+    public static final int DEFAULT_MASK_BITS     = ALL_CATEGORIES;
+
     protected double mass;
     protected double momentOfInertia;
     protected double collisionRadius = 0.0;
+    protected double restitution = DEFAULT_RESTITUTION;
+    protected double friction    = DEFAULT_FRICTION;
 
     protected State state     = new State();
     protected State nextState = new State();
+    /** The state at the start of the last step, only the position and angle are kept. */
+    protected final State previousState = new State();
     private boolean isNextStateValid = false;
+    private int bodyId = NO_BODY_ID;
     protected Collection<Vector2D> collisionPoints = new ArrayList<>();
+    protected Shape shape = null;
 
     protected boolean isCollidable = false;
     protected boolean isCollisionResolutionEnabled = true;
+    protected int categoryBits = DEFAULT_CATEGORY_BITS;
+    protected int maskBits     = DEFAULT_MASK_BITS;
+    /** Objects whose motion is driven from outside of the physics system should turn this off. */
+    protected boolean isSleepingAllowed = true;
+    private boolean isSleeping = false;
+    /** How long the object has been resting for (s). */
+    private double restingTime = 0.0;
+
+    // The forces applied since the last step, which act on the object through the next step.
+    private double forceX = 0.0;
+    private double forceY = 0.0;
+    private double torque = 0.0;
+    private Integrator integrator = Integrator.SEMI_IMPLICIT_EULER;
+
+    /** Set by {@link #calculateAcceleration}: the acceleration at the point asked for (m/s^2). */
+    protected double accelerationX;
+    protected double accelerationY;
+    /** Set by {@link #calculateAcceleration}: the angular acceleration at the point asked for (rad/s^2). */
+    protected double angularAcceleration;
 
     /**
      * Creates a new PhysicsObject. This abstract class has everything required to track and
@@ -49,6 +86,36 @@ public abstract class PhysicsObject implements Collidable {
         return collisionPoints;
     }
 
+    @Override
+    public Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * Sets the convex shape of the object, which is then used for the collision detection instead
+     * of the collision points. Also sets the collision radius to fit the shape.
+     *
+     * @param shape
+     *        The shape in local coordinates, or null to go back to using the collision points.
+     */
+    public void setShape(Shape shape) {
+        this.shape = shape;
+        if (shape != null) {
+            collisionRadius = shape.getBoundingRadius();
+        }
+    }
+
+    @Override
+    public void storePreviousState() {
+        previousState.position.set(state.position);
+        previousState.angle = state.angle;
+    }
+
+    @Override
+    public State getPreviousState() {
+        return previousState;
+    }
+
     @Override
     public void applyNextState() {
 
@@ -66,18 +133,122 @@ public abstract class PhysicsObject implements Collidable {
 
     @Override
     public void calculateNextState(double time) {
-        nextState.position = state.position.add(state.velocity.scalarMultiply(time));
-        nextState.velocity.set(state.velocity);
-        nextState.angle = state.angle + state.angularVelocity * time;
-        nextState.angularVelocity = state.angularVelocity;
+        // Written in place, so that propagating doesn't create any new objects.
+        integrator.integrate(this, state, nextState, time);
+        nextState.updateTransform();
         isNextStateValid = true;
     }
 
+    /**
+     * Finds the acceleration of the object at a point along its path, and stores it in
+     * accelerationX, accelerationY and angularAcceleration. By default this is just the
+     * accumulated force and torque divided by the mass and moment of inertia, which stay the same
+     * through the step. Objects with forces that change as they move, such as a spring, should
+     * override this and add them, so that the higher order integrators can follow them.
+     *
+     * @param posX
+     *        The x position of the point (m).
+     *
+     * @param posY
+     *        The y position of the point (m).
+     *
+     * @param velX
+     *        The x velocity at the point (m/s).
+     *
+     * @param velY
+     *        The y velocity at the point (m/s).
+     *
+     * @param angle
+     *        The angle at the point (rad).
+     *
+     * @param angularVelocity
+     *        The angular velocity at the point (rad/s).
+     */
+    protected void calculateAcceleration(double posX, double posY, double velX, double velY,
+                                         double angle, double angularVelocity) {
+        accelerationX = forceX / mass;
+        accelerationY = forceY / mass;
+        angularAcceleration = torque / momentOfInertia;
+    }
+
+    /**
+     * Adds a force through the centre of mass of the object and wakes it up. The force acts
+     * through the whole of the next step, after which it is cleared.
+     *
+     * @param forceX
+     *        The x component of the force (N).
+     *
+     * @param forceY
+     *        The y component of the force (N).
+     *
+     * @param torque
+     *        The torque (N*m).
+     */
+    @Override
+    public void applyForce(double forceX, double forceY, double torque) {
+        this.forceX += forceX;
+        this.forceY += forceY;
+        this.torque += torque;
+        wakeUp();
+    }
+
+    @Override
+    public void clearForces() {
+        forceX = 0.0;
+        forceY = 0.0;
+        torque = 0.0;
+    }
+
+    public double getForceX() {
+        return forceX;
+    }
+
+    public double getForceY() {
+        return forceY;
+    }
+
+    public double getTorque() {
+        return torque;
+    }
+
+    /**
+     * Sets how the object is moved forward in time.
+     *
+     * @param integrator
+     *        The integrator to use.
+     */
+    public void setIntegrator(Integrator integrator) {
+        if (integrator == null) {
+            Log.warning("Attempted to set a null integrator.");
+            return;
+        }
+        this.integrator = integrator;
+    }
+
+    public Integrator getIntegrator() {
+        return integrator;
+    }
+
     @Override
     public double getCollisionRadius() {
         return collisionRadius;
     }
 
+    @Override
+    public int getBodyId() {
+        return bodyId;
+    }
+
+    @Override
+    public void setBodyId(int bodyId) {
+        this.bodyId = bodyId;
+    }
+
+    @Override
+    public State getState() {
+        return state;
+    }
+
     @Override
     public State getNextState() {
         if (!isNextStateValid) {
@@ -93,8 +264,171 @@ public abstract class PhysicsObject implements Collidable {
         return isCollidable;
     }
 
+    @Override
+    public boolean isSleeping() {
+        return isSleeping;
+    }
+
+    @Override
+    public void wakeUp() {
+        isSleeping = false;
+        restingTime = 0.0;
+    }
+
+    @Override
+    public boolean updateSleep(double time, double linearThreshold, double angularThreshold, double timeToSleep) {
+        if (isSleeping || !isSleepingAllowed) {
+            return false;
+        }
+
+        double speedSquared = state.velocity.dotProduct(state.velocity);
+        if (speedSquared > linearThreshold * linearThreshold ||
+                Math.abs(state.angularVelocity) > angularThreshold) {
+            restingTime = 0.0;
+            return false;
+        }
+
+        restingTime += time;
+        if (restingTime < timeToSleep) {
+            return false;
+        }
+
+        // Stop the object completely, and make sure that the next state stays valid while asleep.
+        isSleeping = true;
+        state.velocity.zero();
+        state.angularVelocity = 0.0;
+        calculateNextState(0.0);
+        return true;
+    }
+
+    @Override
+    public void applyImpulse(Vector2D impulse, double angularImpulse) {
+        applyImpulse(impulse.getMagX(), impulse.getMagY(), angularImpulse);
+    }
+
+    /**
+     * Applies an impulse to the centre of mass of the object and wakes it up, without creating any
+     * new objects. Used by physics things which push on a lot of objects every step.
+     *
+     * @param impulseX
+     *        The x component of the linear impulse (N*s).
+     *
+     * @param impulseY
+     *        The y component of the linear impulse (N*s).
+     *
+     * @param angularImpulse
+     *        The angular impulse (N*m*s).
+     */
+    public void applyImpulse(double impulseX, double impulseY, double angularImpulse) {
+        state.velocity.set(state.velocity.getMagX() + impulseX / mass,
+                           state.velocity.getMagY() + impulseY / mass);
+        state.angularVelocity += angularImpulse / momentOfInertia;
+        wakeUp();
+    }
+
+    @Override
+    public double getMass() {
+        return mass;
+    }
+
+    @Override
+    public double getMomentOfInertia() {
+        return momentOfInertia;
+    }
+
+    @Override
+    public double getRestitution() {
+        return restitution;
+    }
+
+    /**
+     * @param restitution
+     *        The coefficient of restitution, from 0 for no bounce to 1 for a perfect bounce.
+     */
+    public void setRestitution(double restitution) {
+        if (restitution < 0.0 || restitution > 1.0) {
+            Log.warning("Attempted to set a coefficient of restitution outside of 0 to 1.");
+            return;
+        }
+        this.restitution = restitution;
+    }
+
+    @Override
+    public double getFriction() {
+        return friction;
+    }
+
+    /**
+     * @param friction
+     *        The coefficient of friction, zero or more.
+     */
+    public void setFriction(double friction) {
+        if (friction < 0.0) {
+            Log.warning("Attempted to set a negative coefficient of friction.");
+            return;
+        }
+        this.friction = friction;
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return SNAPSHOT_SIZE;
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer buffer) {
+        state.write(buffer);
+        buffer.put(isSleeping ? (byte) 1 : (byte) 0);
+        buffer.putDouble(restingTime);
+        buffer.putDouble(forceX);
+        buffer.putDouble(forceY);
+        buffer.putDouble(torque);
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer buffer, int size) {
+        if (size != SNAPSHOT_SIZE) {
+            String errorString = "Tried to read a physics object snapshot of the wrong size: " + size;
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        state.read(buffer);
+        isSleeping = buffer.get() != 0;
+        restingTime = buffer.getDouble();
+        forceX = buffer.getDouble();
+        forceY = buffer.getDouble();
+        torque = buffer.getDouble();
+        isNextStateValid = false;
+    }
+
     @Override
     public boolean isCollisionResolutionEnabled() {
         return isCollisionResolutionEnabled;
     }
+
+    @Override
+    public int getCategoryBits() {
+        return categoryBits;
+    }
+
+    @Override
+    public int getMaskBits() {
+        return maskBits;
+    }
+
+    /**
+     * Sets which collision categories the object belongs to and which ones it collides with. For
+     * example many particles which should only hit the walls can be put in their own category,
+     * with a mask of just the walls' category.
+     *
+     * @param categoryBits
+     *        The categories the object belongs to, one bit per category.
+     *
+     * @param maskBits
+     *        The categories the object collides with.
+     */
+    public void setCollisionFilter(int categoryBits, int maskBits) {
+        this.categoryBits = categoryBits;
+        this.maskBits     = maskBits;
+    }
 }
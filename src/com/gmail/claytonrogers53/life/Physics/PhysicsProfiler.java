@@ -0,0 +1,232 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Times the phases of the physics steps and counts the work done in them, for the
+ * {@link PhysicsStats}. The step is timed as a series of laps: each lap runs from the end of the
+ * last one and is added to the phase it is given, so the phases always add up to the whole step
+ * and a part of the step which isn't timed on its own ends up in the phase of the next lap.
+ *
+ * The laps and counts are only made by the thread stepping the physics. The finished steps are
+ * added to the totals with the profiler locked, so that the statistics can be read from any
+ * thread.
+ *
+ * When a trace is running, every step is also written to a file as it finishes, for plotting
+ * offline. The trace starts with the magic number, the version, and the number of phases and
+ * counters (a byte each). Then for every step there is the step count (long), the time of each
+ * phase (long, ns) and each counter (long), in the order of {@link PhysicsStats.Phase} and
+ * {@link PhysicsStats.Counter}. Everything is big endian. If writing fails, the error is logged
+ * and the rest of the trace is dropped.
+ */
+final class PhysicsProfiler {
+
+    /** Identifies traces ("LTRC" in ASCII) and their format. */
+    static final int   TRACE_MAGIC   = 0x4C545243;
+    static final short TRACE_VERSION = 1;
+
+    private static final int NUM_PHASES   = PhysicsStats.Phase.values().length;
+    private static final int NUM_COUNTERS = PhysicsStats.Counter.values().length;
+    private static final int BUFFER_SIZE  = 1 << 16;
+
+    // The step being measured, only used by the thread stepping the physics.
+    private final long[] stepNanos  = new long[NUM_PHASES];
+    private final long[] stepCounts = new long[NUM_COUNTERS];
+    private long lapStart = 0L;
+
+    // The finished steps, only used with the profiler locked.
+    private long step     = 0L;
+    private long numSteps = 0L;
+    private final long[] lastNanos   = new long[NUM_PHASES];
+    private final long[] totalNanos  = new long[NUM_PHASES];
+    private final long[] lastCounts  = new long[NUM_COUNTERS];
+    private final long[] totalCounts = new long[NUM_COUNTERS];
+    private long maxStepNanos = 0L;
+    /** Where the trace is written, null when not tracing. */
+    private FileChannel trace = null;
+    private final ByteBuffer traceBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Starts measuring a step. The first lap starts now.
+     */
+    void beginStep() {
+        for (int i = 0; i < NUM_PHASES; i++) {
+            stepNanos[i] = 0L;
+        }
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            stepCounts[i] = 0L;
+        }
+        lapStart = System.nanoTime();
+    }
+
+    /**
+     * Ends the current lap and adds it to a phase.
+     */
+    void lap(PhysicsStats.Phase phase) {
+        long now = System.nanoTime();
+        stepNanos[phase.ordinal()] += now - lapStart;
+        lapStart = now;
+    }
+
+    /**
+     * Ends the current lap and splits it between two phases, when the time of one of them was
+     * measured by someone else.
+     *
+     * @param phase
+     *        The phase which gets the rest of the lap.
+     *
+     * @param part
+     *        The phase which was measured.
+     *
+     * @param partNanos
+     *        The time of the measured phase (ns). It can't be more than the whole lap.
+     */
+    void lap(PhysicsStats.Phase phase, PhysicsStats.Phase part, long partNanos) {
+        long now = System.nanoTime();
+        long lapNanos = now - lapStart;
+        partNanos = Math.max(0L, Math.min(partNanos, lapNanos));
+        stepNanos[part.ordinal()]  += partNanos;
+        stepNanos[phase.ordinal()] += lapNanos - partNanos;
+        lapStart = now;
+    }
+
+    void count(PhysicsStats.Counter counter, long amount) {
+        stepCounts[counter.ordinal()] += amount;
+    }
+
+    /**
+     * @return The time of the phase so far in the step being measured (ns).
+     */
+    long getStepNanos(PhysicsStats.Phase phase) {
+        return stepNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return The count so far in the step being measured.
+     */
+    long getStepCount(PhysicsStats.Counter counter) {
+        return stepCounts[counter.ordinal()];
+    }
+
+    /**
+     * Adds the step which has just been measured to the totals, and writes it to the trace.
+     *
+     * @param stepCount
+     *        The step count of the physics system at the end of the step.
+     */
+    synchronized void endStep(long stepCount) {
+        step = stepCount;
+        ++numSteps;
+        long stepTotal = 0L;
+        for (int i = 0; i < NUM_PHASES; i++) {
+            lastNanos[i] = stepNanos[i];
+            totalNanos[i] += stepNanos[i];
+            stepTotal += stepNanos[i];
+        }
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            lastCounts[i] = stepCounts[i];
+            totalCounts[i] += stepCounts[i];
+        }
+        maxStepNanos = Math.max(maxStepNanos, stepTotal);
+
+        if (trace != null) {
+            if (traceBuffer.remaining() < 8 * (1 + NUM_PHASES + NUM_COUNTERS)) {
+                flushTrace();
+            }
+            if (trace != null) {
+                traceBuffer.putLong(stepCount);
+                for (int i = 0; i < NUM_PHASES; i++) {
+                    traceBuffer.putLong(stepNanos[i]);
+                }
+                for (int i = 0; i < NUM_COUNTERS; i++) {
+                    traceBuffer.putLong(stepCounts[i]);
+                }
+            }
+        }
+    }
+
+    synchronized PhysicsStats getStats() {
+        return new PhysicsStats(step, numSteps, lastNanos, totalNanos, lastCounts, totalCounts, maxStepNanos);
+    }
+
+    /**
+     * Clears the totals. The last step is kept.
+     */
+    synchronized void reset() {
+        numSteps = 0L;
+        for (int i = 0; i < NUM_PHASES; i++) {
+            totalNanos[i] = 0L;
+        }
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            totalCounts[i] = 0L;
+        }
+        maxStepNanos = 0L;
+    }
+
+    /**
+     * @return True while a trace is being written.
+     */
+    synchronized boolean isTracing() {
+        return trace != null;
+    }
+
+    /**
+     * Starts writing every step to a trace.
+     *
+     * @param channel
+     *        Where the trace is written. Closed when the trace stops.
+     */
+    synchronized void startTrace(FileChannel channel) {
+        if (trace != null) {
+            stopTrace();
+        }
+        trace = channel;
+        traceBuffer.clear();
+        traceBuffer.putInt(TRACE_MAGIC);
+        traceBuffer.putShort(TRACE_VERSION);
+        traceBuffer.put((byte) NUM_PHASES);
+        traceBuffer.put((byte) NUM_COUNTERS);
+    }
+
+    /**
+     * Writes the rest of the trace and closes it.
+     */
+    synchronized void stopTrace() {
+        if (trace == null) {
+            return;
+        }
+        flushTrace();
+        if (trace != null) {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                Log.error("There was an error closing the physics trace.");
+                Log.error(e.toString());
+            }
+            trace = null;
+        }
+    }
+
+    private void flushTrace() {
+        traceBuffer.flip();
+        try {
+            while (traceBuffer.hasRemaining()) {
+                trace.write(traceBuffer);
+            }
+        } catch (IOException e) {
+            Log.error("There was an error writing the physics trace, the rest of it is dropped.");
+            Log.error(e.toString());
+            try {
+                trace.close();
+            } catch (IOException ignored) {
+                // Already failed.
+            }
+            trace = null;
+        }
+        traceBuffer.clear();
+    }
+}
@@ -0,0 +1,268 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Records everything that is done to a physics system from the outside, so that the run can be
+ * reproduced exactly by a {@link PhysicsReplayer}. The recording starts with a snapshot of the
+ * system, followed by every object and joint added or removed, every impulse and force applied
+ * through the physics system and every change of the time step and of the contact solver settings.
+ * Each record is tagged with the number of steps that had been taken when it happened.
+ *
+ * Records are only ever appended to a buffered stream. If writing fails, the error is logged and
+ * the rest of the recording is dropped, the physics carries on regardless.
+ *
+ * @see PhysicsSystem#startRecording
+ */
+public final class PhysicsRecorder {
+
+    /** Identifies recordings ("LREC" in ASCII) and their format. */
+    static final int   RECORDING_MAGIC   = 0x4C524543;
+    static final short RECORDING_VERSION = 4;
+
+    // The record types. Every record starts with its type and the step it happened at.
+    static final byte RECORD_END        = 0;
+    static final byte RECORD_SNAPSHOT   = 1;
+    static final byte RECORD_ADD        = 2;
+    static final byte RECORD_REMOVE     = 3;
+    static final byte RECORD_CLEAR      = 4;
+    static final byte RECORD_IMPULSE    = 5;
+    static final byte RECORD_PHYSICS_DT = 6;
+    // Added in version 2.
+    static final byte RECORD_FORCE      = 7;
+    // Added in version 3.
+    static final byte RECORD_JOINT_ADD    = 8;
+    static final byte RECORD_JOINT_REMOVE = 9;
+    // Added in version 4.
+    static final byte RECORD_CONTACT_ITERATIONS    = 10;
+    static final byte RECORD_CONTACT_WARM_STARTING = 11;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    /** Space to write the state of added objects into before it is copied to the stream. */
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private boolean isFailed = false;
+    private boolean isClosed = false;
+
+    /**
+     * Creates a new recorder. Nothing is written until it is given to a physics system.
+     *
+     * @param outputStream
+     *        Where the recording is written to. Closed when the recording stops.
+     */
+    public PhysicsRecorder(OutputStream outputStream) {
+        out = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+    }
+
+    /**
+     * @return True when something went wrong writing the recording, so it is incomplete.
+     */
+    public boolean isFailed() {
+        return isFailed;
+    }
+
+    void writeHeader() {
+        if (isFailed) {return;}
+        try {
+            out.writeInt(RECORDING_MAGIC);
+            out.writeShort(RECORDING_VERSION);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordSnapshot(long step, ByteBuffer snapshot) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_SNAPSHOT, step);
+            out.writeInt(snapshot.remaining());
+            writeBuffer(snapshot);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordAdd(long step, Collidable object) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_ADD, step);
+            out.writeInt(object.getBodyId());
+            out.writeUTF(object.getClass().getName());
+
+            int size = object instanceof Snapshottable ? ((Snapshottable) object).getSnapshotSize() : State.SNAPSHOT_SIZE;
+            if (scratch.capacity() < size) {
+                scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2));
+            }
+            scratch.clear();
+            if (object instanceof Snapshottable) {
+                ((Snapshottable) object).writeSnapshot(scratch);
+            } else {
+                object.getState().write(scratch);
+            }
+            scratch.flip();
+            out.writeInt(size);
+            writeBuffer(scratch);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordRemove(long step, Collidable object) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_REMOVE, step);
+            out.writeInt(object.getBodyId());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordClear(long step) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_CLEAR, step);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordImpulse(long step, Collidable object, double impulseX, double impulseY, double angularImpulse) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_IMPULSE, step);
+            out.writeInt(object.getBodyId());
+            out.writeDouble(impulseX);
+            out.writeDouble(impulseY);
+            out.writeDouble(angularImpulse);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordForce(long step, Collidable object, double forceX, double forceY, double torque) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_FORCE, step);
+            out.writeInt(object.getBodyId());
+            out.writeDouble(forceX);
+            out.writeDouble(forceY);
+            out.writeDouble(torque);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records a joint which has just been added to the solver, with its anchors in the local
+     * coordinates of the objects, so that it is made exactly the same in the replay.
+     */
+    void recordJointAdd(long step, JointSolver jointSolver, int slot) {
+        if (isFailed) {return;}
+        try {
+            Joint joint = jointSolver.getJoint(slot);
+            startRecord(RECORD_JOINT_ADD, step);
+            out.writeByte(joint.getType().ordinal());
+            out.writeInt(joint.getFirstObject().getBodyId());
+            out.writeInt(joint.getSecondObject().getBodyId());
+            out.writeDouble(jointSolver.getAnchorAX(slot));
+            out.writeDouble(jointSolver.getAnchorAY(slot));
+            out.writeDouble(jointSolver.getAnchorBX(slot));
+            out.writeDouble(jointSolver.getAnchorBY(slot));
+            out.writeDouble(jointSolver.getReference(slot));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records a joint which has just been removed. The joint is found by the slot it was in, which
+     * is the same in the replay since the joints are added and removed in the same order.
+     */
+    void recordJointRemove(long step, int slot) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_JOINT_REMOVE, step);
+            out.writeInt(slot);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordPhysicsDT(long step, long physics_dt) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_PHYSICS_DT, step);
+            out.writeLong(physics_dt);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordContactIterations(long step, int iterations) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_CONTACT_ITERATIONS, step);
+            out.writeInt(iterations);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void recordContactWarmStarting(long step, boolean isWarmStarting) {
+        if (isFailed) {return;}
+        try {
+            startRecord(RECORD_CONTACT_WARM_STARTING, step);
+            out.writeBoolean(isWarmStarting);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Writes the end of the recording and closes the stream.
+     *
+     * @param step
+     *        The number of steps taken when the recording stopped.
+     */
+    void close(long step) {
+        if (isClosed) {return;}
+        isClosed = true;
+        try {
+            if (!isFailed) {
+                startRecord(RECORD_END, step);
+            }
+            out.close();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void startRecord(byte type, long step) throws IOException {
+        out.writeByte(type);
+        out.writeLong(step);
+    }
+
+    private void writeBuffer(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                out.writeByte(buffer.get());
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        isFailed = true;
+        Log.error("There was an error writing the physics recording, the rest of it will be dropped.");
+        Log.error(e.toString());
+    }
+}
@@ -0,0 +1,221 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plays back a recording made by a {@link PhysicsRecorder}. The recording is replayed into a
+ * physics system without pacing it to real time, and everything that was done to the recorded
+ * system is done again at the same step. Since the physics is deterministic, the replayed run
+ * ends in exactly the same state as the recorded one.
+ */
+public final class PhysicsReplayer {
+
+    /**
+     * Creates the objects of a recording. The physics system only records the state of its
+     * objects, so the objects themselves have to be made by the user.
+     */
+    public interface ObjectResolver {
+        /**
+         * Makes a new object for the replay. The state of the object is set afterwards, so it
+         * doesn't matter what it is created with.
+         *
+         * @param bodyId
+         *        The body id the object had when it was recorded.
+         *
+         * @param className
+         *        The name of the class of the recorded object.
+         *
+         * @return A new object of the same kind as the recorded one.
+         */
+        Collidable createObject(int bodyId, String className);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataInputStream in;
+    private final ObjectResolver resolver;
+    /** The objects of the replay by their body id. */
+    private final Map<Integer, Collidable> bodies = new HashMap<>(100);
+
+    // Kept while replaying, to measure the replay.
+    private long numSteps;
+    private long numBodySteps;
+    private double simulatedTime;
+
+    /**
+     * Creates a new replayer.
+     *
+     * @param inputStream
+     *        The recording. Closed once it has been replayed.
+     *
+     * @param resolver
+     *        Makes the objects of the recording.
+     */
+    public PhysicsReplayer(InputStream inputStream, ObjectResolver resolver) {
+        in = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE));
+        this.resolver = resolver;
+    }
+
+    /**
+     * Replays the whole recording as fast as possible.
+     *
+     * @param physicsSystem
+     *        The system to replay into. It must not have any objects, must not be running, and
+     *        must have the same physics things as the recorded system.
+     *
+     * @return The throughput of the replay and the checksum of the final state.
+     *
+     * @throws IOException
+     *         When the recording can't be read or has been cut short.
+     */
+    public HeadlessResult replay(PhysicsSystem physicsSystem) throws IOException {
+        if (physicsSystem.isPhysicsRunning() || physicsSystem.getObjectCount() != 0) {
+            String errorString = "Tried to replay into a physics system which is running or already has objects.";
+            Log.error(errorString);
+            throw new IllegalStateException(errorString);
+        }
+
+        try {
+            // Older versions are a subset of the newer ones, so they can still be replayed.
+            int magic = in.readInt();
+            short version = in.readShort();
+            if (magic != PhysicsRecorder.RECORDING_MAGIC || version < 1 ||
+                    version > PhysicsRecorder.RECORDING_VERSION) {
+                String errorString = "Tried to replay something which isn't a physics recording of a known version.";
+                Log.error(errorString);
+                throw new IllegalArgumentException(errorString);
+            }
+
+            numSteps = 0;
+            numBodySteps = 0;
+            simulatedTime = 0.0;
+            bodies.clear();
+            boolean isStarted = false;
+            long physics_dt = physicsSystem.getPhysicsTimeDelta();
+            long startTime = System.nanoTime();
+
+            while (true) {
+                byte type = in.readByte();
+                long step = in.readLong();
+                // The objects and the snapshot at the start are all at the first step.
+                if (isStarted) {
+                    runUntil(physicsSystem, step, physics_dt);
+                }
+
+                if (type == PhysicsRecorder.RECORD_END) {
+                    break;
+                }
+                switch (type) {
+                    case PhysicsRecorder.RECORD_SNAPSHOT:
+                        byte[] snapshot = new byte[in.readInt()];
+                        in.readFully(snapshot);
+                        physicsSystem.restoreSnapshot(ByteBuffer.wrap(snapshot));
+                        physics_dt = physicsSystem.getPhysicsTimeDelta();
+                        isStarted = true;
+                        break;
+                    case PhysicsRecorder.RECORD_ADD:
+                        replayAdd(physicsSystem);
+                        break;
+                    case PhysicsRecorder.RECORD_REMOVE:
+                        physicsSystem.removeObject(bodies.remove(in.readInt()));
+                        break;
+                    case PhysicsRecorder.RECORD_CLEAR:
+                        physicsSystem.clearObjects();
+                        bodies.clear();
+                        break;
+                    case PhysicsRecorder.RECORD_IMPULSE:
+                        Collidable object = bodies.get(in.readInt());
+                        double impulseX = in.readDouble();
+                        double impulseY = in.readDouble();
+                        physicsSystem.applyImpulse(object, new Vector2D(impulseX, impulseY), in.readDouble());
+                        break;
+                    case PhysicsRecorder.RECORD_FORCE:
+                        object = bodies.get(in.readInt());
+                        double forceX = in.readDouble();
+                        double forceY = in.readDouble();
+                        physicsSystem.applyForce(object, new Vector2D(forceX, forceY), in.readDouble());
+                        break;
+                    case PhysicsRecorder.RECORD_JOINT_ADD:
+                        replayJointAdd(physicsSystem);
+                        break;
+                    case PhysicsRecorder.RECORD_JOINT_REMOVE:
+                        physicsSystem.removeJoint(physicsSystem.getJoint(in.readInt()));
+                        break;
+                    case PhysicsRecorder.RECORD_CONTACT_ITERATIONS:
+                        physicsSystem.setContactIterations(in.readInt());
+                        break;
+                    case PhysicsRecorder.RECORD_CONTACT_WARM_STARTING:
+                        physicsSystem.setContactWarmStarting(in.readBoolean());
+                        break;
+                    case PhysicsRecorder.RECORD_PHYSICS_DT:
+                        physics_dt = in.readLong();
+                        physicsSystem.setPhysicsTimeDelta(physics_dt);
+                        break;
+                    default:
+                        String errorString = "Found an unknown record in the physics recording: " + type;
+                        Log.error(errorString);
+                        throw new IllegalArgumentException(errorString);
+                }
+            }
+
+            long elapsedNanos = System.nanoTime() - startTime;
+            Log.info("Replayed a physics recording of " + numSteps + " steps.");
+            return new HeadlessResult(numSteps, numBodySteps, simulatedTime, elapsedNanos,
+                    physicsSystem.getStateChecksum());
+        } finally {
+            in.close();
+        }
+    }
+
+    private void replayAdd(PhysicsSystem physicsSystem) throws IOException {
+        int bodyId = in.readInt();
+        String className = in.readUTF();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+
+        Collidable object = resolver.createObject(bodyId, className);
+        if (object == null) {
+            String errorString = "Could not make an object of class " + className + " for the replay.";
+            Log.error(errorString);
+            throw new IllegalStateException(errorString);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (object instanceof Snapshottable) {
+            ((Snapshottable) object).readSnapshot(buffer, data.length);
+        } else {
+            object.getState().read(buffer);
+        }
+        physicsSystem.addObject(object, bodyId);
+        bodies.put(bodyId, object);
+    }
+
+    private void replayJointAdd(PhysicsSystem physicsSystem) throws IOException {
+        Joint.Type type = Joint.Type.values()[in.readByte()];
+        Collidable first  = bodies.get(in.readInt());
+        Collidable second = bodies.get(in.readInt());
+        double anchorAX  = in.readDouble();
+        double anchorAY  = in.readDouble();
+        double anchorBX  = in.readDouble();
+        double anchorBY  = in.readDouble();
+        double reference = in.readDouble();
+        physicsSystem.addLocalJoint(type, first, second, anchorAX, anchorAY, anchorBX, anchorBY, reference);
+    }
+
+    private void runUntil(PhysicsSystem physicsSystem, long step, long physics_dt) {
+        while (physicsSystem.getStepCount() < step) {
+            physicsSystem.step(physics_dt);
+            ++numSteps;
+            numBodySteps += physicsSystem.getObjectCount();
+            simulatedTime += physics_dt * 0.001;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * How long each part of the physics steps took, and how much work there was in them. The time of
+ * every step is split into phases which add up to the whole step, and the work is counted with a
+ * few counters. The last step is given on its own, along with the totals of every step since the
+ * statistics were last reset.
+ *
+ * The statistics are a copy, they don't change as the physics carries on.
+ *
+ * @see PhysicsSystem#getStats
+ */
+public final class PhysicsStats {
+
+    static final private String NL = System.getProperty("line.separator");
+    static final private double NANOSECOND_TO_MILLISECOND = 0.000001;
+
+    /**
+     * The parts of a physics step.
+     */
+    public enum Phase {
+        /** Applying the queued adds and removes, recording and storing the state at the start. */
+        SETUP,
+        /** Finding the pairs of objects which might be touching or colliding. */
+        BROADPHASE,
+        /** Finding whether and when the pairs from the broad phase touch or collide. */
+        NARROWPHASE,
+        /** Solving the contacts and joints. */
+        SOLVER,
+        /** Moving the objects through the step. */
+        INTEGRATION,
+        /** Resolving the collisions during the step, in the order they happen. */
+        RESOLUTION,
+        /** Sleeping, the contact events, the checksum and handing the frame to the graphics. */
+        FINISH,
+        /** The contact listeners and physics things. */
+        CALLBACKS
+    }
+
+    /**
+     * The amounts of work counted in each step.
+     */
+    public enum Counter {
+        /** The objects in the physics system. */
+        BODIES,
+        /** The pairs of objects from the broad phase which were checked by the narrow phase. */
+        CANDIDATE_PAIRS,
+        /** The pairs which were found to collide during the step. */
+        COLLISIONS,
+        /** The pairs which were solved as touching by the contact solver. */
+        CONTACTS,
+        /** The joints which were solved. */
+        JOINTS,
+        /** The times round the loop which resolves the collisions, including the collisions which
+         * were thrown away since one of the objects had already changed direction. */
+        RESOLUTION_ITERATIONS,
+        /** The collisions which were resolved. */
+        RESOLUTIONS
+    }
+
+    private final long   step;
+    private final long   numSteps;
+    private final long[] lastNanos;
+    private final long[] totalNanos;
+    private final long[] lastCounts;
+    private final long[] totalCounts;
+    private final long   maxStepNanos;
+
+    PhysicsStats(long step, long numSteps, long[] lastNanos, long[] totalNanos, long[] lastCounts,
+                 long[] totalCounts, long maxStepNanos) {
+        this.step         = step;
+        this.numSteps     = numSteps;
+        this.lastNanos    = lastNanos.clone();
+        this.totalNanos   = totalNanos.clone();
+        this.lastCounts   = lastCounts.clone();
+        this.totalCounts  = totalCounts.clone();
+        this.maxStepNanos = maxStepNanos;
+    }
+
+    /**
+     * @return The step count of the physics system at the end of the last step measured.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * @return The number of steps measured since the statistics were reset.
+     */
+    public long getStepCount() {
+        return numSteps;
+    }
+
+    /**
+     * @return The time the phase took in the last step (ns).
+     */
+    public long getLastNanos(Phase phase) {
+        return lastNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return The time the phase took in every step since the reset (ns).
+     */
+    public long getTotalNanos(Phase phase) {
+        return totalNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return The average time the phase took per step since the reset (ns).
+     */
+    public double getAverageNanos(Phase phase) {
+        return numSteps > 0 ? totalNanos[phase.ordinal()] / (double) numSteps : 0.0;
+    }
+
+    /**
+     * @return The time the whole of the last step took (ns).
+     */
+    public long getLastStepNanos() {
+        return sum(lastNanos);
+    }
+
+    /**
+     * @return The average time a whole step took since the reset (ns).
+     */
+    public double getAverageStepNanos() {
+        return numSteps > 0 ? sum(totalNanos) / (double) numSteps : 0.0;
+    }
+
+    /**
+     * @return The time the longest step since the reset took (ns).
+     */
+    public long getMaxStepNanos() {
+        return maxStepNanos;
+    }
+
+    /**
+     * @return The count in the last step.
+     */
+    public long getLastCount(Counter counter) {
+        return lastCounts[counter.ordinal()];
+    }
+
+    /**
+     * @return The count summed over every step since the reset.
+     */
+    public long getTotalCount(Counter counter) {
+        return totalCounts[counter.ordinal()];
+    }
+
+    /**
+     * @return The average count per step since the reset.
+     */
+    public double getAverageCount(Counter counter) {
+        return numSteps > 0 ? totalCounts[counter.ordinal()] / (double) numSteps : 0.0;
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0L;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        String retString = "";
+        retString += "step:                  " + step     + NL;
+        retString += "steps measured:        " + numSteps + NL;
+        for (Phase phase : Phase.values()) {
+            retString += String.format("%-22s %9.3f ms (average %9.3f ms)",
+                    phase.toString().toLowerCase() + ":",
+                    getLastNanos(phase) * NANOSECOND_TO_MILLISECOND,
+                    getAverageNanos(phase) * NANOSECOND_TO_MILLISECOND) + NL;
+        }
+        retString += String.format("%-22s %9.3f ms (average %9.3f ms, longest %.3f ms)", "step:",
+                getLastStepNanos() * NANOSECOND_TO_MILLISECOND,
+                getAverageStepNanos() * NANOSECOND_TO_MILLISECOND,
+                maxStepNanos * NANOSECOND_TO_MILLISECOND) + NL;
+        for (Counter counter : Counter.values()) {
+            retString += String.format("%-22s %9d    (average %.1f)",
+                    counter.toString().toLowerCase() + ":", getLastCount(counter), getAverageCount(counter)) + NL;
+        }
+        return retString;
+    }
+}
@@ -0,0 +1,102 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event covering one physics step, with the time of each phase and the counts
+ * from the {@link PhysicsProfiler}. Must only be used when
+ * {@link com.gmail.claytonrogers53.life.Util.FlightEvents#IS_AVAILABLE} is true.
+ */
+@Name("life.PhysicsStep")
+@Label("Physics Step")
+@Category({"Life", "Physics"})
+@Description("One step of the physics system, split into its phases.")
+@StackTrace(false)
+final class PhysicsStepEvent extends Event {
+
+    @Label("Step")
+    long step;
+
+    @Label("Setup") @Timespan(Timespan.NANOSECONDS)
+    long setup;
+    @Label("Broad Phase") @Timespan(Timespan.NANOSECONDS)
+    long broadphase;
+    @Label("Narrow Phase") @Timespan(Timespan.NANOSECONDS)
+    long narrowphase;
+    @Label("Solver") @Timespan(Timespan.NANOSECONDS)
+    long solver;
+    @Label("Integration") @Timespan(Timespan.NANOSECONDS)
+    long integration;
+    @Label("Resolution") @Timespan(Timespan.NANOSECONDS)
+    long resolution;
+    @Label("Finish") @Timespan(Timespan.NANOSECONDS)
+    long finish;
+    @Label("Callbacks") @Timespan(Timespan.NANOSECONDS)
+    long callbacks;
+
+    @Label("Bodies")
+    long bodies;
+    @Label("Candidate Pairs")
+    long candidatePairs;
+    @Label("Collisions")
+    long collisions;
+    @Label("Contacts")
+    long contacts;
+    @Label("Joints")
+    long joints;
+    @Label("Resolution Iterations")
+    long resolutionIterations;
+    @Label("Resolutions")
+    long resolutions;
+
+    /**
+     * @return The started event, or null when the event isn't being recorded.
+     */
+    static PhysicsStepEvent start() {
+        PhysicsStepEvent event = new PhysicsStepEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits the event, with the step which was just measured.
+     *
+     * @param step
+     *        The step count of the physics system at the end of the step.
+     *
+     * @param profiler
+     *        The profiler which measured the step.
+     */
+    void finish(long step, PhysicsProfiler profiler) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.step            = step;
+        setup                = profiler.getStepNanos(PhysicsStats.Phase.SETUP);
+        broadphase           = profiler.getStepNanos(PhysicsStats.Phase.BROADPHASE);
+        narrowphase          = profiler.getStepNanos(PhysicsStats.Phase.NARROWPHASE);
+        solver               = profiler.getStepNanos(PhysicsStats.Phase.SOLVER);
+        integration          = profiler.getStepNanos(PhysicsStats.Phase.INTEGRATION);
+        resolution           = profiler.getStepNanos(PhysicsStats.Phase.RESOLUTION);
+        finish               = profiler.getStepNanos(PhysicsStats.Phase.FINISH);
+        callbacks            = profiler.getStepNanos(PhysicsStats.Phase.CALLBACKS);
+        bodies               = profiler.getStepCount(PhysicsStats.Counter.BODIES);
+        candidatePairs       = profiler.getStepCount(PhysicsStats.Counter.CANDIDATE_PAIRS);
+        collisions           = profiler.getStepCount(PhysicsStats.Counter.COLLISIONS);
+        contacts             = profiler.getStepCount(PhysicsStats.Counter.CONTACTS);
+        joints               = profiler.getStepCount(PhysicsStats.Counter.JOINTS);
+        resolutionIterations = profiler.getStepCount(PhysicsStats.Counter.RESOLUTION_ITERATIONS);
+        resolutions          = profiler.getStepCount(PhysicsStats.Counter.RESOLUTIONS);
+        commit();
+    }
+}
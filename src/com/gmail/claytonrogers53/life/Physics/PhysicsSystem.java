@@ -1,12 +1,30 @@
 package com.gmail.claytonrogers53.life.Physics;
 
 import com.gmail.claytonrogers53.life.Util.Configuration;
+import com.gmail.claytonrogers53.life.Util.FlightEvents;
 import com.gmail.claytonrogers53.life.Util.Log;
 import com.gmail.claytonrogers53.life.Util.RollingAverage;
+import com.gmail.claytonrogers53.life.Util.TripleBuffer;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The physics system keeps track of all of the physics objects and updates them once every physics
@@ -18,33 +36,179 @@ import java.util.List;
  */
 public final class PhysicsSystem implements Runnable {
 
+    /**
+     * A change to the list of objects, queued until the objects are next locked outside of a step.
+     */
+    private static final class ObjectCommand {
+        static final int ADD    = 0;
+        static final int REMOVE = 1;
+        static final int CLEAR  = 2;
+
+        final int type;
+        /** Null for a clear. */
+        final Collidable object;
+
+        ObjectCommand(int type, Collidable object) {
+            this.type   = type;
+            this.object = object;
+        }
+    }
+
     static final private String NL = System.getProperty("line.separator");
 
     /** Easy conversion from milliseconds to seconds. */
     static final private double MILLISECOND_TO_SECOND = 0.001;
+    /** Easy conversion from milliseconds to nanoseconds. */
+    static final private long   MILLISECOND_TO_NANOSECOND = 1000000L;
 
     /** The default time between physics frames if one is not specified in the configuration file. */
     static final private long   DEFAULT_PHYSICS_DT           = 17L;
     /** The default physics multiplier if one is not specified in the configuration file. */
     static final private double DEFAULT_PHYSICS_MULTIPLIER   = 1.0;
+    /** The constants of the 64 bit FNV-1a hash used for the state checksum. */
+    static final         long   FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    static final private long   FNV_PRIME        = 0x100000001b3L;
+
+    /** The default number of steps kept for rolling back, zero turns the history off. */
+    static final private int    DEFAULT_STATE_HISTORY_LENGTH = 0;
+    /** Whether the state hash is recorded every step if not specified in the configuration file. */
+    static final private String DEFAULT_DETERMINISTIC        = "FALSE";
+    /** Identifies snapshots ("LIFE" in ASCII) and their format. */
+    static final private int    SNAPSHOT_MAGIC   = 0x4C494645;
+    static final private short  SNAPSHOT_VERSION = 6;
+    static final private short  SNAPSHOT_FLAG_DETERMINISTIC  = 1;
+    static final private short  SNAPSHOT_FLAG_WARM_STARTING = 2;
+    /** Magic, version, flags, physics_dt, multiplier, step count, step hash, next id, object count. */
+    static final private int    SNAPSHOT_HEADER_SIZE = 4 + 2 + 2 + 8 + 8 + 4 + 8 + 8 + 4 + 4;
+
+    /** The default limit on the steps taken in one loop when the physics is falling behind. */
+    static final private int    DEFAULT_MAX_STEPS_PER_FRAME  = 5;
+    /** The default broad phase collision system if one is not specified in the configuration file. */
+    static final private String DEFAULT_COLLISION_SYSTEM     = "TREE";
+    /** The default margin (m) of the AABB tree if one is not specified in the configuration file. */
+    static final private double DEFAULT_AABB_TREE_MARGIN     = 0.1;
+    /** The default number of threads of the region collision system, zero for one per processor. */
+    static final private int    DEFAULT_REGION_THREADS       = 0;
+    /** The default number of strips of the region collision system, zero for a few per thread. */
+    static final private int    DEFAULT_REGION_COUNT         = 0;
+    /** The number of strips per thread of the region collision system when it isn't given. */
+    static final private int    DEFAULT_REGIONS_PER_THREAD   = 4;
+    /** The default number of times the contact solver goes over the contacts each step. */
+    static final private int    DEFAULT_CONTACT_ITERATIONS   = 8;
+    /** Whether the contact solver starts from the impulses of the last step by default. */
+    static final private String DEFAULT_CONTACT_WARM_STARTING = "TRUE";
+    /** The default number of threads of the contact solver, one to solve in order. */
+    static final private int    DEFAULT_CONTACT_THREADS      = 1;
+    /** The default speed (m/s) below which an object is resting. */
+    static final private double DEFAULT_SLEEP_LINEAR_VELOCITY  = 0.01;
+    /** The default angular speed (rad/s) below which an object is resting. */
+    static final private double DEFAULT_SLEEP_ANGULAR_VELOCITY = 0.01;
+    /** The default time (s) an object has to be resting before it falls asleep. */
+    static final private double DEFAULT_SLEEP_TIME             = 0.5;
 
     // Actual instance variables.
     private long                physics_dt         = DEFAULT_PHYSICS_DT;
     private double              physicsMultiplier  = DEFAULT_PHYSICS_MULTIPLIER;
     private volatile boolean    isPhysicsRunning   = false;
     private volatile boolean    isPaused           = false;
-    private RollingAverage<Long>   frameTimeAvg    = new RollingAverage<>(40);
+    private int                 maxStepsPerFrame   = DEFAULT_MAX_STEPS_PER_FRAME;
+    private RollingAverage<Double> frameTimeAvg    = new RollingAverage<>(40);
     private RollingAverage<Double> loadAvg         = new RollingAverage<>(40);
     public double frameTime;
     public double load;
+    /** Published along with each frame, as a whole, so that the graphics system can find the
+     * interpolation alpha. */
+    private volatile StepClock  stepClock          = new StepClock(0L, 0L, DEFAULT_PHYSICS_MULTIPLIER, 0.0);
+    /** The clock as it will be after the step the physics loop is taking, which goes out with the
+     * frame of the step. Null when the step isn't being taken by the physics loop. */
+    private volatile StepClock  frameClock         = null;
+    private final double sleepLinearVelocity;
+    private final double sleepAngularVelocity;
+    /** Negative when objects should never fall asleep. */
+    private final double sleepTime;
+    private volatile int numSleepingObjects = 0;
+    private volatile int numAwakeObjects    = 0;
+    /** When true, the checksum of the state is recorded after every step. */
+    private volatile boolean    isDeterministic;
+    private volatile long       stepCount          = 0L;
+    private volatile long       lastStepHash       = 0L;
+    /** The body id given to the next object that is added. Only used with the objects locked. */
+    private int                 nextBodyId         = 0;
+    /** Records everything done to the system, null when not recording. Only used with the objects
+     * locked. */
+    private PhysicsRecorder     recorder           = null;
+    /** The time step that the recording was last told about (ms). */
+    private long                recordedPhysics_dt = 0L;
+    /** The state at the start of the last few steps, null when rolling back is turned off. Only
+     * used with the objects locked. */
+    private StateHistory        history            = null;
     /** The lists of physics objects that will be calculated every loop */
     /** The list of non object physics things that need to be calculated every loop.
-     * ex. gravity, some game mechanic.*/
+     * ex. gravity, some game mechanic. When both are locked, it is always locked after the
+     * objects.*/
     private final Collection<PhysicsThing> physicsThings = new ArrayList<>(100);
     /** The list of objects that propagates and can (potentially) collide. */
     private final List<Collidable>         objects       = new ArrayList<>(100);
+    /** The same objects, for quickly checking whether an object has been added. Only used with
+     * the objects locked. */
+    private final Set<Collidable> objectSet =
+            Collections.newSetFromMap(new IdentityHashMap<Collidable, Boolean>(100));
+    /** The adds and removes which haven't been applied yet. Any thread may add to it without
+     * locking. */
+    private final Queue<ObjectCommand> objectCommands = new ConcurrentLinkedQueue<>();
+    /** Objects removed by the commands being applied, which are still in the list. Only used with
+     * the objects locked. */
+    private final Set<Collidable> removedObjects =
+            Collections.newSetFromMap(new IdentityHashMap<Collidable, Boolean>());
+    /** True while a step is running, when the commands are left queued. Only used with the
+     * objects locked. */
+    private boolean isStepping = false;
+    /** The thread running the physics things, null when they aren't running. What they do to the
+     * objects isn't recorded, since the physics things of the replay do it again. */
+    private volatile Thread thingThread = null;
+    /** Held while a step is taken, so that a rollback can keep the physics loop from stepping
+     * while it simulates again. When both are locked, it is always locked before the objects. */
+    private final Object stepLock = new Object();
     /** The system which detects all of the collisions between objects */
-    private final CollisionSystem collisionSystem = new AABBCollision();
+    private CollisionSystem collisionSystem;
+    /** The extra check of which pairs collide, kept so that it can be given to a new collision
+     * system. */
+    private CollisionFilter collisionFilter = null;
+    /** The pool of the simulation host running the world, which the collision system and the
+     * contact solver use instead of their own. Null when there is none. Only used with the objects
+     * locked. */
+    private ForkJoinPool sharedPool = null;
+    /** Times the phases of the steps, for the statistics and the trace. */
+    private final PhysicsProfiler profiler = new PhysicsProfiler();
+    /** Resolves the collisions found by the collision system in the order they happen. */
+    private final CollisionScheduler collisionScheduler = new CollisionScheduler(profiler);
+    /** Keeps objects which are resting against each other apart. */
+    private final ContactSolver contactSolver;
+    /** The joints between objects, solved along with the contacts. Only used with the objects
+     * locked. */
+    private final JointSolver jointSolver = new JointSolver();
+    /** Stops joined objects from colliding, then asks the collision filter. Only given to the
+     * collision system while there are joints. */
+    private final CollisionFilter jointFilter = new CollisionFilter() {
+        @Override
+        public boolean shouldCollide(Collidable first, Collidable second) {
+            return !jointSolver.isJoined(first, second) &&
+                    (collisionFilter == null || collisionFilter.shouldCollide(first, second));
+        }
+    };
+    /** The pairs of objects which are touching, kept between steps for the contact events. Only
+     * used with the objects locked. */
+    private final PairCache pairCache = new PairCache();
+    /** The contact events of the last step, only used by the thread stepping the physics. */
+    private final ContactEvents contactEvents = new ContactEvents();
+    /** Told about the contact events once per step. */
+    private final List<ContactListener> contactListeners = new ArrayList<>(4);
+    /** Hands the positions at the end of each step to the graphics thread. Written with the
+     * objects locked, read by a single reader. */
+    private final TripleBuffer<PhysicsFrame> frames =
+            new TripleBuffer<>(new PhysicsFrame(), new PhysicsFrame(), new PhysicsFrame());
+    /** Answers the region, ray and nearest object queries. Only used with the objects locked. */
+    private SpatialQuery spatialQuery;
 
     /**
      * Constructs a new physics systems object. The physics system reference should then be given
@@ -54,6 +218,64 @@ public final class PhysicsSystem implements Runnable {
     public PhysicsSystem() {
         physics_dt        = Configuration.getValueInt   ("PHYSICS_DT",    (int)DEFAULT_PHYSICS_DT);
         physicsMultiplier = Configuration.getValueDouble("PHYSICS_MULTIPLIER", DEFAULT_PHYSICS_MULTIPLIER);
+        maxStepsPerFrame  = Configuration.getValueInt   ("MAX_PHYSICS_STEPS_PER_FRAME", DEFAULT_MAX_STEPS_PER_FRAME);
+        if (maxStepsPerFrame <= 0) {
+            Log.warning("MAX_PHYSICS_STEPS_PER_FRAME must be at least 1, using " + DEFAULT_MAX_STEPS_PER_FRAME + ".");
+            maxStepsPerFrame = DEFAULT_MAX_STEPS_PER_FRAME;
+        }
+        isDeterministic   = Boolean.parseBoolean(
+                Configuration.getValue("DETERMINISTIC", DEFAULT_DETERMINISTIC).trim());
+        setHistoryLength(Configuration.getValueInt("STATE_HISTORY_LENGTH", DEFAULT_STATE_HISTORY_LENGTH));
+        collisionSystem   = createCollisionSystem(
+                Configuration.getValue("COLLISION_SYSTEM", DEFAULT_COLLISION_SYSTEM));
+        sleepLinearVelocity  = Configuration.getValueDouble("SLEEP_LINEAR_VELOCITY",  DEFAULT_SLEEP_LINEAR_VELOCITY);
+        sleepAngularVelocity = Configuration.getValueDouble("SLEEP_ANGULAR_VELOCITY", DEFAULT_SLEEP_ANGULAR_VELOCITY);
+        sleepTime            = Configuration.getValueDouble("SLEEP_TIME",             DEFAULT_SLEEP_TIME);
+        int contactThreads   = Configuration.getValueInt("CONTACT_THREADS", DEFAULT_CONTACT_THREADS);
+        contactSolver        = new ContactSolver(
+                Configuration.getValueInt("CONTACT_ITERATIONS", DEFAULT_CONTACT_ITERATIONS),
+                Boolean.parseBoolean(Configuration.getValue("CONTACT_WARM_STARTING", DEFAULT_CONTACT_WARM_STARTING).trim()),
+                jointSolver,
+                contactThreads > 0 ? contactThreads : Runtime.getRuntime().availableProcessors(),
+                profiler);
+        spatialQuery         = new SpatialQuery(objects, collisionSystem);
+    }
+
+    /**
+     * Creates the broad phase collision system with the given name.
+     *
+     * @param name
+     *        One of: TREE (dynamic AABB tree), SWEEP (sweep and prune along the X axis), SIMPLE
+     *        (checks every pair) or REGION (strips of the world swept in parallel).
+     *
+     * @return The new collision system. The AABB tree is used if the name is not recognised.
+     */
+    private static CollisionSystem createCollisionSystem(String name) {
+        switch (name.trim()) {
+            case "SWEEP":
+                return new AABBCollision();
+            case "SIMPLE":
+                return new SimpleCollision();
+            case "REGION":
+                int threads = Configuration.getValueInt("REGION_THREADS", DEFAULT_REGION_THREADS);
+                if (threads <= 0) {
+                    threads = Runtime.getRuntime().availableProcessors();
+                }
+                int regions = Configuration.getValueInt("REGION_COUNT", DEFAULT_REGION_COUNT);
+                if (regions <= 0) {
+                    regions = threads * DEFAULT_REGIONS_PER_THREAD;
+                }
+                return new RegionCollision(
+                        Configuration.getValueDouble("AABB_TREE_MARGIN", DEFAULT_AABB_TREE_MARGIN),
+                        threads, regions);
+            case "TREE":
+                break;
+            default:
+                Log.warning("Unknown collision system: " + name + ", using the AABB tree.");
+                break;
+        }
+        return new AABBTreeCollision(
+                Configuration.getValueDouble("AABB_TREE_MARGIN", DEFAULT_AABB_TREE_MARGIN));
     }
 
     /**
@@ -80,49 +302,118 @@ public final class PhysicsSystem implements Runnable {
     public void run() {
         Log.info("Starting physics loop.");
         physicsLoop();
+        shutdownPools();
         Log.info("Physics loop has stopped.");
     }
 
+    /**
+     * Makes the collision system and the contact solver split their work on the pool of a
+     * {@link SimulationHost} rather than on threads of their own, so that a world run by the host
+     * stays on the host's threads.
+     *
+     * @param pool
+     *        The pool, or null to go back to their own threads.
+     */
+    void setPool(ForkJoinPool pool) {
+        synchronized (objects) {
+            sharedPool = pool;
+            collisionSystem.setPool(pool);
+            contactSolver.setPool(pool);
+        }
+    }
+
+    /**
+     * Stops the threads of the fork/join pools of the collision system, the contact solver and the
+     * gravity things, so that they don't outlive the physics loop. The pools are made again if the
+     * physics is stepped afterwards.
+     */
+    private void shutdownPools() {
+        synchronized (objects) {
+            collisionSystem.shutdown();
+            contactSolver.shutdown();
+        }
+        synchronized (physicsThings) {
+            for (PhysicsThing thing : physicsThings) {
+                if (thing instanceof BarnesHutGravity) {
+                    ((BarnesHutGravity) thing).shutdown();
+                }
+            }
+        }
+    }
+
     /**
      * The main physics loop. This is run on the new thread. It keeps running even when paused.
+     *
+     * The physics is stepped with a fixed time step. The wall clock time that has passed (times the
+     * physics multiplier) is added to an accumulator, and as many whole steps as fit in the
+     * accumulator are taken. Whatever is left over is carried into the next loop, so oversleeping
+     * never causes the physics to drift from real time. The left over fraction of a step is also
+     * used as the interpolation alpha for drawing. See {@link StepClock}.
      */
     private void physicsLoop() {
-        long endOfLastLoopTime = System.currentTimeMillis();
+        StepClock clock = new StepClock(System.nanoTime(), 0L, DEFAULT_PHYSICS_MULTIPLIER, 0.0);
 
         while (isPhysicsRunning) {
             final long localPhysics_dt;
+            final double localPhysicsMultiplier;
             synchronized (this) {
                 // We need to keep the physics dt the same for every physics object, but we don't
                 // want to lock "this" for the entire physics time.
                 localPhysics_dt = physics_dt;
+                localPhysicsMultiplier = physicsMultiplier;
             }
+            final long stepNanos = localPhysics_dt * MILLISECOND_TO_NANOSECOND;
 
             // If the physics is paused we just want to wait around for a bit, then check again if
             // we are paused or if the physics has stopped running.
-            if (isPaused) {
+            if (isPaused || stepNanos <= 0) {
                 try {
                     // Since the default dt will always be something small but reasonable will will
                     // use it as our sleep time.
-                    Thread.sleep(localPhysics_dt);
+                    Thread.sleep(stepNanos > 0 ? localPhysics_dt : DEFAULT_PHYSICS_DT);
                 } catch (InterruptedException e) {
                     // If something actively interrupts the physics thread, they probably want it
                     // to stop.
                     stopPhysics();
                 }
+                // Don't try to catch up on the time spent paused.
+                clock = new StepClock(System.nanoTime(), 0L, localPhysicsMultiplier, 0.0);
             } else {
+                long now = System.nanoTime();
+                clock = clock.tick(now, stepNanos, localPhysicsMultiplier);
 
-                step(localPhysics_dt);
+                // Take as many steps as are due, up to a limit. If the physics can't keep up, we
+                // would otherwise take more and more steps every loop and never catch up.
+                int numSteps = clock.getDueSteps(maxStepsPerFrame);
+                for (int i = 0; i < numSteps; i++) {
+                    // Each frame is published with the clock from after its own step, so the alpha
+                    // never goes back when several steps are taken at once.
+                    frameClock = clock.afterSteps(i + 1);
+                    step(localPhysics_dt);
+                }
+                frameClock = null;
+                long numSkipped = clock.getBehindSteps() - numSteps;
+                if (numSkipped > 0) {
+                    Log.verbose("Physics is falling behind, skipping " + numSkipped + " steps.");
+                }
+                clock = clock.afterSteps(numSteps);
+                long endOfSteps = System.nanoTime();
 
-                // After physics calculations have completed, there still may be lots of time left
-                // in the frame. So we will wait until the frame has expired. The time to wait is
-                // the time left in the current frame.
-                long timeToWait;
-                synchronized (this) {
-                    timeToWait = (endOfLastLoopTime + (long) (physics_dt / physicsMultiplier)) - System.currentTimeMillis();
+                // Record the frame time and load so it can be queried by the graphics system
+                if (numSteps > 0) {
+                    double frameTime = (endOfSteps - now) / (double) numSteps / MILLISECOND_TO_NANOSECOND;
+                    frameTimeAvg.addToPool(frameTime);
+                    double load = frameTime / (localPhysics_dt / localPhysicsMultiplier) * 100.0;
+                    loadAvg.addToPool(load);
+                    this.frameTime = frameTimeAvg.getAverage();
+                    this.load = loadAvg.getAverage();
                 }
+
+                // Wait until the next step is due.
+                long timeToWait = (long) ((stepNanos - clock.getAccumulator()) / localPhysicsMultiplier) - (endOfSteps - now);
                 try {
                     if (timeToWait > 0) {
-                        Thread.sleep(timeToWait);
+                        Thread.sleep(timeToWait / MILLISECOND_TO_NANOSECOND, (int) (timeToWait % MILLISECOND_TO_NANOSECOND));
                     } else {
                         // If the physics thread is overloaded and never sleeps, we still need to
                         // check if we have been interrupted so that we will stop when we have.
@@ -133,19 +424,21 @@ public final class PhysicsSystem implements Runnable {
                 } catch (InterruptedException e) {
                     stopPhysics();
                 }
-                endOfLastLoopTime = System.currentTimeMillis();
-                // Record the frame time and load so it can be queried by the graphics system
-                long frameTime = physics_dt - timeToWait;
-                frameTimeAvg.addToPool(frameTime);
-                double load = frameTime / ((double) physics_dt) * 100L;
-                loadAvg.addToPool(load);
-                this.frameTime = frameTimeAvg.getAverage();
-                this.load = loadAvg.getAverage();
-
             }
         }
     }
 
+    /**
+     * Allows the graphics system to find how far the physics is between the last step and the
+     * next step, so that it can blend between the previous and current state of each object. The
+     * alpha goes with the latest frame, so a caller which has already taken a frame should use
+     * {@link PhysicsFrame#getInterpolationAlpha} instead.
+     *
+     * @return The interpolation alpha, from 0.0 (just stepped) to 1.0 (next step is due).
+     */
+    public double getInterpolationAlpha() {
+        return stepClock.getAlpha(System.nanoTime());
+    }
 
     /**
      * Steps the physics forwards by a given time step. This is automatically called every physics
@@ -155,227 +448,1865 @@ public final class PhysicsSystem implements Runnable {
      *        The length of the physics time step (ms).
      */
     public void step(long stepPhysics_dt) {
-        /** The list of possible collisions. */
-        List<Collision> collisions;
+        synchronized (stepLock) {
+            stepLocked(stepPhysics_dt);
+        }
+    }
+
+    /**
+     * Must be called with the step lock held, and without the objects locked.
+     *
+     * @param stepPhysics_dt
+     *        The length of the physics time step (ms).
+     */
+    private void stepLocked(long stepPhysics_dt) {
+        PhysicsStepEvent stepEvent = FlightEvents.IS_AVAILABLE ? PhysicsStepEvent.start() : null;
+        long endStepCount;
         // Propagate and calculate collisions for all of the objects.
         synchronized (objects) {
-            double physicsDT_seconds = stepPhysics_dt * MILLISECOND_TO_SECOND;
-            for (;;) {
-                // Calculate the next steps of the
-                for (Collidable object : objects) {
-                    object.calculateNextState(physicsDT_seconds);
+            profiler.beginStep();
+            applyCommands();
+            // Commands queued during the step, for example from a collision notification, are
+            // left for the next step, so the objects don't change under the collision system.
+            isStepping = true;
+            try {
+                // The time step is recorded when it is used, rather than when it is set, since the
+                // physics loop may still take a step with the old one.
+                if (recorder != null && stepPhysics_dt != recordedPhysics_dt) {
+                    recorder.recordPhysicsDT(stepCount, stepPhysics_dt);
+                    recordedPhysics_dt = stepPhysics_dt;
                 }
-
-                collisions = collisionSystem.findCollisions(objects, physicsDT_seconds);
-
-                // Remove all the false positives
-                for (Collision collision : collisions) {
-                    if (!collision.isCollision()) {
-                        collisions.remove(collision);
+                if (history != null) {
+                    synchronized (physicsThings) {
+                        ByteBuffer frame = history.beginFrame(stepCount, stepPhysics_dt, calculateSnapshotSize());
+                        writeSnapshotLocked(frame);
+                        frame.flip();
                     }
                 }
-
-                // If there are no collisions, then we're done
-                if (collisions.size() == 0) {break;}
-
-                // Find the first collision
-                Collision earliestCollision = collisions.get(0);
-                for (Collision collision : collisions) {
-                    if (collision.getCollisionTime() < earliestCollision.getCollisionTime()) {
-                        earliestCollision = collision;
-                    }
+                double physicsDT_seconds = stepPhysics_dt * MILLISECOND_TO_SECOND;
+                for (Collidable object : objects) {
+                    object.storePreviousState();
                 }
-
-                // Move all the objects forward to the collision time
+                profiler.count(PhysicsStats.Counter.BODIES, objects.size());
+                profiler.lap(PhysicsStats.Phase.SETUP);
+                contactSolver.solve(objects, collisionSystem, physicsDT_seconds);
+                contactSolver.markContacts(pairCache);
+                collisionScheduler.step(objects, collisionSystem, physicsDT_seconds, contactSolver, pairCache);
+                // The forces have now acted for a step, the physics things apply the next ones.
                 for (Collidable object : objects) {
-                    object.calculateNextState(earliestCollision.getCollisionTime());
-                    object.applyNextState();
+                    object.clearForces();
                 }
-                physicsDT_seconds -= earliestCollision.getCollisionTime();
-
-                // Evaluate the first collision
-                earliestCollision.resolveCollision();
-
-                // The next loop starts with the remaining time for this loop.
+                updateSleep(physicsDT_seconds);
+                ++stepCount;
+                pairCache.finishStep(contactEvents, stepCount);
+                if (isDeterministic) {
+                    lastStepHash = getStateChecksum();
+                }
+                publishFrame();
+                endStepCount = stepCount;
+                profiler.lap(PhysicsStats.Phase.FINISH);
+            } finally {
+                isStepping = false;
             }
-
-            // Move all the objects forward to the end of the physics time
-            for (Collidable object : objects) {
-                object.calculateNextState(physicsDT_seconds);
-                object.applyNextState();
+        }
+        // The listeners are called with the objects unlocked, like the physics things, so that
+        // other threads aren't kept waiting by game code.
+        synchronized (contactListeners) {
+            for (ContactListener listener : contactListeners) {
+                listener.processContacts(contactEvents);
             }
         }
         // TODO: look over this section.
 
-        // Physics things are non objects which still want to have some physics calculated.
+        // Physics things are non objects which still want to have some physics calculated. They are
+        // run from a copy of the list, since they may lock the objects (for example to apply an
+        // impulse) and the snapshots lock the objects before the physics things.
+        final PhysicsThing[] things;
         synchronized (physicsThings) {
-            for (PhysicsThing po : physicsThings) {
+            things = physicsThings.toArray(new PhysicsThing[physicsThings.size()]);
+        }
+        thingThread = Thread.currentThread();
+        try {
+            for (PhysicsThing po : things) {
                 po.calculatePhysics(stepPhysics_dt * MILLISECOND_TO_SECOND);  // physics works with seconds
             }
+        } finally {
+            thingThread = null;
         }
+        profiler.lap(PhysicsStats.Phase.CALLBACKS);
+        if (stepEvent != null) {
+            stepEvent.finish(endStepCount, profiler);
+        }
+        profiler.endStep(endStepCount);
     }
 
     /**
-     * Allows users to query whether the physics calculations are currently paused.
+     * Gives the positions of every object at the end of the latest step, for drawing. Frames are
+     * handed over through a triple buffer, so neither the physics nor the caller ever waits for
+     * the other, and the frame is never changed while the caller is using it.
      *
-     * @return True when the physics system is actively calculating physics every loop.
+     * Only one thread may call this (normally the graphics thread). The frame it returns may be
+     * used until the next call.
      *
-     * @see #pausePhysics
-     * @see #continuePhysics
+     * @return The latest frame. Empty when no step has been taken yet.
      */
-    public boolean isPhysicsPaused() {
-        // isPaused is volatile so we don't need to synchronise here.
-        return isPaused;
+    public PhysicsFrame getLatestFrame() {
+        return frames.getLatest();
     }
 
     /**
-     * Allows users to stop the physics system. This is the normal way of stopping the physics
-     * system.
+     * Publishes the current positions of the objects. Must be called with the objects locked.
      */
-    public void stopPhysics () {
-        isPhysicsRunning = false;
-        Log.info("Stopping physics using method \"stopPhysics\"");
+    private void publishFrame() {
+        StepClock clock = frameClock;
+        frames.getWriteBuffer().write(objects, stepCount, clock);
+        frames.publish();
+        if (clock != null) {
+            // Let the graphics system know how far we are into the next step.
+            stepClock = clock;
+        }
     }
 
     /**
-     * Allows users to query whether the physics thread has stopped. The physics may be in the
-     * stopped state: before the physics thread has been started with start(), after the physics
-     * thread has ended through a call to stopPhysics(), or after the physics thread has stopped
-     * due to an interrupt.
+     * Turns the deterministic mode on or off. The physics always gives exactly the same result for
+     * the same objects added in the same order: the trigonometry is done with StrictMath and pairs
+     * of objects are always handled in the order of their body ids. In deterministic mode the
+     * checksum of the state is also recorded after every step, so that two runs can be compared
+     * step by step.
      *
-     * @return Whether the physics system is in the running state.
+     * @param isDeterministic
+     *        True to record the state hash after every step.
+     *
+     * @see #getLastStepHash
      */
-    public boolean isPhysicsRunning() {
-        return isPhysicsRunning;
+    public void setDeterministic(boolean isDeterministic) {
+        this.isDeterministic = isDeterministic;
+        Log.info("Set deterministic mode to " + isDeterministic + ".");
     }
 
     /**
-     * Adds an objects to the physics thing calculation list. The object will continue being
-     * calculated until it is removed from the physics thing list with removePhysicsThing or the
-     * physics list is cleared with clearPhysicsThings. If an object is already in the physics
-     * thing list, it will be ignored.
+     * @return True when the state hash is being recorded after every step.
+     */
+    public boolean isDeterministic() {
+        return isDeterministic;
+    }
+
+    /**
+     * @return The number of physics steps that have been taken.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * Allows users to compare runs step by step. Only recorded in deterministic mode.
      *
-     * Physics things should be used for non object things which need to be calculated every time
-     * step.
+     * @return The state checksum at the end of the last step, or zero if the physics is not in
+     *         deterministic mode.
      *
-     * @param object
-     *        The physics thing to be added to the list.
+     * @see #getStateChecksum
+     */
+    public long getLastStepHash() {
+        return lastStepHash;
+    }
+
+    /**
+     * Sets how many steps back the physics can be rolled back. The state at the start of each of
+     * the last length steps is kept, which takes about the size of a snapshot per step.
      *
-     * @see #removePhysicsThing
-     * @see #clearPhysicsThings
+     * @param length
+     *        The number of steps to keep, or zero to turn the history off.
+     *
+     * @see #rollbackTo
      */
-    public void addPhysicsThing(PhysicsThing object) {
-        if (null == object) {
-            Log.error("Attempted to add a null object to the physics things list.");
+    public void setHistoryLength(int length) {
+        if (length < 0) {
+            Log.warning("Attempted to set a state history length of less than zero.");
             return;
         }
+        synchronized (objects) {
+            history = length > 0 ? new StateHistory(length) : null;
+        }
+        Log.info("Set the state history length to " + length + " steps.");
+    }
 
-        synchronized (physicsThings) {
-            if (!physicsThings.contains(object)) {
-                physicsThings.add(object);
-                Log.info("Adding a physics thing to the list.");
-            } else {
-                Log.warning("Attempted to add a physics things to the list that was already there.");
+    /**
+     * @return The oldest step which the physics can be rolled back to, or -1 if there isn't one.
+     */
+    public long getOldestHistoryStep() {
+        synchronized (objects) {
+            return history != null ? history.getOldestStep() : -1L;
+        }
+    }
+
+    /**
+     * Puts the physics back to the way it was at the start of an earlier step. The steps after it
+     * are forgotten, so they have to be simulated again with {@link #resimulateTo}. Adding or
+     * removing objects clears the history, since the older steps no longer match the objects.
+     *
+     * @param step
+     *        The step to roll back to. Must be at most {@link #getOldestHistoryStep()} steps old.
+     *
+     * @return True when the physics was rolled back. False when the step isn't in the history.
+     *
+     * @see #applyLateInput
+     */
+    public boolean rollbackTo(long step) {
+        synchronized (objects) {
+            applyCommands();
+            if (recorder != null) {
+                Log.warning("Attempted to roll back the physics while recording.");
+                return false;
+            }
+            if (history == null || step > stepCount) {
+                Log.warning("Attempted to roll back the physics to step " + step + " which isn't in the history.");
+                return false;
+            }
+            if (step == stepCount) {
+                return true;
+            }
+            ByteBuffer frame = history.getFrame(step);
+            if (frame == null) {
+                Log.warning("Attempted to roll back the physics to step " + step + " which isn't in the history.");
+                return false;
             }
+            restoreSnapshot(frame);
+            history.discardAfter(step);
+            return true;
         }
     }
 
     /**
-     * Removes the given physics thing form the list.
+     * Simulates forwards again after a rollback, as fast as possible. Each step uses the time step
+     * it originally used, if it is still known.
      *
-     * @param object
-     *        The thing to be removed from the list.
+     * @param step
+     *        The step to simulate up to.
      *
-     * @see #clearPhysicsThings
+     * @return The number of steps that were simulated.
      */
-    public void removePhysicsThing(PhysicsThing object) {
-        if (null == object) {
-            Log.error("Attempted to remove a null object from the physics things list.");
-            return;
+    public int resimulateTo(long step) {
+        int numSteps = 0;
+        synchronized (stepLock) {
+            while (true) {
+                long stepPhysics_dt;
+                synchronized (objects) {
+                    if (stepCount >= step) {
+                        break;
+                    }
+                    stepPhysics_dt = history != null ? history.getPhysicsDT(stepCount) : -1L;
+                }
+                if (stepPhysics_dt < 0) {
+                    synchronized (this) {
+                        stepPhysics_dt = physics_dt;
+                    }
+                }
+                stepLocked(stepPhysics_dt);
+                ++numSteps;
+            }
         }
+        return numSteps;
+    }
 
-        synchronized (physicsThings) {
-            boolean didRemoveDoAnything = physicsThings.remove(object);
-            if (!didRemoveDoAnything) {
-                Log.warning("Attempted to remove a physics things from the list that wasn't there.");
-            } else {
-                Log.info("Removed a physics thing from the list.");
+    /**
+     * Applies an input which arrived late to the step it was meant for. The physics is rolled back
+     * to the step, the input is applied, and then the physics is simulated back up to the current
+     * step. The physics thread waits while this happens, so it looks like the input arrived on
+     * time.
+     *
+     * @param step
+     *        The step the input should have been applied at.
+     *
+     * @param input
+     *        Applies the input, for example by calling {@link #applyImpulse}.
+     *
+     * @return True when the input was applied. False when the step is too old to be rolled back
+     *         to, in which case the input is not applied.
+     */
+    public boolean applyLateInput(long step, Runnable input) {
+        synchronized (stepLock) {
+            long currentStep;
+            synchronized (objects) {
+                applyCommands();
+                currentStep = stepCount;
+                if (!rollbackTo(step)) {
+                    return false;
+                }
+                input.run();
             }
+            resimulateTo(currentStep);
+            return true;
         }
     }
 
     /**
-     * Clears every object out of the physics thing list. This method should generally not be used
-     * unless you really want all the physics things to stop simulating (and potentially add new
-     * ones). It will have better performance than calling removePhysicsThing on every object.
+     * Runs the physics for a number of steps as fast as possible, without sleeping between steps.
+     * This allows the physics to be used without a display, for example for offline experiments
+     * and benchmarks. The physics thread must not be running, since the two would both step the
+     * same objects.
      *
-     * @see #removePhysicsThing
+     * @param numSteps
+     *        The number of physics steps to take, each physics_dt long.
+     *
+     * @return The throughput of the run and the checksum of the final state.
+     *
+     * @see #runHeadlessFor
      */
-    public void clearPhysicsThings() {
-        synchronized (physicsThings) {
-            physicsThings.clear();
-            Log.info("Clearing the physics things list.");
+    public HeadlessResult runHeadless(long numSteps) {
+        if (isPhysicsRunning) {
+            String errorString = "Tried to run the physics headless while the physics thread is running.";
+            Log.error(errorString);
+            throw new IllegalStateException(errorString);
+        }
+        if (numSteps < 0) {
+            String errorString = "Tried to run the physics headless for a negative number of steps.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+
+        final long localPhysics_dt;
+        synchronized (this) {
+            localPhysics_dt = physics_dt;
         }
+
+        long startTime = System.nanoTime();
+        long numBodySteps = stepHeadless(numSteps, localPhysics_dt);
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        return new HeadlessResult(numSteps, numBodySteps, numSteps * localPhysics_dt * MILLISECOND_TO_SECOND,
+                elapsedNanos, getStateChecksum());
     }
 
     /**
-     * Adds an object to the physics system. The object will continue being calculated until it is
-     * removed from the physics thing list with removeObject or the physics list is cleared with
-     * clearObjects. If an object is already in the object list, it will be ignored.
+     * Takes a number of steps back to back. Used by {@link #runHeadless} and by the
+     * {@link SimulationHost}, which steps its worlds a slice at a time.
      *
-     * Objects propagate through space and (potentially) collide.
+     * @return The sum over every step of the number of objects.
+     */
+    long stepHeadless(long numSteps, long stepPhysics_dt) {
+        long numBodySteps = 0;
+        for (long i = 0; i < numSteps; i++) {
+            step(stepPhysics_dt);
+            numBodySteps += numAwakeObjects + numSleepingObjects;
+        }
+        return numBodySteps;
+    }
+
+    /**
+     * Runs the physics as fast as possible until the given amount of time has been simulated.
      *
-     * @param object
-     *        The object to be added to the system.
+     * @param simulatedSeconds
+     *        The amount of time to simulate (s). Rounded up to a whole number of steps.
+     *
+     * @return The throughput of the run and the checksum of the final state.
+     *
+     * @see #runHeadless
      */
-    public void addObject (Collidable object) {
-        if (null == object) {
-            Log.error("Attempted to add a null object to the physics system.");
-            return;
+    public HeadlessResult runHeadlessFor(double simulatedSeconds) {
+        final long localPhysics_dt;
+        synchronized (this) {
+            localPhysics_dt = physics_dt;
+        }
+        if (localPhysics_dt <= 0) {
+            String errorString = "Tried to run the physics headless with a physics_dt of zero.";
+            Log.error(errorString);
+            throw new IllegalStateException(errorString);
         }
+        return runHeadless((long) Math.ceil(simulatedSeconds / (localPhysics_dt * MILLISECOND_TO_SECOND)));
+    }
 
+    /**
+     * Finds a checksum of the current state of every object, in the order they were added. Two
+     * runs which end in exactly the same state give the same checksum.
+     *
+     * @return A 64 bit FNV-1a hash of the position, velocity, angle and angular velocity of every
+     *         object.
+     */
+    public long getStateChecksum() {
+        long hash = FNV_OFFSET_BASIS;
         synchronized (objects) {
-            if (!objects.contains(object)) {
-                objects.add(object);
-                Log.info("Adding an object to the physics system.");
-            } else {
-                Log.warning("Attempted to add an object to the physics list that was already there.");
+            applyCommands();
+            for (Collidable object : objects) {
+                State state = object.getState();
+                hash = hashDouble(hash, state.position.getMagX());
+                hash = hashDouble(hash, state.position.getMagY());
+                hash = hashDouble(hash, state.velocity.getMagX());
+                hash = hashDouble(hash, state.velocity.getMagY());
+                hash = hashDouble(hash, state.angle);
+                hash = hashDouble(hash, state.angularVelocity);
             }
         }
+        return hash;
+    }
+
+    /**
+     * Adds the exact bits of a value to an FNV-1a hash, one byte at a time.
+     */
+    private static long hashDouble(long hash, double value) {
+        return hashLong(hash, Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Adds a value to an FNV-1a hash, one byte at a time.
+     */
+    static long hashLong(long hash, long bits) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (bits >>> (i * 8)) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
     }
 
     /**
-     * Removes the given object from the physics system.
+     * Finds the size of the snapshot that {@link #writeSnapshot} would write right now.
      *
-     * @param object
-     *        The object to be removed from the system.
+     * @return The size of the snapshot (bytes).
      */
-    public void removeObject(Collidable object) {
-        if (null == object) {
-            Log.error("Attempted to remove a null object from the physics system.");
-            return;
+    public int getSnapshotSize() {
+        synchronized (objects) {
+            applyCommands();
+            synchronized (physicsThings) {
+                return calculateSnapshotSize();
+            }
         }
+    }
 
+    /**
+     * Takes a snapshot of the whole physics system into a new buffer.
+     *
+     * @return A buffer containing the snapshot, ready to be read or written to a channel.
+     *
+     * @see #writeSnapshot
+     */
+    public ByteBuffer snapshot() {
         synchronized (objects) {
-            boolean didRemoveDoAnything = objects.remove(object);
-            if (!didRemoveDoAnything) {
-                Log.warning("Attempted to remove an object from the physics list that wasn't there.");
-            } else {
-                Log.info("Removed an object from the physics list.");
+            applyCommands();
+            synchronized (physicsThings) {
+                ByteBuffer buffer = ByteBuffer.allocate(calculateSnapshotSize());
+                writeSnapshotLocked(buffer);
+                buffer.flip();
+                return buffer;
             }
         }
     }
 
     /**
-     * Clears every object out of the physics list. This method should generally not be used unless
-     * you really want all the objects to stop simulating (and potentially add new ones). It will
-     * have better performance than calling removeObject on every object.
+     * Writes a snapshot of the physics system to the buffer. The snapshot contains the physics
+     * parameters, the state of every object and the state of every physics thing which is
+     * {@link Snapshottable}. The objects themselves are not saved, so a snapshot can only be
+     * restored into a physics system which has the same objects and physics things added in the
+     * same order, for example the system it was taken from or one set up the same way.
      *
+     * The format is a header (magic number, format version, physics parameters and contact solver
+     * settings), then each object as its body id, its size and its state, then each physics thing
+     * as its size (-1 when it is not snapshottable) and its state, then the kept impulses of the
+     * contacts and the joints, then the pairs of objects which are touching. Everything is big
+     * endian. The joints themselves are not saved either, so the system must also have the same
+     * joints.
+     *
+     * @param buffer
+     *        The buffer to write to, starting at its position. It must be big endian and have at
+     *        least {@link #getSnapshotSize()} bytes remaining.
      */
-    public void clearObjects() {
+    public void writeSnapshot(ByteBuffer buffer) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            String errorString = "Tried to write a snapshot to a buffer which isn't big endian.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
         synchronized (objects) {
-            objects.clear();
-            Log.info("Clearing the physics things list.");
+            applyCommands();
+            synchronized (physicsThings) {
+                int size = calculateSnapshotSize();
+                if (buffer.remaining() < size) {
+                    String errorString = "Tried to write a snapshot of " + size + " bytes to a buffer with "
+                            + buffer.remaining() + " bytes remaining.";
+                    Log.error(errorString);
+                    throw new IllegalArgumentException(errorString);
+                }
+                writeSnapshotLocked(buffer);
+            }
+        }
+    }
+
+    /**
+     * Restores a snapshot written by {@link #writeSnapshot}. The whole snapshot is checked before
+     * anything is changed, so if it doesn't match the objects and physics things in the system,
+     * nothing is restored. The pairs of objects which were touching when the snapshot was taken are
+     * restored too, so the contact events of the next step carry on from the snapshot.
+     *
+     * @param buffer
+     *        The buffer to read from, starting at its position. Its position is moved to the end of
+     *        the snapshot.
+     */
+    public void restoreSnapshot(ByteBuffer buffer) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            String errorString = "Tried to read a snapshot from a buffer which isn't big endian.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+
+        synchronized (objects) {
+            applyCommands();
+            synchronized (physicsThings) {
+                checkSnapshot(buffer.duplicate());
+
+                buffer.getInt();    // magic number
+                buffer.getShort();  // version
+                short flags = buffer.getShort();
+                long snapshotPhysics_dt = buffer.getLong();
+                double snapshotPhysicsMultiplier = buffer.getDouble();
+                synchronized (this) {
+                    physics_dt = snapshotPhysics_dt;
+                    physicsMultiplier = snapshotPhysicsMultiplier;
+                }
+                isDeterministic = (flags & SNAPSHOT_FLAG_DETERMINISTIC) != 0;
+                contactSolver.setWarmStarting((flags & SNAPSHOT_FLAG_WARM_STARTING) != 0);
+                contactSolver.setIterations(buffer.getInt());
+                stepCount    = buffer.getLong();
+                lastStepHash = buffer.getLong();
+                nextBodyId   = buffer.getInt();
+                buffer.getInt();    // number of objects
+
+                int numSleeping = 0;
+                for (Collidable object : objects) {
+                    buffer.getInt();    // body id
+                    int size = buffer.getInt();
+                    if (object instanceof Snapshottable) {
+                        ((Snapshottable) object).readSnapshot(buffer, size);
+                    } else {
+                        object.getState().read(buffer);
+                    }
+                    // Also brings the cached transform of the next state up to date.
+                    object.calculateNextState(0.0);
+                    object.storePreviousState();
+                    collisionSystem.updateObject(object);
+                    if (object.isSleeping()) {
+                        ++numSleeping;
+                    }
+                }
+                numSleepingObjects = numSleeping;
+                numAwakeObjects    = objects.size() - numSleeping;
+
+                buffer.getInt();    // number of physics things
+                for (PhysicsThing thing : physicsThings) {
+                    int size = buffer.getInt();
+                    if (size >= 0) {
+                        ((Snapshottable) thing).readSnapshot(buffer, size);
+                    }
+                }
+
+                Map<Integer, Collidable> objectsById = getObjectsById();
+                contactSolver.readSnapshot(buffer, objectsById);
+                jointSolver.readSnapshot(buffer);
+                pairCache.readSnapshot(buffer, objectsById);
+                publishFrame();
+            }
+        }
+        Log.info("Restored a snapshot of " + objects.size() + " objects at step " + stepCount + ".");
+    }
+
+    /**
+     * Saves a snapshot of the physics system to a file.
+     *
+     * @param filename
+     *        The file (with path) to write. It is replaced if it already exists.
+     *
+     * @return True when the snapshot was saved.
+     *
+     * @see #writeSnapshot
+     */
+    public boolean saveSnapshot(String filename) {
+        ByteBuffer buffer = snapshot();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Log.error("There was an error writing the snapshot " + filename + ".");
+            Log.error(e.toString());
+            return false;
+        }
+        Log.info("Saved a snapshot to " + filename + ".");
+        return true;
+    }
+
+    /**
+     * Restores a snapshot of the physics system from a file.
+     *
+     * @param filename
+     *        The file (with path) to read.
+     *
+     * @return True when the snapshot was restored. False when it couldn't be read or doesn't match
+     *         the system, in which case nothing is changed.
+     *
+     * @see #restoreSnapshot
+     */
+    public boolean loadSnapshot(String filename) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                Log.error("The snapshot " + filename + " is too big to be read.");
+                return false;
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            Log.error("There was an error reading the snapshot " + filename + ".");
+            Log.error(e.toString());
+            return false;
+        }
+        buffer.flip();
+        try {
+            restoreSnapshot(buffer);
+        } catch (IllegalArgumentException e) {
+            // Already logged, and nothing was restored.
+            Log.error("The snapshot " + filename + " doesn't match the physics system.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Must be called with the objects and physics things locked.
+     */
+    private int calculateSnapshotSize() {
+        int size = SNAPSHOT_HEADER_SIZE;
+        for (Collidable object : objects) {
+            size += 8;
+            size += object instanceof Snapshottable ? ((Snapshottable) object).getSnapshotSize() : State.SNAPSHOT_SIZE;
+        }
+        size += 4;
+        for (PhysicsThing thing : physicsThings) {
+            size += 4;
+            if (thing instanceof Snapshottable) {
+                size += ((Snapshottable) thing).getSnapshotSize();
+            }
+        }
+        size += contactSolver.getSnapshotSize();
+        size += jointSolver.getSnapshotSize();
+        size += pairCache.getSnapshotSize();
+        return size;
+    }
+
+    /**
+     * Must be called with the objects and physics things locked.
+     */
+    private void writeSnapshotLocked(ByteBuffer buffer) {
+        final long localPhysics_dt;
+        final double localPhysicsMultiplier;
+        synchronized (this) {
+            localPhysics_dt = physics_dt;
+            localPhysicsMultiplier = physicsMultiplier;
+        }
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.putShort(SNAPSHOT_VERSION);
+        short flags = 0;
+        if (isDeterministic) {
+            flags |= SNAPSHOT_FLAG_DETERMINISTIC;
+        }
+        if (contactSolver.isWarmStarting()) {
+            flags |= SNAPSHOT_FLAG_WARM_STARTING;
+        }
+        buffer.putShort(flags);
+        buffer.putLong(localPhysics_dt);
+        buffer.putDouble(localPhysicsMultiplier);
+        buffer.putInt(contactSolver.getIterations());
+        buffer.putLong(stepCount);
+        buffer.putLong(lastStepHash);
+        buffer.putInt(nextBodyId);
+        buffer.putInt(objects.size());
+
+        for (Collidable object : objects) {
+            buffer.putInt(object.getBodyId());
+            if (object instanceof Snapshottable) {
+                Snapshottable snapshottable = (Snapshottable) object;
+                buffer.putInt(snapshottable.getSnapshotSize());
+                snapshottable.writeSnapshot(buffer);
+            } else {
+                buffer.putInt(State.SNAPSHOT_SIZE);
+                object.getState().write(buffer);
+            }
+        }
+
+        buffer.putInt(physicsThings.size());
+        for (PhysicsThing thing : physicsThings) {
+            if (thing instanceof Snapshottable) {
+                Snapshottable snapshottable = (Snapshottable) thing;
+                buffer.putInt(snapshottable.getSnapshotSize());
+                snapshottable.writeSnapshot(buffer);
+            } else {
+                buffer.putInt(-1);
+            }
+        }
+
+        contactSolver.writeSnapshot(buffer);
+        jointSolver.writeSnapshot(buffer);
+        pairCache.writeSnapshot(buffer);
+    }
+
+    /**
+     * Checks that a snapshot matches the objects and physics things in the system, without
+     * changing anything. Must be called with the objects and physics things locked.
+     *
+     * @param buffer
+     *        A buffer positioned at the start of the snapshot. Its position is moved.
+     */
+    private void checkSnapshot(ByteBuffer buffer) {
+        String errorString = null;
+        try {
+            if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                errorString = "Tried to restore something which isn't a physics snapshot.";
+            } else if (buffer.getShort() != SNAPSHOT_VERSION) {
+                errorString = "Tried to restore a physics snapshot of an unknown version.";
+            } else {
+                // Skip to the object count at the end of the header.
+                buffer.position(buffer.position() + SNAPSHOT_HEADER_SIZE - 4 - 2 - 4);
+                int numObjects = buffer.getInt();
+                if (numObjects != objects.size()) {
+                    errorString = "Tried to restore a snapshot of " + numObjects + " objects into a system with "
+                            + objects.size() + " objects.";
+                }
+                for (int i = 0; errorString == null && i < numObjects; i++) {
+                    Collidable object = objects.get(i);
+                    int bodyId = buffer.getInt();
+                    int size = buffer.getInt();
+                    if (bodyId != object.getBodyId()) {
+                        errorString = "Tried to restore a snapshot whose objects don't match the system.";
+                    } else if (size != (object instanceof Snapshottable ?
+                            ((Snapshottable) object).getSnapshotSize() : State.SNAPSHOT_SIZE)) {
+                        errorString = "Tried to restore a snapshot with an object state of the wrong size.";
+                    } else {
+                        buffer.position(buffer.position() + size);
+                    }
+                }
+                if (errorString == null) {
+                    int numThings = buffer.getInt();
+                    if (numThings != physicsThings.size()) {
+                        errorString = "Tried to restore a snapshot of " + numThings + " physics things into a system with "
+                                + physicsThings.size() + " physics things.";
+                    }
+                    for (PhysicsThing thing : physicsThings) {
+                        if (errorString != null) {break;}
+                        int size = buffer.getInt();
+                        if ((size >= 0) != (thing instanceof Snapshottable)) {
+                            errorString = "Tried to restore a snapshot whose physics things don't match the system.";
+                        } else if (size >= 0 && size != ((Snapshottable) thing).getSnapshotSize()) {
+                            errorString = "Tried to restore a snapshot with a physics thing state of the wrong size.";
+                        } else if (size > 0) {
+                            buffer.position(buffer.position() + size);
+                        }
+                    }
+                }
+                if (errorString == null) {
+                    errorString = ContactSolver.checkSnapshot(buffer, getObjectsById());
+                }
+                if (errorString == null) {
+                    errorString = jointSolver.checkSnapshot(buffer);
+                }
+                if (errorString == null) {
+                    errorString = PairCache.checkSnapshot(buffer);
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            errorString = "Tried to restore a physics snapshot which has been cut short.";
+        }
+
+        if (errorString != null) {
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+    }
+
+    /**
+     * Must be called with the objects locked.
+     *
+     * @return Every object in the system by its body id.
+     */
+    private Map<Integer, Collidable> getObjectsById() {
+        Map<Integer, Collidable> objectsById = new HashMap<>(objects.size() * 2);
+        for (Collidable object : objects) {
+            objectsById.put(object.getBodyId(), object);
+        }
+        return objectsById;
+    }
+
+    /**
+     * Puts the objects which have been resting for long enough to sleep and counts the sleeping
+     * and awake objects. Must be called with the objects locked.
+     *
+     * @param physicsDT_seconds
+     *        The length of the time step (s).
+     */
+    private void updateSleep(double physicsDT_seconds) {
+        int numSleeping = 0;
+        for (Collidable object : objects) {
+            if (!object.isSleeping() && sleepTime >= 0.0) {
+                object.updateSleep(physicsDT_seconds, sleepLinearVelocity, sleepAngularVelocity, sleepTime);
+            }
+            if (object.isSleeping()) {
+                ++numSleeping;
+            }
+        }
+        numSleepingObjects = numSleeping;
+        numAwakeObjects    = objects.size() - numSleeping;
+    }
+
+    /**
+     * Sets the number of times the contact solver goes over the contacts in each step. More
+     * iterations let taller stacks settle, at the cost of more time.
+     *
+     * @param iterations
+     *        The number of iterations, zero or more.
+     */
+    public void setContactIterations(int iterations) {
+        synchronized (objects) {
+            contactSolver.setIterations(iterations);
+            if (recorder != null && thingThread != Thread.currentThread()) {
+                recorder.recordContactIterations(stepCount, contactSolver.getIterations());
+            }
+        }
+    }
+
+    public int getContactIterations() {
+        return contactSolver.getIterations();
+    }
+
+    /**
+     * Turns warm starting of the contact solver on or off. When on, every contact starts each step
+     * with the impulse it ended the last step with, so that resting contacts only need a few
+     * iterations to settle.
+     *
+     * @param isWarmStarting
+     *        True to warm start the contacts.
+     */
+    public void setContactWarmStarting(boolean isWarmStarting) {
+        synchronized (objects) {
+            contactSolver.setWarmStarting(isWarmStarting);
+            if (recorder != null && thingThread != Thread.currentThread()) {
+                recorder.recordContactWarmStarting(stepCount, isWarmStarting);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of threads the contacts and joints are solved with. They are always split
+     * into colours which don't share any objects, and with more than one thread the large colours
+     * are solved in parallel. The result is exactly the same for any number of threads.
+     *
+     * @param threads
+     *        The number of threads, zero for one per processor.
+     */
+    public void setContactThreads(int threads) {
+        synchronized (objects) {
+            contactSolver.setParallelism(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    public int getContactThreads() {
+        synchronized (objects) {
+            return contactSolver.getParallelism();
+        }
+    }
+
+    /**
+     * Sets an extra check of whether a pair of objects should collide, on top of their category
+     * and mask bits. Rejected pairs are dropped by the broad phase, so they cost very little.
+     *
+     * @param filter
+     *        The filter, or null to only use the category and mask bits.
+     */
+    public void setCollisionFilter(CollisionFilter filter) {
+        synchronized (objects) {
+            collisionFilter = filter;
+            updateCollisionFilter();
+        }
+    }
+
+    /**
+     * Changes the broad phase collision system, for example to the region collision system for a
+     * very large world. The objects are all moved over to the new one. The tree and region
+     * collision systems find exactly the same collisions, so switching between them doesn't
+     * change the result of the physics.
+     *
+     * @param name
+     *        One of: TREE (dynamic AABB tree), SWEEP (sweep and prune along the X axis), SIMPLE
+     *        (checks every pair) or REGION (strips of the world swept in parallel).
+     */
+    public void setCollisionSystem(String name) {
+        synchronized (objects) {
+            applyCommands();
+            CollisionSystem newCollisionSystem = createCollisionSystem(name);
+            newCollisionSystem.setCollisionFilter(jointSolver.getCount() > 0 ? jointFilter : collisionFilter);
+            newCollisionSystem.setPool(sharedPool);
+            for (Collidable object : objects) {
+                // The collision system places the object using its next state.
+                object.calculateNextState(0.0);
+                newCollisionSystem.addObject(object);
+            }
+            collisionSystem.shutdown();
+            collisionSystem = newCollisionSystem;
+            spatialQuery = new SpatialQuery(objects, collisionSystem);
+        }
+    }
+
+    /**
+     * Pins two objects together at a point, about which they are free to turn. The objects must
+     * have been added to the system.
+     *
+     * @param first
+     *        One of the objects.
+     *
+     * @param second
+     *        The other object.
+     *
+     * @param anchorX
+     *        The x position of the pin in world coordinates (m).
+     *
+     * @param anchorY
+     *        The y position of the pin in world coordinates (m).
+     *
+     * @return The joint, which can be given to {@link #removeJoint}.
+     */
+    public Joint addHingeJoint(Collidable first, Collidable second, double anchorX, double anchorY) {
+        return addJoint(Joint.Type.HINGE, first, second, anchorX, anchorY, anchorX, anchorY, 0.0);
+    }
+
+    /**
+     * Fixes two objects together as they are now, as if they were one object. The objects must
+     * have been added to the system.
+     *
+     * @param first
+     *        One of the objects.
+     *
+     * @param second
+     *        The other object.
+     *
+     * @param anchorX
+     *        The x position of the weld in world coordinates (m). The objects are held together
+     *        most firmly near it, usually somewhere between them.
+     *
+     * @param anchorY
+     *        The y position of the weld in world coordinates (m).
+     *
+     * @return The joint, which can be given to {@link #removeJoint}.
+     */
+    public Joint addWeldJoint(Collidable first, Collidable second, double anchorX, double anchorY) {
+        return addJoint(Joint.Type.WELD, first, second, anchorX, anchorY, anchorX, anchorY, 0.0);
+    }
+
+    /**
+     * Joins a point of each object with a rod, which keeps them at the distance they are now. The
+     * objects must have been added to the system.
+     *
+     * @param first
+     *        One of the objects.
+     *
+     * @param second
+     *        The other object.
+     *
+     * @param firstAnchorX
+     *        The x position of the end of the rod on the first object, in world coordinates (m).
+     *
+     * @param firstAnchorY
+     *        The y position of the end of the rod on the first object, in world coordinates (m).
+     *
+     * @param secondAnchorX
+     *        The x position of the end of the rod on the second object, in world coordinates (m).
+     *
+     * @param secondAnchorY
+     *        The y position of the end of the rod on the second object, in world coordinates (m).
+     *
+     * @return The joint, which can be given to {@link #removeJoint}.
+     */
+    public Joint addDistanceJoint(Collidable first, Collidable second, double firstAnchorX, double firstAnchorY,
+                                  double secondAnchorX, double secondAnchorY) {
+        double length = Math.hypot(secondAnchorX - firstAnchorX, secondAnchorY - firstAnchorY);
+        return addJoint(Joint.Type.DISTANCE, first, second, firstAnchorX, firstAnchorY, secondAnchorX, secondAnchorY, length);
+    }
+
+    /**
+     * Joins a point of each object with a rope, which stops them from getting further apart than
+     * its length but lets them come closer. The objects must have been added to the system.
+     *
+     * @param first
+     *        One of the objects.
+     *
+     * @param second
+     *        The other object.
+     *
+     * @param firstAnchorX
+     *        The x position of the end of the rope on the first object, in world coordinates (m).
+     *
+     * @param firstAnchorY
+     *        The y position of the end of the rope on the first object, in world coordinates (m).
+     *
+     * @param secondAnchorX
+     *        The x position of the end of the rope on the second object, in world coordinates (m).
+     *
+     * @param secondAnchorY
+     *        The y position of the end of the rope on the second object, in world coordinates (m).
+     *
+     * @param length
+     *        The length of the rope (m). It may be shorter than the distance between the ends now,
+     *        in which case the objects are pulled together.
+     *
+     * @return The joint, which can be given to {@link #removeJoint}.
+     */
+    public Joint addRopeJoint(Collidable first, Collidable second, double firstAnchorX, double firstAnchorY,
+                              double secondAnchorX, double secondAnchorY, double length) {
+        if (length < 0.0) {
+            String errorString = "Tried to add a rope with a negative length.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        return addJoint(Joint.Type.ROPE, first, second, firstAnchorX, firstAnchorY, secondAnchorX, secondAnchorY, length);
+    }
+
+    private Joint addJoint(Joint.Type type, Collidable first, Collidable second, double firstAnchorX,
+                           double firstAnchorY, double secondAnchorX, double secondAnchorY, double length) {
+        synchronized (objects) {
+            applyCommands();
+            if (first == null || second == null || first == second ||
+                    !objectSet.contains(first) || !objectSet.contains(second)) {
+                String errorString = "Tried to add a joint between objects which aren't two different objects in the system.";
+                Log.error(errorString);
+                throw new IllegalArgumentException(errorString);
+            }
+
+            State firstState  = first.getState();
+            State secondState = second.getState();
+            double reference = type == Joint.Type.WELD ? secondState.angle - firstState.angle : length;
+            return addLocalJoint(type, first, second,
+                    toLocalX(firstState, firstAnchorX, firstAnchorY), toLocalY(firstState, firstAnchorX, firstAnchorY),
+                    toLocalX(secondState, secondAnchorX, secondAnchorY), toLocalY(secondState, secondAnchorX, secondAnchorY),
+                    reference);
+        }
+    }
+
+    /**
+     * Adds a joint with its anchors already in the local coordinates of the objects. Used when
+     * replaying a recording, so that the joint is made exactly as it was recorded.
+     */
+    Joint addLocalJoint(Joint.Type type, Collidable first, Collidable second, double firstAnchorX,
+                        double firstAnchorY, double secondAnchorX, double secondAnchorY, double reference) {
+        synchronized (objects) {
+            applyCommands();
+            if (first == null || second == null || first == second ||
+                    !objectSet.contains(first) || !objectSet.contains(second)) {
+                String errorString = "Tried to add a joint between objects which aren't two different objects in the system.";
+                Log.error(errorString);
+                throw new IllegalArgumentException(errorString);
+            }
+
+            Joint joint = new Joint(type, first, second);
+            jointSolver.add(joint, firstAnchorX, firstAnchorY, secondAnchorX, secondAnchorY, reference);
+            if (recorder != null) {
+                recorder.recordJointAdd(stepCount, jointSolver, joint.slot);
+            }
+            if (history != null) {
+                history.clear();
+            }
+            updateCollisionFilter();
+            Log.info("Adding a " + type + " joint to the physics system.");
+            return joint;
+        }
+    }
+
+    /**
+     * @return The joint in a slot of the joint solver, or null when there isn't one. Used when
+     *         replaying a recording.
+     */
+    Joint getJoint(int slot) {
+        synchronized (objects) {
+            applyCommands();
+            return slot >= 0 && slot < jointSolver.getCount() ? jointSolver.getJoint(slot) : null;
+        }
+    }
+
+    /**
+     * @return The x position of a world point in the coordinates of the state, rotated the
+     *         opposite way to {@link State#updateTransform()}.
+     */
+    private static double toLocalX(State state, double x, double y) {
+        double dx = x - state.position.getMagX();
+        double dy = y - state.position.getMagY();
+        return StrictMath.cos(state.angle) * dx - StrictMath.sin(state.angle) * dy;
+    }
+
+    private static double toLocalY(State state, double x, double y) {
+        double dx = x - state.position.getMagX();
+        double dy = y - state.position.getMagY();
+        return StrictMath.sin(state.angle) * dx + StrictMath.cos(state.angle) * dy;
+    }
+
+    /**
+     * Removes a joint. Joints are also removed along with either of their objects.
+     *
+     * @param joint
+     *        The joint to be removed.
+     */
+    public void removeJoint(Joint joint) {
+        if (null == joint) {
+            Log.error("Attempted to remove a null joint.");
+            return;
+        }
+
+        synchronized (objects) {
+            applyCommands();
+            int slot = joint.slot;
+            if (!jointSolver.remove(joint)) {
+                Log.warning("Attempted to remove a joint that wasn't in the physics system.");
+                return;
+            }
+            if (recorder != null) {
+                recorder.recordJointRemove(stepCount, slot);
+            }
+            if (history != null) {
+                history.clear();
+            }
+            updateCollisionFilter();
+            Log.info("Removed a joint from the physics system.");
+        }
+    }
+
+    /**
+     * @return The number of joints in the physics system.
+     */
+    public int getJointCount() {
+        synchronized (objects) {
+            applyCommands();
+            return jointSolver.getCount();
+        }
+    }
+
+    /**
+     * Gives the collision system the joint filter while there are joints, and the collision
+     * filter on its own otherwise. Must be called with the objects locked.
+     */
+    private void updateCollisionFilter() {
+        collisionSystem.setCollisionFilter(jointSolver.getCount() > 0 ? jointFilter : collisionFilter);
+    }
+
+    /**
+     * @return The number of pairs of objects that were resting against each other in the last
+     *         step.
+     */
+    public int getContactCount() {
+        synchronized (objects) {
+            return contactSolver.getContactCount();
+        }
+    }
+
+    /**
+     * Allows users to query whether two objects are touching, either resting against each other
+     * or colliding, without keeping track of the contact events.
+     *
+     * @param first
+     *        One of the objects.
+     *
+     * @param second
+     *        The other object.
+     *
+     * @return True when the objects were touching in the last step.
+     *
+     * @see #addContactListener
+     */
+    public boolean isTouching(Collidable first, Collidable second) {
+        if (first.getBodyId() > second.getBodyId()) {
+            return isTouching(second, first);
+        }
+        synchronized (objects) {
+            return pairCache.isTouching(Collision.getPairKey(first, second));
+        }
+    }
+
+    /**
+     * @return The number of pairs of objects which were touching in the last step, either resting
+     *         against each other or colliding.
+     */
+    public int getTouchingPairCount() {
+        synchronized (objects) {
+            return pairCache.getTouchingCount();
+        }
+    }
+
+    /**
+     * Gives the time each phase of the steps took and the amount of work in them, for the last
+     * step and in total since the statistics were reset. Unlike the frame time and load, the
+     * phases only cover the steps themselves and not the time spent waiting between them.
+     *
+     * @return A copy of the statistics, which doesn't change as the physics carries on.
+     *
+     * @see #resetStats
+     */
+    public PhysicsStats getStats() {
+        return profiler.getStats();
+    }
+
+    /**
+     * Clears the totals of the statistics, so that they only cover the steps from now on.
+     */
+    public void resetStats() {
+        profiler.reset();
+    }
+
+    /**
+     * Starts writing the phase times and counts of every step to a file, to be plotted offline.
+     * The format of the file is given in {@link PhysicsProfiler}. Any trace which is already
+     * running is stopped first.
+     *
+     * @param filename
+     *        The file (with path) to write. It is replaced if it exists.
+     *
+     * @return True when the trace was started.
+     *
+     * @see #stopTrace
+     */
+    public boolean startTrace(String filename) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(filename),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            Log.error("There was an error opening the physics trace " + filename + ".");
+            Log.error(e.toString());
+            return false;
+        }
+        profiler.startTrace(channel);
+        Log.info("Started tracing the physics steps to " + filename + ".");
+        return true;
+    }
+
+    /**
+     * Writes the rest of the trace and closes the file.
+     *
+     * @see #startTrace
+     */
+    public void stopTrace() {
+        if (!profiler.isTracing()) {
+            Log.warning("Attempted to stop the physics trace when not tracing.");
+            return;
+        }
+        profiler.stopTrace();
+        Log.info("Stopped tracing the physics steps.");
+    }
+
+    /**
+     * Adds a listener which is told which pairs of objects have started touching, are still
+     * touching and have stopped touching at the end of every step. If the listener is already
+     * added, it will be ignored.
+     *
+     * @param listener
+     *        The listener to be added.
+     *
+     * @see #removeContactListener
+     */
+    public void addContactListener(ContactListener listener) {
+        if (null == listener) {
+            Log.error("Attempted to add a null contact listener.");
+            return;
+        }
+
+        synchronized (contactListeners) {
+            if (!contactListeners.contains(listener)) {
+                contactListeners.add(listener);
+                Log.info("Adding a contact listener.");
+            } else {
+                Log.warning("Attempted to add a contact listener that was already there.");
+            }
+        }
+    }
+
+    /**
+     * Removes the given contact listener.
+     *
+     * @param listener
+     *        The listener to be removed.
+     */
+    public void removeContactListener(ContactListener listener) {
+        if (null == listener) {
+            Log.error("Attempted to remove a null contact listener.");
+            return;
+        }
+
+        synchronized (contactListeners) {
+            if (!contactListeners.remove(listener)) {
+                Log.warning("Attempted to remove a contact listener that wasn't there.");
+            } else {
+                Log.info("Removed a contact listener.");
+            }
+        }
+    }
+
+    /**
+     * Allows users to query the number of objects which are asleep. Sleeping objects have come to
+     * rest and are not propagated until something wakes them up.
+     *
+     * @return The number of sleeping objects as of the last step.
+     */
+    public int getSleepingObjectCount() {
+        return numSleepingObjects;
+    }
+
+    /**
+     * Allows users to query the number of objects which are awake.
+     *
+     * @return The number of awake objects as of the last step.
+     */
+    public int getAwakeObjectCount() {
+        return numAwakeObjects;
+    }
+
+    /**
+     * Allows users to query whether the physics calculations are currently paused.
+     *
+     * @return True when the physics system is actively calculating physics every loop.
+     *
+     * @see #pausePhysics
+     * @see #continuePhysics
+     */
+    public boolean isPhysicsPaused() {
+        // isPaused is volatile so we don't need to synchronise here.
+        return isPaused;
+    }
+
+    /**
+     * Allows users to stop the physics system. This is the normal way of stopping the physics
+     * system.
+     */
+    public void stopPhysics () {
+        isPhysicsRunning = false;
+        Log.info("Stopping physics using method \"stopPhysics\"");
+    }
+
+    /**
+     * Allows users to query whether the physics thread has stopped. The physics may be in the
+     * stopped state: before the physics thread has been started with start(), after the physics
+     * thread has ended through a call to stopPhysics(), or after the physics thread has stopped
+     * due to an interrupt.
+     *
+     * @return Whether the physics system is in the running state.
+     */
+    public boolean isPhysicsRunning() {
+        return isPhysicsRunning;
+    }
+
+    /**
+     * Adds an objects to the physics thing calculation list. The object will continue being
+     * calculated until it is removed from the physics thing list with removePhysicsThing or the
+     * physics list is cleared with clearPhysicsThings. If an object is already in the physics
+     * thing list, it will be ignored.
+     *
+     * Physics things should be used for non object things which need to be calculated every time
+     * step.
+     *
+     * @param object
+     *        The physics thing to be added to the list.
+     *
+     * @see #removePhysicsThing
+     * @see #clearPhysicsThings
+     */
+    public void addPhysicsThing(PhysicsThing object) {
+        if (null == object) {
+            Log.error("Attempted to add a null object to the physics things list.");
+            return;
+        }
+
+        synchronized (physicsThings) {
+            if (!physicsThings.contains(object)) {
+                physicsThings.add(object);
+                Log.info("Adding a physics thing to the list.");
+            } else {
+                Log.warning("Attempted to add a physics things to the list that was already there.");
+            }
+        }
+    }
+
+    /**
+     * Removes the given physics thing form the list.
+     *
+     * @param object
+     *        The thing to be removed from the list.
+     *
+     * @see #clearPhysicsThings
+     */
+    public void removePhysicsThing(PhysicsThing object) {
+        if (null == object) {
+            Log.error("Attempted to remove a null object from the physics things list.");
+            return;
+        }
+
+        synchronized (physicsThings) {
+            boolean didRemoveDoAnything = physicsThings.remove(object);
+            if (!didRemoveDoAnything) {
+                Log.warning("Attempted to remove a physics things from the list that wasn't there.");
+            } else {
+                Log.info("Removed a physics thing from the list.");
+            }
+        }
+    }
+
+    /**
+     * Clears every object out of the physics thing list. This method should generally not be used
+     * unless you really want all the physics things to stop simulating (and potentially add new
+     * ones). It will have better performance than calling removePhysicsThing on every object.
+     *
+     * @see #removePhysicsThing
+     */
+    public void clearPhysicsThings() {
+        synchronized (physicsThings) {
+            physicsThings.clear();
+            Log.info("Clearing the physics things list.");
+        }
+    }
+
+    /**
+     * Adds an object to the physics system. The object will continue being calculated until it is
+     * removed from the physics thing list with removeObject or the physics list is cleared with
+     * clearObjects. If an object is already in the object list, it will be ignored.
+     *
+     * Objects propagate through space and (potentially) collide.
+     *
+     * The add is queued without waiting for the physics, and applied (in the order it was queued)
+     * before the next step or the next time the objects are looked at, for example by
+     * {@link #getObjectCount()}. The object gets its body id when the add is applied. It is safe to
+     * call from any thread, including from physics things and collision notifications. Adds queued
+     * during a step, from a collision notification, are only applied once the step is over.
+     *
+     * @param object
+     *        The object to be added to the system.
+     */
+    public void addObject (Collidable object) {
+        if (null == object) {
+            Log.error("Attempted to add a null object to the physics system.");
+            return;
+        }
+        objectCommands.add(new ObjectCommand(ObjectCommand.ADD, object));
+    }
+
+    /**
+     * Adds an object with a particular body id. Used when replaying a recording, so that the
+     * objects get the same ids they had when they were recorded.
+     *
+     * @param object
+     *        The object to be added to the system.
+     *
+     * @param bodyId
+     *        The id to give the object.
+     */
+    void addObject(Collidable object, int bodyId) {
+        synchronized (objects) {
+            applyCommands();
+            if (objectSet.add(object)) {
+                addObjectLocked(object, bodyId);
+                nextBodyId = Math.max(nextBodyId, bodyId + 1);
+            }
+        }
+    }
+
+    /**
+     * Applies the queued adds and removes in the order they were queued. Objects removed in the
+     * batch are taken out of the list in one pass at the end, which keeps the order of the rest.
+     * Does nothing during a step, so that a getter or query called from a collision notification
+     * doesn't change the objects in the middle of it. Must be called with the objects locked.
+     */
+    private void applyCommands() {
+        if (isStepping) {
+            return;
+        }
+        ObjectCommand command;
+        while ((command = objectCommands.poll()) != null) {
+            Collidable object = command.object;
+            switch (command.type) {
+                case ObjectCommand.ADD:
+                    if (removedObjects.contains(object)) {
+                        // Removed and added again, take it out of its old place first.
+                        compactObjects();
+                    }
+                    if (objectSet.add(object)) {
+                        addObjectLocked(object, nextBodyId++);
+                        Log.info("Adding an object to the physics system.");
+                    } else {
+                        Log.warning("Attempted to add an object to the physics list that was already there.");
+                    }
+                    break;
+                case ObjectCommand.REMOVE:
+                    if (objectSet.remove(object)) {
+                        removedObjects.add(object);
+                        removeObjectLocked(object);
+                        Log.info("Removed an object from the physics list.");
+                    } else {
+                        Log.warning("Attempted to remove an object from the physics list that wasn't there.");
+                    }
+                    break;
+                case ObjectCommand.CLEAR:
+                    clearObjectsLocked();
+                    Log.info("Clearing the physics things list.");
+                    break;
+            }
+        }
+        compactObjects();
+    }
+
+    /**
+     * Takes the removed objects out of the list. Must be called with the objects locked.
+     */
+    private void compactObjects() {
+        if (removedObjects.isEmpty()) {
+            return;
+        }
+        int numKept = 0;
+        for (int i = 0; i < objects.size(); i++) {
+            Collidable object = objects.get(i);
+            if (!removedObjects.contains(object)) {
+                objects.set(numKept++, object);
+            }
+        }
+        objects.subList(numKept, objects.size()).clear();
+        removedObjects.clear();
+    }
+
+    /**
+     * Must be called with the objects locked, once the object is in the object set.
+     */
+    private void addObjectLocked(Collidable object, int bodyId) {
+        objects.add(object);
+        if (history != null) {
+            history.clear();
+        }
+        object.setBodyId(bodyId);
+        // The collision system places the object using its next state.
+        object.calculateNextState(0.0);
+        object.storePreviousState();
+        collisionSystem.addObject(object);
+        if (recorder != null) {
+            recorder.recordAdd(stepCount, object);
+        }
+    }
+
+    /**
+     * Finds the closest object hit by a ray along the segment from (x1, y1) to (x2, y2). Objects
+     * with a shape are hit on their shape, others on their collision radius. A ray which starts
+     * inside an object doesn't hit it.
+     *
+     * Like the other queries it uses the current positions of the objects and is served by the
+     * broad phase. It may be called from any thread, including from physics things and collision
+     * notifications on the physics thread, where the objects may be part way through the step.
+     *
+     * @param x1
+     *        The x position of the start of the ray (m).
+     *
+     * @param y1
+     *        The y position of the start of the ray (m).
+     *
+     * @param x2
+     *        The x position of the end of the ray (m).
+     *
+     * @param y2
+     *        The y position of the end of the ray (m).
+     *
+     * @param maskBits
+     *        Only objects in one of these categories are hit, {@link Collidable#ALL_CATEGORIES}
+     *        for every object.
+     *
+     * @param hit
+     *        Filled with the closest hit. Its object is set to null when nothing is hit.
+     *
+     * @return True when the ray hit an object.
+     */
+    public boolean rayCast(double x1, double y1, double x2, double y2, int maskBits, RayCastHit hit) {
+        synchronized (objects) {
+            applyCommands();
+            return spatialQuery.rayCast(x1, y1, x2, y2, maskBits, hit);
+        }
+    }
+
+    /**
+     * Finds the objects whose bounding box (the box around their collision radius) overlaps the
+     * given box. See {@link #rayCast} for when it can be called.
+     *
+     * @param lowerX
+     *        The left side of the box (m).
+     *
+     * @param lowerY
+     *        The bottom of the box (m).
+     *
+     * @param upperX
+     *        The right side of the box (m).
+     *
+     * @param upperY
+     *        The top of the box (m).
+     *
+     * @param maskBits
+     *        Only objects in one of these categories are found.
+     *
+     * @param results
+     *        The objects found are added to this collection in order of body id.
+     *
+     * @return The number of objects found.
+     */
+    public int queryAABB(double lowerX, double lowerY, double upperX, double upperY, int maskBits,
+                         Collection<Collidable> results) {
+        synchronized (objects) {
+            applyCommands();
+            return spatialQuery.queryAABB(lowerX, lowerY, upperX, upperY, maskBits, results);
+        }
+    }
+
+    /**
+     * Finds the objects whose collision radius overlaps the given circle. See {@link #rayCast}
+     * for when it can be called.
+     *
+     * @param x
+     *        The x position of the centre of the circle (m).
+     *
+     * @param y
+     *        The y position of the centre of the circle (m).
+     *
+     * @param radius
+     *        The radius of the circle (m).
+     *
+     * @param maskBits
+     *        Only objects in one of these categories are found.
+     *
+     * @param results
+     *        The objects found are added to this collection in order of body id.
+     *
+     * @return The number of objects found.
+     */
+    public int queryRadius(double x, double y, double radius, int maskBits, Collection<Collidable> results) {
+        synchronized (objects) {
+            applyCommands();
+            return spatialQuery.queryRadius(x, y, radius, maskBits, results);
+        }
+    }
+
+    /**
+     * Finds the objects whose centres are nearest to a point, as many as fit in the results.
+     * See {@link #rayCast} for when it can be called.
+     *
+     * @param x
+     *        The x position of the point (m).
+     *
+     * @param y
+     *        The y position of the point (m).
+     *
+     * @param maxDistance
+     *        Objects further than this from the point are not found (m). May be infinite.
+     *
+     * @param maskBits
+     *        Only objects in one of these categories are found.
+     *
+     * @param results
+     *        Filled with the nearest objects, nearest first. Equally near objects are in order of
+     *        body id, and any places left over are set to null.
+     *
+     * @return The number of objects found.
+     */
+    public int findNearest(double x, double y, double maxDistance, int maskBits, Collidable[] results) {
+        synchronized (objects) {
+            applyCommands();
+            return spatialQuery.findNearest(x, y, maxDistance, maskBits, results);
+        }
+    }
+
+    /**
+     * Allows users to query the number of objects in the system.
+     *
+     * @return The number of objects which have been added and not removed.
+     */
+    public int getObjectCount() {
+        synchronized (objects) {
+            applyCommands();
+            return objects.size();
+        }
+    }
+
+    /**
+     * Applies an impulse to an object in between two steps. Impulses applied through the physics
+     * system, rather than to the object directly, are included in recordings, unless they come from
+     * a physics thing.
+     *
+     * @param object
+     *        The object to apply the impulse to.
+     *
+     * @param impulse
+     *        The linear impulse (N*s).
+     *
+     * @param angularImpulse
+     *        The angular impulse (N*m*s).
+     */
+    public void applyImpulse(Collidable object, Vector2D impulse, double angularImpulse) {
+        if (null == object) {
+            Log.error("Attempted to apply an impulse to a null object.");
+            return;
+        }
+
+        synchronized (objects) {
+            applyCommands();
+            if (recorder != null && thingThread != Thread.currentThread()) {
+                recorder.recordImpulse(stepCount, object, impulse.getMagX(), impulse.getMagY(), angularImpulse);
+            }
+            object.applyImpulse(impulse, angularImpulse);
+        }
+    }
+
+    /**
+     * Applies a force to an object for the next step. Forces applied through the physics system,
+     * rather than to the object directly, are included in recordings, unless they come from a
+     * physics thing.
+     *
+     * @param object
+     *        The object to apply the force to.
+     *
+     * @param force
+     *        The force, through the centre of mass (N).
+     *
+     * @param torque
+     *        The torque (N*m).
+     */
+    public void applyForce(Collidable object, Vector2D force, double torque) {
+        if (null == object) {
+            Log.error("Attempted to apply a force to a null object.");
+            return;
+        }
+
+        synchronized (objects) {
+            applyCommands();
+            if (recorder != null && thingThread != Thread.currentThread()) {
+                recorder.recordForce(stepCount, object, force.getMagX(), force.getMagY(), torque);
+            }
+            object.applyForce(force.getMagX(), force.getMagY(), torque);
+        }
+    }
+
+    /**
+     * Starts recording everything that is done to the physics system, so that the run can be
+     * replayed exactly. The recording starts with a snapshot of the system as it is now. Objects,
+     * impulses and forces given directly to the objects, rather than through the physics system,
+     * are not recorded. Physics things are not recorded either, so the system that the recording
+     * is replayed into needs to have the same physics things.
+     *
+     * @param recorder
+     *        Where the recording is written.
+     *
+     * @see #stopRecording
+     * @see PhysicsReplayer
+     */
+    public void startRecording(PhysicsRecorder recorder) {
+        if (null == recorder) {
+            Log.error("Attempted to start recording with a null recorder.");
+            return;
+        }
+
+        synchronized (objects) {
+            applyCommands();
+            if (this.recorder != null) {
+                Log.warning("Attempted to start recording while already recording.");
+                return;
+            }
+            recorder.writeHeader();
+            for (Collidable object : objects) {
+                recorder.recordAdd(stepCount, object);
+            }
+            // In slot order, so that the joints are in the same slots in the replay as the
+            // impulses in the snapshot.
+            for (int slot = 0; slot < jointSolver.getCount(); slot++) {
+                recorder.recordJointAdd(stepCount, jointSolver, slot);
+            }
+            recorder.recordSnapshot(stepCount, snapshot());
+            synchronized (this) {
+                recordedPhysics_dt = physics_dt;
+            }
+            this.recorder = recorder;
+            Log.info("Started recording the physics at step " + stepCount + ".");
+        }
+    }
+
+    /**
+     * Stops the recording and closes its stream.
+     *
+     * @see #startRecording
+     */
+    public void stopRecording() {
+        synchronized (objects) {
+            if (recorder == null) {
+                Log.warning("Attempted to stop recording when not recording.");
+                return;
+            }
+            recorder.close(stepCount);
+            recorder = null;
+            Log.info("Stopped recording the physics at step " + stepCount + ".");
+        }
+    }
+
+    /**
+     * Removes the given object from the physics system. Like {@link #addObject}, the remove is
+     * queued and applied before the next step.
+     *
+     * @param object
+     *        The object to be removed from the system.
+     */
+    public void removeObject(Collidable object) {
+        if (null == object) {
+            Log.error("Attempted to remove a null object from the physics system.");
+            return;
+        }
+        objectCommands.add(new ObjectCommand(ObjectCommand.REMOVE, object));
+    }
+
+    /**
+     * Must be called with the objects locked, once the object is out of the object set. The
+     * object is left in the list until {@link #compactObjects()}.
+     */
+    private void removeObjectLocked(Collidable object) {
+        collisionSystem.removeObject(object);
+        contactSolver.removeObject(object);
+        if (jointSolver.removeObject(object)) {
+            updateCollisionFilter();
+        }
+        if (history != null) {
+            history.clear();
+        }
+        if (recorder != null) {
+            recorder.recordRemove(stepCount, object);
+        }
+    }
+
+    /**
+     * Clears every object out of the physics list. This method should generally not be used unless
+     * you really want all the objects to stop simulating (and potentially add new ones). It will
+     * have better performance than calling removeObject on every object. Like {@link #addObject},
+     * the clear is queued, so objects added after it are kept.
+     *
+     */
+    public void clearObjects() {
+        objectCommands.add(new ObjectCommand(ObjectCommand.CLEAR, null));
+    }
+
+    /**
+     * Must be called with the objects locked.
+     */
+    private void clearObjectsLocked() {
+        objects.clear();
+        objectSet.clear();
+        removedObjects.clear();
+        collisionSystem.clear();
+        contactSolver.clear();
+        jointSolver.clear();
+        updateCollisionFilter();
+        if (history != null) {
+            history.clear();
+        }
+        if (recorder != null) {
+            recorder.recordClear(stepCount);
         }
     }
 
@@ -436,8 +2367,8 @@ public final class PhysicsSystem implements Runnable {
      * will run in real time. A physics multiplier of 10 and a physics_dt of 10 ms means that the
      * physics system will attempt to perform 10 steps of physics (each 10 ms simulated) in 10 ms
      * of real time. Setting the physics multiplier to a value higher than the physics_dt (ex. 30x)
-     * will cause the physics to run as fast as possible. Note that the virtual time between
-     * integrated physics time steps will still be physics_dt.
+     * will cause the physics to run as fast as possible, up to the limit of steps per loop. Note
+     * that the virtual time between integrated physics time steps will still be physics_dt.
      *
      * @param physicsMultiplier
      *        The desired physics multiplier.
@@ -462,13 +2393,19 @@ public final class PhysicsSystem implements Runnable {
         synchronized (this) {
             retString += "physics_dt:        " + physics_dt         + NL;
             retString += "physicsMultiplier: " + physicsMultiplier  + NL;
+            retString += "maxStepsPerFrame:  " + maxStepsPerFrame   + NL;
             retString += "isPhysicsRunning:  " + isPhysicsRunning   + NL;
             retString += "isPaused:          " + isPaused           + NL;
+            retString += "isDeterministic:   " + isDeterministic    + NL;
         }
 
         synchronized (physicsThings) {
             retString += "numPhysicsObj:    " + physicsThings.size()  + NL;
         }
+        retString += "numSleepingObj:    " + numSleepingObjects + NL;
+        retString += "numAwakeObj:       " + numAwakeObjects    + NL;
+        retString += "stepCount:         " + stepCount          + NL;
+        retString += "contactIterations: " + contactSolver.getIterations() + NL;
 
         return retString;
     }
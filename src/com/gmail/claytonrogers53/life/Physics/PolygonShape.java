@@ -0,0 +1,175 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+/**
+ * A convex polygon in the local coordinates of an object. The vertices are stored counter
+ * clockwise along with the outward normal of every edge, edge i goes from vertex i to vertex i+1.
+ */
+public final class PolygonShape extends Shape {
+
+    /** Two edges closer to parallel than this are considered to be a single edge. */
+    private static final double PARALLEL_TOLERANCE = 1e-12;
+
+    private final int      vertexCount;
+    private final double[] vertexX;
+    private final double[] vertexY;
+    private final double[] normalX;
+    private final double[] normalY;
+    private final double   boundingRadius;
+
+    /**
+     * Creates a new convex polygon. The vertices may be given in either clockwise or counter
+     * clockwise order.
+     *
+     * @param vertexX
+     *        The x positions of the vertices in local coordinates (m).
+     *
+     * @param vertexY
+     *        The y positions of the vertices in local coordinates (m).
+     */
+    public PolygonShape(double[] vertexX, double[] vertexY) {
+        if (vertexX.length != vertexY.length || vertexX.length < 3) {
+            String errorString = "Tried to create a polygon with less than three vertices.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+
+        vertexCount = vertexX.length;
+        this.vertexX = new double[vertexCount];
+        this.vertexY = new double[vertexCount];
+
+        // Store the vertices counter clockwise.
+        double signedArea = 0.0;
+        for (int i = 0; i < vertexCount; i++) {
+            int j = (i + 1) % vertexCount;
+            signedArea += vertexX[i] * vertexY[j] - vertexX[j] * vertexY[i];
+        }
+        for (int i = 0; i < vertexCount; i++) {
+            int source = signedArea >= 0.0 ? i : vertexCount - 1 - i;
+            this.vertexX[i] = vertexX[source];
+            this.vertexY[i] = vertexY[source];
+        }
+
+        normalX = new double[vertexCount];
+        normalY = new double[vertexCount];
+        double maxRadiusSquared = 0.0;
+        for (int i = 0; i < vertexCount; i++) {
+            int j = (i + 1) % vertexCount;
+            double edgeX = this.vertexX[j] - this.vertexX[i];
+            double edgeY = this.vertexY[j] - this.vertexY[i];
+            double length = Math.sqrt(edgeX * edgeX + edgeY * edgeY);
+            if (length == 0.0) {
+                String errorString = "Tried to create a polygon with two identical vertices.";
+                Log.error(errorString);
+                throw new IllegalArgumentException(errorString);
+            }
+            normalX[i] =  edgeY / length;
+            normalY[i] = -edgeX / length;
+
+            // Every vertex must be on the left of (or on) every edge.
+            int k = (i + 2) % vertexCount;
+            double cross = edgeX * (this.vertexY[k] - this.vertexY[j]) - edgeY * (this.vertexX[k] - this.vertexX[j]);
+            if (cross < -PARALLEL_TOLERANCE) {
+                String errorString = "Tried to create a polygon which is not convex.";
+                Log.error(errorString);
+                throw new IllegalArgumentException(errorString);
+            }
+
+            maxRadiusSquared = Math.max(maxRadiusSquared,
+                    this.vertexX[i] * this.vertexX[i] + this.vertexY[i] * this.vertexY[i]);
+        }
+        boundingRadius = Math.sqrt(maxRadiusSquared);
+    }
+
+    /**
+     * Creates a rectangle centred on the local origin.
+     *
+     * @param halfWidth
+     *        Half of the width (x) of the box (m).
+     *
+     * @param halfHeight
+     *        Half of the height (y) of the box (m).
+     *
+     * @return The new rectangle.
+     */
+    public static PolygonShape box(double halfWidth, double halfHeight) {
+        return new PolygonShape(
+                new double[] {-halfWidth,  halfWidth, halfWidth, -halfWidth},
+                new double[] {-halfHeight, -halfHeight, halfHeight, halfHeight});
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public double getVertexX(int i) {
+        return vertexX[i];
+    }
+
+    public double getVertexY(int i) {
+        return vertexY[i];
+    }
+
+    /**
+     * @return The x component of the outward unit normal of the edge from vertex i to vertex i+1.
+     */
+    public double getNormalX(int i) {
+        return normalX[i];
+    }
+
+    /**
+     * @return The y component of the outward unit normal of the edge from vertex i to vertex i+1.
+     */
+    public double getNormalY(int i) {
+        return normalY[i];
+    }
+
+    @Override
+    public double getBoundingRadius() {
+        return boundingRadius;
+    }
+
+    @Override
+    double rayCast(double x, double y, double dx, double dy, double maxFraction, Vector2D normal) {
+        // Clip the ray against the half plane behind every edge, the ray enters through the edge
+        // that clips its start the most.
+        double lower = 0.0;
+        double upper = maxFraction;
+        int enteringEdge = -1;
+        for (int i = 0; i < vertexCount; i++) {
+            double numerator   = normalX[i] * (vertexX[i] - x) + normalY[i] * (vertexY[i] - y);
+            double denominator = normalX[i] * dx + normalY[i] * dy;
+            if (denominator == 0.0) {
+                if (numerator < 0.0) {
+                    return -1.0;
+                }
+            } else if (denominator < 0.0 && numerator < lower * denominator) {
+                lower = numerator / denominator;
+                enteringEdge = i;
+            } else if (denominator > 0.0 && numerator < upper * denominator) {
+                upper = numerator / denominator;
+            }
+            if (upper < lower) {
+                return -1.0;
+            }
+        }
+        if (enteringEdge < 0) {
+            // The ray starts inside.
+            return -1.0;
+        }
+        normal.set(normalX[enteringEdge], normalY[enteringEdge]);
+        return lower;
+    }
+
+    @Override
+    public boolean contains(double localX, double localY) {
+        for (int i = 0; i < vertexCount; i++) {
+            if (normalX[i] * (localX - vertexX[i]) + normalY[i] * (localY - vertexY[i]) > 0.0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+/**
+ * A struct holding the result of a ray cast through the physics system, see
+ * {@link PhysicsSystem#rayCast}. It is given by the caller and filled in, so that casting a ray
+ * doesn't create any new objects.
+ */
+public final class RayCastHit {
+    /** The object that was hit, null when the ray didn't hit anything. */
+    public Collidable object = null;
+    /** How far along the ray the hit is, from 0 at the start to 1 at the end. */
+    public double fraction = 0.0;
+    /** The point where the ray enters the object, in world coordinates (m). */
+    public double pointX = 0.0;
+    public double pointY = 0.0;
+    /** The outward unit normal of the object at the hit point, in world coordinates. */
+    public double normalX = 0.0;
+    public double normalY = 0.0;
+
+    /**
+     * @return True when the ray hit an object.
+     */
+    public boolean isHit() {
+        return object != null;
+    }
+}
@@ -0,0 +1,571 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the collisions of a step in parallel by splitting the world into regions, for worlds with
+ * so many objects that finding the collisions one after the other takes too long. The world is cut
+ * into strips along the X axis, and each strip is swept and pruned on its own by a task of a
+ * fork/join pool, including the slow work of finding the collision times.
+ *
+ * Each object belongs to the strip its box starts in. An object whose box reaches over a border
+ * is also copied into the strips to its right as a ghost, so that the strips there can find its
+ * pairs too. A pair is only found by the strip that holds the right most start of the two boxes,
+ * so every pair is found once. Finding a collision time moves the objects around, so the
+ * collisions of objects which are in more than one strip can't be made while the other strips
+ * are running; these pairs are kept and their collisions are made after every strip has
+ * finished. The collisions are then sorted by the body ids of the objects, so the result doesn't
+ * depend on how the strips were cut or which thread made them.
+ *
+ * The objects are sorted into the strips again at the start of every step, so objects move from
+ * strip to strip as they move across the world. The borders of the strips are moved to even out
+ * the number of objects in each whenever the fullest strip has too many.
+ *
+ * Objects are also kept in an AABB tree, which is used to find the candidates of single objects,
+ * and for the region queries and ray casts.
+ *
+ * The collision filter is called from the threads of the pool, so it must be safe to call from
+ * more than one thread at once.
+ */
+final class RegionCollision implements CollisionSystem {
+
+    private static final int INITIAL_CAPACITY = 64;
+    /** The borders are moved once the fullest strip has this many times the average number of
+     * objects. */
+    private static final double MAX_IMBALANCE = 1.5;
+    /** With fewer objects than this per strip, the strips are all swept on the calling thread. */
+    private static final int MIN_OBJECTS_PER_REGION = 256;
+
+    private static final Comparator<Collision> BY_PAIR_KEY = new Comparator<Collision>() {
+        @Override
+        public int compare(Collision o1, Collision o2) {
+            return Long.compare(o1.getPairKey(), o2.getPairKey());
+        }
+    };
+
+    private final AABBTreeCollision tree;
+    private final int parallelism;
+    /** Only made once the strips are swept on more than one thread, null until then and after
+     * {@link #shutdown}. */
+    private ForkJoinPool pool = null;
+    /** The pool of someone else which is used instead of our own, null for none. */
+    private ForkJoinPool sharedPool = null;
+    private final Region[] regions;
+    /** The left border of every strip but the first, in increasing order. */
+    private final double[] borders;
+    private boolean hasBorders = false;
+    private CollisionFilter filter = null;
+
+    // The objects which can collide this step, along with their boxes and the strips they are in.
+    private int objectCount = 0;
+    private Collidable[] bodies   = new Collidable[INITIAL_CAPACITY];
+    private double[] lowerX       = new double[INITIAL_CAPACITY];
+    private double[] lowerY       = new double[INITIAL_CAPACITY];
+    private double[] upperX       = new double[INITIAL_CAPACITY];
+    private double[] upperY       = new double[INITIAL_CAPACITY];
+    private int[]    firstRegion  = new int[INITIAL_CAPACITY];
+    private int[]    lastRegion   = new int[INITIAL_CAPACITY];
+    private double[] sortedLowerX = new double[INITIAL_CAPACITY];
+    /** The length of the step being worked on (s). */
+    private double physicsDT_seconds;
+
+    /** The strip which each object started in last step, by body id, to count the objects which
+     * change strip. */
+    private int[] lastOwners = new int[INITIAL_CAPACITY];
+    private long numMigrations = 0;
+    /** The time the last call to findCollisions spent making the collisions (ns). */
+    private long narrowphaseNanos = 0L;
+    private long numRebalances = 0;
+
+    /**
+     * One strip of the world, and the space used to sweep it.
+     */
+    private final class Region {
+        final int index;
+        int memberCount = 0;
+        /** The objects in the strip (including the ghosts), sorted by the left side of their boxes. */
+        int[] members = new int[INITIAL_CAPACITY];
+        double[] keys = new double[INITIAL_CAPACITY];
+        int[] tempMembers = new int[INITIAL_CAPACITY];
+        double[] tempKeys = new double[INITIAL_CAPACITY];
+        int[] active = new int[16];
+        /** The collisions made by the strip's task. */
+        final List<Collision> collisions = new ArrayList<>(16);
+        /** Pairs of objects which are only in this strip, as consecutive objects. */
+        int localCount = 0;
+        int[] local = new int[16];
+        /** Pairs with an object which is in more than one strip, as consecutive objects. */
+        int deferredCount = 0;
+        int[] deferred = new int[16];
+        /** The time the last sweep took, and the part of it spent making collisions (ns). */
+        long sweepNanos = 0L;
+        long narrowphaseNanos = 0L;
+
+        Region(int index) {
+            this.index = index;
+        }
+
+        void reserve(int count) {
+            if (members.length < count) {
+                int capacity = Math.max(count, members.length * 2);
+                members     = new int[capacity];
+                keys        = new double[capacity];
+                tempMembers = new int[capacity];
+                tempKeys    = new double[capacity];
+            }
+        }
+
+        /**
+         * Sweeps the strip from left to right, finding every pair of overlapping boxes where the
+         * right most start is in this strip.
+         */
+        void sweep() {
+            long start = System.nanoTime();
+            sortMembers();
+            collisions.clear();
+            localCount = 0;
+            deferredCount = 0;
+
+            int activeCount = 0;
+            for (int k = 0; k < memberCount; k++) {
+                int i = members[k];
+
+                // Drop the objects which end before this one starts.
+                int kept = 0;
+                for (int a = 0; a < activeCount; a++) {
+                    int j = active[a];
+                    if (upperX[j] > keys[k]) {
+                        active[kept++] = j;
+                    }
+                }
+                activeCount = kept;
+
+                if (firstRegion[i] == index) {
+                    for (int a = 0; a < activeCount; a++) {
+                        checkPair(active[a], i);
+                    }
+                }
+
+                if (activeCount == active.length) {
+                    active = Arrays.copyOf(active, activeCount * 2);
+                }
+                active[activeCount++] = i;
+            }
+
+            // The collisions are made once the strip is swept, so that they are timed as a whole
+            // rather than pair by pair.
+            long narrowphaseStart = System.nanoTime();
+            for (int p = 0; p < localCount; p += 2) {
+                collisions.add(new Collision(bodies[local[p]], bodies[local[p + 1]], physicsDT_seconds));
+            }
+            long end = System.nanoTime();
+            narrowphaseNanos = end - narrowphaseStart;
+            sweepNanos = end - start;
+        }
+
+        private void checkPair(int j, int i) {
+            Collidable object = bodies[j];
+            Collidable other  = bodies[i];
+            // Two sleeping objects can't collide with each other.
+            if (object.isSleeping() && other.isSleeping()) {return;}
+            if (!Collision.isOverlapping(lowerX[j], lowerY[j], upperX[j], upperY[j],
+                                         lowerX[i], lowerY[i], upperX[i], upperY[i]) ||
+                    !Collision.shouldCollide(object, other, filter)) {
+                return;
+            }
+
+            if (firstRegion[j] == lastRegion[j] && firstRegion[i] == lastRegion[i]) {
+                // Neither object is in any other strip, so no other task can be moving them.
+                if (localCount + 2 > local.length) {
+                    local = Arrays.copyOf(local, local.length * 2);
+                }
+                local[localCount++] = j;
+                local[localCount++] = i;
+            } else {
+                if (deferredCount + 2 > deferred.length) {
+                    deferred = Arrays.copyOf(deferred, deferred.length * 2);
+                }
+                deferred[deferredCount++] = j;
+                deferred[deferredCount++] = i;
+            }
+        }
+
+        /**
+         * Sorts the members by the left side of their boxes with a bottom up merge sort. The sort
+         * is stable, so objects which start at the same place stay in the order they were added.
+         */
+        private void sortMembers() {
+            int[] fromMembers = members;
+            double[] fromKeys = keys;
+            int[] toMembers = tempMembers;
+            double[] toKeys = tempKeys;
+            for (int width = 1; width < memberCount; width *= 2) {
+                for (int start = 0; start < memberCount; start += 2 * width) {
+                    int middle = Math.min(start + width, memberCount);
+                    int end = Math.min(start + 2 * width, memberCount);
+                    int left = start;
+                    int right = middle;
+                    for (int out = start; out < end; out++) {
+                        if (left < middle && (right >= end || fromKeys[left] <= fromKeys[right])) {
+                            toMembers[out] = fromMembers[left];
+                            toKeys[out]    = fromKeys[left++];
+                        } else {
+                            toMembers[out] = fromMembers[right];
+                            toKeys[out]    = fromKeys[right++];
+                        }
+                    }
+                }
+                int[] swapMembers = fromMembers;
+                fromMembers = toMembers;
+                toMembers = swapMembers;
+                double[] swapKeys = fromKeys;
+                fromKeys = toKeys;
+                toKeys = swapKeys;
+            }
+            members = fromMembers;
+            keys = fromKeys;
+            tempMembers = toMembers;
+            tempKeys = toKeys;
+        }
+    }
+
+    /**
+     * Creates a new region based collision system.
+     *
+     * @param margin
+     *        The distance (m) that the boxes of the AABB tree are fattened by.
+     *
+     * @param parallelism
+     *        The number of threads used to sweep the strips.
+     *
+     * @param regionCount
+     *        The number of strips. More strips than threads lets idle threads take strips from busy
+     *        ones.
+     */
+    RegionCollision(double margin, int parallelism, int regionCount) {
+        if (parallelism < 1 || regionCount < 1) {
+            String errorString = "Tried to create a region collision system with less than one thread or region.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        tree = new AABBTreeCollision(margin);
+        this.parallelism = parallelism;
+        regions = new Region[regionCount];
+        for (int r = 0; r < regionCount; r++) {
+            regions[r] = new Region(r);
+        }
+        borders = new double[regionCount - 1];
+        Arrays.fill(lastOwners, -1);
+    }
+
+    @Override
+    public List<Collision> findCollisions(List<Collidable> objectList, double physicsDT_seconds) {
+        tree.updateObjects(objectList);
+        this.physicsDT_seconds = physicsDT_seconds;
+
+        loadObjects(objectList);
+        if (!hasBorders) {
+            rebalance();
+        }
+        assignRegions();
+        if (isImbalanced()) {
+            rebalance();
+            assignRegions();
+        }
+
+        long sweepStart = System.nanoTime();
+        if (parallelism == 1 || objectCount < regions.length * MIN_OBJECTS_PER_REGION) {
+            for (Region region : regions) {
+                region.sweep();
+            }
+        } else {
+            getPool().invoke(new SweepTask(0, regions.length));
+        }
+
+        // The strips ran side by side, so the narrow phase gets its share of the time they took
+        // rather than the sum over the threads.
+        long sweepWallNanos = System.nanoTime() - sweepStart;
+        long sweepSum = 0L;
+        long narrowphaseSum = 0L;
+        for (Region region : regions) {
+            sweepSum += region.sweepNanos;
+            narrowphaseSum += region.narrowphaseNanos;
+        }
+        narrowphaseNanos = sweepSum > 0 ? (long) (sweepWallNanos * (narrowphaseSum / (double) sweepSum)) : 0L;
+
+        // Every strip is finished, so the objects in more than one strip can be moved around.
+        List<Collision> collisions = new ArrayList<>(16);
+        for (Region region : regions) {
+            collisions.addAll(region.collisions);
+            region.collisions.clear();
+        }
+        long deferredStart = System.nanoTime();
+        for (Region region : regions) {
+            for (int p = 0; p < region.deferredCount; p += 2) {
+                collisions.add(new Collision(bodies[region.deferred[p]], bodies[region.deferred[p + 1]],
+                        physicsDT_seconds));
+            }
+        }
+        narrowphaseNanos += System.nanoTime() - deferredStart;
+        Collections.sort(collisions, BY_PAIR_KEY);
+
+        Arrays.fill(bodies, 0, objectCount, null);
+        return collisions;
+    }
+
+    @Override
+    public long getNarrowphaseNanos() {
+        return narrowphaseNanos;
+    }
+
+    /**
+     * Copies the boxes of every object which can collide into the arrays.
+     */
+    private void loadObjects(List<Collidable> objectList) {
+        int count = objectList.size();
+        if (bodies.length < count) {
+            int capacity = Math.max(count, bodies.length * 2);
+            bodies       = new Collidable[capacity];
+            lowerX       = new double[capacity];
+            lowerY       = new double[capacity];
+            upperX       = new double[capacity];
+            upperY       = new double[capacity];
+            firstRegion  = new int[capacity];
+            lastRegion   = new int[capacity];
+            sortedLowerX = new double[capacity];
+        }
+
+        objectCount = 0;
+        for (Collidable object : objectList) {
+            if (!object.isCollisionsEnabled()) {continue;}
+            // The same boxes as the other collision systems, swept along the path of fast objects.
+            bodies[objectCount] = object;
+            lowerX[objectCount] = Collision.getLowerX(object);
+            lowerY[objectCount] = Collision.getLowerY(object);
+            upperX[objectCount] = Collision.getUpperX(object);
+            upperY[objectCount] = Collision.getUpperY(object);
+            ++objectCount;
+        }
+    }
+
+    /**
+     * Sorts the objects into the strips, including the ghosts of the objects which reach over a
+     * border.
+     */
+    private void assignRegions() {
+        for (Region region : regions) {
+            region.memberCount = 0;
+        }
+        for (int i = 0; i < objectCount; i++) {
+            firstRegion[i] = findRegion(lowerX[i]);
+            lastRegion[i]  = findRegion(upperX[i]);
+            for (int r = firstRegion[i]; r <= lastRegion[i]; r++) {
+                ++regions[r].memberCount;
+            }
+            countMigration(bodies[i].getBodyId(), firstRegion[i]);
+        }
+
+        for (Region region : regions) {
+            region.reserve(region.memberCount);
+            region.memberCount = 0;
+        }
+        for (int i = 0; i < objectCount; i++) {
+            for (int r = firstRegion[i]; r <= lastRegion[i]; r++) {
+                Region region = regions[r];
+                region.members[region.memberCount] = i;
+                region.keys[region.memberCount] = lowerX[i];
+                ++region.memberCount;
+            }
+        }
+    }
+
+    /**
+     * @return The strip that the given X position is in.
+     */
+    private int findRegion(double x) {
+        // The number of borders at or to the left of the position.
+        int low = 0;
+        int high = borders.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (borders[middle] <= x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void countMigration(int bodyId, int region) {
+        if (bodyId < 0) {return;}
+        if (bodyId >= lastOwners.length) {
+            int oldLength = lastOwners.length;
+            lastOwners = Arrays.copyOf(lastOwners, Math.max(bodyId + 1, oldLength * 2));
+            Arrays.fill(lastOwners, oldLength, lastOwners.length, -1);
+        }
+        if (lastOwners[bodyId] != -1 && lastOwners[bodyId] != region) {
+            ++numMigrations;
+        }
+        lastOwners[bodyId] = region;
+    }
+
+    /**
+     * @return True when the fullest strip holds too many more objects than the average.
+     */
+    private boolean isImbalanced() {
+        if (regions.length == 1 || objectCount < regions.length * MIN_OBJECTS_PER_REGION) {
+            return false;
+        }
+        int maxCount = 0;
+        for (Region region : regions) {
+            maxCount = Math.max(maxCount, region.memberCount);
+        }
+        return maxCount > MAX_IMBALANCE * objectCount / regions.length;
+    }
+
+    /**
+     * Moves the borders so that the same number of objects start in each strip.
+     */
+    private void rebalance() {
+        if (objectCount == 0) {
+            return;
+        }
+        for (int i = 0; i < objectCount; i++) {
+            sortedLowerX[i] = lowerX[i];
+        }
+        Arrays.sort(sortedLowerX, 0, objectCount);
+        for (int b = 0; b < borders.length; b++) {
+            borders[b] = sortedLowerX[(int) ((long) (b + 1) * objectCount / regions.length)];
+        }
+        hasBorders = true;
+        ++numRebalances;
+    }
+
+    /**
+     * @return The number of times an object has started a step in a different strip to the last.
+     */
+    long getMigrationCount() {
+        return numMigrations;
+    }
+
+    /**
+     * @return The number of times the borders of the strips have been moved.
+     */
+    long getRebalanceCount() {
+        return numRebalances;
+    }
+
+    @Override
+    public void findCandidates(Collidable object, List<Collidable> objectList, Collection<Collidable> candidates) {
+        tree.findCandidates(object, objectList, candidates);
+    }
+
+    @Override
+    public void setCollisionFilter(CollisionFilter filter) {
+        this.filter = filter;
+        tree.setCollisionFilter(filter);
+    }
+
+    @Override
+    public void query(double lowerX, double lowerY, double upperX, double upperY, List<Collidable> objectList,
+                      Collection<Collidable> candidates) {
+        tree.query(lowerX, lowerY, upperX, upperY, objectList, candidates);
+    }
+
+    @Override
+    public void rayCast(double x1, double y1, double x2, double y2, List<Collidable> objectList,
+                        RayCastCallback callback) {
+        tree.rayCast(x1, y1, x2, y2, objectList, callback);
+    }
+
+    @Override
+    public void addObject(Collidable object) {
+        tree.addObject(object);
+    }
+
+    @Override
+    public void updateObject(Collidable object) {
+        tree.updateObject(object);
+    }
+
+    @Override
+    public void removeObject(Collidable object) {
+        tree.removeObject(object);
+        int bodyId = object.getBodyId();
+        if (bodyId >= 0 && bodyId < lastOwners.length) {
+            lastOwners[bodyId] = -1;
+        }
+    }
+
+    @Override
+    public void clear() {
+        tree.clear();
+        Arrays.fill(lastOwners, -1);
+        hasBorders = false;
+    }
+
+    /**
+     * Stops the threads of the pool. A new pool is made if the strips are swept on more than one
+     * thread again. A shared pool is left alone.
+     */
+    @Override
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    @Override
+    public void setPool(ForkJoinPool pool) {
+        sharedPool = pool;
+        if (pool != null) {
+            shutdown();
+        }
+    }
+
+    private ForkJoinPool getPool() {
+        if (sharedPool != null) {
+            return sharedPool;
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Sweeps a range of the strips, splitting the range in half until each task has one strip.
+     */
+    private final class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+
+        SweepTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                regions[start].sweep();
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new SweepTask(start, middle), new SweepTask(middle, end));
+            }
+        }
+    }
+}
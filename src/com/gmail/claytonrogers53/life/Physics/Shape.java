@@ -0,0 +1,57 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+/**
+ * A convex collision shape in the local coordinates of an object. Objects which have a shape use
+ * the analytic narrow phase ({@link Narrowphase}) instead of their collision points.
+ */
+public abstract class Shape {
+
+    /**
+     * Gets the smallest circle, centred on the local origin, that the shape fits inside.
+     *
+     * @return The radius of the bounding circle (m).
+     */
+    public abstract double getBoundingRadius();
+
+    /**
+     * Checks whether a point is inside the shape.
+     *
+     * @param localX
+     *        The x position of the point in local coordinates (m).
+     *
+     * @param localY
+     *        The y position of the point in local coordinates (m).
+     *
+     * @return True when the point is inside the shape.
+     */
+    public abstract boolean contains(double localX, double localY);
+
+    /**
+     * Casts a ray against the shape. Everything is in local coordinates. A ray which starts inside
+     * the shape does not hit it.
+     *
+     * @param x
+     *        The x position of the start of the ray (m).
+     *
+     * @param y
+     *        The y position of the start of the ray (m).
+     *
+     * @param dx
+     *        The x length of the ray (m).
+     *
+     * @param dy
+     *        The y length of the ray (m).
+     *
+     * @param maxFraction
+     *        Only hits closer than this fraction of the ray are reported.
+     *
+     * @param normal
+     *        Set to the outward unit normal of the shape where the ray hits it, when it does.
+     *
+     * @return The fraction of the ray at which it enters the shape, or a negative number when it
+     *         misses.
+     */
+    abstract double rayCast(double x, double y, double dx, double dy, double maxFraction, Vector2D normal);
+}
@@ -3,7 +3,9 @@ package com.gmail.claytonrogers53.life.Physics;
 import com.gmail.claytonrogers53.life.Util.Vector2D;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Implements the brute force method of finding collisions. It checks every object against every
@@ -13,6 +15,12 @@ import java.util.List;
  */
 class SimpleCollision implements CollisionSystem {
 
+    private CollisionFilter filter = null;
+    /** The time the last call to findCollisions spent making the collisions (ns). */
+    private long narrowphaseNanos = 0L;
+    /** The potentially colliding pairs, stored as consecutive elements. */
+    private final List<Collidable> pairs = new ArrayList<>(6);
+
     /**
      * Implements the interface.
      *
@@ -26,8 +34,6 @@ class SimpleCollision implements CollisionSystem {
      */
     @Override
     public List<Collision> findCollisions(List<Collidable> objectList, double physicsDT_seconds) {
-        List<Collision> collisions = new ArrayList<>(3);
-
         // Find all of the collisions
         // This is the slow part
         int numObject = objectList.size();
@@ -36,17 +42,200 @@ class SimpleCollision implements CollisionSystem {
                 Vector2D pos1 = objectList.get(i).getNextState().position;
                 double radius = objectList.get(i).getCollisionRadius();
                 for (int j = i + 1; j < numObject; j++) {
-                    if (objectList.get(j).isCollisionsEnabled()) {
-                        double minDistance = objectList.get(j).getCollisionRadius() + radius;
-                        Vector2D pos2 = objectList.get(j).getNextState().position;
-                        if (pos1.sub(pos2).getMag() < minDistance) {
-                            collisions.add(new Collision(objectList.get(i), objectList.get(j), physicsDT_seconds));
+                    if (objectList.get(j).isCollisionsEnabled() &&
+                            !(objectList.get(i).isSleeping() && objectList.get(j).isSleeping()) &&
+                            Collision.shouldCollide(objectList.get(i), objectList.get(j), filter)) {
+                        if (isPotentialCollision(objectList.get(i), objectList.get(j), pos1, radius)) {
+                            pairs.add(objectList.get(i));
+                            pairs.add(objectList.get(j));
                         }
                     }
                 }
             }
         }
 
+        // Made once all of the pairs are found, so that the narrow phase is timed as a whole.
+        long start = System.nanoTime();
+        List<Collision> collisions = new ArrayList<>(pairs.size() / 2 + 1);
+        for (int k = 0; k < pairs.size(); k += 2) {
+            collisions.add(new Collision(pairs.get(k), pairs.get(k + 1), physicsDT_seconds));
+        }
+        narrowphaseNanos = System.nanoTime() - start;
+        pairs.clear();
         return collisions;
     }
+
+    @Override
+    public long getNarrowphaseNanos() {
+        return narrowphaseNanos;
+    }
+
+    /**
+     * Implements the interface by checking the object against every other object.
+     *
+     * @param object
+     *        The object to find the possible collisions of.
+     *
+     * @param objectList
+     *        The list of all the collidable objects.
+     *
+     * @param candidates
+     *        The possibly colliding objects are added to this collection.
+     */
+    @Override
+    public void findCandidates(Collidable object, List<Collidable> objectList, Collection<Collidable> candidates) {
+        Vector2D pos1 = object.getNextState().position;
+        double radius = object.getCollisionRadius();
+        for (Collidable other : objectList) {
+            if (other == object || !other.isCollisionsEnabled()) {continue;}
+            if (isPotentialCollision(object, other, pos1, radius) && Collision.shouldCollide(object, other, filter)) {
+                candidates.add(other);
+            }
+        }
+    }
+
+    /**
+     * Implements the interface.
+     *
+     * @param filter
+     *        The filter, or null to only use the category and mask bits.
+     */
+    @Override
+    public void setCollisionFilter(CollisionFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Implements the interface by checking the box around every object.
+     *
+     * @param lowerX
+     *        The left side of the box (m).
+     *
+     * @param lowerY
+     *        The bottom of the box (m).
+     *
+     * @param upperX
+     *        The right side of the box (m).
+     *
+     * @param upperY
+     *        The top of the box (m).
+     *
+     * @param objectList
+     *        The list of all the objects.
+     *
+     * @param candidates
+     *        The possibly overlapping objects are added to this collection.
+     */
+    @Override
+    public void query(double lowerX, double lowerY, double upperX, double upperY, List<Collidable> objectList,
+                      Collection<Collidable> candidates) {
+        for (Collidable object : objectList) {
+            Vector2D position = object.getState().position;
+            double radius = object.getCollisionRadius();
+            if (position.getMagX() + radius >= lowerX && position.getMagX() - radius <= upperX &&
+                    position.getMagY() + radius >= lowerY && position.getMagY() - radius <= upperY) {
+                candidates.add(object);
+            }
+        }
+    }
+
+    /**
+     * Implements the interface by giving every object to the callback.
+     *
+     * @param objectList
+     *        The list of all the objects.
+     *
+     * @param callback
+     *        Called for each object the ray might hit.
+     */
+    @Override
+    public void rayCast(double x1, double y1, double x2, double y2, List<Collidable> objectList,
+                        RayCastCallback callback) {
+        double maxFraction = 1.0;
+        for (Collidable object : objectList) {
+            double fraction = callback.reportObject(object, maxFraction);
+            if (fraction >= 0.0) {
+                maxFraction = Math.min(maxFraction, fraction);
+            }
+        }
+    }
+
+    /**
+     * Does nothing, this collision system does not keep track of objects between frames.
+     *
+     * @param object
+     *        The object that was added.
+     */
+    @Override
+    public void addObject(Collidable object) {
+    }
+
+    /**
+     * Does nothing, this collision system does not keep track of objects between frames.
+     *
+     * @param object
+     *        The object that was moved.
+     */
+    @Override
+    public void updateObject(Collidable object) {
+    }
+
+    /**
+     * Does nothing, this collision system does not keep track of objects between frames.
+     *
+     * @param object
+     *        The object that was removed.
+     */
+    @Override
+    public void removeObject(Collidable object) {
+    }
+
+    /**
+     * Does nothing, this collision system does not keep track of objects between frames.
+     */
+    @Override
+    public void clear() {
+    }
+
+    /**
+     * Does nothing, this collision system doesn't start any threads.
+     */
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Does nothing, this collision system doesn't split its work between threads.
+     */
+    @Override
+    public void setPool(ForkJoinPool pool) {
+    }
+
+    /**
+     * Checks whether two objects are close enough to collide. Slow objects are checked with the
+     * distance between them at the end of the step, and fast ones with their boxes swept along
+     * their path.
+     *
+     * @param obj1
+     *        The first object.
+     *
+     * @param obj2
+     *        The second object.
+     *
+     * @param pos1
+     *        The position of the first object at the end of the step.
+     *
+     * @param radius1
+     *        The collision radius of the first object.
+     *
+     * @return True when the objects might collide during the step.
+     */
+    private static boolean isPotentialCollision(Collidable obj1, Collidable obj2, Vector2D pos1, double radius1) {
+        if (Collision.isFastMoving(obj1) || Collision.isFastMoving(obj2)) {
+            return Collision.isPotentialCollision(obj1, obj2);
+        }
+        double minDistance = obj2.getCollisionRadius() + radius1;
+        Vector2D pos2 = obj2.getNextState().position;
+        return pos1.sub(pos2).getMag() < minDistance;
+    }
 }
@@ -0,0 +1,317 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Owns a number of separate physics systems ("worlds") and runs them all headless on one shared
+ * fork/join pool, for example to try out many creatures or many seeds at once. None of the worlds
+ * get a thread of their own: the worlds are split between the pool's threads, and idle threads
+ * steal the worlds which haven't been started yet, so a few long worlds don't hold up the rest.
+ * A world which splits its own work (the REGION collision system, or more than one
+ * CONTACT_THREADS) does so on the host's pool too. The exception is a {@link BarnesHutGravity},
+ * which the world doesn't own: give it a parallelism of one to keep it on the host's threads.
+ *
+ * Each world is only ever stepped by one thread at a time and always a whole step at a time, so a
+ * world ends in the same state as it would if it were run on its own with
+ * {@link PhysicsSystem#runHeadless}. Each world has a budget of steps; once it has been used up
+ * (or {@link World#finish} is called) the world isn't stepped any more.
+ */
+public final class SimulationHost {
+
+    /** A step budget for worlds which should run until they are finished by hand. */
+    public static final long UNLIMITED_STEPS = Long.MAX_VALUE;
+
+    /** The number of steps a world takes before checking whether it has been finished. */
+    private static final int DEFAULT_SLICE_STEPS = 32;
+    private static final double MILLISECOND_TO_SECOND = 0.001;
+
+    private final ForkJoinPool pool;
+    private final List<World> worlds = new ArrayList<>();
+    private int sliceSteps = DEFAULT_SLICE_STEPS;
+
+    /**
+     * One of the worlds of a host, along with its step budget and the result of its last run.
+     */
+    public static final class World {
+        private final PhysicsSystem physicsSystem;
+        private final long stepBudget;
+        private volatile boolean isFinished = false;
+
+        // Only changed by the thread running the world, and read once the run is over.
+        private long numSteps = 0;
+        private HeadlessResult lastResult = null;
+
+        private World(PhysicsSystem physicsSystem, long stepBudget) {
+            this.physicsSystem = physicsSystem;
+            this.stepBudget = stepBudget;
+        }
+
+        /**
+         * @return The physics system of the world.
+         */
+        public PhysicsSystem getPhysicsSystem() {
+            return physicsSystem;
+        }
+
+        /**
+         * @return The most steps the world will take, over every run of the host.
+         */
+        public long getStepBudget() {
+            return stepBudget;
+        }
+
+        /**
+         * @return The number of steps the world has taken so far.
+         */
+        public long getStepCount() {
+            return numSteps;
+        }
+
+        /**
+         * @return The number of steps left in the world's budget, or zero once it is finished.
+         */
+        public long getRemainingSteps() {
+            return isFinished ? 0L : stepBudget - numSteps;
+        }
+
+        /**
+         * @return True once the world has used up its budget or has been finished by hand.
+         */
+        public boolean isFinished() {
+            return isFinished || numSteps >= stepBudget;
+        }
+
+        /**
+         * Stops the world from taking any more steps. May be called from any thread, including
+         * from a physics thing of the world itself while it is running, in which case the world
+         * stops at the end of the current slice of steps.
+         */
+        public void finish() {
+            isFinished = true;
+        }
+
+        /**
+         * @return The throughput and final checksum of the world over the last run of the host,
+         *         or null if it hasn't been run yet.
+         */
+        public HeadlessResult getLastResult() {
+            return lastResult;
+        }
+
+        private void run(long maxSteps, int sliceSteps) {
+            long localPhysics_dt = physicsSystem.getPhysicsTimeDelta();
+            long target = maxSteps > stepBudget - numSteps ? stepBudget : numSteps + maxSteps;
+
+            long startSteps = numSteps;
+            long numBodySteps = 0;
+            long startTime = System.nanoTime();
+            while (numSteps < target && !isFinished) {
+                long slice = Math.min(sliceSteps, target - numSteps);
+                numBodySteps += physicsSystem.stepHeadless(slice, localPhysics_dt);
+                numSteps += slice;
+            }
+            long elapsedNanos = System.nanoTime() - startTime;
+
+            long runSteps = numSteps - startSteps;
+            lastResult = new HeadlessResult(runSteps, numBodySteps,
+                    runSteps * localPhysics_dt * MILLISECOND_TO_SECOND, elapsedNanos,
+                    physicsSystem.getStateChecksum());
+        }
+    }
+
+    /**
+     * Creates a host which uses one thread per available processor.
+     */
+    public SimulationHost() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism
+     *        The number of threads used to run the worlds, no matter how many worlds there are.
+     */
+    public SimulationHost(int parallelism) {
+        if (parallelism < 1) {
+            String errorString = "Tried to create a simulation host with less than one thread.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Adds a world to the host. The world must not be started, since the host steps it.
+     *
+     * @param physicsSystem
+     *        The world to run.
+     *
+     * @param stepBudget
+     *        The most steps the world will take over every run of the host, or
+     *        {@link #UNLIMITED_STEPS}.
+     *
+     * @return The world, which holds its results.
+     */
+    public synchronized World addWorld(PhysicsSystem physicsSystem, long stepBudget) {
+        if (physicsSystem.isPhysicsRunning()) {
+            String errorString = "Tried to add a world to a simulation host while its physics thread is running.";
+            Log.error(errorString);
+            throw new IllegalStateException(errorString);
+        }
+        if (stepBudget < 0) {
+            String errorString = "Tried to add a world to a simulation host with a negative step budget.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        for (World world : worlds) {
+            if (world.physicsSystem == physicsSystem) {
+                String errorString = "Tried to add the same world to a simulation host twice.";
+                Log.error(errorString);
+                throw new IllegalArgumentException(errorString);
+            }
+        }
+
+        World world = new World(physicsSystem, stepBudget);
+        physicsSystem.setPool(pool);
+        worlds.add(world);
+        return world;
+    }
+
+    /**
+     * @return The worlds of the host, in the order they were added.
+     */
+    public synchronized List<World> getWorlds() {
+        return Collections.unmodifiableList(new ArrayList<>(worlds));
+    }
+
+    /**
+     * Sets how many steps a world takes between checks of whether it has been finished. Smaller
+     * slices stop finished worlds sooner, larger ones check less often.
+     *
+     * @param sliceSteps
+     *        The number of steps in a slice.
+     */
+    public synchronized void setSliceSteps(int sliceSteps) {
+        if (sliceSteps < 1) {
+            Log.warning("Tried to set the slice of a simulation host to less than one step.");
+            return;
+        }
+        this.sliceSteps = sliceSteps;
+    }
+
+    /**
+     * Runs every world which isn't finished for up to the given number of steps, or until its
+     * budget is used up, and waits for them all. Can be called over and over, for example to
+     * look at the worlds and finish some of them between runs.
+     *
+     * @param maxSteps
+     *        The most steps any world takes in this run.
+     *
+     * @return The combined throughput of every world over the run. The simulated time is the
+     *         sum over the worlds, the elapsed time is the wall clock time of the whole run, and
+     *         the checksum is a hash of the checksums of every world in the order they were added.
+     */
+    public synchronized HeadlessResult run(long maxSteps) {
+        if (maxSteps < 0) {
+            String errorString = "Tried to run a simulation host for a negative number of steps.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        if (pool.isShutdown()) {
+            String errorString = "Tried to run a simulation host after it was shut down.";
+            Log.error(errorString);
+            throw new IllegalStateException(errorString);
+        }
+        for (World world : worlds) {
+            if (world.physicsSystem.isPhysicsRunning()) {
+                String errorString = "Tried to run a simulation host while the physics thread of a world is running.";
+                Log.error(errorString);
+                throw new IllegalStateException(errorString);
+            }
+        }
+
+        World[] runWorlds = worlds.toArray(new World[worlds.size()]);
+        long startTime = System.nanoTime();
+        if (runWorlds.length > 0) {
+            pool.invoke(new RunTask(runWorlds, 0, runWorlds.length, maxSteps, sliceSteps));
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        long numSteps = 0;
+        long numBodySteps = 0;
+        double simulatedTime = 0.0;
+        long checksum = PhysicsSystem.FNV_OFFSET_BASIS;
+        for (World world : runWorlds) {
+            HeadlessResult result = world.lastResult;
+            numSteps      += result.getStepCount();
+            numBodySteps  += result.getBodyStepCount();
+            simulatedTime += result.getSimulatedTime();
+            checksum = PhysicsSystem.hashLong(checksum, result.getChecksum());
+        }
+        return new HeadlessResult(numSteps, numBodySteps, simulatedTime, elapsedNanos, checksum);
+    }
+
+    /**
+     * Runs every world until its budget is used up or it is finished.
+     *
+     * @return The combined throughput of every world, see {@link #run}.
+     */
+    public synchronized HeadlessResult runToBudget() {
+        for (World world : worlds) {
+            if (world.stepBudget == UNLIMITED_STEPS && !world.isFinished()) {
+                String errorString = "Tried to run a simulation host to budget with a world which has no budget.";
+                Log.error(errorString);
+                throw new IllegalStateException(errorString);
+            }
+        }
+        return run(UNLIMITED_STEPS);
+    }
+
+    /**
+     * Stops the threads of the host. The host can't be run again afterwards, and its worlds go back
+     * to threads of their own.
+     */
+    public synchronized void shutdown() {
+        pool.shutdown();
+        for (World world : worlds) {
+            world.physicsSystem.setPool(null);
+        }
+    }
+
+    /**
+     * Runs a range of the worlds, splitting the range in half until each task has one world.
+     */
+    private static final class RunTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final World[] worlds;
+        private final int start;
+        private final int end;
+        private final long maxSteps;
+        private final int sliceSteps;
+
+        RunTask(World[] worlds, int start, int end, long maxSteps, int sliceSteps) {
+            this.worlds = worlds;
+            this.start = start;
+            this.end = end;
+            this.maxSteps = maxSteps;
+            this.sliceSteps = sliceSteps;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                worlds[start].run(maxSteps, sliceSteps);
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RunTask(worlds, start, middle, maxSteps, sliceSteps),
+                          new RunTask(worlds, middle, end, maxSteps, sliceSteps));
+            }
+        }
+    }
+}
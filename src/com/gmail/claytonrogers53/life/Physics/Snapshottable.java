@@ -0,0 +1,41 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Objects and physics things which implement this interface have their internal state saved in
+ * physics system snapshots. Physics things that don't implement it are left untouched when a
+ * snapshot is restored. Objects that don't implement it only have their {@link State} saved.
+ *
+ * @see PhysicsSystem#writeSnapshot
+ */
+public interface Snapshottable {
+
+    /**
+     * @return The number of bytes that {@link #writeSnapshot} will write. Must not change between
+     *         a call to this and the following write.
+     */
+    int getSnapshotSize();
+
+    /**
+     * Writes the state to the buffer at its current position, moving the position forward by
+     * exactly {@link #getSnapshotSize()} bytes.
+     *
+     * @param buffer
+     *        The buffer to write to.
+     */
+    void writeSnapshot(ByteBuffer buffer);
+
+    /**
+     * Reads back the state written by {@link #writeSnapshot}.
+     *
+     * @param buffer
+     *        The buffer to read from, positioned at the start of the state.
+     *
+     * @param size
+     *        The number of bytes that were written. The reader must read exactly this many. The
+     *        physics system checks that it is the same as {@link #getSnapshotSize()} before
+     *        anything is restored.
+     */
+    void readSnapshot(ByteBuffer buffer, int size);
+}
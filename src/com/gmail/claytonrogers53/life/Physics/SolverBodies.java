@@ -0,0 +1,141 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The objects which are being solved by the {@link ContactSolver} and the {@link JointSolver} in a
+ * step, with their velocities while they are being solved. Everything is kept in flat arrays by
+ * the index of the object, so the inner loops of the solvers don't touch the objects themselves.
+ *
+ * Sleeping objects and objects with infinite mass are fixed: their inverse mass and inertia are
+ * zero, and no impulse is ever written to them. This also means that constraints which only share
+ * a fixed object can be solved at the same time.
+ */
+final class SolverBodies {
+
+    private final List<Collidable> bodies = new ArrayList<>(100);
+    private final Map<Collidable, Integer> bodyIndexes = new IdentityHashMap<>(100);
+
+    double[] velocityX       = new double[16];
+    double[] velocityY       = new double[16];
+    double[] angularVelocity = new double[16];
+    /** The change in velocity the forces will make over the step. */
+    double[] forceVelocityX  = new double[16];
+    double[] forceVelocityY  = new double[16];
+    double[] forceAngularVelocity = new double[16];
+    double[] inverseMass     = new double[16];
+    double[] inverseInertia  = new double[16];
+
+    void clear() {
+        bodies.clear();
+        bodyIndexes.clear();
+    }
+
+    int size() {
+        return bodies.size();
+    }
+
+    /**
+     * @return True when nothing can move the object.
+     */
+    boolean isFixed(int index) {
+        return inverseMass[index] == 0.0 && inverseInertia[index] == 0.0;
+    }
+
+    /**
+     * Finds the index of an object, loading it into the arrays the first time it is seen in the
+     * step.
+     *
+     * @param object
+     *        The object.
+     *
+     * @param physicsDT_seconds
+     *        The length of the time step (s).
+     *
+     * @return The index of the object in the arrays.
+     */
+    int getIndex(Collidable object, double physicsDT_seconds) {
+        Integer index = bodyIndexes.get(object);
+        if (index != null) {
+            return index;
+        }
+
+        int i = bodies.size();
+        if (i == velocityX.length) {
+            int capacity = 2 * i;
+            velocityX            = Arrays.copyOf(velocityX, capacity);
+            velocityY            = Arrays.copyOf(velocityY, capacity);
+            angularVelocity      = Arrays.copyOf(angularVelocity, capacity);
+            forceVelocityX       = Arrays.copyOf(forceVelocityX, capacity);
+            forceVelocityY       = Arrays.copyOf(forceVelocityY, capacity);
+            forceAngularVelocity = Arrays.copyOf(forceAngularVelocity, capacity);
+            inverseMass          = Arrays.copyOf(inverseMass, capacity);
+            inverseInertia       = Arrays.copyOf(inverseInertia, capacity);
+        }
+        bodies.add(object);
+        bodyIndexes.put(object, i);
+
+        State state = object.getState();
+        if (object.isSleeping()) {
+            velocityX[i] = velocityY[i] = angularVelocity[i] = 0.0;
+            forceVelocityX[i] = forceVelocityY[i] = forceAngularVelocity[i] = 0.0;
+            inverseMass[i] = inverseInertia[i] = 0.0;
+        } else {
+            // Solve for the velocities the objects will have once the forces have acted, so that
+            // an object resting on another doesn't sink into it a little every step.
+            object.calculateNextState(physicsDT_seconds);
+            State nextState = object.getNextState();
+            forceVelocityX[i] = nextState.velocity.getMagX() - state.velocity.getMagX();
+            forceVelocityY[i] = nextState.velocity.getMagY() - state.velocity.getMagY();
+            forceAngularVelocity[i] = nextState.angularVelocity - state.angularVelocity;
+            velocityX[i] = nextState.velocity.getMagX();
+            velocityY[i] = nextState.velocity.getMagY();
+            angularVelocity[i] = nextState.angularVelocity;
+            inverseMass[i]    = 1.0 / object.getMass();
+            inverseInertia[i] = 1.0 / object.getMomentOfInertia();
+        }
+        return i;
+    }
+
+    /**
+     * Applies an impulse at an arm from the centre of mass of an object. Angles are clockwise, so
+     * the angular impulse is the opposite of the usual cross product.
+     */
+    void applyImpulse(int index, double armX, double armY, double impulseX, double impulseY) {
+        if (inverseMass[index] != 0.0) {
+            velocityX[index] += inverseMass[index] * impulseX;
+            velocityY[index] += inverseMass[index] * impulseY;
+        }
+        if (inverseInertia[index] != 0.0) {
+            angularVelocity[index] += inverseInertia[index] * (armY * impulseX - armX * impulseY);
+        }
+    }
+
+    /**
+     * Applies an angular impulse to an object.
+     */
+    void applyAngularImpulse(int index, double angularImpulse) {
+        if (inverseInertia[index] != 0.0) {
+            angularVelocity[index] += inverseInertia[index] * angularImpulse;
+        }
+    }
+
+    /**
+     * Writes the solved velocities back to the objects. Only the impulses are kept, the forces
+     * are added again when the objects are moved.
+     */
+    void store() {
+        for (int i = 0; i < bodies.size(); i++) {
+            if (isFixed(i)) {
+                continue;
+            }
+            State state = bodies.get(i).getState();
+            state.velocity.set(velocityX[i] - forceVelocityX[i], velocityY[i] - forceVelocityY[i]);
+            state.angularVelocity = angularVelocity[i] - forceAngularVelocity[i];
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Answers the region, ray and nearest object queries of the {@link PhysicsSystem}. The collision
+ * system gives the possible objects from its acceleration structure (or every object, for the
+ * ones which don't keep one) and they are then checked exactly against the current states.
+ *
+ * Results are always given in order of body id (or distance, then body id) so that they don't
+ * depend on the shape of the tree, which is different after a rollback. The results go into
+ * buffers given by the caller, and the buffers used along the way are kept between queries.
+ */
+final class SpatialQuery {
+
+    /** The size of the first region searched for the nearest objects (m). */
+    private static final double NEAREST_START_RADIUS = 1.0;
+
+    private static final Comparator<Collidable> BY_BODY_ID = new Comparator<Collidable>() {
+        @Override
+        public int compare(Collidable o1, Collidable o2) {
+            return Integer.compare(o1.getBodyId(), o2.getBodyId());
+        }
+    };
+
+    private final List<Collidable> objects;
+    private final CollisionSystem collisionSystem;
+
+    private final List<Collidable> candidates = new ArrayList<>(16);
+    private final List<Collidable> matches    = new ArrayList<>(16);
+    private double[] nearestDistances = new double[8];
+
+    // The ray being cast, used by the ray cast callback.
+    private double rayX;
+    private double rayY;
+    private double rayDX;
+    private double rayDY;
+    private int rayMaskBits;
+    private RayCastHit rayHit;
+    private final Vector2D normal = new Vector2D();
+
+    private final CollisionSystem.RayCastCallback rayCastCallback = new CollisionSystem.RayCastCallback() {
+        @Override
+        public double reportObject(Collidable object, double maxFraction) {
+            if ((object.getCategoryBits() & rayMaskBits) == 0) {
+                return -1.0;
+            }
+            State state = object.getState();
+            double x = rayX - state.position.getMagX();
+            double y = rayY - state.position.getMagY();
+
+            double fraction;
+            Shape shape = object.getShape();
+            if (shape == null) {
+                // Objects without a shape are hit on their bounding circle.
+                fraction = CircleShape.rayCastCircle(object.getCollisionRadius(), x, y, rayDX, rayDY,
+                        maxFraction, normal);
+            } else {
+                // The cached transform may be out of date after a restore, so work it out again.
+                double cos = StrictMath.cos(state.angle);
+                double sin = StrictMath.sin(state.angle);
+                fraction = shape.rayCast(cos * x - sin * y, sin * x + cos * y,
+                        cos * rayDX - sin * rayDY, sin * rayDX + cos * rayDY, maxFraction, normal);
+                normal.set( cos * normal.getMagX() + sin * normal.getMagY(),
+                           -sin * normal.getMagX() + cos * normal.getMagY());
+            }
+            if (fraction < 0.0) {
+                return -1.0;
+            }
+
+            // Objects the same distance along are broken by body id, like everything else.
+            if (rayHit.object == null || fraction < rayHit.fraction ||
+                    (fraction == rayHit.fraction && object.getBodyId() < rayHit.object.getBodyId())) {
+                rayHit.object   = object;
+                rayHit.fraction = fraction;
+                rayHit.pointX   = rayX + fraction * rayDX;
+                rayHit.pointY   = rayY + fraction * rayDY;
+                rayHit.normalX  = normal.getMagX();
+                rayHit.normalY  = normal.getMagY();
+            }
+            return fraction;
+        }
+    };
+
+    /**
+     * @param objects
+     *        The objects of the physics system. Must only be used with the objects locked.
+     *
+     * @param collisionSystem
+     *        The broad phase of the physics system.
+     */
+    SpatialQuery(List<Collidable> objects, CollisionSystem collisionSystem) {
+        this.objects = objects;
+        this.collisionSystem = collisionSystem;
+    }
+
+    /**
+     * See {@link PhysicsSystem#rayCast}.
+     */
+    boolean rayCast(double x1, double y1, double x2, double y2, int maskBits, RayCastHit hit) {
+        hit.object = null;
+        rayX = x1;
+        rayY = y1;
+        rayDX = x2 - x1;
+        rayDY = y2 - y1;
+        rayMaskBits = maskBits;
+        rayHit = hit;
+        collisionSystem.rayCast(x1, y1, x2, y2, objects, rayCastCallback);
+        rayHit = null;
+        return hit.isHit();
+    }
+
+    /**
+     * See {@link PhysicsSystem#queryAABB}.
+     */
+    int queryAABB(double lowerX, double lowerY, double upperX, double upperY, int maskBits,
+                  Collection<Collidable> results) {
+        candidates.clear();
+        matches.clear();
+        collisionSystem.query(lowerX, lowerY, upperX, upperY, objects, candidates);
+        for (Collidable object : candidates) {
+            Vector2D position = object.getState().position;
+            double radius = object.getCollisionRadius();
+            if ((object.getCategoryBits() & maskBits) != 0 &&
+                    position.getMagX() + radius >= lowerX && position.getMagX() - radius <= upperX &&
+                    position.getMagY() + radius >= lowerY && position.getMagY() - radius <= upperY) {
+                matches.add(object);
+            }
+        }
+        return addMatches(results);
+    }
+
+    /**
+     * See {@link PhysicsSystem#queryRadius}.
+     */
+    int queryRadius(double x, double y, double radius, int maskBits, Collection<Collidable> results) {
+        candidates.clear();
+        matches.clear();
+        collisionSystem.query(x - radius, y - radius, x + radius, y + radius, objects, candidates);
+        for (Collidable object : candidates) {
+            if ((object.getCategoryBits() & maskBits) == 0) {continue;}
+            Vector2D position = object.getState().position;
+            double dx = position.getMagX() - x;
+            double dy = position.getMagY() - y;
+            double maxDistance = radius + object.getCollisionRadius();
+            if (dx * dx + dy * dy <= maxDistance * maxDistance) {
+                matches.add(object);
+            }
+        }
+        return addMatches(results);
+    }
+
+    /**
+     * See {@link PhysicsSystem#findNearest}.
+     */
+    int findNearest(double x, double y, double maxDistance, int maskBits, Collidable[] results) {
+        if (maxDistance < 0.0) {
+            String errorString = "Tried to find the nearest objects within a negative distance.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        int k = results.length;
+        if (nearestDistances.length < k) {
+            nearestDistances = new double[k];
+        }
+
+        // Search a growing box until it holds enough objects. Any object whose centre is within
+        // the radius overlaps the box, so nothing closer than the k found can be outside of it.
+        double radius = Math.min(NEAREST_START_RADIUS, maxDistance);
+        int count = 0;
+        while (k > 0) {
+            candidates.clear();
+            collisionSystem.query(x - radius, y - radius, x + radius, y + radius, objects, candidates);
+            // Once every object has been looked at there is no point in growing the box.
+            boolean isEverything = candidates.size() >= objects.size();
+            double limit = isEverything ? maxDistance : radius;
+
+            count = 0;
+            for (Collidable object : candidates) {
+                if ((object.getCategoryBits() & maskBits) == 0) {continue;}
+                Vector2D position = object.getState().position;
+                double dx = position.getMagX() - x;
+                double dy = position.getMagY() - y;
+                double distance = Math.sqrt(dx * dx + dy * dy);
+                if (distance <= limit) {
+                    count = insertNearest(object, distance, results, count);
+                }
+            }
+            if (count == k || limit >= maxDistance) {
+                break;
+            }
+            radius = Math.min(radius * 2.0, maxDistance);
+        }
+
+        for (int i = count; i < k; i++) {
+            results[i] = null;
+        }
+        return count;
+    }
+
+    /**
+     * Inserts an object into the sorted nearest objects, dropping the furthest one if they are
+     * full.
+     *
+     * @return The new number of nearest objects.
+     */
+    private int insertNearest(Collidable object, double distance, Collidable[] results, int count) {
+        int k = results.length;
+        int i = count;
+        while (i > 0 && (distance < nearestDistances[i - 1] ||
+                (distance == nearestDistances[i - 1] && object.getBodyId() < results[i - 1].getBodyId()))) {
+            if (i < k) {
+                results[i] = results[i - 1];
+                nearestDistances[i] = nearestDistances[i - 1];
+            }
+            --i;
+        }
+        if (i < k) {
+            results[i] = object;
+            nearestDistances[i] = distance;
+        }
+        return Math.min(count + 1, k);
+    }
+
+    /**
+     * Adds the matches to the results in order of body id.
+     *
+     * @return The number of matches.
+     */
+    private int addMatches(Collection<Collidable> results) {
+        Collections.sort(matches, BY_BODY_ID);
+        int count = matches.size();
+        for (int i = 0; i < count; i++) {
+            results.add(matches.get(i));
+        }
+        matches.clear();
+        candidates.clear();
+        return count;
+    }
+}
@@ -3,12 +3,17 @@ package com.gmail.claytonrogers53.life.Physics;
 import com.gmail.claytonrogers53.life.Util.Log;
 import com.gmail.claytonrogers53.life.Util.Vector2D;
 
+import java.nio.ByteBuffer;
+
 /**
  * A struct to hold to state of a physics object.
  *
  * Created by Clayton on 19/03/2015.
  */
 public class State {
+    /** The number of bytes used by {@link #write}. */
+    public static final int SNAPSHOT_SIZE = 6 * 8;
+
     public State() {}
 //    public State(State other) {
 //        this.angle           = other.angle;
@@ -21,6 +26,140 @@ public class State {
     public double angle = 0.0;
     public double angularVelocity = 0.0;
 
+    // The local to world transform as a 2x3 matrix: world = [m00 m01; m10 m11] * local + [m02; m12].
+    // Only valid once updateTransform has been called after the position or angle last changed.
+    public double m00 = 1.0;
+    public double m01 = 0.0;
+    public double m02 = 0.0;
+    public double m10 = 0.0;
+    public double m11 = 1.0;
+    public double m12 = 0.0;
+
+    /**
+     * Recalculates the cached local to world transform from the position and angle. This is the
+     * only place the trigonometry is done, every conversion afterwards is multiply-adds only.
+     * StrictMath is used so that the result is exactly the same on every platform.
+     */
+    public void updateTransform() {
+        double cos = StrictMath.cos(angle);
+        double sin = StrictMath.sin(angle);
+        // Angles are clockwise from north, so this is a clockwise rotation.
+        m00 =  cos;
+        m01 =  sin;
+        m10 = -sin;
+        m11 =  cos;
+        m02 = position.getMagX();
+        m12 = position.getMagY();
+    }
+
+    /**
+     * Converts a batch of points from local coordinates to world coordinates using the cached
+     * transform.
+     *
+     * @param localX
+     *        The x positions in local coordinates (m).
+     *
+     * @param localY
+     *        The y positions in local coordinates (m).
+     *
+     * @param worldX
+     *        Filled with the x positions in world coordinates (m). May be the same as localX.
+     *
+     * @param worldY
+     *        Filled with the y positions in world coordinates (m). May be the same as localY.
+     *
+     * @param count
+     *        The number of points to convert.
+     */
+    public void toWorld(double[] localX, double[] localY, double[] worldX, double[] worldY, int count) {
+        for (int i = 0; i < count; i++) {
+            double x = localX[i];
+            double y = localY[i];
+            worldX[i] = m00 * x + m01 * y + m02;
+            worldY[i] = m10 * x + m11 * y + m12;
+        }
+    }
+
+    /**
+     * Converts a batch of points from world coordinates to local coordinates using the cached
+     * transform.
+     *
+     * @param worldX
+     *        The x positions in world coordinates (m).
+     *
+     * @param worldY
+     *        The y positions in world coordinates (m).
+     *
+     * @param localX
+     *        Filled with the x positions in local coordinates (m). May be the same as worldX.
+     *
+     * @param localY
+     *        Filled with the y positions in local coordinates (m). May be the same as worldY.
+     *
+     * @param count
+     *        The number of points to convert.
+     */
+    public void toLocal(double[] worldX, double[] worldY, double[] localX, double[] localY, int count) {
+        // The rotation is orthonormal, so its inverse is its transpose.
+        for (int i = 0; i < count; i++) {
+            double x = worldX[i] - m02;
+            double y = worldY[i] - m12;
+            localX[i] = m00 * x + m10 * y;
+            localY[i] = m01 * x + m11 * y;
+        }
+    }
+
+    /**
+     * Copies another state into this one, including the cached transform, without creating any new
+     * objects.
+     *
+     * @param other
+     *        The state to copy.
+     */
+    public void set(State other) {
+        position.set(other.position);
+        velocity.set(other.velocity);
+        angle           = other.angle;
+        angularVelocity = other.angularVelocity;
+        m00 = other.m00;
+        m01 = other.m01;
+        m02 = other.m02;
+        m10 = other.m10;
+        m11 = other.m11;
+        m12 = other.m12;
+    }
+
+    /**
+     * Writes the position, velocity, angle and angular velocity to the buffer.
+     *
+     * @param buffer
+     *        The buffer to write to. Its position is moved forward by {@link #SNAPSHOT_SIZE}.
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putDouble(position.getMagX());
+        buffer.putDouble(position.getMagY());
+        buffer.putDouble(velocity.getMagX());
+        buffer.putDouble(velocity.getMagY());
+        buffer.putDouble(angle);
+        buffer.putDouble(angularVelocity);
+    }
+
+    /**
+     * Reads back a state written by {@link #write}, without creating any new objects. The cached
+     * transform is not updated.
+     *
+     * @param buffer
+     *        The buffer to read from. Its position is moved forward by {@link #SNAPSHOT_SIZE}.
+     */
+    public void read(ByteBuffer buffer) {
+        double x = buffer.getDouble();
+        position.set(x, buffer.getDouble());
+        x = buffer.getDouble();
+        velocity.set(x, buffer.getDouble());
+        angle = buffer.getDouble();
+        angularVelocity = buffer.getDouble();
+    }
+
     /**
      * Converts a position in local object coordinates to world position coordinates using the
      * object's state.
@@ -39,12 +178,13 @@ public class State {
             Log.error(errorString);
             throw new IllegalStateException(errorString);
         }
-        // This finds the direction of the local vector in world coordinates.
-        double localVectorDirection = localPosition.getDirection() + state.angle;
-        return state.position
-                .add(
-                        Vector2D.getVector2DMagnitudeAndDirection(localPosition.getMag(), localVectorDirection)
-                );
+        double cos = StrictMath.cos(state.angle);
+        double sin = StrictMath.sin(state.angle);
+        double x = localPosition.getMagX();
+        double y = localPosition.getMagY();
+        return new Vector2D(
+                state.position.getMagX() + cos * x + sin * y,
+                state.position.getMagY() - sin * x + cos * y);
 
     }
 
@@ -61,10 +201,10 @@ public class State {
      */
     public static Vector2D convertToLocalCoordinates(Vector2D worldPosition, State state) {
 
-        Vector2D offsetFromPosition = worldPosition.sub(state.position);
-
-        double localAngle = offsetFromPosition.getDirection() - state.angle;
-
-        return Vector2D.getVector2DMagnitudeAndDirection(offsetFromPosition.getMag(), localAngle);
+        double cos = StrictMath.cos(state.angle);
+        double sin = StrictMath.sin(state.angle);
+        double x = worldPosition.getMagX() - state.position.getMagX();
+        double y = worldPosition.getMagY() - state.position.getMagY();
+        return new Vector2D(cos * x - sin * y, sin * x + cos * y);
     }
 }
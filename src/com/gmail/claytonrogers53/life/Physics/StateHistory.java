@@ -0,0 +1,140 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ring buffer of the state of the physics system at the start of each of the last few steps.
+ * Each frame is a snapshot in the format of {@link PhysicsSystem#writeSnapshot}, kept in a byte
+ * array which is reused when the ring comes back around, so once the buffers have grown to size
+ * no memory is allocated.
+ *
+ * The frame for a step is kept in the slot step % length, so stepping forward again after a
+ * rollback simply overwrites the frames which are no longer valid.
+ */
+final class StateHistory {
+
+    /** Marks a slot which doesn't hold a frame. */
+    private static final long NO_STEP = -1L;
+
+    private final ByteBuffer[] frames;
+    /** The step each slot holds the start of. */
+    private final long[] frameSteps;
+    /** The step each time step was used for. Kept apart from the frames, since the time steps are
+     * still needed to resimulate the steps after a rollback. */
+    private final long[] physics_dtSteps;
+    /** The time step that was used for each step (ms). */
+    private final long[] framePhysics_dt;
+
+    /**
+     * @param length
+     *        The number of steps to keep.
+     */
+    StateHistory(int length) {
+        frames          = new ByteBuffer[length];
+        frameSteps      = new long[length];
+        physics_dtSteps = new long[length];
+        framePhysics_dt = new long[length];
+        clear();
+    }
+
+    int getLength() {
+        return frames.length;
+    }
+
+    /**
+     * Makes space for the frame of a step, replacing whatever was in its slot.
+     *
+     * @param step
+     *        The number of steps taken before the frame.
+     *
+     * @param physics_dt
+     *        The time step that is about to be used (ms).
+     *
+     * @param size
+     *        The size of the snapshot (bytes).
+     *
+     * @return An empty buffer with at least size bytes to write the snapshot into.
+     */
+    ByteBuffer beginFrame(long step, long physics_dt, int size) {
+        int slot = slotOf(step);
+        ByteBuffer frame = frames[slot];
+        if (frame == null || frame.capacity() < size) {
+            // Leave some room so that the buffers aren't remade every time an object is added.
+            frame = ByteBuffer.allocate(size + size / 8);
+            frames[slot] = frame;
+        }
+        frame.clear();
+        frameSteps[slot]      = step;
+        physics_dtSteps[slot] = step;
+        framePhysics_dt[slot] = physics_dt;
+        return frame;
+    }
+
+    /**
+     * @param step
+     *        The step to find the frame of.
+     *
+     * @return A buffer positioned at the start of the frame, or null when the frame isn't kept.
+     */
+    ByteBuffer getFrame(long step) {
+        int slot = slotOf(step);
+        if (frameSteps[slot] != step) {
+            return null;
+        }
+        return frames[slot].duplicate();
+    }
+
+    /**
+     * @param step
+     *        The step to find the time step of.
+     *
+     * @return The time step that was used for the step (ms), or -1 when it isn't kept.
+     */
+    long getPhysicsDT(long step) {
+        int slot = slotOf(step);
+        return physics_dtSteps[slot] == step ? framePhysics_dt[slot] : -1L;
+    }
+
+    /**
+     * @return The oldest step that can be rolled back to, or -1 if there are none.
+     */
+    long getOldestStep() {
+        long oldest = NO_STEP;
+        for (long step : frameSteps) {
+            if (step != NO_STEP && (oldest == NO_STEP || step < oldest)) {
+                oldest = step;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Forgets the frames after a step, once the physics has been rolled back to it. The time steps
+     * of the later steps are kept.
+     *
+     * @param step
+     *        The last step to keep.
+     */
+    void discardAfter(long step) {
+        for (int i = 0; i < frameSteps.length; i++) {
+            if (frameSteps[i] > step) {
+                frameSteps[i] = NO_STEP;
+            }
+        }
+    }
+
+    /**
+     * Forgets every frame, for example when the objects change so that the old frames can no longer
+     * be restored.
+     */
+    void clear() {
+        for (int i = 0; i < frameSteps.length; i++) {
+            frameSteps[i]      = NO_STEP;
+            physics_dtSteps[i] = NO_STEP;
+        }
+    }
+
+    private int slotOf(long step) {
+        return (int) (step % frames.length);
+    }
+}
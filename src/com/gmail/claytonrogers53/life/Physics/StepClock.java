@@ -0,0 +1,135 @@
+package com.gmail.claytonrogers53.life.Physics;
+
+import com.gmail.claytonrogers53.life.Util.Log;
+
+/**
+ * Keeps the physics loop in step with the wall clock. The wall clock time that passes (times the
+ * physics multiplier) is added to an accumulator, and a step is due for every whole step in it.
+ * What is left over after the steps is carried on, and the fraction of a step it makes up is the
+ * interpolation alpha for drawing.
+ *
+ * A clock never changes. Every change gives a new clock, so that the physics loop can hand the
+ * whole of it to the graphics thread at once.
+ *
+ * @see PhysicsSystem#getInterpolationAlpha
+ */
+public final class StepClock {
+
+    /** The wall clock time of the last tick (ns). */
+    private final long loopTime;
+    /** The length of a step (ns of physics time). */
+    private final long stepNanos;
+    /** How much faster than the wall clock the physics runs. */
+    private final double multiplier;
+    /** The physics time which hasn't been stepped through yet (ns). */
+    private final double accumulator;
+
+    /**
+     * @param loopTime
+     *        The wall clock time the clock starts from (ns, from {@link System#nanoTime()}).
+     *
+     * @param stepNanos
+     *        The length of a step (ns). Zero or less when the physics isn't being stepped, in which
+     *        case no steps are ever due and the alpha is always 1.
+     *
+     * @param multiplier
+     *        How much faster than the wall clock the physics runs.
+     *
+     * @param accumulator
+     *        The physics time which hasn't been stepped through yet (ns).
+     */
+    public StepClock(long loopTime, long stepNanos, double multiplier, double accumulator) {
+        this.loopTime    = loopTime;
+        this.stepNanos   = stepNanos;
+        this.multiplier  = multiplier;
+        this.accumulator = accumulator;
+    }
+
+    /**
+     * Adds the time since the last tick to the accumulator.
+     *
+     * @param now
+     *        The wall clock time (ns).
+     *
+     * @param newStepNanos
+     *        The length of a step from now on (ns).
+     *
+     * @param newMultiplier
+     *        The physics multiplier from now on. The time since the last tick is counted with the
+     *        old one.
+     *
+     * @return The new clock.
+     */
+    public StepClock tick(long now, long newStepNanos, double newMultiplier) {
+        return new StepClock(now, newStepNanos, newMultiplier, accumulator + (now - loopTime) * multiplier);
+    }
+
+    /**
+     * @param maxSteps
+     *        The most steps that may be taken at once. Must be at least one.
+     *
+     * @return The number of whole steps in the accumulator, up to the limit.
+     */
+    public int getDueSteps(int maxSteps) {
+        if (maxSteps <= 0) {
+            String errorString = "Tried to take at most " + maxSteps + " steps at once.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        if (stepNanos <= 0) {
+            return 0;
+        }
+        return (int) Math.min(maxSteps, Math.floor(accumulator / stepNanos));
+    }
+
+    /**
+     * Takes the steps out of the accumulator. If whole steps are still left over, the physics has
+     * fallen behind and they are dropped, otherwise it would take more and more steps at once and
+     * never catch up.
+     *
+     * @param numSteps
+     *        The number of steps which were taken.
+     *
+     * @return The new clock.
+     */
+    public StepClock afterSteps(int numSteps) {
+        if (stepNanos <= 0) {
+            return this;
+        }
+        double left = accumulator - numSteps * (double) stepNanos;
+        if (left >= stepNanos) {
+            left %= stepNanos;
+        }
+        return new StepClock(loopTime, stepNanos, multiplier, left);
+    }
+
+    /**
+     * @return The number of whole steps in the accumulator, which will be dropped by
+     *         {@link #afterSteps} if they are still there.
+     */
+    public long getBehindSteps() {
+        return stepNanos > 0 ? (long) (accumulator / stepNanos) : 0L;
+    }
+
+    /**
+     * @return The physics time which hasn't been stepped through yet (ns).
+     */
+    public double getAccumulator() {
+        return accumulator;
+    }
+
+    /**
+     * @param now
+     *        The wall clock time (ns).
+     *
+     * @return How far the physics is from the last step to the next one at the given time, from
+     *         0.0 (just stepped) to 1.0 (the next step is due).
+     */
+    public double getAlpha(long now) {
+        if (stepNanos <= 0) {
+            return 1.0;
+        }
+        double sinceLastTick = (now - loopTime) * multiplier;
+        return Math.min(1.0, Math.max(0.0, (accumulator + sinceLastTick) / stepNanos));
+    }
+}
@@ -0,0 +1,69 @@
+package com.gmail.claytonrogers53.life.Test;
+
+import com.gmail.claytonrogers53.life.Physics.BarnesHutGravity;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.HeadlessResult;
+import com.gmail.claytonrogers53.life.Physics.PhysicsObject;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Util.Configuration;
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+import java.util.Random;
+
+/**
+ * Runs a large cloud of objects under Barnes-Hut gravity with no display and prints the
+ * throughput. The objects don't collide, so the time is almost all spent on the gravity.
+ *
+ * Usage: GravityPerformanceTest [number of objects] [number of steps] [theta]
+ */
+public class GravityPerformanceTest {
+
+    /** A bare point mass, since the boxes make a sprite each which adds up with this many. */
+    private static class Particle extends PhysicsObject {
+        Particle(double mass, Vector2D position, Vector2D velocity) {
+            super(mass, 1.0);
+            state.position.set(position);
+            state.velocity.set(velocity);
+        }
+
+        @Override
+        public boolean isIntersecting(Vector2D vertex) {
+            return false;
+        }
+
+        @Override
+        public void notifyCollision(Collidable otherObject, boolean isCollisionResolutionEnabled) {}
+    }
+
+    public static void main (String[] args) {
+        Log.init("Test.log");
+        Configuration.loadConfigurationItems();
+
+        final int    NUM_OBJECTS = args.length > 0 ? Integer.parseInt(args[0])   : 100000;
+        final long   NUM_STEPS   = args.length > 1 ? Long.parseLong(args[1])     : 20L;
+        final double THETA       = args.length > 2 ? Double.parseDouble(args[2]) : BarnesHutGravity.DEFAULT_THETA;
+        final double RADIUS = 1000.0;
+
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        BarnesHutGravity gravity = new BarnesHutGravity(1.0, THETA, 1.0);
+        Random random = new Random(1L);
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            // A roughly even disc, turning slowly.
+            double distance = RADIUS * Math.sqrt(random.nextDouble());
+            double direction = random.nextDouble() * 2 * Math.PI;
+            Vector2D position = Vector2D.getVector2DMagnitudeAndDirection(distance, direction);
+            Vector2D velocity = Vector2D.getVector2DMagnitudeAndDirection(distance * 0.01, direction + Math.PI / 2);
+            Particle particle = new Particle(1.0, position, velocity);
+            physicsSystem.addObject(particle);
+            gravity.addObject(particle);
+        }
+        physicsSystem.addPhysicsThing(gravity);
+
+        HeadlessResult result = physicsSystem.runHeadless(NUM_STEPS);
+        gravity.shutdown();
+        System.out.println("objects:         " + NUM_OBJECTS);
+        System.out.println("theta:           " + THETA);
+        System.out.print(result);
+    }
+}
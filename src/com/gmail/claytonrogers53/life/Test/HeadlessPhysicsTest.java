@@ -0,0 +1,54 @@
+package com.gmail.claytonrogers53.life.Test;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.HeadlessResult;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Configuration;
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+import java.util.Random;
+
+/**
+ * Runs the physics system as fast as possible with no display and prints the throughput and the
+ * checksum of the final state. Since the boxes are created from a fixed seed, two runs of the
+ * same build should print the same checksum.
+ *
+ * Usage: HeadlessPhysicsTest [number of boxes] [number of steps] [collision system]
+ */
+public class HeadlessPhysicsTest {
+    public static void main (String[] args) {
+        Log.init("Test.log");
+        Configuration.loadConfigurationItems();
+
+        final int  NUM_BOXES = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final long NUM_STEPS = args.length > 1 ? Long.parseLong(args[1])   : 1000L;
+        final String COLLISION_SYSTEM = args.length > 2 ? args[2] : null;
+        final int  BOXES_PER_ROW = (int) Math.ceil(Math.sqrt(NUM_BOXES));
+        final double SPACING = 2.0;
+
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        if (COLLISION_SYSTEM != null) {
+            physicsSystem.setCollisionSystem(COLLISION_SYSTEM);
+        }
+        Random random = new Random(1L);
+        for (int i = 0; i < NUM_BOXES; i++) {
+            double posX = (i % BOXES_PER_ROW) * SPACING;
+            double posY = (i / BOXES_PER_ROW) * SPACING;
+            Vector2D vel = Vector2D.getVector2DMagnitudeAndDirection(2.0, random.nextDouble() * 2 * Math.PI);
+            double angVel = random.nextDouble() * 2.0 - 1.0;
+            Box box = new Box(1, 1, new Vector2D(posX, posY), vel, 0.0, angVel);
+            box.setShape(PolygonShape.box(0.5, 0.5));
+            box.setIsCollidable(true);
+            physicsSystem.addObject(box);
+        }
+
+        HeadlessResult result = physicsSystem.runHeadless(NUM_STEPS);
+        System.out.println("boxes:           " + NUM_BOXES);
+        if (COLLISION_SYSTEM != null) {
+            System.out.println("collisions:      " + COLLISION_SYSTEM);
+        }
+        System.out.print(result);
+    }
+}
@@ -0,0 +1,104 @@
+package com.gmail.claytonrogers53.life.Test;
+
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.Integrator;
+import com.gmail.claytonrogers53.life.Physics.PhysicsObject;
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+/**
+ * Compares the accuracy and cost of the integrators. Each one moves a set of masses on springs
+ * (which have an exact solution) for a number of periods, then prints how long the steps took and
+ * how far the masses ended up from where they should be, and how much energy they gained or lost.
+ *
+ * Usage: IntegratorPerformanceTest [number of objects] [number of periods] [steps per period]
+ */
+public class IntegratorPerformanceTest {
+
+    /** A mass on a spring to the origin, with an angular spring as well. */
+    private static class Oscillator extends PhysicsObject {
+        private final double stiffness;
+
+        Oscillator(double mass, double stiffness, double startX) {
+            super(mass, mass);
+            this.stiffness = stiffness;
+            state.position.set(startX, 0.0);
+            state.angle = startX;
+        }
+
+        @Override
+        protected void calculateAcceleration(double posX, double posY, double velX, double velY,
+                                             double angle, double angularVelocity) {
+            accelerationX = -stiffness * posX / mass;
+            accelerationY = -stiffness * posY / mass;
+            angularAcceleration = -stiffness * angle / momentOfInertia;
+        }
+
+        double getEnergy() {
+            double speedSquared = state.velocity.dotProduct(state.velocity);
+            double stretchSquared = state.position.dotProduct(state.position);
+            return 0.5 * mass * speedSquared + 0.5 * stiffness * stretchSquared;
+        }
+
+        @Override
+        public boolean isIntersecting(Vector2D vertex) {
+            return false;
+        }
+
+        @Override
+        public void notifyCollision(Collidable otherObject, boolean isCollisionResolutionEnabled) {}
+    }
+
+    public static void main (String[] args) {
+        Log.init("Test.log");
+
+        final int NUM_OBJECTS      = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int NUM_PERIODS      = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final int STEPS_PER_PERIOD = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        // Unit mass and stiffness give a period of 2*pi seconds.
+        final double PERIOD = 2 * Math.PI;
+        final double TIME_STEP = PERIOD / STEPS_PER_PERIOD;
+        final int NUM_STEPS = NUM_PERIODS * STEPS_PER_PERIOD;
+
+        System.out.println("objects: " + NUM_OBJECTS + ", periods: " + NUM_PERIODS +
+                ", steps per period: " + STEPS_PER_PERIOD);
+        System.out.println(String.format("%-20s %14s %16s %16s", "integrator", "ns/body step",
+                "position error", "energy error"));
+
+        // Run every integrator twice, the first time just warms up the JIT.
+        for (int pass = 0; pass < 2; pass++) {
+            for (Integrator integrator : Integrator.values()) {
+                Oscillator[] objects = new Oscillator[NUM_OBJECTS];
+                for (int i = 0; i < NUM_OBJECTS; i++) {
+                    objects[i] = new Oscillator(1.0, 1.0, 1.0 + i % 10);
+                    objects[i].setIntegrator(integrator);
+                }
+
+                long startTime = System.nanoTime();
+                for (int step = 0; step < NUM_STEPS; step++) {
+                    for (Oscillator object : objects) {
+                        object.calculateNextState(TIME_STEP);
+                        object.applyNextState();
+                    }
+                }
+                long elapsedNanos = System.nanoTime() - startTime;
+
+                // After a whole number of periods every object should be back where it started.
+                double positionError = 0.0;
+                double energyError = 0.0;
+                for (int i = 0; i < NUM_OBJECTS; i++) {
+                    double start = 1.0 + i % 10;
+                    Vector2D position = objects[i].getState().position;
+                    positionError = Math.max(positionError, Math.abs(position.getMagX() - start) / start);
+                    double startEnergy = 0.5 * start * start;
+                    energyError = Math.max(energyError, Math.abs(objects[i].getEnergy() - startEnergy) / startEnergy);
+                }
+
+                if (pass == 1) {
+                    System.out.println(String.format("%-20s %14.2f %16.3e %16.3e", integrator,
+                            (double) elapsedNanos / ((long) NUM_STEPS * NUM_OBJECTS), positionError, energyError));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.gmail.claytonrogers53.life.Test;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.HeadlessResult;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Physics.SimulationHost;
+import com.gmail.claytonrogers53.life.Util.Configuration;
+import com.gmail.claytonrogers53.life.Util.Log;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+import java.util.Random;
+
+/**
+ * Runs many small worlds at once on a simulation host and prints the combined throughput, first
+ * on one thread and then on every processor.
+ *
+ * Usage: SimulationHostPerformanceTest [number of worlds] [boxes per world] [number of steps]
+ */
+public class SimulationHostPerformanceTest {
+    public static void main (String[] args) {
+        Log.init("Test.log");
+        Configuration.loadConfigurationItems();
+
+        final int  NUM_WORLDS = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        final int  NUM_BOXES  = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        final long NUM_STEPS  = args.length > 2 ? Long.parseLong(args[2])   : 1000L;
+
+        int[] parallelisms = {1, Runtime.getRuntime().availableProcessors()};
+        for (int parallelism : parallelisms) {
+            SimulationHost host = new SimulationHost(parallelism);
+            for (int i = 0; i < NUM_WORLDS; i++) {
+                host.addWorld(makeWorld(NUM_BOXES, i), NUM_STEPS);
+            }
+            HeadlessResult result = host.runToBudget();
+            host.shutdown();
+
+            System.out.println("threads:         " + parallelism);
+            System.out.println("worlds:          " + NUM_WORLDS);
+            System.out.print(result);
+        }
+    }
+
+    private static PhysicsSystem makeWorld(int numBoxes, long seed) {
+        final int BOXES_PER_ROW = (int) Math.ceil(Math.sqrt(numBoxes));
+        final double SPACING = 2.0;
+
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Random random = new Random(seed);
+        for (int i = 0; i < numBoxes; i++) {
+            double posX = (i % BOXES_PER_ROW) * SPACING;
+            double posY = (i / BOXES_PER_ROW) * SPACING;
+            Vector2D vel = Vector2D.getVector2DMagnitudeAndDirection(2.0, random.nextDouble() * 2 * Math.PI);
+            Box box = new Box(1, 1, new Vector2D(posX, posY), vel, 0.0, random.nextDouble() * 2.0 - 1.0);
+            box.setShape(PolygonShape.box(0.5, 0.5));
+            box.setIsCollidable(true);
+            physicsSystem.addObject(box);
+        }
+        return physicsSystem;
+    }
+}
@@ -0,0 +1,115 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the dynamic AABB tree, through the region queries of a physics system which
+ * uses it as its broad phase.
+ */
+public class AABBTreeTest {
+
+    private static final long PHYSICS_DT = 10L;
+
+    private static Box makeBox(Random random) {
+        Vector2D position = new Vector2D(random.nextDouble() * 50.0, random.nextDouble() * 50.0);
+        Vector2D velocity = Vector2D.getVector2DMagnitudeAndDirection(5.0, random.nextDouble() * 2 * Math.PI);
+        Box box = new Box(1, 1, position, velocity, random.nextDouble(), 0.0);
+        box.setShape(PolygonShape.box(0.5, 0.5));
+        box.setIsCollidable(true);
+        return box;
+    }
+
+    /**
+     * Checks a region query against every object in the list.
+     */
+    private static void checkQuery(PhysicsSystem physicsSystem, List<Box> boxes, double lowerX, double lowerY,
+                                   double upperX, double upperY) {
+        Set<Collidable> expected = new HashSet<>();
+        for (Box box : boxes) {
+            Vector2D position = box.getState().position;
+            double radius = box.getCollisionRadius();
+            if (position.getMagX() + radius >= lowerX && position.getMagX() - radius <= upperX &&
+                    position.getMagY() + radius >= lowerY && position.getMagY() - radius <= upperY) {
+                expected.add(box);
+            }
+        }
+        List<Collidable> results = new ArrayList<>();
+        physicsSystem.queryAABB(lowerX, lowerY, upperX, upperY, Collidable.ALL_CATEGORIES, results);
+        assertEquals(expected, new HashSet<>(results));
+        assertEquals(expected.size(), results.size());
+    }
+
+    @Test
+    public void queriesFollowInsertsMovesAndRemoves() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setCollisionSystem("TREE");
+        Random random = new Random(11L);
+        List<Box> boxes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            boxes.add(makeBox(random));
+            physicsSystem.addObject(boxes.get(boxes.size() - 1));
+        }
+
+        for (int round = 0; round < 5; round++) {
+            // The boxes move far enough to leave their fattened boxes in the tree.
+            for (int i = 0; i < 20; i++) {
+                physicsSystem.step(PHYSICS_DT);
+            }
+            for (int query = 0; query < 20; query++) {
+                double x = random.nextDouble() * 60.0 - 5.0;
+                double y = random.nextDouble() * 60.0 - 5.0;
+                checkQuery(physicsSystem, boxes, x, y, x + random.nextDouble() * 20.0, y + random.nextDouble() * 20.0);
+            }
+
+            // Swap some of the boxes for new ones.
+            for (int i = 0; i < 15; i++) {
+                physicsSystem.removeObject(boxes.remove(random.nextInt(boxes.size())));
+            }
+            for (int i = 0; i < 10; i++) {
+                boxes.add(makeBox(random));
+                physicsSystem.addObject(boxes.get(boxes.size() - 1));
+            }
+            checkQuery(physicsSystem, boxes, -10.0, -10.0, 100.0, 100.0);
+        }
+        assertEquals(boxes.size(), physicsSystem.getObjectCount());
+    }
+
+    @Test
+    public void removedObjectsAreNotFound() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setCollisionSystem("TREE");
+        Box box = new Box(1, 1, new Vector2D(3.0, 4.0), new Vector2D(), 0.0, 0.0);
+        box.setShape(PolygonShape.box(0.5, 0.5));
+        physicsSystem.addObject(box);
+        physicsSystem.step(PHYSICS_DT);
+
+        List<Collidable> results = new ArrayList<>();
+        physicsSystem.queryAABB(2.0, 3.0, 4.0, 5.0, Collidable.ALL_CATEGORIES, results);
+        assertTrue(results.contains(box));
+
+        physicsSystem.removeObject(box);
+        results.clear();
+        physicsSystem.queryAABB(2.0, 3.0, 4.0, 5.0, Collidable.ALL_CATEGORIES, results);
+        assertFalse(results.contains(box));
+
+        // And can be put back.
+        physicsSystem.addObject(box);
+        physicsSystem.queryAABB(2.0, 3.0, 4.0, 5.0, Collidable.ALL_CATEGORIES, results);
+        assertEquals(1, results.size());
+    }
+}
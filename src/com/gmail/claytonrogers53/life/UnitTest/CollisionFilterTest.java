@@ -0,0 +1,99 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.CollisionFilter;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the collision categories, masks and filters.
+ */
+public class CollisionFilterTest {
+
+    private static final int WALLS     = 0x0001;
+    private static final int PARTICLES = 0x0002;
+
+    private Box left;
+    private Box right;
+
+    /**
+     * Two boxes heading straight for each other, which meet half way through the run.
+     */
+    private PhysicsSystem makeScenario() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box[] pair = Scenarios.addHeadOnPair(physicsSystem);
+        left  = pair[0];
+        right = pair[1];
+        return physicsSystem;
+    }
+
+    private static void run(PhysicsSystem physicsSystem) {
+        for (int i = 0; i < 100; i++) {
+            physicsSystem.step(10L);
+        }
+    }
+
+    private boolean didPassThrough() {
+        return left.getState().position.getMagX() > 0.5;
+    }
+
+    @Test
+    public void defaultObjectsCollide() {
+        PhysicsSystem physicsSystem = makeScenario();
+        run(physicsSystem);
+        assertFalse(didPassThrough());
+    }
+
+    @Test
+    public void masksSkipPairs() {
+        PhysicsSystem physicsSystem = makeScenario();
+        left.setCollisionFilter(PARTICLES, WALLS);
+        right.setCollisionFilter(PARTICLES, WALLS);
+        run(physicsSystem);
+        assertTrue(didPassThrough());
+    }
+
+    @Test
+    public void bothMasksMustMatch() {
+        PhysicsSystem physicsSystem = makeScenario();
+        // The wall would collide with the particle, but the particle ignores walls.
+        left.setCollisionFilter(WALLS, WALLS | PARTICLES);
+        right.setCollisionFilter(PARTICLES, PARTICLES);
+        run(physicsSystem);
+        assertTrue(didPassThrough());
+
+        physicsSystem = makeScenario();
+        left.setCollisionFilter(WALLS, PARTICLES);
+        right.setCollisionFilter(PARTICLES, WALLS);
+        run(physicsSystem);
+        assertFalse(didPassThrough());
+    }
+
+    @Test
+    public void filterSkipsPairs() {
+        PhysicsSystem physicsSystem = makeScenario();
+        final int[] numCalls = new int[1];
+        physicsSystem.setCollisionFilter(new CollisionFilter() {
+            @Override
+            public boolean shouldCollide(Collidable first, Collidable second) {
+                assertTrue(first.getBodyId() < second.getBodyId());
+                numCalls[0]++;
+                return false;
+            }
+        });
+        run(physicsSystem);
+        assertTrue(didPassThrough());
+        assertTrue(numCalls[0] > 0);
+
+        // Without the filter they hit on the way back.
+        physicsSystem.setCollisionFilter(null);
+        left.getState().velocity.set(-2.0, 0.0);
+        right.getState().velocity.set(2.0, 0.0);
+        run(physicsSystem);
+        assertTrue(left.getState().position.getMagX() > right.getState().position.getMagX());
+    }
+}
@@ -0,0 +1,94 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for resolving the collisions of a step in the order that they happen.
+ */
+public class CollisionSchedulerTest {
+
+    private static final String[] COLLISION_SYSTEMS = {"TREE", "SWEEP", "SIMPLE", "REGION"};
+
+    /**
+     * A box which remembers everything it has hit.
+     */
+    private static class HitBox extends Box {
+        final List<Collidable> hits = new ArrayList<>();
+
+        HitBox(double mass, double momentOfInertia, Vector2D position, Vector2D velocity, double angle,
+               double halfWidth, double halfHeight) {
+            super(mass, momentOfInertia, position, velocity, angle, 0.0);
+            setShape(PolygonShape.box(halfWidth, halfHeight));
+            setIsCollidable(true);
+        }
+
+        @Override
+        public void notifyCollision(Collidable otherObject, boolean isCollisionResolved) {
+            hits.add(otherObject);
+        }
+    }
+
+    @Test
+    public void hitsAreResolvedInTheOrderTheyHappen() {
+        for (String collisionSystem : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = new PhysicsSystem();
+            physicsSystem.setCollisionSystem(collisionSystem);
+            // Moves 3 m a step between walls 1.6 m apart, so it hits both walls in most steps.
+            HitBox box   = new HitBox(1, 1, new Vector2D(), new Vector2D(300.0, 0.0), 0.0, 0.1, 0.1);
+            HitBox left  = new HitBox(1e6, 1e6, new Vector2D(-1.0, 0.0), new Vector2D(), 0.0, 0.1, 2.0);
+            HitBox right = new HitBox(1e6, 1e6, new Vector2D( 1.0, 0.0), new Vector2D(), 0.0, 0.1, 2.0);
+            for (HitBox object : new HitBox[] {box, left, right}) {
+                object.setRestitution(1.0);
+                physicsSystem.addObject(object);
+            }
+
+            for (int i = 0; i < 5; i++) {
+                physicsSystem.step(10L);
+                double x = box.getState().position.getMagX();
+                assertTrue(collisionSystem, x > -0.8 && x < 0.8);
+            }
+            // Nine hits in 15 m, always the other wall next.
+            assertEquals(collisionSystem, 9, box.hits.size());
+            for (int i = 0; i < box.hits.size(); i++) {
+                assertSame(collisionSystem, i % 2 == 0 ? right : left, box.hits.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void theSameObjectCanBeHitTwiceInOneStep() {
+        for (String collisionSystem : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = new PhysicsSystem();
+            physicsSystem.setCollisionSystem(collisionSystem);
+            // A tilted rod falling onto the ground hits it with its low end, which swings the high
+            // end down onto the ground later in the same step.
+            HitBox rod    = new HitBox(1, 1.0 / 3.0, new Vector2D(), new Vector2D(0.0, -5.0), 0.05, 1.0, 0.05);
+            HitBox ground = new HitBox(1000, 1e6, new Vector2D(0.0, -0.5), new Vector2D(), 0.0, 5.0, 0.2);
+            rod.setRestitution(0.5);
+            ground.setRestitution(0.5);
+            physicsSystem.addObject(rod);
+            physicsSystem.addObject(ground);
+
+            physicsSystem.step(100L);
+            assertTrue(collisionSystem, rod.hits.size() >= 2);
+            for (Collidable hit : rod.hits) {
+                assertSame(collisionSystem, ground, hit);
+            }
+            // It bounces off instead of ending up inside the ground.
+            assertTrue(collisionSystem, rod.getState().position.getMagY() > -0.25);
+            assertTrue(collisionSystem, rod.getState().velocity.getMagY() > 0.0);
+        }
+    }
+}
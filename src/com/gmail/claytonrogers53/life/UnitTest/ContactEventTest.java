@@ -0,0 +1,183 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.ContactEvents;
+import com.gmail.claytonrogers53.life.Physics.ContactListener;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the begin, stay and end contact events.
+ */
+public class ContactEventTest {
+
+    private static final long   PHYSICS_DT = 10L;
+
+    /**
+     * Keeps its own set of the touching pairs from the events, and checks that the events agree
+     * with it.
+     */
+    private static class Tracker implements ContactListener {
+        final Set<String> touching = new HashSet<>();
+        int numBegins = 0;
+        int numStays  = 0;
+        int numEnds   = 0;
+        long lastStep = 0L;
+
+        @Override
+        public void processContacts(ContactEvents events) {
+            assertEquals(lastStep + 1, events.getStep());
+            lastStep = events.getStep();
+            int numStaysThisStep = events.getCount(ContactEvents.STAY);
+            for (int i = 0; i < events.getCount(ContactEvents.BEGIN); i++) {
+                assertTrue(touching.add(key(events, ContactEvents.BEGIN, i)));
+            }
+            for (int i = 0; i < numStaysThisStep; i++) {
+                assertTrue(touching.contains(key(events, ContactEvents.STAY, i)));
+            }
+            for (int i = 0; i < events.getCount(ContactEvents.END); i++) {
+                assertTrue(touching.remove(key(events, ContactEvents.END, i)));
+            }
+            assertEquals(touching.size(), events.getCount(ContactEvents.BEGIN) + numStaysThisStep);
+            numBegins += events.getCount(ContactEvents.BEGIN);
+            numStays  += numStaysThisStep;
+            numEnds   += events.getCount(ContactEvents.END);
+        }
+
+        private static String key(ContactEvents events, int kind, int index) {
+            Collidable first  = events.getFirst(kind, index);
+            Collidable second = events.getSecond(kind, index);
+            assertTrue(first.getBodyId() < second.getBodyId());
+            return first.getBodyId() + ":" + second.getBodyId();
+        }
+    }
+
+    private static Box makeBox(double mass, double halfWidth, double halfHeight, Vector2D position, Vector2D velocity) {
+        return Scenarios.makeBox(mass, mass, position, velocity, 0.0, 0.0, PolygonShape.box(halfWidth, halfHeight));
+    }
+
+    /**
+     * A box dropped from just above an immovable floor, so that it lands without bouncing.
+     */
+    private static PhysicsSystem makeLanding(Box box, Box floor, Tracker tracker) {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.addObject(floor);
+        physicsSystem.addObject(box);
+        physicsSystem.addContactListener(tracker);
+        Scenarios.addGravity(physicsSystem, Collections.singletonList(box));
+        return physicsSystem;
+    }
+
+    private static Box makeFloor() {
+        return makeBox(Double.POSITIVE_INFINITY, 10.0, 0.5, new Vector2D(0.0, -0.5), new Vector2D());
+    }
+
+    @Test
+    public void landingBeginsAndStays() {
+        Box floor = makeFloor();
+        Box box = makeBox(1, 0.5, 0.5, new Vector2D(0.0, 0.52), new Vector2D());
+        Tracker tracker = new Tracker();
+        PhysicsSystem physicsSystem = makeLanding(box, floor, tracker);
+
+        for (int i = 0; i < 100; i++) {
+            physicsSystem.step(PHYSICS_DT);
+            assertEquals(tracker.touching.size(), physicsSystem.getTouchingPairCount());
+            assertEquals(!tracker.touching.isEmpty(), physicsSystem.isTouching(box, floor));
+        }
+        assertEquals(1, tracker.numBegins);
+        assertEquals(0, tracker.numEnds);
+        assertTrue(tracker.numStays > 80);
+        assertTrue(physicsSystem.isTouching(floor, box));
+    }
+
+    @Test
+    public void removingAnObjectEndsItsContacts() {
+        Box floor = makeFloor();
+        Box box = makeBox(1, 0.5, 0.5, new Vector2D(0.0, 0.52), new Vector2D());
+        Tracker tracker = new Tracker();
+        PhysicsSystem physicsSystem = makeLanding(box, floor, tracker);
+        for (int i = 0; i < 50; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+        assertTrue(physicsSystem.isTouching(box, floor));
+
+        physicsSystem.removeObject(box);
+        physicsSystem.step(PHYSICS_DT);
+        assertEquals(1, tracker.numEnds);
+        assertTrue(tracker.touching.isEmpty());
+        assertFalse(physicsSystem.isTouching(box, floor));
+        assertEquals(0, physicsSystem.getTouchingPairCount());
+    }
+
+    @Test
+    public void restoringASnapshotRestoresTheTouchingPairs() {
+        Box floor = makeFloor();
+        Box box = makeBox(1, 0.5, 0.5, new Vector2D(0.0, 0.52), new Vector2D());
+        Tracker tracker = new Tracker();
+        PhysicsSystem physicsSystem = makeLanding(box, floor, tracker);
+        ByteBuffer beforeLanding = physicsSystem.snapshot();
+        for (int i = 0; i < 50; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+        ByteBuffer afterLanding = physicsSystem.snapshot();
+        assertTrue(physicsSystem.isTouching(box, floor));
+
+        // Back to before the landing, so it begins again.
+        physicsSystem.restoreSnapshot(beforeLanding);
+        assertFalse(physicsSystem.isTouching(box, floor));
+        assertEquals(0, physicsSystem.getTouchingPairCount());
+        tracker.touching.clear();
+        tracker.lastStep = 0L;
+        for (int i = 0; i < 50; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+        assertEquals(2, tracker.numBegins);
+
+        // Back to after it, so it stays.
+        physicsSystem.restoreSnapshot(afterLanding);
+        assertTrue(physicsSystem.isTouching(box, floor));
+        tracker.lastStep = 50L;
+        physicsSystem.step(PHYSICS_DT);
+        assertEquals(2, tracker.numBegins);
+        assertEquals(0, tracker.numEnds);
+        assertEquals(1, physicsSystem.getTouchingPairCount());
+    }
+
+    @Test
+    public void collidingBoxesBeginAndEnd() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Tracker tracker = new Tracker();
+        physicsSystem.addContactListener(tracker);
+        Box left  = makeBox(1, 0.5, 0.5, new Vector2D(-1.0, 0.0), new Vector2D( 5.0, 0.0));
+        Box right = makeBox(1, 0.5, 0.5, new Vector2D( 1.0, 0.0), new Vector2D(-5.0, 0.0));
+        left.setRestitution(1.0);
+        right.setRestitution(1.0);
+        physicsSystem.addObject(left);
+        physicsSystem.addObject(right);
+
+        for (int i = 0; i < 50; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+        // They bounce off each other and fly apart.
+        assertEquals(1, tracker.numBegins);
+        assertEquals(1, tracker.numEnds);
+        assertFalse(physicsSystem.isTouching(left, right));
+
+        // Nothing is given to a listener which has been removed.
+        physicsSystem.removeContactListener(tracker);
+        physicsSystem.step(PHYSICS_DT);
+        assertEquals(50L, tracker.lastStep);
+    }
+}
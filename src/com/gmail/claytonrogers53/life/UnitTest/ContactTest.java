@@ -0,0 +1,95 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the resting contacts between objects.
+ */
+public class ContactTest {
+
+    private static final long   PHYSICS_DT = 10L;
+
+    private Box[] boxes;
+
+    /**
+     * A stack of unit boxes on an immovable floor, every other one a little off centre.
+     */
+    private PhysicsSystem makeStack(int numBoxes, int iterations, boolean isWarmStarting) {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setContactIterations(iterations);
+        physicsSystem.setContactWarmStarting(isWarmStarting);
+        Scenarios.addFloor(physicsSystem, 10.0);
+
+        boxes = new Box[numBoxes];
+        for (int i = 0; i < numBoxes; i++) {
+            Vector2D position = new Vector2D(0.02 * (i % 2), 0.5 + i);
+            boxes[i] = Scenarios.makeBox(1, 1.0 / 6.0, position, new Vector2D(), 0.0, 0.0, PolygonShape.box(0.5, 0.5));
+            physicsSystem.addObject(boxes[i]);
+        }
+        Scenarios.addGravity(physicsSystem, Arrays.asList(boxes));
+        return physicsSystem;
+    }
+
+    private static void run(PhysicsSystem physicsSystem, int numSteps) {
+        for (int i = 0; i < numSteps; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+    }
+
+    private double getTopHeight() {
+        return boxes[boxes.length - 1].getState().position.getMagY();
+    }
+
+    @Test
+    public void stackComesToRest() {
+        PhysicsSystem physicsSystem = makeStack(3, 8, true);
+        run(physicsSystem, 300);
+
+        assertEquals(3, physicsSystem.getContactCount());
+        for (Box box : boxes) {
+            assertEquals(0.0, box.getState().velocity.getMag(), 0.01);
+            assertEquals(0.0, box.getState().angle, 0.01);
+        }
+        assertEquals(2.5, getTopHeight(), 0.02);
+    }
+
+    @Test
+    public void warmStartingHoldsUpATallerStack() {
+        // The coloured order settles a stack faster than going up it in order, so fewer
+        // iterations are needed to see the difference.
+        PhysicsSystem warm = makeStack(10, 4, true);
+        run(warm, 600);
+        double warmHeight = getTopHeight();
+
+        PhysicsSystem cold = makeStack(10, 4, false);
+        run(cold, 600);
+        double coldHeight = getTopHeight();
+
+        assertEquals(9.5, warmHeight, 0.05);
+        assertTrue(coldHeight < warmHeight - 0.5);
+    }
+
+    @Test
+    public void restoredContactsGiveTheSameResult() {
+        PhysicsSystem physicsSystem = makeStack(5, 8, true);
+        run(physicsSystem, 50);
+        ByteBuffer snapshot = physicsSystem.snapshot();
+        run(physicsSystem, 50);
+        long checksum = physicsSystem.getStateChecksum();
+
+        physicsSystem.restoreSnapshot(snapshot);
+        run(physicsSystem, 50);
+
+        assertEquals(checksum, physicsSystem.getStateChecksum());
+    }
+}
@@ -0,0 +1,151 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for fast objects, which move further than their own size in one step and must
+ * not pass through thin objects.
+ */
+public class ContinuousCollisionTest {
+
+    private static final String[] COLLISION_SYSTEMS = {"TREE", "SWEEP", "SIMPLE", "REGION"};
+    private static final int NUM_POINTS = 16;
+
+    /**
+     * A ball without a shape, which finds collisions using points around its edge.
+     */
+    private static class Ball extends Box {
+        private final double radius;
+        private boolean isHit = false;
+
+        Ball(double mass, double radius, Vector2D position, Vector2D velocity, boolean isResolved) {
+            super(mass, mass * radius * radius, position, velocity, 0.0, 0.0);
+            this.radius = radius;
+            collisionRadius = radius;
+            for (int i = 0; i < NUM_POINTS; i++) {
+                collisionPoints.add(Vector2D.getVector2DMagnitudeAndDirection(radius, i * 2 * Math.PI / NUM_POINTS));
+            }
+            setIsCollidable(true);
+            isCollisionResolutionEnabled = isResolved;
+        }
+
+        @Override
+        public boolean isIntersecting(Vector2D vertex) {
+            return vertex.getMag() < radius;
+        }
+
+        @Override
+        public void notifyCollision(Collidable otherObject, boolean isCollisionResolved) {
+            super.notifyCollision(otherObject, isCollisionResolved);
+            isHit = true;
+        }
+    }
+
+    private static PhysicsSystem makePhysicsSystem(String collisionSystem) {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setCollisionSystem(collisionSystem);
+        return physicsSystem;
+    }
+
+    @Test
+    public void fastBoxHitsThinWall() {
+        for (String collisionSystem : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = makePhysicsSystem(collisionSystem);
+            // Moves 3 m a step, and the wall is only 0.1 m thick.
+            Box bullet = new Box(1, 1, new Vector2D(0.0, 0.0), new Vector2D(300.0, 0.0), 0.0, 0.0);
+            bullet.setShape(PolygonShape.box(0.1, 0.1));
+            bullet.setIsCollidable(true);
+            Box wall = new Box(1000, 1000, new Vector2D(1.5, 0.0), new Vector2D(), 0.0, 0.0);
+            wall.setShape(PolygonShape.box(0.05, 2.0));
+            wall.setIsCollidable(true);
+            physicsSystem.addObject(bullet);
+            physicsSystem.addObject(wall);
+
+            for (int i = 0; i < 5; i++) {
+                physicsSystem.step(10L);
+            }
+            assertTrue(collisionSystem, bullet.getState().position.getMagX() < 1.5);
+        }
+    }
+
+    @Test
+    public void fastBallHitsThinBall() {
+        for (String collisionSystem : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = makePhysicsSystem(collisionSystem);
+            // Moves 2 m a step, past the whole of the other ball.
+            // Only finding the hit is being tested, so it is reported without being resolved.
+            Ball bullet = new Ball(1, 0.25, new Vector2D(0.0, 0.0), new Vector2D(200.0, 0.0), false);
+            Ball target = new Ball(1, 0.3, new Vector2D(1.3, 0.0), new Vector2D(), false);
+            physicsSystem.addObject(bullet);
+            physicsSystem.addObject(target);
+
+            for (int i = 0; i < 5; i++) {
+                physicsSystem.step(10L);
+            }
+            assertTrue(collisionSystem, bullet.isHit);
+            assertTrue(collisionSystem, target.isHit);
+        }
+    }
+
+    @Test
+    public void ballsBounceOffEachOther() {
+        for (String collisionSystem : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = makePhysicsSystem(collisionSystem);
+            Ball left  = new Ball(1, 0.25, new Vector2D(0.0, 0.0), new Vector2D(20.0, 0.0), true);
+            Ball right = new Ball(1, 0.25, new Vector2D(1.0, 0.0), new Vector2D(), true);
+            physicsSystem.addObject(left);
+            physicsSystem.addObject(right);
+
+            for (int i = 0; i < 10; i++) {
+                physicsSystem.step(10L);
+            }
+            assertTrue(collisionSystem, left.isHit);
+            assertTrue(collisionSystem, right.getState().velocity.getMagX() > 0.0);
+            assertTrue(collisionSystem, left.getState().position.getMagX() < right.getState().position.getMagX());
+            double momentum = left.getState().velocity.getMagX() + right.getState().velocity.getMagX();
+            assertEquals(collisionSystem, 20.0, momentum, 1e-6);
+        }
+    }
+
+    @Test
+    public void headOnBallsDoNotSpin() {
+        for (String collisionSystem : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = makePhysicsSystem(collisionSystem);
+            // Far from the origin, so that a contact point in the wrong coordinates gives a torque.
+            Ball left  = new Ball(1, 0.25, new Vector2D(100.0, 50.0), new Vector2D(20.0, 0.0), true);
+            Ball right = new Ball(1, 0.25, new Vector2D(101.0, 50.0), new Vector2D(), true);
+            physicsSystem.addObject(left);
+            physicsSystem.addObject(right);
+
+            for (int i = 0; i < 10; i++) {
+                physicsSystem.step(10L);
+            }
+            assertTrue(collisionSystem, left.isHit);
+            assertEquals(collisionSystem, 0.0, left.getState().angularVelocity, 1e-6);
+            assertEquals(collisionSystem, 0.0, right.getState().angularVelocity, 1e-6);
+        }
+    }
+
+    @Test
+    public void slowObjectsStillCollide() {
+        for (String collisionSystem : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = makePhysicsSystem(collisionSystem);
+            Box[] pair = Scenarios.addHeadOnPair(physicsSystem);
+            Box left  = pair[0];
+            Box right = pair[1];
+
+            for (int i = 0; i < 100; i++) {
+                physicsSystem.step(10L);
+            }
+            assertTrue(collisionSystem, left.getState().position.getMagX() < right.getState().position.getMagX());
+        }
+    }
+}
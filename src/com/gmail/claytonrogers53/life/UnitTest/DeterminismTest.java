@@ -0,0 +1,56 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * UnitTest code for the deterministic mode of {@link PhysicsSystem}.
+ */
+public class DeterminismTest {
+
+    private static final int  NUM_BOXES = 30;
+    private static final int  NUM_STEPS = 200;
+    private static final long PHYSICS_DT = 10L;
+
+    /**
+     * Makes a physics system with a crowded box of objects, so that there are plenty of
+     * collisions.
+     */
+    private static PhysicsSystem makeScenario() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setDeterministic(true);
+        Scenarios.addBoxGrid(physicsSystem, NUM_BOXES, 6, 42L);
+        return physicsSystem;
+    }
+
+    private static long[] runScenario() {
+        PhysicsSystem physicsSystem = makeScenario();
+        long[] hashes = new long[NUM_STEPS];
+        for (int i = 0; i < NUM_STEPS; i++) {
+            physicsSystem.step(PHYSICS_DT);
+            hashes[i] = physicsSystem.getLastStepHash();
+        }
+        assertEquals(NUM_STEPS, physicsSystem.getStepCount());
+        return hashes;
+    }
+
+    @Test
+    public void sameHashSequence() {
+        long[] first  = runScenario();
+        long[] second = runScenario();
+        assertArrayEquals(first, second);
+        // Make sure the hash actually follows the state.
+        assertNotEquals(first[0], first[NUM_STEPS - 1]);
+    }
+
+    @Test
+    public void hashIsFinalChecksum() {
+        PhysicsSystem physicsSystem = makeScenario();
+        physicsSystem.step(PHYSICS_DT);
+        assertEquals(physicsSystem.getStateChecksum(), physicsSystem.getLastStepHash());
+    }
+}
@@ -0,0 +1,71 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the flight recorder events of the physics.
+ */
+public class FlightEventTest {
+
+    private static final long PHYSICS_DT = 10L;
+
+    @Test
+    public void stepsAndResolutionsAreRecorded() throws IOException {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        for (int side = -1; side <= 1; side += 2) {
+            Box box = new Box(1, 1, new Vector2D(side, 0.0), new Vector2D(-5.0 * side, 0.0), 0.0, 0.0);
+            box.setShape(PolygonShape.box(0.5, 0.5));
+            box.setIsCollidable(true);
+            box.setRestitution(1.0);
+            physicsSystem.addObject(box);
+        }
+        // Not recorded.
+        physicsSystem.step(PHYSICS_DT);
+
+        File file = File.createTempFile("physics", ".jfr");
+        file.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("life.PhysicsStep");
+            recording.enable("life.CollisionResolution");
+            recording.start();
+            for (int i = 0; i < 30; i++) {
+                physicsSystem.step(PHYSICS_DT);
+            }
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+
+        int numSteps = 0;
+        int numResolutions = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+            switch (event.getEventType().getName()) {
+                case "life.PhysicsStep":
+                    ++numSteps;
+                    assertEquals(2L, event.getLong("bodies"));
+                    assertTrue(event.getLong("step") > 1L);
+                    break;
+                case "life.CollisionResolution":
+                    ++numResolutions;
+                    assertEquals(0, event.getInt("firstBodyId"));
+                    assertEquals(1, event.getInt("secondBodyId"));
+                    break;
+            }
+        }
+        assertEquals(30, numSteps);
+        // They hit each other once.
+        assertEquals(1, numResolutions);
+    }
+}
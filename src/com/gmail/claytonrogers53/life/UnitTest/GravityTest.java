@@ -0,0 +1,109 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.BarnesHutGravity;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * UnitTest code for {@link BarnesHutGravity}.
+ */
+public class GravityTest {
+
+    private static final double G = 1.0;
+    private static final double SOFTENING = 0.01;
+    // Enough objects that the tree walk is split between threads.
+    private static final int NUM_OBJECTS = 1500;
+
+    private static Box[] makeObjects() {
+        Random random = new Random(5L);
+        Box[] objects = new Box[NUM_OBJECTS];
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            Vector2D position = new Vector2D(random.nextDouble() * 100.0, random.nextDouble() * 100.0);
+            objects[i] = new Box(0.5 + random.nextDouble(), 1, position, new Vector2D(), 0.0, 0.0);
+        }
+        return objects;
+    }
+
+    /**
+     * Applies the gravity to every object and returns the accelerations it causes.
+     */
+    private static double[] accelerate(BarnesHutGravity gravity) {
+        Box[] objects = makeObjects();
+        for (Box object : objects) {
+            gravity.addObject(object);
+        }
+        gravity.calculatePhysics(0.01);
+        gravity.shutdown();
+
+        double[] accelerations = new double[2 * NUM_OBJECTS];
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            accelerations[2 * i]     = objects[i].getForceX() / objects[i].getMass();
+            accelerations[2 * i + 1] = objects[i].getForceY() / objects[i].getMass();
+        }
+        return accelerations;
+    }
+
+    /** Adds up the pull of every pair of objects. */
+    private static double[] directSum() {
+        Box[] objects = makeObjects();
+        double[] accelerations = new double[2 * NUM_OBJECTS];
+        for (int i = 0; i < NUM_OBJECTS; i++) {
+            for (int j = 0; j < NUM_OBJECTS; j++) {
+                if (i == j) {
+                    continue;
+                }
+                Vector2D separation = objects[j].getState().position.sub(objects[i].getState().position);
+                double distanceSquared = separation.dotProduct(separation) + SOFTENING * SOFTENING;
+                double strength = G * objects[j].getMass() / (distanceSquared * Math.sqrt(distanceSquared));
+                accelerations[2 * i]     += strength * separation.getMagX();
+                accelerations[2 * i + 1] += strength * separation.getMagY();
+            }
+        }
+        return accelerations;
+    }
+
+    /**
+     * Finds the largest error compared to the average size of the accelerations. Some objects are
+     * pulled almost equally in every direction, so their own errors can't be compared to their
+     * own tiny accelerations.
+     */
+    private static double largestError(double[] expected, double[] actual) {
+        double largest = 0.0;
+        double totalSize = 0.0;
+        for (int i = 0; i < expected.length; i += 2) {
+            double errorX = actual[i] - expected[i];
+            double errorY = actual[i + 1] - expected[i + 1];
+            largest = Math.max(largest, Math.sqrt(errorX * errorX + errorY * errorY));
+            totalSize += Math.sqrt(expected[i] * expected[i] + expected[i + 1] * expected[i + 1]);
+        }
+        return largest / (totalSize / NUM_OBJECTS);
+    }
+
+    @Test
+    public void zeroThetaIsExact() {
+        double[] expected = directSum();
+        double[] actual = accelerate(new BarnesHutGravity(G, 0.0, SOFTENING));
+        assertEquals(0.0, largestError(expected, actual), 1e-9);
+    }
+
+    @Test
+    public void approximationIsClose() {
+        double[] expected = directSum();
+        double[] actual = accelerate(new BarnesHutGravity(G, BarnesHutGravity.DEFAULT_THETA, SOFTENING));
+        assertEquals(0.0, largestError(expected, actual), 0.05);
+    }
+
+    @Test
+    public void sameWithAnyNumberOfThreads() {
+        double[] single = accelerate(new BarnesHutGravity(G, BarnesHutGravity.DEFAULT_THETA, SOFTENING, 1));
+        double[] many = accelerate(new BarnesHutGravity(G, BarnesHutGravity.DEFAULT_THETA, SOFTENING, 4));
+        for (int i = 0; i < single.length; i++) {
+            assertEquals(Double.doubleToLongBits(single[i]), Double.doubleToLongBits(many[i]));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Integrator;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the forces and {@link Integrator}s of the physics objects.
+ */
+public class IntegratorTest {
+
+    private static final double EPS = 0.000001;
+
+    /** A box on a spring to the origin, a force which changes as the box moves. */
+    private static class SpringBox extends Box {
+        private final double stiffness;
+
+        SpringBox(double stiffness, Vector2D position) {
+            super(1, 1, position, new Vector2D(), 0.0, 0.0);
+            this.stiffness = stiffness;
+        }
+
+        @Override
+        protected void calculateAcceleration(double posX, double posY, double velX, double velY,
+                                             double angle, double angularVelocity) {
+            super.calculateAcceleration(posX, posY, velX, velY, angle, angularVelocity);
+            accelerationX -= stiffness * posX / mass;
+            accelerationY -= stiffness * posY / mass;
+        }
+    }
+
+    private static void step(Box box, double time) {
+        box.calculateNextState(time);
+        box.applyNextState();
+    }
+
+    @Test
+    public void constantForce() {
+        // A constant force gives a parabola, which the second and fourth order methods follow exactly.
+        for (Integrator integrator : new Integrator[] {Integrator.VELOCITY_VERLET, Integrator.RK4}) {
+            Box box = new Box(2, 1, new Vector2D(), new Vector2D(1.0, 0.0), 0.0, 0.0);
+            box.setIntegrator(integrator);
+            for (int i = 0; i < 10; i++) {
+                box.applyForce(0.0, -4.0, 1.0);
+                step(box, 0.1);
+                box.clearForces();
+            }
+            assertEquals(1.0,  box.getState().position.getMagX(), EPS);
+            assertEquals(-1.0, box.getState().position.getMagY(), EPS);
+            assertEquals(-2.0, box.getState().velocity.getMagY(), EPS);
+            assertEquals(0.5,  box.getState().angle, EPS);
+        }
+    }
+
+    @Test
+    public void higherOrderIsMoreAccurate() {
+        // Run a quarter of a period of a spring with unit angular frequency, ending at the origin.
+        final int numSteps = 50;
+        final double time = Math.PI / 2 / numSteps;
+        double[] errors = new double[Integrator.values().length];
+        for (Integrator integrator : Integrator.values()) {
+            SpringBox box = new SpringBox(1.0, new Vector2D(1.0, 0.0));
+            box.setIntegrator(integrator);
+            for (int i = 0; i < numSteps; i++) {
+                step(box, time);
+            }
+            errors[integrator.ordinal()] = Math.abs(box.getState().position.getMagX()) +
+                    Math.abs(box.getState().velocity.getMagX() + 1.0);
+        }
+        assertTrue(errors[Integrator.VELOCITY_VERLET.ordinal()] < errors[Integrator.SEMI_IMPLICIT_EULER.ordinal()]);
+        assertTrue(errors[Integrator.RK4.ordinal()] < errors[Integrator.VELOCITY_VERLET.ordinal()]);
+        assertEquals(0.0, errors[Integrator.RK4.ordinal()], 1e-7);
+    }
+
+    @Test
+    public void forcesLastOneStep() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box box = new Box(1, 1, new Vector2D(), new Vector2D(), 0.0, 0.0);
+        physicsSystem.addObject(box);
+        box.applyForce(10.0, 0.0, 0.0);
+        physicsSystem.step(100L);
+        physicsSystem.step(100L);
+
+        assertEquals(0.0, box.getForceX(), 0.0);
+        assertEquals(1.0, box.getState().velocity.getMagX(), EPS);
+    }
+}
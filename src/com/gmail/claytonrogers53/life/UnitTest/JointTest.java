@@ -0,0 +1,200 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Joint;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the joints between objects.
+ */
+public class JointTest {
+
+    private static final long   PHYSICS_DT = 10L;
+
+    private static PhysicsSystem makePhysicsSystem(List<Box> falling) {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Scenarios.addGravity(physicsSystem, falling);
+        return physicsSystem;
+    }
+
+    private static Box makeCeiling(PhysicsSystem physicsSystem) {
+        Box ceiling = new Box(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, new Vector2D(), new Vector2D(), 0.0, 0.0);
+        physicsSystem.addObject(ceiling);
+        return ceiling;
+    }
+
+    private static Box makeBox(PhysicsSystem physicsSystem, List<Box> falling, double x, double y) {
+        Box box = new Box(1, 1.0 / 6.0, new Vector2D(x, y), new Vector2D(), 0.0, 0.0);
+        box.setShape(PolygonShape.box(0.5, 0.5));
+        box.setIsCollidable(true);
+        physicsSystem.addObject(box);
+        falling.add(box);
+        return box;
+    }
+
+    private static void run(PhysicsSystem physicsSystem, int numSteps) {
+        for (int i = 0; i < numSteps; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+    }
+
+    private static double getDistance(Box box, double x, double y) {
+        return Math.hypot(box.getState().position.getMagX() - x, box.getState().position.getMagY() - y);
+    }
+
+    @Test
+    public void pendulumKeepsItsLength() {
+        List<Box> falling = new ArrayList<>();
+        PhysicsSystem physicsSystem = makePhysicsSystem(falling);
+        Box ceiling = makeCeiling(physicsSystem);
+        Box bob = makeBox(physicsSystem, falling, 3.0, 0.0);
+        physicsSystem.addDistanceJoint(ceiling, bob, 0.0, 0.0, 3.0, 0.0);
+
+        double lowest = 0.0;
+        for (int i = 0; i < 200; i++) {
+            physicsSystem.step(PHYSICS_DT);
+            assertEquals(3.0, getDistance(bob, 0.0, 0.0), 0.05);
+            lowest = Math.min(lowest, bob.getState().position.getMagY());
+        }
+        // It has swung down through the bottom.
+        assertEquals(-3.0, lowest, 0.05);
+    }
+
+    @Test
+    public void hingedBoxSwingsAboutThePin() {
+        List<Box> falling = new ArrayList<>();
+        PhysicsSystem physicsSystem = makePhysicsSystem(falling);
+        Box ceiling = makeCeiling(physicsSystem);
+        Box box = makeBox(physicsSystem, falling, 0.5, -0.5);
+        // Pinned by its top left corner.
+        Joint joint = physicsSystem.addHingeJoint(ceiling, box, 0.0, 0.0);
+        assertEquals(Joint.Type.HINGE, joint.getType());
+
+        double largestAngle = 0.0;
+        for (int i = 0; i < 200; i++) {
+            physicsSystem.step(PHYSICS_DT);
+            assertEquals(Math.sqrt(0.5), getDistance(box, 0.0, 0.0), 0.02);
+            largestAngle = Math.max(largestAngle, box.getState().angle);
+        }
+        // Swings until the top right corner is straight out from the pin.
+        assertEquals(Math.PI / 2, largestAngle, 0.05);
+    }
+
+    @Test
+    public void ropeOnlyPulls() {
+        List<Box> falling = new ArrayList<>();
+        PhysicsSystem physicsSystem = makePhysicsSystem(falling);
+        Box ceiling = makeCeiling(physicsSystem);
+        Box bob = makeBox(physicsSystem, falling, 0.0, -1.0);
+        physicsSystem.addRopeJoint(ceiling, bob, 0.0, 0.0, 0.0, -1.0, 2.0);
+
+        // Falls freely while the rope is slack.
+        run(physicsSystem, 20);
+        assertEquals(-1.0 - 0.5 * Scenarios.GRAVITY * 0.2 * 0.2, bob.getState().position.getMagY(), 0.02);
+
+        // And hangs from it once it is taut.
+        run(physicsSystem, 300);
+        assertEquals(-2.0, bob.getState().position.getMagY(), 0.05);
+    }
+
+    @Test
+    public void weldedBoxesTurnTogether() {
+        List<Box> falling = new ArrayList<>();
+        PhysicsSystem physicsSystem = makePhysicsSystem(falling);
+        Box left  = makeBox(physicsSystem, falling, -0.5, 0.0);
+        Box right = makeBox(physicsSystem, falling,  0.5, 0.0);
+        physicsSystem.addWeldJoint(left, right, 0.0, 0.0);
+        left.getState().angularVelocity = 2.0;
+
+        run(physicsSystem, 100);
+        assertEquals(left.getState().angle, right.getState().angle, 0.02);
+        assertEquals(1.0, Math.hypot(right.getState().position.getMagX() - left.getState().position.getMagX(),
+                right.getState().position.getMagY() - left.getState().position.getMagY()), 0.02);
+        // The spin is shared with the other box.
+        assertEquals(0.4, left.getState().angle, 0.05);
+        // The overlapping boxes aren't pushed apart, since joined objects don't collide.
+        assertEquals(0, physicsSystem.getContactCount());
+    }
+
+    @Test
+    public void removingAnObjectRemovesItsJoints() {
+        List<Box> falling = new ArrayList<>();
+        PhysicsSystem physicsSystem = makePhysicsSystem(falling);
+        Box ceiling = makeCeiling(physicsSystem);
+        Box bob = makeBox(physicsSystem, falling, 0.0, -2.0);
+        Joint joint = physicsSystem.addDistanceJoint(ceiling, bob, 0.0, 0.0, 0.0, -2.0);
+        run(physicsSystem, 10);
+        assertEquals(-2.0, bob.getState().position.getMagY(), 0.01);
+
+        physicsSystem.removeObject(bob);
+        assertEquals(0, physicsSystem.getJointCount());
+        assertFalse(joint.isActive());
+    }
+
+    /**
+     * Chains hanging from the ceiling and swinging into each other, so that there are large
+     * colours of joints as well as contacts.
+     */
+    private static PhysicsSystem makeChains(int contactThreads) {
+        List<Box> falling = new ArrayList<>();
+        PhysicsSystem physicsSystem = makePhysicsSystem(falling);
+        physicsSystem.setContactThreads(contactThreads);
+        Box ceiling = makeCeiling(physicsSystem);
+        for (int chain = 0; chain < 6; chain++) {
+            Box last = ceiling;
+            double x = 1.5 * chain;
+            for (int link = 0; link < 30; link++) {
+                // Every chain starts out sideways, so that it falls onto the ones next to it.
+                Box box = makeBox(physicsSystem, falling, x + 1.2 * link + 0.6, -1.2 * chain);
+                physicsSystem.addHingeJoint(last, box, x + 1.2 * link, -1.2 * chain);
+                last = box;
+            }
+        }
+        return physicsSystem;
+    }
+
+    @Test
+    public void colouredSolverDoesNotDependOnTheThreads() {
+        PhysicsSystem one  = makeChains(1);
+        PhysicsSystem two  = makeChains(2);
+        PhysicsSystem four = makeChains(4);
+        assertEquals(180, one.getJointCount());
+        for (int i = 0; i < 50; i++) {
+            one.step(PHYSICS_DT);
+            two.step(PHYSICS_DT);
+            four.step(PHYSICS_DT);
+            assertEquals(one.getStateChecksum(), two.getStateChecksum());
+            assertEquals(one.getStateChecksum(), four.getStateChecksum());
+        }
+        assertTrue(one.getContactCount() > 0);
+        two.setContactThreads(1);
+        assertEquals(1, two.getContactThreads());
+        one.step(PHYSICS_DT);
+        two.step(PHYSICS_DT);
+        assertEquals(one.getStateChecksum(), two.getStateChecksum());
+    }
+
+    @Test
+    public void restoredJointsGiveTheSameResult() {
+        PhysicsSystem physicsSystem = makeChains(1);
+        run(physicsSystem, 20);
+        ByteBuffer snapshot = physicsSystem.snapshot();
+        run(physicsSystem, 20);
+        long checksum = physicsSystem.getStateChecksum();
+
+        physicsSystem.restoreSnapshot(snapshot);
+        run(physicsSystem, 20);
+        assertEquals(checksum, physicsSystem.getStateChecksum());
+    }
+}
@@ -0,0 +1,137 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.CircleShape;
+import com.gmail.claytonrogers53.life.Physics.Collision;
+import com.gmail.claytonrogers53.life.Physics.Contact;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Physics.Shape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the contacts found between shapes, through the collisions made from them.
+ */
+public class NarrowphaseTest {
+
+    private static final double TIME_STEP = 0.1;
+    /** The contacts are found within the time of impact tolerance of touching. */
+    private static final double EPS = 1e-3;
+
+    private static Box makeObject(int bodyId, Shape shape, double x, double y, double velocityX,
+                                  double velocityY, double angle) {
+        Box box = new Box(1, 1, new Vector2D(x, y), new Vector2D(velocityX, velocityY), angle, 0.0);
+        box.setShape(shape);
+        box.setBodyId(bodyId);
+        return box;
+    }
+
+    /**
+     * Checks that one of the contact points is at the given place.
+     */
+    private static void assertHasPoint(Contact contact, double x, double y) {
+        for (int i = 0; i < contact.pointCount; i++) {
+            if (Math.abs(contact.pointX[i] - x) < EPS && Math.abs(contact.pointY[i] - y) < EPS) {
+                return;
+            }
+        }
+        throw new AssertionError("No contact point at (" + x + ", " + y + ").");
+    }
+
+    @Test
+    public void faceAgainstFaceGivesTwoPoints() {
+        Box still  = makeObject(1, PolygonShape.box(0.5, 0.5), 0.0, 0.0, 0.0, 0.0, 0.0);
+        Box moving = makeObject(2, PolygonShape.box(0.5, 0.5), 1.2, 0.2, -10.0, 0.0, 0.0);
+        Collision collision = new Collision(still, moving, TIME_STEP);
+
+        assertTrue(collision.isCollision());
+        assertEquals(0.02, collision.getCollisionTime(), EPS);
+        Contact contact = collision.getContact();
+        assertEquals(1.0, contact.normalX, EPS);
+        assertEquals(0.0, contact.normalY, EPS);
+        // The ends of the part of the faces which overlap.
+        assertEquals(2, contact.pointCount);
+        assertHasPoint(contact, 0.5, -0.3);
+        assertHasPoint(contact, 0.5, 0.5);
+    }
+
+    @Test
+    public void cornerAgainstFaceGivesOnePoint() {
+        Box still  = makeObject(1, PolygonShape.box(0.5, 0.5), 0.0, 0.0, 0.0, 0.0, 0.0);
+        Box moving = makeObject(2, PolygonShape.box(0.5, 0.5), 1.5, 0.0, -10.0, 0.0, Math.PI / 4.0);
+        Collision collision = new Collision(still, moving, TIME_STEP);
+
+        assertTrue(collision.isCollision());
+        assertEquals((1.0 - Math.sqrt(0.5)) / 10.0, collision.getCollisionTime(), EPS);
+        Contact contact = collision.getContact();
+        assertEquals(1.0, contact.normalX, EPS);
+        assertEquals(0.0, contact.normalY, EPS);
+        assertEquals(1, contact.pointCount);
+        assertHasPoint(contact, 0.5, 0.0);
+    }
+
+    @Test
+    public void normalPointsFromTheLowerBodyId() {
+        // The same two objects as above, found the other way round.
+        Box still  = makeObject(2, PolygonShape.box(0.5, 0.5), 0.0, 0.0, 0.0, 0.0, 0.0);
+        Box moving = makeObject(1, PolygonShape.box(0.5, 0.5), 1.5, 0.0, -10.0, 0.0, Math.PI / 4.0);
+        Collision collision = new Collision(still, moving, TIME_STEP);
+
+        assertTrue(collision.isCollision());
+        Contact contact = collision.getContact();
+        assertEquals(-1.0, contact.normalX, EPS);
+        assertEquals(0.0, contact.normalY, EPS);
+    }
+
+    @Test
+    public void circleAgainstPolygon() {
+        Box box    = makeObject(1, PolygonShape.box(0.5, 0.5), 0.0, 0.0, 0.0, 0.0, 0.0);
+        Box circle = makeObject(2, new CircleShape(0.5), 0.3, 1.5, 0.0, -10.0, 0.0);
+        Collision collision = new Collision(box, circle, TIME_STEP);
+
+        assertTrue(collision.isCollision());
+        assertEquals(0.05, collision.getCollisionTime(), EPS);
+        Contact contact = collision.getContact();
+        assertEquals(0.0, contact.normalX, EPS);
+        assertEquals(1.0, contact.normalY, EPS);
+        assertEquals(1, contact.pointCount);
+        assertHasPoint(contact, 0.3, 0.5);
+    }
+
+    @Test
+    public void circleAgainstCircle() {
+        Box first  = makeObject(1, new CircleShape(0.5), 0.0, 0.0, 0.0, 0.0, 0.0);
+        Box second = makeObject(2, new CircleShape(0.5), 1.2, 1.6, -6.0, -8.0, 0.0);
+        Collision collision = new Collision(first, second, TIME_STEP);
+
+        // The centres are 2 m apart and close at 10 m/s along the line between them.
+        assertTrue(collision.isCollision());
+        assertEquals(0.1, collision.getCollisionTime(), EPS);
+        Contact contact = collision.getContact();
+        assertEquals(0.6, contact.normalX, EPS);
+        assertEquals(0.8, contact.normalY, EPS);
+        assertEquals(1, contact.pointCount);
+    }
+
+    @Test
+    public void nearMissIsNotACollision() {
+        Box still  = makeObject(1, PolygonShape.box(0.5, 0.5), 0.0, 0.0, 0.0, 0.0, 0.0);
+        Box passer = makeObject(2, PolygonShape.box(0.5, 0.5), 1.5, 1.1, -10.0, 0.0, 0.0);
+        assertFalse(new Collision(still, passer, TIME_STEP).isCollision());
+
+        // Touching, but moving apart.
+        Box leaving = makeObject(2, PolygonShape.box(0.5, 0.5), 1.0, 0.0, 10.0, 0.0, 0.0);
+        assertFalse(new Collision(still, leaving, TIME_STEP).isCollision());
+    }
+
+    @Test
+    public void overlappingObjectsAreLeftToTheContactSolver() {
+        Box still    = makeObject(1, PolygonShape.box(0.5, 0.5), 0.0, 0.0, 0.0, 0.0, 0.0);
+        Box sunkenIn = makeObject(2, PolygonShape.box(0.5, 0.5), 0.9, 0.0, -1.0, 0.0, 0.0);
+        assertFalse(new Collision(still, sunkenIn, TIME_STEP).isCollision());
+    }
+}
@@ -0,0 +1,175 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the queued adds and removes of objects in the {@link PhysicsSystem}.
+ */
+public class ObjectCommandTest {
+
+    private static Box makeBox(double x) {
+        return new Box(1, 1, new Vector2D(x, 0.0), new Vector2D(), 0.0, 0.0);
+    }
+
+    @Test
+    public void commandsApplyInOrder() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box a = makeBox(0.0);
+        Box b = makeBox(1.0);
+        Box c = makeBox(2.0);
+        Box d = makeBox(3.0);
+        physicsSystem.addObject(a);
+        physicsSystem.addObject(b);
+        physicsSystem.addObject(c);
+        physicsSystem.removeObject(b);
+        physicsSystem.addObject(d);
+        // Nothing is applied until the objects are next looked at.
+        assertEquals(Collidable.NO_BODY_ID, a.getBodyId());
+
+        assertEquals(3, physicsSystem.getObjectCount());
+        assertEquals(0, a.getBodyId());
+        assertEquals(1, b.getBodyId());
+        assertEquals(2, c.getBodyId());
+        assertEquals(3, d.getBodyId());
+    }
+
+    @Test
+    public void duplicatesAreIgnored() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box a = makeBox(0.0);
+        physicsSystem.addObject(a);
+        physicsSystem.addObject(a);
+        physicsSystem.removeObject(makeBox(1.0));
+        assertEquals(1, physicsSystem.getObjectCount());
+
+        // Removing and adding again in one batch leaves it in once.
+        physicsSystem.step(10L);
+        physicsSystem.removeObject(a);
+        physicsSystem.addObject(a);
+        assertEquals(1, physicsSystem.getObjectCount());
+        physicsSystem.step(10L);
+    }
+
+    @Test
+    public void clearKeepsLaterAdds() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.addObject(makeBox(0.0));
+        physicsSystem.addObject(makeBox(1.0));
+        physicsSystem.clearObjects();
+        physicsSystem.addObject(makeBox(2.0));
+        assertEquals(1, physicsSystem.getObjectCount());
+    }
+
+    @Test
+    public void addsFromManyThreadsWhileStepping() throws InterruptedException {
+        final PhysicsSystem physicsSystem = new PhysicsSystem();
+        final int numThreads = 4;
+        final int boxesPerThread = 2000;
+        final Box[][] boxes = new Box[numThreads][boxesPerThread];
+
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < boxesPerThread; i++) {
+                        boxes[thread][i] = makeBox(i);
+                        physicsSystem.addObject(boxes[thread][i]);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        boolean isAnyRunning = true;
+        while (isAnyRunning) {
+            physicsSystem.step(10L);
+            isAnyRunning = false;
+            for (Thread thread : threads) {
+                isAnyRunning |= thread.isAlive();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(numThreads * boxesPerThread, physicsSystem.getObjectCount());
+        boolean[] isIdUsed = new boolean[numThreads * boxesPerThread];
+        for (Box[] threadBoxes : boxes) {
+            for (Box box : threadBoxes) {
+                assertTrue(box.getBodyId() >= 0);
+                isIdUsed[box.getBodyId()] = true;
+            }
+        }
+        for (boolean isUsed : isIdUsed) {
+            assertTrue(isUsed);
+        }
+    }
+
+    /**
+     * Removes whatever it hits and adds a new box in its place, from the collision notification.
+     */
+    private static final class Eater extends Box {
+        final PhysicsSystem physicsSystem;
+        final Box spawn = makeBox(10.0);
+        int countDuringStep = -1;
+        final List<Collidable> foundDuringStep = new ArrayList<>();
+
+        Eater(PhysicsSystem physicsSystem) {
+            super(1, 1, new Vector2D(-1.0, 0.0), new Vector2D(5.0, 0.0), 0.0, 0.0);
+            this.physicsSystem = physicsSystem;
+        }
+
+        @Override
+        public void notifyCollision(Collidable otherObject, boolean isCollisionResolved) {
+            if (countDuringStep >= 0) {return;}
+            physicsSystem.removeObject(otherObject);
+            physicsSystem.addObject(spawn);
+            countDuringStep = physicsSystem.getObjectCount();
+            physicsSystem.queryAABB(-5.0, -5.0, 5.0, 5.0, -1, foundDuringStep);
+        }
+    }
+
+    @Test
+    public void commandsFromCollisionsWaitForTheEndOfTheStep() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Eater eater = new Eater(physicsSystem);
+        Box food = new Box(1, 1, new Vector2D(1.0, 0.0), new Vector2D(-5.0, 0.0), 0.0, 0.0);
+        for (Box box : new Box[] {eater, food}) {
+            box.setShape(PolygonShape.box(0.5, 0.5));
+            box.setIsCollidable(true);
+            physicsSystem.addObject(box);
+        }
+        for (int i = 0; i < 20 && eater.countDuringStep < 0; i++) {
+            physicsSystem.step(10L);
+        }
+
+        // Nothing changed in the middle of the step.
+        assertEquals(2, eater.countDuringStep);
+        assertTrue(eater.foundDuringStep.contains(food));
+
+        // And everything is applied once it is over.
+        assertEquals(2, physicsSystem.getObjectCount());
+        List<Collidable> found = new ArrayList<>();
+        physicsSystem.queryAABB(-20.0, -20.0, 20.0, 20.0, -1, found);
+        assertFalse(found.contains(food));
+        assertTrue(found.contains(eater.spawn));
+        physicsSystem.step(10L);
+        found.clear();
+        physicsSystem.queryAABB(-20.0, -20.0, 20.0, 20.0, -1, found);
+        assertFalse(found.contains(food));
+        assertEquals(2, found.size());
+    }
+}
@@ -0,0 +1,107 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.PhysicsStats;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the step statistics and the trace.
+ */
+public class PhysicsStatsTest {
+
+    private static final long PHYSICS_DT = 10L;
+
+    /**
+     * Two boxes which run into each other and bounce apart.
+     */
+    private static PhysicsSystem makeCollidingBoxes() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        for (int side = -1; side <= 1; side += 2) {
+            Box box = new Box(1, 1, new Vector2D(side, 0.0), new Vector2D(-5.0 * side, 0.0), 0.0, 0.0);
+            box.setShape(PolygonShape.box(0.5, 0.5));
+            box.setIsCollidable(true);
+            box.setRestitution(1.0);
+            physicsSystem.addObject(box);
+        }
+        return physicsSystem;
+    }
+
+    @Test
+    public void stepsAreMeasured() {
+        PhysicsSystem physicsSystem = makeCollidingBoxes();
+        for (int i = 0; i < 30; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+
+        PhysicsStats stats = physicsSystem.getStats();
+        assertEquals(30L, stats.getStep());
+        assertEquals(30L, stats.getStepCount());
+        assertEquals(2L, stats.getLastCount(PhysicsStats.Counter.BODIES));
+        assertEquals(60L, stats.getTotalCount(PhysicsStats.Counter.BODIES));
+        // They hit each other once.
+        assertEquals(1L, stats.getTotalCount(PhysicsStats.Counter.RESOLUTIONS));
+        assertTrue(stats.getTotalCount(PhysicsStats.Counter.COLLISIONS) >= 1L);
+        assertTrue(stats.getTotalCount(PhysicsStats.Counter.CANDIDATE_PAIRS) >= 1L);
+
+        long sum = 0L;
+        for (PhysicsStats.Phase phase : PhysicsStats.Phase.values()) {
+            assertTrue(stats.getLastNanos(phase) >= 0L);
+            sum += stats.getLastNanos(phase);
+        }
+        assertEquals(sum, stats.getLastStepNanos());
+        assertTrue(stats.getMaxStepNanos() >= stats.getLastStepNanos());
+
+        physicsSystem.resetStats();
+        stats = physicsSystem.getStats();
+        assertEquals(0L, stats.getStepCount());
+        assertEquals(0L, stats.getTotalCount(PhysicsStats.Counter.BODIES));
+        assertEquals(2L, stats.getLastCount(PhysicsStats.Counter.BODIES));
+    }
+
+    @Test
+    public void traceHasEveryStep() throws IOException {
+        File file = File.createTempFile("physics", ".trace");
+        file.deleteOnExit();
+        PhysicsSystem physicsSystem = makeCollidingBoxes();
+        physicsSystem.step(PHYSICS_DT);
+        assertTrue(physicsSystem.startTrace(file.getPath()));
+        for (int i = 0; i < 20; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+        physicsSystem.stopTrace();
+        // Not traced.
+        physicsSystem.step(PHYSICS_DT);
+
+        int numPhases   = PhysicsStats.Phase.values().length;
+        int numCounters = PhysicsStats.Counter.values().length;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            assertEquals(0x4C545243, in.readInt());
+            assertEquals(1, in.readShort());
+            assertEquals(numPhases, in.readByte());
+            assertEquals(numCounters, in.readByte());
+            for (long step = 2; step <= 21; step++) {
+                assertEquals(step, in.readLong());
+                for (int i = 0; i < numPhases; i++) {
+                    assertTrue(in.readLong() >= 0L);
+                }
+                // The bodies are the first counter.
+                assertEquals(2L, in.readLong());
+                for (int i = 1; i < numCounters; i++) {
+                    in.readLong();
+                }
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.HeadlessResult;
+import com.gmail.claytonrogers53.life.Physics.Joint;
+import com.gmail.claytonrogers53.life.Physics.PhysicsRecorder;
+import com.gmail.claytonrogers53.life.Physics.PhysicsReplayer;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * UnitTest code for {@link PhysicsRecorder} and {@link PhysicsReplayer}.
+ */
+public class RecordingTest {
+
+    private static final Random random = new Random(3L);
+
+    private static Box makeBox(Vector2D position) {
+        Vector2D velocity = Vector2D.getVector2DMagnitudeAndDirection(3.0, random.nextDouble() * 2 * Math.PI);
+        Box box = new Box(1, 1, position, velocity, random.nextDouble(), random.nextDouble() - 0.5);
+        box.setShape(PolygonShape.box(0.5, 0.5));
+        box.setIsCollidable(true);
+        return box;
+    }
+
+    private static void run(PhysicsSystem physicsSystem, int numSteps) {
+        for (int i = 0; i < numSteps; i++) {
+            physicsSystem.step(physicsSystem.getPhysicsTimeDelta());
+        }
+    }
+
+    @Test
+    public void replayMatchesRecording() throws IOException {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setPhysicsTimeDelta(10L);
+        Box[] boxes = new Box[12];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = makeBox(new Vector2D((i % 4) * 1.5, (i / 4) * 1.5));
+            physicsSystem.addObject(boxes[i]);
+        }
+        // The recording can start part way through a run.
+        run(physicsSystem, 20);
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        PhysicsRecorder recorder = new PhysicsRecorder(recording);
+        physicsSystem.startRecording(recorder);
+        run(physicsSystem, 30);
+        physicsSystem.addObject(makeBox(new Vector2D(-3.0, 0.0)));
+        physicsSystem.applyImpulse(boxes[3], new Vector2D(2.0, -1.0), 0.5);
+        run(physicsSystem, 10);
+        physicsSystem.setPhysicsTimeDelta(5L);
+        run(physicsSystem, 20);
+        physicsSystem.removeObject(boxes[5]);
+        run(physicsSystem, 10);
+        physicsSystem.stopRecording();
+        assertFalse(recorder.isFailed());
+
+        PhysicsSystem replaySystem = new PhysicsSystem();
+        PhysicsReplayer replayer = new PhysicsReplayer(new ByteArrayInputStream(recording.toByteArray()),
+                new PhysicsReplayer.ObjectResolver() {
+                    @Override
+                    public Collidable createObject(int bodyId, String className) {
+                        return makeBox(new Vector2D());
+                    }
+                });
+        HeadlessResult result = replayer.replay(replaySystem);
+
+        assertEquals(70, result.getStepCount());
+        assertEquals(physicsSystem.getStepCount(), replaySystem.getStepCount());
+        assertEquals(physicsSystem.getObjectCount(), replaySystem.getObjectCount());
+        assertEquals(physicsSystem.getStateChecksum(), result.getChecksum());
+    }
+
+    @Test
+    public void jointsAreReplayed() throws IOException {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setPhysicsTimeDelta(10L);
+        Box[] boxes = new Box[8];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = makeBox(new Vector2D((i % 4) * 1.5, (i / 4) * 1.5));
+            physicsSystem.addObject(boxes[i]);
+        }
+        // Joints from before the recording starts are in the recording too.
+        Joint hinge = physicsSystem.addHingeJoint(boxes[0], boxes[1], 0.75, 0.0);
+        physicsSystem.addRopeJoint(boxes[2], boxes[3], 3.0, 0.0, 4.5, 0.0, 2.0);
+        run(physicsSystem, 10);
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        PhysicsRecorder recorder = new PhysicsRecorder(recording);
+        physicsSystem.startRecording(recorder);
+        run(physicsSystem, 20);
+        physicsSystem.addWeldJoint(boxes[4], boxes[5], 0.75, 1.5);
+        physicsSystem.addDistanceJoint(boxes[6], boxes[7], 3.0, 1.5, 4.5, 1.5);
+        run(physicsSystem, 20);
+        // Moves the last joint into the slot of the hinge.
+        physicsSystem.removeJoint(hinge);
+        run(physicsSystem, 20);
+        // Takes its joint with it.
+        physicsSystem.removeObject(boxes[4]);
+        run(physicsSystem, 20);
+        physicsSystem.stopRecording();
+        assertFalse(recorder.isFailed());
+
+        PhysicsSystem replaySystem = new PhysicsSystem();
+        PhysicsReplayer replayer = new PhysicsReplayer(new ByteArrayInputStream(recording.toByteArray()),
+                new PhysicsReplayer.ObjectResolver() {
+                    @Override
+                    public Collidable createObject(int bodyId, String className) {
+                        return makeBox(new Vector2D());
+                    }
+                });
+        HeadlessResult result = replayer.replay(replaySystem);
+
+        assertEquals(2, physicsSystem.getJointCount());
+        assertEquals(physicsSystem.getJointCount(), replaySystem.getJointCount());
+        assertEquals(physicsSystem.getStateChecksum(), result.getChecksum());
+    }
+
+    @Test
+    public void forcesAreReplayed() throws IOException {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setPhysicsTimeDelta(10L);
+        Box[] boxes = new Box[6];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = makeBox(new Vector2D((i % 3) * 1.5, (i / 3) * 1.5));
+            physicsSystem.addObject(boxes[i]);
+        }
+        Scenarios.addGravity(physicsSystem, Arrays.asList(boxes));
+        run(physicsSystem, 10);
+
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        PhysicsRecorder recorder = new PhysicsRecorder(recording);
+        physicsSystem.startRecording(recorder);
+        run(physicsSystem, 20);
+        physicsSystem.applyForce(boxes[1], new Vector2D(40.0, 25.0), -3.0);
+        run(physicsSystem, 20);
+        physicsSystem.stopRecording();
+        assertFalse(recorder.isFailed());
+
+        // The replay has the same gravity, whose forces must not be applied twice.
+        PhysicsSystem replaySystem = new PhysicsSystem();
+        final Box[] replayBoxes = new Box[boxes.length];
+        Scenarios.addGravity(replaySystem, Arrays.asList(replayBoxes));
+        PhysicsReplayer replayer = new PhysicsReplayer(new ByteArrayInputStream(recording.toByteArray()),
+                new PhysicsReplayer.ObjectResolver() {
+                    @Override
+                    public Collidable createObject(int bodyId, String className) {
+                        replayBoxes[bodyId] = makeBox(new Vector2D());
+                        return replayBoxes[bodyId];
+                    }
+                });
+        HeadlessResult result = replayer.replay(replaySystem);
+
+        assertEquals(physicsSystem.getStateChecksum(), result.getChecksum());
+    }
+
+    /**
+     * A stack of boxes resting on a floor, so that there are contacts for the solver settings to
+     * act on. The floor is body 0 and the boxes come after it.
+     */
+    private static Box makeStackBox(int bodyId) {
+        if (bodyId == 0) {
+            return Scenarios.makeBox(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, new Vector2D(0.0, -0.5),
+                    new Vector2D(), 0.0, 0.0, PolygonShape.box(10.0, 0.5));
+        }
+        Vector2D position = new Vector2D(0.02 * (bodyId % 2), bodyId - 0.5);
+        return Scenarios.makeBox(1, 1.0 / 6.0, position, new Vector2D(), 0.0, 0.0, PolygonShape.box(0.5, 0.5));
+    }
+
+    @Test
+    public void contactSettingsAreReplayed() throws IOException {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setPhysicsTimeDelta(10L);
+        Box[] boxes = new Box[6];
+        physicsSystem.addObject(makeStackBox(0));
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = makeStackBox(i + 1);
+            physicsSystem.addObject(boxes[i]);
+        }
+        Scenarios.addGravity(physicsSystem, Arrays.asList(boxes));
+        physicsSystem.setContactIterations(3);
+        run(physicsSystem, 10);
+
+        // The settings from before the recording are in its snapshot, the later ones are records.
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        PhysicsRecorder recorder = new PhysicsRecorder(recording);
+        physicsSystem.startRecording(recorder);
+        run(physicsSystem, 20);
+        physicsSystem.setContactWarmStarting(false);
+        run(physicsSystem, 20);
+        physicsSystem.setContactIterations(1);
+        run(physicsSystem, 20);
+        physicsSystem.stopRecording();
+        assertFalse(recorder.isFailed());
+
+        PhysicsSystem replaySystem = new PhysicsSystem();
+        final Box[] replayBoxes = new Box[boxes.length];
+        Scenarios.addGravity(replaySystem, Arrays.asList(replayBoxes));
+        PhysicsReplayer replayer = new PhysicsReplayer(new ByteArrayInputStream(recording.toByteArray()),
+                new PhysicsReplayer.ObjectResolver() {
+                    @Override
+                    public Collidable createObject(int bodyId, String className) {
+                        Box box = makeStackBox(bodyId);
+                        if (bodyId > 0) {
+                            replayBoxes[bodyId - 1] = box;
+                        }
+                        return box;
+                    }
+                });
+        HeadlessResult result = replayer.replay(replaySystem);
+
+        assertEquals(1, replaySystem.getContactIterations());
+        assertEquals(physicsSystem.getStateChecksum(), result.getChecksum());
+    }
+}
@@ -0,0 +1,97 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Physics.CircleShape;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.CollisionFilter;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the region collision system, which splits the world into strips.
+ */
+public class RegionCollisionTest {
+
+    /**
+     * A crowd of boxes flying around in every direction, along with a few large balls which reach
+     * over the borders of the strips. The crowd starts bunched up on the left and spreads out, so
+     * the objects change strips and the borders have to be moved.
+     */
+    private static PhysicsSystem makeScenario(String collisionSystem) {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setCollisionSystem(collisionSystem);
+        Random random = new Random(5L);
+        for (int i = 0; i < 1200; i++) {
+            Vector2D position = new Vector2D((i % 40) * 1.5, (i / 40) * 1.5);
+            Vector2D velocity = Vector2D.getVector2DMagnitudeAndDirection(5.0 + 10.0 * random.nextDouble(),
+                    random.nextDouble() * 2 * Math.PI);
+            if (i % 3 == 0) {
+                // Drifts off to the right, so that the left strips end up with fewer objects.
+                velocity.set(Math.abs(velocity.getMagX()) + 20.0, velocity.getMagY());
+            }
+            physicsSystem.addObject(Scenarios.makeBox(1, 1, position, velocity, random.nextDouble(),
+                    random.nextDouble() - 0.5, i % 5 == 0 ? new CircleShape(0.4) : PolygonShape.box(0.5, 0.3)));
+        }
+        for (int i = 0; i < 4; i++) {
+            physicsSystem.addObject(Scenarios.makeBox(1, 200, new Vector2D(15.0 * i + 5.0, -10.0),
+                    new Vector2D(0.0, 4.0), 0.0, 0.0, new CircleShape(6.0)));
+        }
+        return physicsSystem;
+    }
+
+    @Test
+    public void regionMatchesTree() {
+        PhysicsSystem tree = makeScenario("TREE");
+        PhysicsSystem region = makeScenario("REGION");
+        for (int i = 0; i < 6; i++) {
+            tree.runHeadless(10L);
+            region.runHeadless(10L);
+            assertEquals(tree.getStateChecksum(), region.getStateChecksum());
+        }
+        // The objects should actually have met.
+        assertTrue(tree.getContactCount() > 0 || tree.getSleepingObjectCount() < tree.getObjectCount());
+    }
+
+    @Test
+    public void regionMatchesTreeWithFilter() {
+        CollisionFilter filter = new CollisionFilter() {
+            @Override
+            public boolean shouldCollide(Collidable first, Collidable second) {
+                return (first.getBodyId() + second.getBodyId()) % 3 != 0;
+            }
+        };
+        PhysicsSystem tree = makeScenario("TREE");
+        PhysicsSystem region = makeScenario("REGION");
+        tree.setCollisionFilter(filter);
+        region.setCollisionFilter(filter);
+        tree.runHeadless(30L);
+        region.runHeadless(30L);
+        assertEquals(tree.getStateChecksum(), region.getStateChecksum());
+    }
+
+    @Test
+    public void switchingKeepsTheObjects() {
+        PhysicsSystem tree = makeScenario("TREE");
+        PhysicsSystem region = makeScenario("TREE");
+        tree.runHeadless(15L);
+        region.runHeadless(15L);
+        region.setCollisionSystem("REGION");
+        tree.runHeadless(15L);
+        region.runHeadless(15L);
+        assertEquals(tree.getStateChecksum(), region.getStateChecksum());
+
+        List<Collidable> treeResults = new ArrayList<>();
+        List<Collidable> regionResults = new ArrayList<>();
+        tree.queryAABB(0.0, 0.0, 30.0, 30.0, Collidable.ALL_CATEGORIES, treeResults);
+        region.queryAABB(0.0, 0.0, 30.0, 30.0, Collidable.ALL_CATEGORIES, regionResults);
+        assertEquals(treeResults.size(), regionResults.size());
+    }
+}
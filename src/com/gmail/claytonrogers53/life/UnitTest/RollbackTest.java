@@ -0,0 +1,120 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PhysicsThing;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for rolling back and resimulating the {@link PhysicsSystem}.
+ */
+public class RollbackTest {
+
+    private static final long PHYSICS_DT = 10L;
+    private static final int  HISTORY_LENGTH = 16;
+
+    private Box[] boxes;
+
+    private PhysicsSystem makeScenario() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setHistoryLength(HISTORY_LENGTH);
+        boxes = Scenarios.addBoxGrid(physicsSystem, 16, 4, 11L);
+        return physicsSystem;
+    }
+
+    private static void run(PhysicsSystem physicsSystem, int numSteps) {
+        for (int i = 0; i < numSteps; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+    }
+
+    @Test
+    public void lateInputMatchesOnTimeInput() {
+        final PhysicsSystem onTime = makeScenario();
+        run(onTime, 30);
+        onTime.applyImpulse(boxes[2], new Vector2D(1.0, 2.0), -0.3);
+        run(onTime, 10);
+
+        final PhysicsSystem late = makeScenario();
+        run(late, 40);
+        boolean isApplied = late.applyLateInput(30, new Runnable() {
+            @Override
+            public void run() {
+                late.applyImpulse(boxes[2], new Vector2D(1.0, 2.0), -0.3);
+            }
+        });
+
+        assertTrue(isApplied);
+        assertEquals(40, late.getStepCount());
+        assertEquals(onTime.getStateChecksum(), late.getStateChecksum());
+    }
+
+    @Test
+    public void rollbackAndResimulate() {
+        PhysicsSystem physicsSystem = makeScenario();
+        run(physicsSystem, 20);
+        long checksum = physicsSystem.getStateChecksum();
+        run(physicsSystem, 10);
+        long checksumAtEnd = physicsSystem.getStateChecksum();
+
+        assertTrue(physicsSystem.rollbackTo(20));
+        assertEquals(checksum, physicsSystem.getStateChecksum());
+        assertEquals(10, physicsSystem.resimulateTo(30));
+        assertEquals(checksumAtEnd, physicsSystem.getStateChecksum());
+    }
+
+    @Test
+    public void resimulateLeavesTheObjectsUnlocked() {
+        final PhysicsSystem physicsSystem = makeScenario();
+        final boolean[] isChecking = {false};
+        final boolean[] didCount = {true};
+        physicsSystem.addPhysicsThing(new PhysicsThing() {
+            @Override
+            public void calculatePhysics(double physicsDT_seconds) {
+                if (!isChecking[0]) {
+                    return;
+                }
+                // The physics things may wait on another thread which looks at the objects.
+                Thread countThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        physicsSystem.getObjectCount();
+                    }
+                });
+                countThread.setDaemon(true);
+                countThread.start();
+                try {
+                    countThread.join(5000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                didCount[0] &= !countThread.isAlive();
+            }
+        });
+        run(physicsSystem, 20);
+
+        isChecking[0] = true;
+        assertTrue(physicsSystem.applyLateInput(18, new Runnable() {
+            @Override
+            public void run() {
+                physicsSystem.applyImpulse(boxes[0], new Vector2D(1.0, 0.0), 0.0);
+            }
+        }));
+        assertEquals(20, physicsSystem.getStepCount());
+        assertTrue(didCount[0]);
+    }
+
+    @Test
+    public void tooOld() {
+        PhysicsSystem physicsSystem = makeScenario();
+        run(physicsSystem, HISTORY_LENGTH + 5);
+        assertEquals(5, physicsSystem.getOldestHistoryStep());
+        assertFalse(physicsSystem.rollbackTo(4));
+        assertTrue(physicsSystem.rollbackTo(5));
+    }
+}
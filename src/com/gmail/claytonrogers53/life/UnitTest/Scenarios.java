@@ -0,0 +1,138 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PhysicsThing;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Physics.Shape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The worlds which the physics unit tests are run on, so that each test doesn't build its own
+ * copy of them.
+ */
+final class Scenarios {
+
+    /** The pull of the gravity added by {@link #addGravity} (m/s^2). */
+    static final double GRAVITY = 10.0;
+
+    private Scenarios() {
+    }
+
+    /**
+     * Makes a box which collides using its shape.
+     *
+     * @param mass
+     *        The mass of the box (kg), infinite for one which can't be moved.
+     *
+     * @param momentOfInertia
+     *        The moment of inertia of the box (kg*m^2).
+     *
+     * @param position
+     *        Where the box starts (m).
+     *
+     * @param velocity
+     *        How fast the box starts moving (m/s).
+     *
+     * @param angle
+     *        The angle the box starts at (rad).
+     *
+     * @param angularVelocity
+     *        How fast the box starts spinning (rad/s).
+     *
+     * @param shape
+     *        The shape of the box.
+     *
+     * @return The box, which hasn't been added to a physics system.
+     */
+    static Box makeBox(double mass, double momentOfInertia, Vector2D position, Vector2D velocity,
+                       double angle, double angularVelocity, Shape shape) {
+        Box box = new Box(mass, momentOfInertia, position, velocity, angle, angularVelocity);
+        box.setShape(shape);
+        box.setIsCollidable(true);
+        return box;
+    }
+
+    /**
+     * Adds a grid of 1 m boxes, 1.5 m apart, each starting at a random angle and moving at 3 m/s
+     * in a random direction while spinning, so that they soon start hitting each other.
+     *
+     * @param physicsSystem
+     *        Where the boxes are added.
+     *
+     * @param numBoxes
+     *        The number of boxes.
+     *
+     * @param columns
+     *        The number of boxes in each row of the grid.
+     *
+     * @param seed
+     *        Where the random directions, angles and spins come from.
+     *
+     * @return The boxes, in the order they were added.
+     */
+    static Box[] addBoxGrid(PhysicsSystem physicsSystem, int numBoxes, int columns, long seed) {
+        Random random = new Random(seed);
+        Box[] boxes = new Box[numBoxes];
+        for (int i = 0; i < numBoxes; i++) {
+            Vector2D position = new Vector2D((i % columns) * 1.5, (i / columns) * 1.5);
+            Vector2D velocity = Vector2D.getVector2DMagnitudeAndDirection(3.0, random.nextDouble() * 2 * Math.PI);
+            boxes[i] = makeBox(1, 1, position, velocity, random.nextDouble(), random.nextDouble() - 0.5,
+                    PolygonShape.box(0.5, 0.5));
+            physicsSystem.addObject(boxes[i]);
+        }
+        return boxes;
+    }
+
+    /**
+     * Adds two 1 m boxes 2 m apart, moving straight at each other at 2 m/s.
+     *
+     * @return The left box and then the right one.
+     */
+    static Box[] addHeadOnPair(PhysicsSystem physicsSystem) {
+        Box[] pair = {
+                makeBox(1, 1, new Vector2D(-1.0, 0.0), new Vector2D( 2.0, 0.0), 0.0, 0.0, PolygonShape.box(0.5, 0.5)),
+                makeBox(1, 1, new Vector2D( 1.0, 0.0), new Vector2D(-2.0, 0.0), 0.0, 0.0, PolygonShape.box(0.5, 0.5))
+        };
+        for (Box box : pair) {
+            physicsSystem.addObject(box);
+        }
+        return pair;
+    }
+
+    /**
+     * Adds a floor which can't be moved, with its top along y = 0.
+     *
+     * @param halfWidth
+     *        Half the width of the floor (m).
+     *
+     * @return The floor.
+     */
+    static Box addFloor(PhysicsSystem physicsSystem, double halfWidth) {
+        Box floor = makeBox(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, new Vector2D(0.0, -0.5),
+                new Vector2D(), 0.0, 0.0, PolygonShape.box(halfWidth, 0.5));
+        physicsSystem.addObject(floor);
+        return floor;
+    }
+
+    /**
+     * Adds a physics thing which pulls the boxes down with {@link #GRAVITY} every step. The forces
+     * are applied through the physics system, like a game would.
+     *
+     * @param boxes
+     *        The boxes to pull. Read every step, so boxes may be added to it later.
+     */
+    static void addGravity(final PhysicsSystem physicsSystem, final List<Box> boxes) {
+        physicsSystem.addPhysicsThing(new PhysicsThing() {
+            @Override
+            public void calculatePhysics(double physicsDT_seconds) {
+                for (Box box : boxes) {
+                    physicsSystem.applyForce(box, new Vector2D(0.0, -GRAVITY * box.getMass()), 0.0);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,160 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.HeadlessResult;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PhysicsThing;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Physics.SimulationHost;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the {@link SimulationHost}, which runs many physics systems on one pool.
+ */
+public class SimulationHostTest {
+
+    /**
+     * A few colliding boxes, placed from the given seed.
+     */
+    private static PhysicsSystem makeWorld(long seed) {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setPhysicsTimeDelta(10L);
+        Scenarios.addBoxGrid(physicsSystem, 20, 5, seed);
+        return physicsSystem;
+    }
+
+    @Test
+    public void worldsMatchRunningAlone() {
+        SimulationHost host = new SimulationHost(3);
+        long totalSteps = 0;
+        for (int i = 0; i < 8; i++) {
+            long budget = 50L + 25L * i;
+            host.addWorld(makeWorld(i), budget);
+            totalSteps += budget;
+        }
+
+        HeadlessResult result = host.runToBudget();
+        host.shutdown();
+        assertEquals(totalSteps, result.getStepCount());
+        assertEquals(totalSteps * 20, result.getBodyStepCount());
+
+        for (int i = 0; i < 8; i++) {
+            SimulationHost.World world = host.getWorlds().get(i);
+            HeadlessResult alone = makeWorld(i).runHeadless(world.getStepBudget());
+            assertEquals(alone.getChecksum(), world.getLastResult().getChecksum());
+            assertEquals(alone.getChecksum(), world.getPhysicsSystem().getStateChecksum());
+            assertTrue(world.isFinished());
+        }
+    }
+
+    @Test
+    public void runsStopAtBudget() {
+        SimulationHost host = new SimulationHost(2);
+        SimulationHost.World world = host.addWorld(makeWorld(1L), 100L);
+        SimulationHost.World endless = host.addWorld(makeWorld(2L), SimulationHost.UNLIMITED_STEPS);
+
+        long[] expected = {30L, 60L, 90L, 100L, 100L};
+        for (long steps : expected) {
+            host.run(30L);
+            assertEquals(steps, world.getStepCount());
+        }
+        assertEquals(0L, world.getLastResult().getStepCount());
+        assertEquals(150L, endless.getStepCount());
+
+        endless.finish();
+        assertEquals(0L, host.runToBudget().getStepCount());
+        host.shutdown();
+    }
+
+    @Test
+    public void worldsCanFinishThemselves() {
+        SimulationHost host = new SimulationHost(2);
+        host.setSliceSteps(10);
+        PhysicsSystem physicsSystem = makeWorld(3L);
+        final SimulationHost.World world = host.addWorld(physicsSystem, SimulationHost.UNLIMITED_STEPS);
+        final int[] numCalls = new int[1];
+        physicsSystem.addPhysicsThing(new PhysicsThing() {
+            @Override
+            public void calculatePhysics(double deltaT) {
+                if (++numCalls[0] == 45) {
+                    world.finish();
+                }
+            }
+        });
+
+        host.run(SimulationHost.UNLIMITED_STEPS);
+        host.shutdown();
+        // The world stops at the end of the slice it was finished in.
+        assertEquals(50L, world.getStepCount());
+        assertTrue(world.isFinished());
+    }
+
+    /**
+     * A long row of boxes resting on a floor, enough contacts for the contact solver to split them
+     * between threads.
+     */
+    private static PhysicsSystem makeRow() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        physicsSystem.setPhysicsTimeDelta(10L);
+        physicsSystem.setContactThreads(4);
+        Scenarios.addFloor(physicsSystem, 200.0);
+        Box[] row = new Box[150];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = Scenarios.makeBox(1, 1.0 / 6.0, new Vector2D(-150.0 + 2.0 * i, 0.5), new Vector2D(), 0.0, 0.0,
+                    PolygonShape.box(0.5, 0.5));
+            physicsSystem.addObject(row[i]);
+        }
+        Scenarios.addGravity(physicsSystem, Arrays.asList(row));
+        return physicsSystem;
+    }
+
+    @Test
+    public void worldsSplitTheirOwnWorkOnThePool() {
+        SimulationHost host = new SimulationHost(2);
+        for (int i = 0; i < 3; i++) {
+            PhysicsSystem physicsSystem = makeRow();
+            physicsSystem.setCollisionSystem(i == 0 ? "TREE" : "REGION");
+            host.addWorld(physicsSystem, 60L);
+        }
+
+        host.runToBudget();
+        host.shutdown();
+        for (int i = 0; i < 3; i++) {
+            SimulationHost.World world = host.getWorlds().get(i);
+            HeadlessResult alone = makeRow().runHeadless(60L);
+            assertEquals(alone.getChecksum(), world.getPhysicsSystem().getStateChecksum());
+            assertTrue(world.getPhysicsSystem().getContactCount() > 0);
+        }
+    }
+
+    @Test
+    public void worldsShareThePoolThreads() {
+        final int parallelism = 2;
+        SimulationHost host = new SimulationHost(parallelism);
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        for (int i = 0; i < 32; i++) {
+            PhysicsSystem physicsSystem = makeWorld(i);
+            physicsSystem.addPhysicsThing(new PhysicsThing() {
+                @Override
+                public void calculatePhysics(double deltaT) {
+                    threads.add(Thread.currentThread());
+                }
+            });
+            host.addWorld(physicsSystem, 20L);
+        }
+
+        host.runToBudget();
+        host.shutdown();
+        assertTrue(threads.size() <= parallelism);
+        assertTrue(!threads.contains(Thread.currentThread()));
+    }
+}
@@ -0,0 +1,98 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for objects falling asleep and waking up.
+ */
+public class SleepTest {
+
+    private static final long     PHYSICS_DT        = 10L;
+    private static final String[] COLLISION_SYSTEMS = {"TREE", "SWEEP", "SIMPLE", "REGION"};
+
+    private static Box makeBox(double x, double velocityX) {
+        Box box = new Box(1, 1, new Vector2D(x, 0.0), new Vector2D(velocityX, 0.0), 0.0, 0.0);
+        box.setShape(PolygonShape.box(0.5, 0.5));
+        box.setIsCollidable(true);
+        return box;
+    }
+
+    private static void run(PhysicsSystem physicsSystem, int numSteps) {
+        for (int i = 0; i < numSteps; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+    }
+
+    @Test
+    public void restingObjectsFallAsleep() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box still    = makeBox(0.0, 0.0);
+        Box creeping = makeBox(3.0, 0.005);
+        Box moving   = makeBox(6.0, 1.0);
+        physicsSystem.addObject(still);
+        physicsSystem.addObject(creeping);
+        physicsSystem.addObject(moving);
+
+        // Sleeping takes half a second of resting.
+        run(physicsSystem, 40);
+        assertEquals(0, physicsSystem.getSleepingObjectCount());
+        run(physicsSystem, 20);
+        assertTrue(still.isSleeping());
+        assertTrue(creeping.isSleeping());
+        assertFalse(moving.isSleeping());
+        assertEquals(2, physicsSystem.getSleepingObjectCount());
+        assertEquals(1, physicsSystem.getAwakeObjectCount());
+
+        // A sleeping object is stopped where it is.
+        double x = creeping.getState().position.getMagX();
+        run(physicsSystem, 20);
+        assertEquals(x, creeping.getState().position.getMagX(), 0.0);
+        assertEquals(0.0, creeping.getState().velocity.getMagX(), 0.0);
+    }
+
+    @Test
+    public void aCollisionWakesASleepingObject() {
+        for (String name : COLLISION_SYSTEMS) {
+            PhysicsSystem physicsSystem = new PhysicsSystem();
+            physicsSystem.setCollisionSystem(name);
+            Box sleeper = makeBox(0.0, 0.0);
+            Box other   = makeBox(5.0, 0.0);
+            physicsSystem.addObject(sleeper);
+            physicsSystem.addObject(other);
+            run(physicsSystem, 60);
+            assertEquals(name, 2, physicsSystem.getSleepingObjectCount());
+
+            Box thrown = makeBox(-3.0, 5.0);
+            thrown.setRestitution(1.0);
+            sleeper.setRestitution(1.0);
+            physicsSystem.addObject(thrown);
+            run(physicsSystem, 60);
+            // The thrown box stops dead and the one it hit carries on.
+            assertTrue(name, sleeper.getState().position.getMagX() > 1.0);
+            assertFalse(name, sleeper.isSleeping());
+            assertTrue(name, other.isSleeping() || other.getState().position.getMagX() > 5.0);
+        }
+    }
+
+    @Test
+    public void anImpulseWakesASleepingObject() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box box = makeBox(0.0, 0.0);
+        physicsSystem.addObject(box);
+        run(physicsSystem, 60);
+        assertTrue(box.isSleeping());
+
+        physicsSystem.applyImpulse(box, new Vector2D(0.0, 2.0), 0.0);
+        assertFalse(box.isSleeping());
+        run(physicsSystem, 10);
+        assertEquals(0.2, box.getState().position.getMagY(), 1e-9);
+    }
+}
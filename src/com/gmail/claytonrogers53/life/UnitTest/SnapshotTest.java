@@ -0,0 +1,189 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PhysicsThing;
+import com.gmail.claytonrogers53.life.Physics.Snapshottable;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * UnitTest code for the snapshots of {@link PhysicsSystem}.
+ */
+public class SnapshotTest {
+
+    private static final long PHYSICS_DT = 10L;
+
+    private static PhysicsSystem makeScenario(int numBoxes) {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Scenarios.addBoxGrid(physicsSystem, numBoxes, 5, 7L);
+        return physicsSystem;
+    }
+
+    /**
+     * Counts the steps into each of its counters, and only reads back a snapshot of the same number
+     * of counters.
+     */
+    private static class Counters implements PhysicsThing, Snapshottable {
+        final long[] counts;
+
+        Counters(int numCounters) {
+            counts = new long[numCounters];
+        }
+
+        @Override
+        public void calculatePhysics(double physicsDT_seconds) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += i + 1;
+            }
+        }
+
+        @Override
+        public int getSnapshotSize() {
+            return counts.length * 8;
+        }
+
+        @Override
+        public void writeSnapshot(ByteBuffer buffer) {
+            for (long count : counts) {
+                buffer.putLong(count);
+            }
+        }
+
+        @Override
+        public void readSnapshot(ByteBuffer buffer, int size) {
+            if (size != getSnapshotSize()) {
+                throw new IllegalArgumentException("Wrong size: " + size);
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buffer.getLong();
+            }
+        }
+    }
+
+    private static void run(PhysicsSystem physicsSystem, int numSteps) {
+        for (int i = 0; i < numSteps; i++) {
+            physicsSystem.step(PHYSICS_DT);
+        }
+    }
+
+    @Test
+    public void restoreRoundTrip() {
+        PhysicsSystem physicsSystem = makeScenario(20);
+        run(physicsSystem, 30);
+        long checksum = physicsSystem.getStateChecksum();
+        ByteBuffer snapshot = physicsSystem.snapshot();
+        assertEquals(physicsSystem.getSnapshotSize(), snapshot.remaining());
+
+        run(physicsSystem, 30);
+        physicsSystem.restoreSnapshot(snapshot);
+        assertEquals(checksum, physicsSystem.getStateChecksum());
+        assertEquals(30, physicsSystem.getStepCount());
+        assertEquals(0, snapshot.remaining());
+    }
+
+    @Test
+    public void forkFromSnapshot() {
+        PhysicsSystem original = makeScenario(20);
+        run(original, 30);
+        ByteBuffer snapshot = original.snapshot();
+        run(original, 50);
+
+        // A new system set up the same way continues exactly like the original.
+        PhysicsSystem fork = makeScenario(20);
+        fork.restoreSnapshot(snapshot);
+        run(fork, 50);
+        assertEquals(original.getStateChecksum(), fork.getStateChecksum());
+    }
+
+    @Test
+    public void mismatchedSystem() {
+        ByteBuffer snapshot = makeScenario(20).snapshot();
+        PhysicsSystem other = makeScenario(19);
+        long checksum = other.getStateChecksum();
+        try {
+            other.restoreSnapshot(snapshot);
+            fail("A snapshot of a different number of objects was restored.");
+        } catch (IllegalArgumentException e) {
+            // Nothing should have been changed.
+            assertEquals(checksum, other.getStateChecksum());
+        }
+    }
+
+    @Test
+    public void truncatedSnapshot() {
+        PhysicsSystem physicsSystem = makeScenario(5);
+        ByteBuffer snapshot = physicsSystem.snapshot();
+        snapshot.limit(snapshot.limit() - 1);
+        try {
+            physicsSystem.restoreSnapshot(snapshot);
+            fail("A truncated snapshot was restored.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void wrongSizedStateIsNotRestored() throws IOException {
+        PhysicsSystem physicsSystem = makeScenario(5);
+        physicsSystem.addPhysicsThing(new Counters(1));
+        run(physicsSystem, 10);
+        File file = File.createTempFile("physics", ".snapshot");
+        file.deleteOnExit();
+        assertTrue(physicsSystem.saveSnapshot(file.getPath()));
+
+        // The same objects, but a physics thing whose state is bigger.
+        PhysicsSystem other = makeScenario(5);
+        Counters counters = new Counters(2);
+        other.addPhysicsThing(counters);
+        long checksum = other.getStateChecksum();
+        try {
+            other.restoreSnapshot(physicsSystem.snapshot());
+            fail("A snapshot with a physics thing of the wrong size was restored.");
+        } catch (IllegalArgumentException e) {
+            // Nothing should have been changed, not even the objects before the physics thing.
+            assertEquals(checksum, other.getStateChecksum());
+            assertEquals(0L, other.getStepCount());
+        }
+        assertFalse(other.loadSnapshot(file.getPath()));
+        assertEquals(checksum, other.getStateChecksum());
+        assertEquals(0L, counters.counts[0]);
+    }
+
+    @Test
+    public void snapshotWhilePhysicsThingsRun() throws InterruptedException {
+        final PhysicsSystem physicsSystem = new PhysicsSystem();
+        Scenarios.addBoxGrid(physicsSystem, 5, 5, 7L);
+        final boolean[] didSnapshot = new boolean[1];
+        physicsSystem.addPhysicsThing(new PhysicsThing() {
+            @Override
+            public void calculatePhysics(double physicsDT_seconds) {
+                // A physics thing may wait on another thread which takes a snapshot, for example
+                // to save the game.
+                Thread snapshotThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        physicsSystem.snapshot();
+                    }
+                });
+                snapshotThread.setDaemon(true);
+                snapshotThread.start();
+                try {
+                    snapshotThread.join(5000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                didSnapshot[0] = !snapshotThread.isAlive();
+            }
+        });
+        run(physicsSystem, 1);
+        assertTrue(didSnapshot[0]);
+    }
+}
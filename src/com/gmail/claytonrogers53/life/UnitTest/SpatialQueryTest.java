@@ -0,0 +1,191 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.CircleShape;
+import com.gmail.claytonrogers53.life.Physics.Collidable;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Physics.PolygonShape;
+import com.gmail.claytonrogers53.life.Physics.RayCastHit;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the ray, region and nearest object queries of the {@link PhysicsSystem}.
+ */
+public class SpatialQueryTest {
+
+    private static final double EPS = 0.000001;
+    private static final int EVEN = 0x0001;
+    private static final int ODD  = 0x0002;
+
+    private Box[] boxes;
+
+    /**
+     * Boxes and balls spread over a field, which are moved around for a while so that the broad
+     * phase has been updated a few times.
+     */
+    private PhysicsSystem makeScenario() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Random random = new Random(3L);
+        boxes = new Box[300];
+        for (int i = 0; i < boxes.length; i++) {
+            Vector2D position = new Vector2D(random.nextDouble() * 100.0, random.nextDouble() * 100.0);
+            Vector2D velocity = Vector2D.getVector2DMagnitudeAndDirection(2.0, random.nextDouble() * 2 * Math.PI);
+            boxes[i] = Scenarios.makeBox(1, 1, position, velocity, random.nextDouble(), 0.0,
+                    i % 3 == 0 ? new CircleShape(0.5) : PolygonShape.box(0.5, 0.25));
+            boxes[i].setCollisionFilter(i % 2 == 0 ? EVEN : ODD, Collidable.ALL_CATEGORIES);
+            physicsSystem.addObject(boxes[i]);
+        }
+        for (int i = 0; i < 50; i++) {
+            physicsSystem.step(10L);
+        }
+        return physicsSystem;
+    }
+
+    private static double getDistance(Collidable object, double x, double y) {
+        Vector2D position = object.getState().position;
+        return Math.hypot(position.getMagX() - x, position.getMagY() - y);
+    }
+
+    @Test
+    public void radiusQueryMatchesBruteForce() {
+        PhysicsSystem physicsSystem = makeScenario();
+        List<Collidable> results = new ArrayList<>();
+        Random random = new Random(7L);
+        for (int query = 0; query < 50; query++) {
+            double x = random.nextDouble() * 100.0;
+            double y = random.nextDouble() * 100.0;
+            double radius = random.nextDouble() * 15.0;
+
+            List<Collidable> expected = new ArrayList<>();
+            for (Box box : boxes) {
+                if ((box.getCategoryBits() & EVEN) != 0 &&
+                        getDistance(box, x, y) <= radius + box.getCollisionRadius()) {
+                    expected.add(box);
+                }
+            }
+
+            results.clear();
+            assertEquals(expected.size(), physicsSystem.queryRadius(x, y, radius, EVEN, results));
+            assertEquals(expected, results);
+        }
+    }
+
+    @Test
+    public void boxQueryMatchesBruteForce() {
+        PhysicsSystem physicsSystem = makeScenario();
+        List<Collidable> results = new ArrayList<>();
+        Random random = new Random(9L);
+        for (int query = 0; query < 50; query++) {
+            double lowerX = random.nextDouble() * 100.0;
+            double lowerY = random.nextDouble() * 100.0;
+            double upperX = lowerX + random.nextDouble() * 20.0;
+            double upperY = lowerY + random.nextDouble() * 20.0;
+
+            List<Collidable> expected = new ArrayList<>();
+            for (Box box : boxes) {
+                Vector2D position = box.getState().position;
+                double radius = box.getCollisionRadius();
+                if (position.getMagX() + radius >= lowerX && position.getMagX() - radius <= upperX &&
+                        position.getMagY() + radius >= lowerY && position.getMagY() - radius <= upperY) {
+                    expected.add(box);
+                }
+            }
+
+            results.clear();
+            physicsSystem.queryAABB(lowerX, lowerY, upperX, upperY, Collidable.ALL_CATEGORIES, results);
+            assertEquals(expected, results);
+        }
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        PhysicsSystem physicsSystem = makeScenario();
+        Random random = new Random(13L);
+        for (int query = 0; query < 50; query++) {
+            final double x = random.nextDouble() * 120.0 - 10.0;
+            final double y = random.nextDouble() * 120.0 - 10.0;
+            Collidable[] results = new Collidable[1 + query % 8];
+
+            Box[] expected = boxes.clone();
+            Arrays.sort(expected, new Comparator<Box>() {
+                @Override
+                public int compare(Box o1, Box o2) {
+                    return Double.compare(getDistance(o1, x, y), getDistance(o2, x, y));
+                }
+            });
+
+            assertEquals(results.length, physicsSystem.findNearest(x, y, Double.POSITIVE_INFINITY,
+                    Collidable.ALL_CATEGORIES, results));
+            assertArrayEquals(Arrays.copyOf(expected, results.length), results);
+        }
+    }
+
+    @Test
+    public void nearestStopsAtMaxDistance() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box near = new Box(1, 1, new Vector2D(1.0, 0.0), new Vector2D(), 0.0, 0.0);
+        Box far  = new Box(1, 1, new Vector2D(0.0, 50.0), new Vector2D(), 0.0, 0.0);
+        physicsSystem.addObject(near);
+        physicsSystem.addObject(far);
+
+        Collidable[] results = new Collidable[3];
+        assertEquals(1, physicsSystem.findNearest(0.0, 0.0, 10.0, Collidable.ALL_CATEGORIES, results));
+        assertSame(near, results[0]);
+        assertNull(results[1]);
+        assertEquals(2, physicsSystem.findNearest(0.0, 0.0, 100.0, Collidable.ALL_CATEGORIES, results));
+        assertSame(far, results[1]);
+    }
+
+    @Test
+    public void rayHitsClosestShape() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box square = new Box(1, 1, new Vector2D(5.0, 0.0), new Vector2D(), 0.0, 0.0);
+        square.setShape(PolygonShape.box(1.0, 1.0));
+        Box ball = new Box(1, 1, new Vector2D(10.0, 0.0), new Vector2D(), 0.0, 0.0);
+        ball.setShape(new CircleShape(1.0));
+        // Turned by 45 degrees, so the ray hits its corner.
+        Box diamond = new Box(1, 1, new Vector2D(0.0, 5.0), new Vector2D(), Math.PI / 4, 0.0);
+        diamond.setShape(PolygonShape.box(1.0, 1.0));
+        physicsSystem.addObject(square);
+        physicsSystem.addObject(ball);
+        physicsSystem.addObject(diamond);
+
+        RayCastHit hit = new RayCastHit();
+        assertTrue(physicsSystem.rayCast(0.0, 0.5, 20.0, 0.5, Collidable.ALL_CATEGORIES, hit));
+        assertSame(square, hit.object);
+        assertEquals(4.0, hit.pointX, EPS);
+        assertEquals(0.5, hit.pointY, EPS);
+        assertEquals(-1.0, hit.normalX, EPS);
+        assertEquals(0.0, hit.normalY, EPS);
+        assertEquals(0.2, hit.fraction, EPS);
+
+        // Coming from the other side it hits the ball first.
+        assertTrue(physicsSystem.rayCast(20.0, 0.0, 0.0, 0.0, Collidable.ALL_CATEGORIES, hit));
+        assertSame(ball, hit.object);
+        assertEquals(11.0, hit.pointX, EPS);
+        assertEquals(1.0, hit.normalX, EPS);
+
+        assertTrue(physicsSystem.rayCast(0.0, 0.0, 0.0, 10.0, Collidable.ALL_CATEGORIES, hit));
+        assertSame(diamond, hit.object);
+        assertEquals(5.0 - Math.sqrt(2.0), hit.pointY, EPS);
+
+        assertFalse(physicsSystem.rayCast(0.0, -2.0, 20.0, -2.0, Collidable.ALL_CATEGORIES, hit));
+        assertNull(hit.object);
+        // Starting inside an object doesn't hit it.
+        assertFalse(physicsSystem.rayCast(5.0, 0.0, 5.0, -3.0, Collidable.ALL_CATEGORIES, hit));
+    }
+}
@@ -0,0 +1,64 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Physics.State;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * UnitTest code for the coordinate conversions in {@link com.gmail.claytonrogers53.life.Physics.State}.
+ */
+public class StateTest {
+
+    private static final double EPS = 0.000001;
+
+    private static State makeState(double x, double y, double angle) {
+        State state = new State();
+        state.position = new Vector2D(x, y);
+        state.angle = angle;
+        state.updateTransform();
+        return state;
+    }
+
+    @Test
+    public void convertToWorld() {
+        // Angles are clockwise from north, so a quarter turn takes north to east.
+        State state = makeState(1.0, 2.0, Math.PI / 2);
+        Vector2D world = State.convertToWorldCoordinates(new Vector2D(0.0, 1.0), state);
+        assertEquals(2.0, world.getMagX(), EPS);
+        assertEquals(2.0, world.getMagY(), EPS);
+    }
+
+    @Test
+    public void convertRoundTrip() {
+        State state = makeState(-3.0, 0.5, 2.1);
+        Vector2D local = new Vector2D(0.3, -1.7);
+        Vector2D back = State.convertToLocalCoordinates(State.convertToWorldCoordinates(local, state), state);
+        assertEquals(local.getMagX(), back.getMagX(), EPS);
+        assertEquals(local.getMagY(), back.getMagY(), EPS);
+    }
+
+    @Test
+    public void batchMatchesSingle() {
+        State state = makeState(4.0, -1.0, 0.7);
+        double[] x = {0.0, 1.0, -2.5, 0.25};
+        double[] y = {0.0, 1.0,  3.0, -0.5};
+        double[] worldX = new double[x.length];
+        double[] worldY = new double[y.length];
+        state.toWorld(x, y, worldX, worldY, x.length);
+
+        for (int i = 0; i < x.length; i++) {
+            Vector2D world = State.convertToWorldCoordinates(new Vector2D(x[i], y[i]), state);
+            assertEquals(world.getMagX(), worldX[i], EPS);
+            assertEquals(world.getMagY(), worldY[i], EPS);
+        }
+
+        // Converting back in place gives the original points.
+        state.toLocal(worldX, worldY, worldX, worldY, x.length);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals(x[i], worldX[i], EPS);
+            assertEquals(y[i], worldY[i], EPS);
+        }
+    }
+}
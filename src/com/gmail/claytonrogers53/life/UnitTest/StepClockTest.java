@@ -0,0 +1,87 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Physics.StepClock;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the accumulator of the physics loop.
+ */
+public class StepClockTest {
+
+    private static final long   STEP = 10000000L;    // 10 ms
+    private static final double EPS  = 1e-9;
+
+    @Test
+    public void leftOverTimeIsCarried() {
+        StepClock clock = new StepClock(0L, STEP, 1.0, 0.0);
+        clock = clock.tick(25000000L, STEP, 1.0);
+        assertEquals(2, clock.getDueSteps(5));
+        clock = clock.afterSteps(2);
+        assertEquals(5000000.0, clock.getAccumulator(), EPS);
+
+        // The half step left over makes up the next one along with another half.
+        clock = clock.tick(30000000L, STEP, 1.0);
+        assertEquals(1, clock.getDueSteps(5));
+        clock = clock.afterSteps(1);
+        assertEquals(0.0, clock.getAccumulator(), EPS);
+    }
+
+    @Test
+    public void multiplierScalesTheTime() {
+        StepClock clock = new StepClock(0L, STEP, 2.0, 0.0);
+        clock = clock.tick(15000000L, STEP, 1.0);
+        // Counted with the old multiplier.
+        assertEquals(3, clock.getDueSteps(5));
+        clock = clock.afterSteps(3);
+        // And the new one from then on.
+        clock = clock.tick(25000000L, STEP, 1.0);
+        assertEquals(1, clock.getDueSteps(5));
+    }
+
+    @Test
+    public void fallingBehindIsClamped() {
+        StepClock clock = new StepClock(0L, STEP, 1.0, 0.0);
+        clock = clock.tick(123000000L, STEP, 1.0);
+        assertEquals(12L, clock.getBehindSteps());
+        assertEquals(5, clock.getDueSteps(5));
+        // The seven steps which didn't fit are dropped, only the part of a step is kept.
+        clock = clock.afterSteps(5);
+        assertEquals(3000000.0, clock.getAccumulator(), 1e-3);
+        assertEquals(0L, clock.getBehindSteps());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void atLeastOneStepAtOnce() {
+        new StepClock(0L, STEP, 1.0, 0.0).getDueSteps(0);
+    }
+
+    @Test
+    public void alphaIsTheFractionOfTheNextStep() {
+        StepClock clock = new StepClock(0L, STEP, 1.0, 0.0);
+        clock = clock.tick(12500000L, STEP, 1.0).afterSteps(1);
+        assertEquals(0.25, clock.getAlpha(12500000L), EPS);
+        assertEquals(0.75, clock.getAlpha(17500000L), EPS);
+        // Stays at the end until the next step is taken.
+        assertEquals(1.0, clock.getAlpha(40000000L), EPS);
+
+        // A clock which isn't stepping always draws the latest step.
+        assertEquals(1.0, new StepClock(0L, 0L, 1.0, 0.0).getAlpha(5000000L), EPS);
+    }
+
+    @Test
+    public void framesOfACatchUpGoForwards() {
+        // Two and a half steps are due. Each frame goes out with the clock from after its step, and
+        // is drawn at its step less one plus its alpha.
+        StepClock clock = new StepClock(0L, STEP, 1.0, 0.0).tick(25000000L, STEP, 1.0);
+        double lastDrawn = Double.NEGATIVE_INFINITY;
+        for (int step = 1; step <= clock.getDueSteps(5); step++) {
+            double drawn = step - 1 + clock.afterSteps(step).getAlpha(25000000L);
+            assertTrue(drawn >= lastDrawn);
+            lastDrawn = drawn;
+        }
+        assertEquals(1.5, lastDrawn, EPS);
+    }
+}
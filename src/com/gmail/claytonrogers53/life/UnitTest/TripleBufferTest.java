@@ -0,0 +1,146 @@
+package com.gmail.claytonrogers53.life.UnitTest;
+
+import com.gmail.claytonrogers53.life.Box;
+import com.gmail.claytonrogers53.life.Physics.PhysicsFrame;
+import com.gmail.claytonrogers53.life.Physics.PhysicsSystem;
+import com.gmail.claytonrogers53.life.Util.TripleBuffer;
+import com.gmail.claytonrogers53.life.Util.Vector2D;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UnitTest code for the {@link TripleBuffer} and the frames the physics system publishes through
+ * it.
+ */
+public class TripleBufferTest {
+
+    private static final int ITEM_LENGTH = 64;
+
+    @Test
+    public void readerGetsLatestItem() {
+        long[] first  = new long[1];
+        long[] second = new long[1];
+        long[] third  = new long[1];
+        TripleBuffer<long[]> buffer = new TripleBuffer<>(first, second, third);
+
+        // Nothing published yet.
+        assertSame(third, buffer.getLatest());
+
+        buffer.getWriteBuffer()[0] = 1L;
+        buffer.publish();
+        buffer.getWriteBuffer()[0] = 2L;
+        buffer.publish();
+        long[] latest = buffer.getLatest();
+        assertEquals(2L, latest[0]);
+        // The reader keeps its item until it asks again.
+        assertSame(latest, buffer.getLatest());
+
+        buffer.getWriteBuffer()[0] = 3L;
+        assertNotSame(latest, buffer.getWriteBuffer());
+        buffer.publish();
+        assertEquals(3L, buffer.getLatest()[0]);
+    }
+
+    @Test
+    public void readerNeverSeesPartialItems() throws InterruptedException {
+        final TripleBuffer<long[]> buffer = new TripleBuffer<>(
+                new long[ITEM_LENGTH], new long[ITEM_LENGTH], new long[ITEM_LENGTH]);
+        final int numItems = 200000;
+        final AtomicBoolean isDone = new AtomicBoolean(false);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long item = 1; item <= numItems; item++) {
+                    long[] values = buffer.getWriteBuffer();
+                    for (int i = 0; i < ITEM_LENGTH; i++) {
+                        values[i] = item;
+                    }
+                    buffer.publish();
+                }
+                isDone.set(true);
+            }
+        });
+        writer.start();
+
+        long lastItem = 0L;
+        boolean isConsistent = true;
+        boolean isInOrder = true;
+        while (!isDone.get() || lastItem < numItems) {
+            long[] values = buffer.getLatest();
+            for (int i = 1; i < ITEM_LENGTH; i++) {
+                isConsistent &= values[i] == values[0];
+            }
+            isInOrder &= values[0] >= lastItem;
+            lastItem = values[0];
+        }
+        writer.join();
+
+        assertTrue(isConsistent);
+        assertTrue(isInOrder);
+        assertEquals(numItems, lastItem);
+    }
+
+    @Test
+    public void physicsPublishesEachStep() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        Box box = new Box(1, 1, new Vector2D(), new Vector2D(1.0, 0.0), 0.0, 0.5);
+        physicsSystem.addObject(box);
+        assertFalse(physicsSystem.getLatestFrame().contains(box.getBodyId()));
+
+        physicsSystem.step(100L);
+        physicsSystem.step(100L);
+        PhysicsFrame frame = physicsSystem.getLatestFrame();
+        assertEquals(2L, frame.getStepCount());
+        assertTrue(frame.contains(box.getBodyId()));
+        int slot = frame.getSlot(box.getBodyId());
+        assertEquals(box.getBodyId(), frame.getBodyId(slot));
+        assertEquals(box.getState().position.getMagX(), frame.getX(slot), 0.0);
+        assertEquals(box.getState().angle, frame.getAngle(slot), 0.0);
+        assertEquals(box.getPreviousState().position.getMagX(), frame.getPreviousX(slot), 0.0);
+        // Steps taken outside the physics loop are drawn as they are.
+        assertEquals(1.0, frame.getInterpolationAlpha(System.nanoTime()), 0.0);
+
+        // The frame being read isn't changed by the next step.
+        double x = frame.getX(slot);
+        physicsSystem.step(100L);
+        assertEquals(x, frame.getX(slot), 0.0);
+        assertEquals(3L, physicsSystem.getLatestFrame().getStepCount());
+    }
+
+    @Test
+    public void framesOnlyHoldTheObjectsInThePhysics() {
+        PhysicsSystem physicsSystem = new PhysicsSystem();
+        List<Box> boxes = new ArrayList<>();
+        for (int round = 0; round < 50; round++) {
+            // The body ids keep going up, but the frame stays the size of the physics.
+            for (int i = 0; i < 10; i++) {
+                Box box = new Box(1, 1, new Vector2D(round, i), new Vector2D(), 0.0, 0.0);
+                boxes.add(box);
+                physicsSystem.addObject(box);
+            }
+            while (boxes.size() > 15) {
+                physicsSystem.removeObject(boxes.remove(0));
+            }
+            physicsSystem.step(10L);
+        }
+
+        PhysicsFrame frame = physicsSystem.getLatestFrame();
+        assertEquals(15, frame.size());
+        for (Box box : boxes) {
+            int slot = frame.getSlot(box.getBodyId());
+            assertTrue(slot >= 0 && slot < frame.size());
+            assertEquals(box.getState().position.getMagY(), frame.getY(slot), 0.0);
+        }
+        assertEquals(-1, frame.getSlot(0));
+    }
+}
@@ -0,0 +1,30 @@
+package com.gmail.claytonrogers53.life.Util;
+
+/**
+ * Says whether the events for the Java Flight Recorder can be used. The event classes extend
+ * jdk.jfr.Event, which older runtimes don't have, so they must only be touched when this is true.
+ * A class is only loaded the first time it is used, so the rest of the code can still run
+ * without the flight recorder.
+ *
+ * The events cost next to nothing while no recording is running: each one checks whether it is
+ * enabled before doing any work, and the event which is made for the check never leaves the
+ * method, so the JIT doesn't allocate it.
+ */
+public final class FlightEvents {
+
+    /** True when the runtime has the flight recorder. */
+    public static final boolean IS_AVAILABLE = isAvailable();
+
+    private FlightEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            Log.info("The flight recorder isn't available, no events will be given to it.");
+            return false;
+        }
+    }
+}
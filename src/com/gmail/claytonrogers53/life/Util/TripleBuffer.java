@@ -0,0 +1,81 @@
+package com.gmail.claytonrogers53.life.Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands completed items (for example the positions of everything at the end of a physics step)
+ * from one writing thread to one reading thread without either of them ever waiting for the
+ * other. There are three buffers: the writer fills its own one and then swaps it with the middle
+ * one, and the reader swaps its own one with the middle one whenever a newer item is there. The
+ * swaps are single atomic operations, so the writer never touches a buffer the reader is using
+ * and the reader always gets a whole item.
+ *
+ * Only one thread (or one thread at a time, under a lock) may write, and only one may read.
+ */
+public final class TripleBuffer<T> {
+
+    /** Set in the middle index when it holds an item the reader hasn't picked up yet. */
+    private static final int FRESH_BIT  = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final Object[] buffers;
+    /** The index of the middle buffer, and whether it is fresh. */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    /** Only used by the writer. */
+    private int back  = 0;
+    /** Only used by the reader. */
+    private int front = 2;
+
+    /**
+     * Creates a triple buffer from three separate buffers. The reader starts with the third one.
+     *
+     * @param first
+     *        The first buffer, which the writer starts with.
+     *
+     * @param second
+     *        The second buffer.
+     *
+     * @param third
+     *        The third buffer, which the reader starts with.
+     */
+    public TripleBuffer(T first, T second, T third) {
+        if (first == null || second == null || third == null || first == second || second == third || first == third) {
+            String errorString = "Tried to create a triple buffer without three separate buffers.";
+            Log.error(errorString);
+            throw new IllegalArgumentException(errorString);
+        }
+        buffers = new Object[] {first, second, third};
+    }
+
+    /**
+     * Gives the buffer the writer should fill next. It stays the same until {@link #publish()}.
+     *
+     * @return The writer's buffer.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Makes the writer's buffer the latest item, and gives the writer the old middle buffer to
+     * fill next. An item the reader never picked up is simply written over.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH_BIT) & INDEX_MASK;
+    }
+
+    /**
+     * Gives the reader the latest published item. The reader may keep using it until the next
+     * time it calls this, the writer won't touch it until then.
+     *
+     * @return The latest item, or the reader's starting buffer if nothing has been published.
+     */
+    @SuppressWarnings("unchecked")
+    public T getLatest() {
+        if ((middle.get() & FRESH_BIT) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return (T) buffers[front];
+    }
+}
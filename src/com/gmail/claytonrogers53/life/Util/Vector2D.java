@@ -60,8 +60,8 @@ public class Vector2D {
 
         direction = Util.normaliseAngle(direction);
 
-        double xComponent = Math.sin(direction) * magnitude;
-        double yComponent = Math.cos(direction) * magnitude;
+        double xComponent = StrictMath.sin(direction) * magnitude;
+        double yComponent = StrictMath.cos(direction) * magnitude;
 
         return new Vector2D(xComponent, yComponent);
     }
@@ -90,10 +90,7 @@ public class Vector2D {
      * @return The magnitude of the vector.
      */
     public double getMag() {
-        return Math.sqrt(
-                Math.pow(magX, 2) +
-                Math.pow(magY, 2)
-        );
+        return Math.sqrt(magX * magX + magY * magY);
     }
 
     /**
@@ -103,7 +100,7 @@ public class Vector2D {
      * @return The direction of the vector in radians.
      */
     public double getDirection() {
-        double value = Math.atan(magY/magX);
+        double value = StrictMath.atan(magY/magX);
         // Convert to clockwise.
         value *= -1;
         // And move zero to north (instead of east).
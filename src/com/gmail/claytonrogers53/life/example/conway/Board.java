@@ -2,6 +2,7 @@ package com.gmail.claytonrogers53.life.example.conway;
 
 import com.gmail.claytonrogers53.life.Graphics.Drawable;
 import com.gmail.claytonrogers53.life.Graphics.Drawing;
+import com.gmail.claytonrogers53.life.Physics.PhysicsFrame;
 import com.gmail.claytonrogers53.life.Physics.PhysicsThing;
 
 import java.awt.*;
@@ -186,7 +187,7 @@ public class Board implements PhysicsThing, Drawable{
     }
 
     @Override
-    public Drawing getDrawing() {
+    public Drawing getDrawing(PhysicsFrame frame) {
 
         drawing.xPosition  = 0.0;
         drawing.yPosition  = 0.0;